@@ -0,0 +1,92 @@
+/*
+ *    ADWINBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import moa.classifiers.core.driftdetection.ADWIN;
+import moa.classifiers.core.driftdetection.ArrayADWIN;
+
+/**
+ * Compares ADWIN and ArrayADWIN as they are used by the ensembles: many
+ * detectors, each one receiving the errors of its member. One operation
+ * gives one input to every detector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ADWINBenchmark {
+
+    public static final int NUM_INPUTS = 1 << 16;
+
+    @Param({"ADWIN", "ArrayADWIN"})
+    public String implementation;
+
+    @Param({"100"})
+    public int numDetectors;
+
+    protected double[][] inputs;
+
+    protected ADWIN[] detectors;
+
+    protected int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        this.inputs = new double[this.numDetectors][NUM_INPUTS];
+        this.detectors = new ADWIN[this.numDetectors];
+        for (int d = 0; d < this.numDetectors; d++) {
+            for (int i = 0; i < NUM_INPUTS; i++) {
+                double errorRate = (i / 5000) % 2 == 0 ? 0.2 : 0.4;
+                this.inputs[d][i] = random.nextDouble() < errorRate ? 1 : 0;
+            }
+            this.detectors[d] = "ArrayADWIN".equals(this.implementation) ? new ArrayADWIN() : new ADWIN();
+        }
+        this.next = 0;
+    }
+
+    @Benchmark
+    public int setInput() {
+        int numChanges = 0;
+        for (int d = 0; d < this.detectors.length; d++) {
+            if (this.detectors[d].setInput(this.inputs[d][this.next])) {
+                numChanges++;
+            }
+        }
+        this.next = (this.next + 1) & (NUM_INPUTS - 1);
+        return numChanges;
+    }
+}
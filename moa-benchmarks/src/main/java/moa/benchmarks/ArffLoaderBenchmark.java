@@ -0,0 +1,93 @@
+/*
+ *    ArffLoaderBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.labs.samoa.instances.ArffLoader;
+import com.yahoo.labs.samoa.instances.FastArffLoader;
+
+import moa.streams.InstanceStream;
+
+/**
+ * Time to parse an ARFF file held in memory, written beforehand from a
+ * stream in the same way as the WriteStreamToARFFFile task.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArffLoaderBenchmark {
+
+    public static final int NUM_INSTANCES = 50000;
+
+    @Param({"ArffLoader", "FastArffLoader"})
+    public String loader;
+
+    @Param({"generators.RandomTreeGenerator", "generators.RandomRBFGenerator -a 50"})
+    public String stream;
+
+    protected byte[] arff;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        InstanceStream instanceStream = BenchmarkData.create(this.stream, InstanceStream.class);
+        Writer writer = new StringWriter();
+        writer.write(instanceStream.getHeader().toString());
+        writer.write("\n");
+        for (int i = 0; i < NUM_INSTANCES && instanceStream.hasMoreInstances(); i++) {
+            writer.write(instanceStream.nextInstance().getData().toString());
+            writer.write("\n");
+        }
+        this.arff = writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int readInstances() {
+        ByteArrayInputStream input = new ByteArrayInputStream(this.arff);
+        ArffLoader arffLoader = "FastArffLoader".equals(this.loader)
+                ? new FastArffLoader(input, 1, -1)
+                : new ArffLoader(new InputStreamReader(input, StandardCharsets.UTF_8), 1, -1);
+        int numInstances = 0;
+        while (arffLoader.readInstance() != null) {
+            numInstances++;
+        }
+        return numInstances;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *    BenchmarkData.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.InstanceStream;
+
+/**
+ * Creates the objects and data used by the benchmarks from command line
+ * strings, as they are given to the MOA tasks.
+ */
+public class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates an object from its command line and prepares it for use.
+     *
+     * @param cliString the class name, relative to the package of the type,
+     * and the options of the object
+     * @param type the type of the object
+     * @return the prepared object
+     */
+    public static <T> T create(String cliString, Class<T> type) {
+        try {
+            T object = type.cast(ClassOption.cliStringToObject(cliString, type, null));
+            if (object instanceof OptionHandler) {
+                ((OptionHandler) object).prepareForUse();
+            }
+            return object;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot create " + type.getSimpleName() + " " + cliString, e);
+        }
+    }
+
+    /**
+     * Creates a classifier for the instances of a stream.
+     */
+    public static Classifier createClassifier(String cliString, InstancesHeader header) {
+        Classifier classifier = create(cliString, Classifier.class);
+        classifier.setModelContext(header);
+        classifier.prepareForUse();
+        return classifier;
+    }
+
+    /**
+     * Reads the first instances of a stream, restarting it if it ends early.
+     */
+    public static Instance[] readInstances(InstanceStream stream, int numInstances) {
+        Instance[] instances = new Instance[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            if (!stream.hasMoreInstances()) {
+                stream.restart();
+            }
+            instances[i] = stream.nextInstance().getData();
+        }
+        return instances;
+    }
+}
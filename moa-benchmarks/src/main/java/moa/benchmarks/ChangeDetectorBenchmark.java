@@ -0,0 +1,87 @@
+/*
+ *    ChangeDetectorBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import moa.classifiers.core.driftdetection.ChangeDetector;
+
+/**
+ * Throughput of the change detectors, one input per operation. The inputs
+ * are the errors of a classifier whose error rate changes abruptly every
+ * DRIFT_PERIOD inputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeDetectorBenchmark {
+
+    public static final int NUM_INPUTS = 1 << 20;
+
+    public static final int DRIFT_PERIOD = 20000;
+
+    @Param({"ADWINChangeDetector", "ADWINChangeDetector -p", "CusumDM", "DDM",
+        "EDDM", "EWMAChartDM", "EnsembleDriftDetectionMethods",
+        "GeometricMovingAverageDM", "HDDM_A_Test", "HDDM_W_Test",
+        "PageHinkleyDM", "RDDM", "SEEDChangeDetector", "STEPD",
+        "SeqDrift1ChangeDetector", "SeqDrift2ChangeDetector"})
+    public String detector;
+
+    protected double[] inputs;
+
+    protected ChangeDetector changeDetector;
+
+    protected int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        this.inputs = new double[NUM_INPUTS];
+        for (int i = 0; i < NUM_INPUTS; i++) {
+            double errorRate = (i / DRIFT_PERIOD) % 2 == 0 ? 0.1 : 0.3;
+            this.inputs[i] = random.nextDouble() < errorRate ? 1 : 0;
+        }
+        this.changeDetector = BenchmarkData.create(
+                "moa.classifiers.core.driftdetection." + this.detector, ChangeDetector.class);
+        this.next = 0;
+    }
+
+    @Benchmark
+    public boolean input() {
+        this.changeDetector.input(this.inputs[this.next]);
+        this.next = (this.next + 1) & (NUM_INPUTS - 1);
+        return this.changeDetector.getChange();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *    GeneratorBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.streams.InstanceStream;
+
+/**
+ * Throughput of the stream generators with their default options, one
+ * instance per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"AgrawalGenerator", "AssetNegotiationGenerator",
+        "HyperplaneGenerator", "LEDGenerator", "LEDGeneratorDrift",
+        "MixedGenerator", "RandomRBFGenerator", "RandomRBFGeneratorDrift",
+        "RandomTreeGenerator", "SEAGenerator", "STAGGERGenerator",
+        "SineGenerator", "TextGenerator", "WaveformGenerator",
+        "WaveformGeneratorDrift", "cd.AbruptChangeGenerator",
+        "cd.GradualChangeGenerator", "cd.NoChangeGenerator",
+        "multilabel.MetaMultilabelGenerator"})
+    public String generator;
+
+    protected InstanceStream stream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.stream = BenchmarkData.create("moa.streams.generators." + this.generator, InstanceStream.class);
+    }
+
+    @Benchmark
+    public Instance nextInstance() {
+        if (!this.stream.hasMoreInstances()) {
+            this.stream.restart();
+        }
+        return this.stream.nextInstance().getData();
+    }
+}
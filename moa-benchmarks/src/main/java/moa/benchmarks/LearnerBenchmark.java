@@ -0,0 +1,99 @@
+/*
+ *    LearnerBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.streams.InstanceStream;
+
+/**
+ * Throughput of the training and prediction of the main classifiers, one
+ * instance per operation. The instances are generated beforehand, and the
+ * predictions are made by a model trained on the first ones of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LearnerBenchmark {
+
+    public static final int NUM_INSTANCES = 100000;
+
+    public static final int NUM_TRAINING_INSTANCES = 10000;
+
+    @Param({"trees.HoeffdingTree", "meta.AdaptiveRandomForest",
+        "bayes.NaiveBayes", "lazy.kNN", "functions.SGD"})
+    public String learner;
+
+    @Param({"generators.RandomRBFGenerator -c 2 -a 20"})
+    public String stream;
+
+    protected Instance[] instances;
+
+    protected Classifier trained;
+
+    protected Classifier training;
+
+    protected int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InstanceStream instanceStream = BenchmarkData.create(this.stream, InstanceStream.class);
+        this.instances = BenchmarkData.readInstances(instanceStream, NUM_INSTANCES);
+        this.trained = BenchmarkData.createClassifier(this.learner, instanceStream.getHeader());
+        for (int i = 0; i < NUM_TRAINING_INSTANCES; i++) {
+            this.trained.trainOnInstance(this.instances[i]);
+        }
+        this.training = BenchmarkData.createClassifier(this.learner, instanceStream.getHeader());
+        this.next = 0;
+    }
+
+    protected Instance nextInstance() {
+        Instance instance = this.instances[this.next];
+        this.next = this.next + 1 == this.instances.length ? 0 : this.next + 1;
+        return instance;
+    }
+
+    @Benchmark
+    public void trainOnInstance() {
+        this.training.trainOnInstance(nextInstance());
+    }
+
+    @Benchmark
+    public double[] getVotesForInstance() {
+        return this.trained.getVotesForInstance(nextInstance());
+    }
+}
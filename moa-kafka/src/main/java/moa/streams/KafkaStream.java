@@ -20,6 +20,7 @@
 
 package moa.streams;
 
+import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
@@ -32,18 +33,23 @@ import moa.core.InstanceExample;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
 import moa.tasks.TaskMonitor;
+import moa.util.InstanceCodec;
+import moa.util.InstanceDeserializer;
 import moa.util.KafkaUtils;
-import moa.util.ObjectDeserializer;
 import moa.util.ObjectSerializer;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.LongDeserializer;
 
 import java.io.Closeable;
-import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -51,6 +57,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Instance stream which consumes instances from a Kafka topic.
@@ -61,8 +69,16 @@ import java.util.Queue;
  *     partition.
  *   - The stream is considered ended when a record with a null
  *     value is found.
- *   - The serialised form of the instances is using Java's own
- *     serialisation tools (i.e. {@link ObjectSerializer}).
+ *   - The serialised form of the instances is either the compact form
+ *     of {@link InstanceCodec}, with the header in the first record of
+ *     each partition, or Java's own serialisation tools (i.e.
+ *     {@link ObjectSerializer}). When the partitions are not consumed
+ *     from their beginning, the headers are read from the header topic,
+ *     if given (see {@link InstanceDeserializer}).
+ *
+ * With a positive number of prefetched batches, a background thread polls
+ * Kafka and deserialises the records while the instances of the previous
+ * batches are processed, keeping up to that many batches ahead.
  *
  * @author Corey Sterling (csterlin at waikato dot ac dot nz)
  */
@@ -86,10 +102,31 @@ public class KafkaStream extends AbstractOptionHandler implements
   public StringOption portOption = new StringOption("port", 'p',
     "The Kafka broker port", "9092");
 
+  // The topic holding the headers of the instances, by schema ID
+  public StringOption headerTopicOption = new StringOption("headerTopic", 'H',
+    "Kafka topic holding the headers of the instances, read when a record refers to one not seen yet (empty = none)", "");
+
+  // The number of poll batches fetched ahead in the background
+  public IntOption prefetchBatchesOption = new IntOption("prefetchBatches", 'b',
+    "Number of poll batches fetched ahead by a background thread (0 = poll when the buffer is empty)",
+    0, 0, Integer.MAX_VALUE);
+
   // -- TRANSIENTS -- //
 
+  // Marks the end of the stream in the prefetched batches
+  protected static final List<Instance> END_OF_STREAM = new ArrayList<>();
+
   // The consumer which will retrieve records from the Kafka stream
-  protected transient KafkaConsumer<Long, Instance> m_Consumer = null;
+  protected transient Consumer<Long, Instance> m_Consumer = null;
+
+  // The thread polling Kafka ahead when prefetching
+  protected transient Thread m_PrefetchThread = null;
+
+  // The batches of instances polled ahead
+  protected transient BlockingQueue<List<Instance>> m_PrefetchedBatches = null;
+
+  // The error which stopped the prefetching thread, if any
+  protected transient volatile RuntimeException m_PrefetchError = null;
 
   // A buffer of instances retrieved from the Kafka stream
   protected transient Queue<Instance> m_InstanceBuffer = null;
@@ -157,6 +194,9 @@ public class KafkaStream extends AbstractOptionHandler implements
 
   @Override
   public void restart() {
+    // A prefetching consumer is replaced, as it has already moved on
+    stopPrefetching();
+
     // Get the consumer in a usable state and restart it
     restartConsumer();
 
@@ -189,6 +229,8 @@ public class KafkaStream extends AbstractOptionHandler implements
 
   @Override
   public void close() {
+    stopPrefetching();
+
     if (m_Consumer != null) {
       m_Consumer.unsubscribe();
       m_Consumer.close();
@@ -207,7 +249,7 @@ public class KafkaStream extends AbstractOptionHandler implements
       return;
 
     // Create the consumer
-    m_Consumer = new KafkaConsumer<>(createConsumerConfiguration());
+    m_Consumer = createConsumer();
 
     // Subscribe to the given topic
     m_Consumer.subscribe(Collections.singletonList(topicOption.getValue()));
@@ -216,6 +258,13 @@ public class KafkaStream extends AbstractOptionHandler implements
     restartConsumer();
   }
 
+  /**
+   * Creates the Kafka consumer.
+   */
+  protected Consumer<Long, Instance> createConsumer() {
+    return new KafkaConsumer<>(createConsumerConfiguration());
+  }
+
   /**
    * Creates the configuration for the Kafka consumer.
    */
@@ -223,7 +272,7 @@ public class KafkaStream extends AbstractOptionHandler implements
     Map<String, Object> config = new HashMap<>();
 
     config.put("key.deserializer", LongDeserializer.class);
-    config.put("value.deserializer", ObjectDeserializer.class);
+    config.put("value.deserializer", InstanceDeserializer.class);
     config.put("bootstrap.servers", broker());
     config.put("fetch.min.bytes", 1);
     config.put("group.id", KafkaUtils.uniqueGroupIDString(this));
@@ -234,6 +283,7 @@ public class KafkaStream extends AbstractOptionHandler implements
     config.put("fetch.max.bytes", 1 << 24); // 16MB
     config.put("isolation.level", "read_committed");
     config.put("client.id", this.getClass().getName());
+    config.put(InstanceDeserializer.HEADER_TOPIC_CONFIG, headerTopicOption.getValue());
 
     return config;
   }
@@ -298,7 +348,14 @@ public class KafkaStream extends AbstractOptionHandler implements
 
     // If the buffer isn't there, create it
     if (m_InstanceBuffer == null)
-      m_InstanceBuffer = new LinkedList<>();
+      m_InstanceBuffer = new ArrayDeque<>();
+
+    // Take the next batch from the background thread when prefetching
+    if (prefetchBatchesOption.getValue() > 0) {
+      takePrefetchedBatch();
+      cacheHeaderIfNecessary();
+      return;
+    }
 
     // Get some records from Kafka
     ConsumerRecords<Long, Instance> records = m_Consumer.poll(KafkaUtils.WAIT_AS_LONG_AS_POSSIBLE);
@@ -323,6 +380,101 @@ public class KafkaStream extends AbstractOptionHandler implements
     cacheHeaderIfNecessary();
   }
 
+  /**
+   * Moves the next batch polled in the background to the buffer, starting
+   * the background thread if needed.
+   */
+  protected void takePrefetchedBatch() {
+    if (m_PrefetchThread == null) {
+      final Consumer<Long, Instance> consumer = m_Consumer;
+      final BlockingQueue<List<Instance>> batches =
+        new ArrayBlockingQueue<>(prefetchBatchesOption.getValue());
+      m_PrefetchedBatches = batches;
+      m_PrefetchError = null;
+      m_PrefetchThread = new Thread(() -> prefetch(consumer, batches),
+        "KafkaStream-" + topicOption.getValue());
+      m_PrefetchThread.setDaemon(true);
+      m_PrefetchThread.start();
+    }
+
+    List<Instance> batch;
+    try {
+      batch = m_PrefetchedBatches.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for instances from Kafka", e);
+    }
+
+    if (batch == END_OF_STREAM) {
+      m_EndOfStreamReached = true;
+      RuntimeException error = m_PrefetchError;
+      close();
+      if (error != null)
+        throw new RuntimeException("Failed to consume instances from Kafka", error);
+    }
+    else {
+      m_InstanceBuffer.addAll(batch);
+    }
+  }
+
+  /**
+   * Polls Kafka into the prefetched batches until the end of the stream,
+   * then closes the consumer. Runs on the background thread.
+   */
+  protected void prefetch(Consumer<Long, Instance> consumer, BlockingQueue<List<Instance>> batches) {
+    try {
+      try {
+        boolean endOfStream = false;
+        while (!endOfStream) {
+          ConsumerRecords<Long, Instance> records = consumer.poll(KafkaUtils.WAIT_AS_LONG_AS_POSSIBLE);
+
+          List<Instance> batch = new ArrayList<>(records.count());
+          for (ConsumerRecord<Long, Instance> record : records) {
+            // A null instance is the sentinel that the end of stream has been reached
+            if (record.value() == null) {
+              endOfStream = true;
+              break;
+            }
+            batch.add(record.value());
+          }
+
+          if (!batch.isEmpty())
+            batches.put(batch);
+        }
+      } catch (WakeupException | InterruptException e) {
+        // Stopped by restart or close
+        return;
+      } catch (RuntimeException e) {
+        m_PrefetchError = e;
+      }
+      batches.put(END_OF_STREAM);
+    } catch (InterruptedException e) {
+      // Stopped by restart or close
+    } finally {
+      consumer.close();
+    }
+  }
+
+  /**
+   * Stops the background thread, which closes its consumer.
+   */
+  protected void stopPrefetching() {
+    if (m_PrefetchThread == null)
+      return;
+
+    m_PrefetchThread.interrupt();
+    m_Consumer.wakeup();
+    try {
+      m_PrefetchThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    m_PrefetchThread = null;
+    m_PrefetchedBatches = null;
+    m_Consumer = null;
+  }
+
   /**
    * Caches the header for these instances if it hasn't already.
    */
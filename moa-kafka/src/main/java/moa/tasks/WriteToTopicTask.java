@@ -20,6 +20,7 @@
 
 package moa.tasks;
 
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -30,18 +31,36 @@ import moa.core.Example;
 import moa.core.ObjectRepository;
 import moa.options.ClassOption;
 import moa.streams.InstanceStream;
+import moa.util.InstanceCodec;
 import moa.util.KafkaUtils;
 import moa.util.ObjectSerializer;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.LongSerializer;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Task to write instances from a stream to a Kafka topic.
  *
+ * Instances are written in the compact form of {@link InstanceCodec} unless
+ * Java serialisation is asked for. They are spread over the partitions of
+ * the topic in turn, and the first record of each partition holds the
+ * header, so that consumers can decode every partition from its beginning.
+ * Every compact record carries the schema ID of its header; with a header
+ * topic, each header is also written there under its schema ID before the
+ * first instance referring to it, so that consumers starting anywhere in
+ * the partitions can decode them. The header topic should be compacted.
+ * Records are sent asynchronously and grouped into batches by the producer;
+ * the task waits for all of them to be acknowledged before finishing.
+ *
  * @author Corey Sterling (csterlin at waikato dot ac dot nz)
  */
 public class WriteToTopicTask extends AuxiliarMainTask implements CapabilitiesHandler {
@@ -89,6 +108,41 @@ public class WriteToTopicTask extends AuxiliarMainTask implements CapabilitiesHa
         ""
   );
 
+  // The topic to write the headers to
+  public StringOption headerTopicOption = new StringOption(
+        "headerTopic",
+        'H',
+        "Compacted Kafka topic to write the headers of the instances to, by schema ID (empty = none)",
+        ""
+  );
+
+  // Whether to write instances with Java serialisation
+  public FlagOption javaSerializationOption = new FlagOption(
+        "javaSerialization",
+        'j',
+        "Write instances with Java serialisation instead of the compact form"
+  );
+
+  // The size of the batches of records sent to a partition
+  public IntOption batchSizeOption = new IntOption(
+        "batchSize",
+        'b',
+        "Maximum size in bytes of a batch of records sent to a partition",
+        1 << 18,
+        0,
+        Integer.MAX_VALUE
+  );
+
+  // How long to wait for more records before sending a batch
+  public IntOption lingerOption = new IntOption(
+        "linger",
+        'l',
+        "Milliseconds to wait for more records before sending a batch",
+        5,
+        0,
+        Integer.MAX_VALUE
+  );
+
   /**
    * Creates the configuration for the Kakfa producer.
    *
@@ -100,7 +154,7 @@ public class WriteToTopicTask extends AuxiliarMainTask implements CapabilitiesHa
     Map<String, Object> config = new HashMap<>();
 
     config.put("key.serializer", LongSerializer.class);
-    config.put("value.serializer", ObjectSerializer.class);
+    config.put("value.serializer", ByteArraySerializer.class);
     config.put("bootstrap.servers", KafkaUtils.broker(host, port));
     config.put("fetch.min.bytes", 1);
     config.put("group.id", KafkaUtils.uniqueGroupIDString(this));
@@ -111,61 +165,124 @@ public class WriteToTopicTask extends AuxiliarMainTask implements CapabilitiesHa
     config.put("fetch.max.bytes", 1 << 24); // 16MB
     config.put("isolation.level", "read_committed");
     config.put("client.id", this.getClass().getName());
+    config.put("batch.size", batchSizeOption.getValue());
+    config.put("linger.ms", lingerOption.getValue());
 
     return config;
   }
 
+  /**
+   * Creates the Kafka producer.
+   *
+   * @param host The Kafka host to connect to.
+   * @param port The Kafka port to connect to.
+   * @return The producer.
+   */
+  protected Producer<Long, byte[]> createProducer(String host, String port) {
+    return new KafkaProducer<>(getProducerConfig(host, port));
+  }
+
   @Override
   protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
     // Prepare all option values
     InstanceStream stream = (InstanceStream) getPreparedClassOption(streamOption);
     int maxInstances = maxInstancesOption.getValue();
     String topic = topicOption.getValue();
+    String headerTopic = headerTopicOption.getValue();
     String host = hostOption.getValue();
     String port = portOption.getValue();
 
     // Create the Kakfa producer
-    KafkaProducer<Long, Instance> producer = new KafkaProducer<>(
-          getProducerConfig(host, port)
-    );
+    Producer<Long, byte[]> producer = createProducer(host, port);
+
+    // Records are spread over the partitions in turn
+    int numPartitions = producer.partitionsFor(topic).size();
+
+    // The serialisers of the instances
+    boolean javaSerialization = javaSerializationOption.isSet();
+    ObjectSerializer<Instance> objectSerializer = new ObjectSerializer<>();
+    InstanceCodec codec = new InstanceCodec();
+    Set<Long> writtenHeaders = new HashSet<>();
+
+    // Sends are asynchronous, the first failure is kept to abort the task
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Callback callback = (metadata, exception) -> {
+      if (exception != null)
+        failure.compareAndSet(null, exception);
+    };
+
+    try {
+      int i = 0;
+      while (i < maxInstances) {
+        // If the stream is depleted, finalise the topic
+        if (!stream.hasMoreInstances()) break;
+
+        // Stop at the first failed send
+        if (failure.get() != null) break;
+
+        // Get the next instance from the stream
+        Example<Instance> inst = stream.nextInstance();
+
+        // Write a new header to the header topic, and make sure it is there
+        // before any instance referring to it
+        if (!javaSerialization && !headerTopic.isEmpty()) {
+          long schemaId = codec.schemaId(inst.getData().dataset());
+          if (writtenHeaders.add(schemaId)) {
+            producer.send(new ProducerRecord<>(
+                  headerTopic, schemaId, codec.headerBytes(inst.getData().dataset())
+            ), callback);
+            producer.flush();
+            if (failure.get() != null) break;
+          }
+        }
 
-    int i = 0;
-    while (i < maxInstances) {
-      // If the stream is depleted, finalise the topic
-      if (!stream.hasMoreInstances()) break;
+        // Serialise the instance, with its header if it's the first of its partition
+        int partition = i % numPartitions;
+        byte[] value = javaSerialization
+              ? objectSerializer.serialize(topic, inst.getData())
+              : codec.encode(inst.getData(), i < numPartitions);
 
-      // Get the next instance from the stream
-      Example<Instance> inst = stream.nextInstance();
+        // Create a record of the instance for the topic
+        ProducerRecord<Long, byte[]> record = new ProducerRecord<>(
+              topic, partition, (long) i++, value
+        );
 
-      // Create a record of the instance for the topic
-      ProducerRecord<Long, Instance> record = new ProducerRecord<>(
-            topic, (long) i++, inst.getData()
-      );
+        // Send the record to the Kafka instance
+        producer.send(record, callback);
 
-      // Send the record to the Kafka instance
-      producer.send(record);
+        // Abort if the task is cancelled (leaves the topic unfinished)
+        if (monitor.isCancelled()) return null;
 
-      // Abort if the task is cancelled (leaves the topic unfinished)
-      if (monitor.isCancelled()) return null;
+        // Estimate the number of instances left in the source stream
+        long remainingInstances = stream.estimatedRemainingInstances();
 
-      // Estimate the number of instances left in the source stream
-      long remainingInstances = stream.estimatedRemainingInstances();
+        // Estimate the total number of instances that will be written
+        long totalInstances = remainingInstances >= 0
+              ? i + remainingInstances
+              : maxInstances;
 
-      // Estimate the total number of instances that will be written
-      long totalInstances = remainingInstances >= 0
-            ? i + remainingInstances
-            : maxInstances;
+        // Update the task monitor on our progress
+        monitor.setCurrentActivityFractionComplete(((double) i) / totalInstances);
+      }
 
-      // Update the task monitor on our progress
-      monitor.setCurrentActivityFractionComplete(((double) i) / totalInstances);
+      // Send the null-terminator instance to the topic, once the instances
+      // have been acknowledged
+      if (failure.get() == null) {
+        producer.flush();
+        producer.send(
+              new ProducerRecord<>(
+                    topic, i % numPartitions, (long) i, null
+              ),
+              callback
+        );
+        producer.flush();
+      }
+    } finally {
+      producer.close();
     }
 
-    // Send the null-terminator instance to the topic
-    producer.send(
-          new ProducerRecord<>(
-                topic, (long) i, null
-          )
-    );
+    if (failure.get() != null)
+      throw new RuntimeException("Failed to write instances to Kafka", failure.get());
 
     return null;
   }
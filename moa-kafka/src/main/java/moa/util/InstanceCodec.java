@@ -0,0 +1,342 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InstanceCodec.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, NZ
+ */
+
+package moa.util;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary form of instances for Kafka records.
+ *
+ * A record starts with a format byte, a flags byte and the schema ID of the
+ * instance, a fingerprint of its serialised header. The header itself is only
+ * added to the records asked for, typically the first record of each
+ * partition, and decoders remember the headers they have seen by schema ID.
+ * A consumer that does not read a partition from its beginning (it seeks, or
+ * resumes from a committed offset) never sees that record, so headers are
+ * also kept apart from the instances: {@link #headerBytes(Instances)} gives
+ * the header to publish under {@link #schemaId(Instances)}, typically in a
+ * compacted topic keyed by schema ID, and {@link #addHeader(long, byte[])}
+ * gives it back to a decoder (see {@link InstanceDeserializer}).
+ * The values follow, laid out like the rows of
+ * {@link com.yahoo.labs.samoa.instances.BinaryInstancesWriter}: dense
+ * instances store an int per nominal attribute (-1 for missing values) and a
+ * double per other attribute, sparse instances store their number of values,
+ * their indices and their values. The weight is only stored when it is not 1.
+ *
+ * Records written with Java serialisation ({@link ObjectSerializer}) can be
+ * told apart by their first byte.
+ *
+ * Codecs are not thread-safe.
+ */
+public class InstanceCodec {
+
+  // The first byte of a compact record ('M')
+  public static final byte FORMAT = 0x4D;
+
+  public static final int FLAG_HEADER = 1;
+
+  public static final int FLAG_SPARSE = 2;
+
+  public static final int FLAG_WEIGHT = 4;
+
+  // All numbers in the records are little endian
+  public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  // Format, flags and schema ID
+  protected static final int PREFIX_LENGTH = 1 + 1 + 8;
+
+  /**
+   * A header with what is needed to encode and decode its instances.
+   */
+  protected static class Schema {
+
+    public final long id;
+
+    public final InstancesHeader header;
+
+    public final byte[] headerBytes;
+
+    public final boolean[] nominal;
+
+    public Schema(long id, InstancesHeader header, byte[] headerBytes) {
+      this.id = id;
+      this.header = header;
+      this.headerBytes = headerBytes;
+      this.nominal = new boolean[header.numAttributes()];
+      for (int i = 0; i < nominal.length; i++)
+        nominal[i] = header.attribute(i).isNominal();
+    }
+  }
+
+  // The schema of the last instance encoded, and the dataset it came from
+  protected Schema m_EncodingSchema = null;
+
+  protected Instances m_EncodingDataset = null;
+
+  // The schemas seen while decoding, by ID
+  protected Map<Long, Schema> m_DecodingSchemas = new HashMap<>();
+
+  /**
+   * Encodes an instance.
+   *
+   * @param instance The instance to encode.
+   * @param withHeader Whether to add the header of the instance.
+   * @return The record.
+   */
+  public byte[] encode(Instance instance, boolean withHeader) {
+    Schema schema = encodingSchema(instance.dataset());
+    boolean sparse = instance instanceof SparseInstance;
+    boolean weighted = instance.weight() != 1.0;
+
+    int length = PREFIX_LENGTH;
+    if (withHeader)
+      length += 4 + schema.headerBytes.length;
+    if (weighted)
+      length += 8;
+    if (sparse) {
+      length += 4 + 12 * instance.numValues();
+    }
+    else {
+      for (boolean isNominal : schema.nominal)
+        length += isNominal ? 4 : 8;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(BYTE_ORDER);
+    buffer.put(FORMAT);
+    buffer.put((byte) ((withHeader ? FLAG_HEADER : 0)
+      | (sparse ? FLAG_SPARSE : 0)
+      | (weighted ? FLAG_WEIGHT : 0)));
+    buffer.putLong(schema.id);
+    if (withHeader) {
+      buffer.putInt(schema.headerBytes.length);
+      buffer.put(schema.headerBytes);
+    }
+    if (weighted)
+      buffer.putDouble(instance.weight());
+    if (sparse) {
+      int numValues = instance.numValues();
+      buffer.putInt(numValues);
+      for (int i = 0; i < numValues; i++)
+        buffer.putInt(instance.index(i));
+      for (int i = 0; i < numValues; i++)
+        buffer.putDouble(instance.valueSparse(i));
+    }
+    else {
+      for (int j = 0; j < schema.nominal.length; j++) {
+        double value = instance.value(j);
+        if (schema.nominal[j])
+          buffer.putInt(Double.isNaN(value) ? -1 : (int) value);
+        else
+          buffer.putDouble(value);
+      }
+    }
+
+    return buffer.array();
+  }
+
+  /**
+   * Decodes an instance.
+   *
+   * @param bytes The record, in the compact form.
+   * @return The instance.
+   * @throws IllegalStateException If the record neither holds its header nor
+   *                               refers to a header seen before.
+   */
+  public Instance decode(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(BYTE_ORDER);
+    if (buffer.get() != FORMAT)
+      throw new IllegalArgumentException("Not a compact instance record");
+    int flags = buffer.get();
+    long id = buffer.getLong();
+
+    Schema schema = m_DecodingSchemas.get(id);
+    if ((flags & FLAG_HEADER) != 0) {
+      int headerLength = buffer.getInt();
+      if (schema == null) {
+        byte[] headerBytes = new byte[headerLength];
+        buffer.get(headerBytes);
+        schema = new Schema(id, readHeader(headerBytes), headerBytes);
+        m_DecodingSchemas.put(id, schema);
+      }
+      else {
+        buffer.position(buffer.position() + headerLength);
+      }
+    }
+    if (schema == null)
+      throw new IllegalStateException("Instance refers to schema " + Long.toHexString(id)
+        + " whose header has not been received");
+
+    double weight = (flags & FLAG_WEIGHT) != 0 ? buffer.getDouble() : 1.0;
+    Instance instance;
+    if ((flags & FLAG_SPARSE) != 0) {
+      int numValues = buffer.getInt();
+      int[] indices = new int[numValues];
+      double[] values = new double[numValues];
+      for (int i = 0; i < numValues; i++)
+        indices[i] = buffer.getInt();
+      for (int i = 0; i < numValues; i++)
+        values[i] = buffer.getDouble();
+      instance = new SparseInstance(weight, values, indices, schema.nominal.length);
+    }
+    else {
+      double[] values = new double[schema.nominal.length];
+      for (int j = 0; j < values.length; j++) {
+        if (schema.nominal[j]) {
+          int index = buffer.getInt();
+          values[j] = index < 0 ? Double.NaN : index;
+        }
+        else {
+          values[j] = buffer.getDouble();
+        }
+      }
+      instance = new DenseInstance(weight, values);
+    }
+    instance.setDataset(schema.header);
+
+    return instance;
+  }
+
+  /**
+   * Gets the schema ID of the instances of a dataset.
+   */
+  public long schemaId(Instances dataset) {
+    return encodingSchema(dataset).id;
+  }
+
+  /**
+   * Gets the serialised header of a dataset, as added to the records.
+   */
+  public byte[] headerBytes(Instances dataset) {
+    return encodingSchema(dataset).headerBytes;
+  }
+
+  /**
+   * Adds a header received apart from the instances, so that the records
+   * referring to it can be decoded.
+   *
+   * @param id The schema ID of the header.
+   * @param headerBytes The serialised header.
+   * @throws IllegalArgumentException If the header does not have that ID.
+   */
+  public void addHeader(long id, byte[] headerBytes) {
+    if (m_DecodingSchemas.containsKey(id))
+      return;
+
+    if (fingerprint(headerBytes) != id)
+      throw new IllegalArgumentException("Header does not match schema " + Long.toHexString(id));
+    m_DecodingSchemas.put(id, new Schema(id, readHeader(headerBytes), headerBytes));
+  }
+
+  /**
+   * Whether a compact record can be decoded: it holds its header, or refers
+   * to a header seen before.
+   */
+  public boolean canDecode(byte[] bytes) {
+    return (bytes[1] & FLAG_HEADER) != 0
+      || m_DecodingSchemas.containsKey(schemaId(bytes));
+  }
+
+  /**
+   * Gets the schema ID a compact record refers to.
+   */
+  public static long schemaId(byte[] bytes) {
+    return ByteBuffer.wrap(bytes).order(BYTE_ORDER).getLong(2);
+  }
+
+  /**
+   * Whether a record is in the compact form.
+   */
+  public static boolean isCompact(byte[] bytes) {
+    return bytes.length > 0 && bytes[0] == FORMAT;
+  }
+
+  /**
+   * Gets the schema of a dataset, computing it only when the dataset changes.
+   */
+  protected Schema encodingSchema(Instances dataset) {
+    if (dataset == null)
+      throw new IllegalArgumentException("Instance has no dataset to take the header from");
+
+    if (dataset != m_EncodingDataset) {
+      InstancesHeader header = new InstancesHeader(dataset);
+      byte[] headerBytes = writeHeader(header);
+      long id = fingerprint(headerBytes);
+      if (m_EncodingSchema == null || m_EncodingSchema.id != id)
+        m_EncodingSchema = new Schema(id, header, headerBytes);
+      m_EncodingDataset = dataset;
+    }
+
+    return m_EncodingSchema;
+  }
+
+  /**
+   * Serialises a header.
+   */
+  protected static byte[] writeHeader(InstancesHeader header) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(header);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to serialise instances header", e);
+    }
+  }
+
+  /**
+   * Deserialises a header.
+   */
+  protected static InstancesHeader readHeader(byte[] bytes) {
+    try {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      return (InstancesHeader) in.readObject();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      throw new RuntimeException("Failed to deserialise instances header", e);
+    }
+  }
+
+  /**
+   * 64-bit FNV-1a hash of the serialised header, the same in every JVM.
+   */
+  protected static long fingerprint(byte[] bytes) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InstanceDeserializer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, NZ
+ */
+
+package moa.util;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kafka deserialiser for instances, reading both the compact form of
+ * {@link InstanceCodec} and Java serialisation.
+ *
+ * A compact record carries the schema ID of its header in every case, but
+ * the header itself only in some records, so a consumer which starts past
+ * them cannot decode the others by itself. The "moa.header.topic"
+ * configuration names a topic holding the headers, keyed by schema ID (see
+ * WriteToTopicTask); when a record refers to a header not seen yet, that
+ * topic is read from its beginning with the "bootstrap.servers" of the
+ * consumer. It should be a compacted topic, so that it keeps the last record
+ * of each schema ID however old.
+ */
+public class InstanceDeserializer
+  implements Deserializer<Instance> {
+
+  // Configuration key of the topic holding the headers
+  public static final String HEADER_TOPIC_CONFIG = "moa.header.topic";
+
+  // How long to wait for the headers
+  protected static final Duration HEADER_TIMEOUT = Duration.ofSeconds(30);
+
+  // The codec decoding the compact records
+  protected InstanceCodec m_Codec = new InstanceCodec();
+
+  // The deserialiser of the records written with Java serialisation
+  protected ObjectDeserializer<Instance> m_ObjectDeserializer = new ObjectDeserializer<>();
+
+  // The topic holding the headers, if any
+  protected String m_HeaderTopic = null;
+
+  // The brokers to read the headers from
+  protected Object m_BootstrapServers = null;
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    Object headerTopic = configs.get(HEADER_TOPIC_CONFIG);
+    if (headerTopic != null && !headerTopic.toString().isEmpty())
+      m_HeaderTopic = headerTopic.toString();
+    m_BootstrapServers = configs.get("bootstrap.servers");
+  }
+
+  @Override
+  public Instance deserialize(String s, byte[] bytes) {
+    // Bytes can be null; deserialise to null
+    if (bytes == null)
+      return null;
+
+    if (InstanceCodec.isCompact(bytes)) {
+      if (m_HeaderTopic != null && !m_Codec.canDecode(bytes))
+        readHeaders();
+      return m_Codec.decode(bytes);
+    }
+
+    return m_ObjectDeserializer.deserialize(s, bytes);
+  }
+
+  /**
+   * Adds all the headers of the header topic to the codec.
+   */
+  protected void readHeaders() {
+    try (Consumer<Long, byte[]> consumer = createHeaderConsumer()) {
+      List<TopicPartition> partitions = new ArrayList<>();
+      List<PartitionInfo> infos = consumer.partitionsFor(m_HeaderTopic);
+      if (infos == null)
+        return;
+      for (PartitionInfo info : infos)
+        partitions.add(new TopicPartition(m_HeaderTopic, info.partition()));
+      consumer.assign(partitions);
+      consumer.seekToBeginning(partitions);
+
+      // Read up to the end of each partition as it is now
+      Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+      long deadline = System.currentTimeMillis() + HEADER_TIMEOUT.toMillis();
+      while (!reachedEnd(consumer, endOffsets)) {
+        if (System.currentTimeMillis() > deadline)
+          throw new IllegalStateException("Timed out reading the headers from topic " + m_HeaderTopic);
+        for (ConsumerRecord<Long, byte[]> record : consumer.poll(Duration.ofMillis(100))) {
+          if (record.key() != null && record.value() != null)
+            m_Codec.addHeader(record.key(), record.value());
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the consumer has reached the given offsets.
+   */
+  protected boolean reachedEnd(Consumer<Long, byte[]> consumer, Map<TopicPartition, Long> endOffsets) {
+    for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+      if (consumer.position(end.getKey()) < end.getValue())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Creates the consumer reading the header topic.
+   */
+  protected Consumer<Long, byte[]> createHeaderConsumer() {
+    Map<String, Object> config = new HashMap<>();
+
+    config.put("key.deserializer", LongDeserializer.class);
+    config.put("value.deserializer", ByteArrayDeserializer.class);
+    config.put("bootstrap.servers", m_BootstrapServers);
+    config.put("enable.auto.commit", false);
+    config.put("isolation.level", "read_committed");
+    config.put("client.id", this.getClass().getName());
+
+    return new KafkaConsumer<>(config);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InstanceSerializer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, NZ
+ */
+
+package moa.util;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Kafka serialiser for instances, in the compact form of
+ * {@link InstanceCodec}. The header is added to the first record and to the
+ * first record after it changes, so the serialiser suits topics with a single
+ * partition. The "moa.header.interval" configuration also adds it every so
+ * many records. Every record carries the schema ID of its header: consumers
+ * which may start past the records holding it (several partitions, seeking,
+ * resuming from a committed offset) need the header published apart, as
+ * WriteToTopicTask does, and read with the "moa.header.topic" configuration
+ * of {@link InstanceDeserializer}.
+ */
+public class InstanceSerializer
+  implements Serializer<Instance> {
+
+  // Configuration key of the number of records between two headers
+  public static final String HEADER_INTERVAL_CONFIG = "moa.header.interval";
+
+  // The codec encoding the instances
+  protected InstanceCodec m_Codec = new InstanceCodec();
+
+  // The number of records between two headers (0 = only when it changes)
+  protected long m_HeaderInterval = 0;
+
+  // The number of records since the last header
+  protected long m_SinceHeader = 0;
+
+  // The schema of the last record
+  protected InstanceCodec.Schema m_LastSchema = null;
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    Object interval = configs.get(HEADER_INTERVAL_CONFIG);
+    if (interval != null)
+      m_HeaderInterval = Long.parseLong(interval.toString());
+  }
+
+  @Override
+  public byte[] serialize(String topic, Instance data) {
+    // Null serialises to null
+    if (data == null)
+      return null;
+
+    InstanceCodec.Schema schema = m_Codec.encodingSchema(data.dataset());
+    boolean withHeader = schema != m_LastSchema
+      || (m_HeaderInterval > 0 && m_SinceHeader >= m_HeaderInterval);
+    m_LastSchema = schema;
+    m_SinceHeader = withHeader ? 1 : m_SinceHeader + 1;
+
+    return m_Codec.encode(data, withHeader);
+  }
+}
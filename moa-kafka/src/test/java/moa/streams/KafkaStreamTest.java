@@ -0,0 +1,243 @@
+package moa.streams;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.streams.generators.RandomTreeGenerator;
+import moa.tasks.NullMonitor;
+import moa.tasks.WriteToTopicTask;
+import moa.util.InstanceCodec;
+import moa.util.InstanceDeserializer;
+
+/**
+ * Test that instances written to a topic by WriteToTopicTask are read back
+ * by KafkaStream, polling on demand or prefetching, using mock clients as a
+ * stand-in broker.
+ */
+public class KafkaStreamTest {
+
+	private static final String TOPIC = "instances";
+
+	private static final String HEADER_TOPIC = "instances-headers";
+
+	private static final int NUM_PARTITIONS = 3;
+
+	@Test
+	public void testWriteAndConsume() {
+		List<ProducerRecord<Long, byte[]>> written = write(1000);
+		assertEquals(1001, written.size());
+		for (ProducerRecord<Long, byte[]> record : written.subList(0, 1000)) {
+			assertTrue(InstanceCodec.isCompact(record.value()));
+			assertEquals((int) (record.key() % NUM_PARTITIONS), (int) record.partition());
+		}
+		assertNull(written.get(1000).value());
+
+		// the partitions are consumed in any order, so instances are compared
+		// as sorted lists
+		List<String> expected = new ArrayList<>();
+		RandomTreeGenerator generator = new RandomTreeGenerator();
+		generator.prepareForUse();
+		for (int n = 0; n < 1000; n++) {
+			expected.add(Arrays.toString(generator.nextInstance().getData().toDoubleArray()));
+		}
+		Collections.sort(expected);
+
+		for (int prefetchBatches : new int[]{0, 2}) {
+			KafkaStream stream = new MockKafkaStream(written, 50);
+			stream.prefetchBatchesOption.setValue(prefetchBatches);
+			stream.prepareForUse();
+			assertEquals(generator.getHeader().numAttributes(), stream.getHeader().numAttributes());
+			List<String> consumed = new ArrayList<>();
+			while (stream.hasMoreInstances()) {
+				consumed.add(Arrays.toString(stream.nextInstance().getData().toDoubleArray()));
+			}
+			Collections.sort(consumed);
+			assertEquals(expected, consumed);
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testRestartWhilePrefetching() {
+		List<ProducerRecord<Long, byte[]>> written = write(500);
+		KafkaStream stream = new MockKafkaStream(written, 10);
+		stream.prefetchBatchesOption.setValue(1);
+		stream.prepareForUse();
+		Instance first = stream.nextInstance().getData();
+		for (int n = 0; n < 100; n++) {
+			stream.nextInstance();
+		}
+		stream.restart();
+		assertArrayEquals(first.toDoubleArray(), stream.nextInstance().getData().toDoubleArray(), 0);
+		int remaining = 0;
+		while (stream.hasMoreInstances()) {
+			stream.nextInstance();
+			remaining++;
+		}
+		assertEquals(499, remaining);
+	}
+
+	@Test
+	public void testConsumeFromOffset() {
+		List<ProducerRecord<Long, byte[]>> written = write(300, HEADER_TOPIC);
+		List<ProducerRecord<Long, byte[]>> headers = new ArrayList<>();
+		List<ProducerRecord<Long, byte[]>> instances = new ArrayList<>();
+		for (ProducerRecord<Long, byte[]> record : written) {
+			(record.topic().equals(HEADER_TOPIC) ? headers : instances).add(record);
+		}
+		assertEquals(1, headers.size());
+		assertEquals(301, instances.size());
+		assertEquals((long) headers.get(0).key(), InstanceCodec.schemaId(instances.get(0).value()));
+
+		RandomTreeGenerator generator = new RandomTreeGenerator();
+		generator.prepareForUse();
+		final List<ProducerRecord<Long, byte[]>> headerRecords = headers;
+		InstanceDeserializer deserializer = new InstanceDeserializer() {
+			@Override
+			protected Consumer<Long, byte[]> createHeaderConsumer() {
+				final MockConsumer<Long, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+				TopicPartition partition = new TopicPartition(HEADER_TOPIC, 0);
+				Node node = new Node(0, "localhost", 9092);
+				consumer.updatePartitions(HEADER_TOPIC, Collections.singletonList(
+					new PartitionInfo(HEADER_TOPIC, 0, node, new Node[]{node}, new Node[]{node})));
+				consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+				consumer.updateEndOffsets(Collections.singletonMap(partition, (long) headerRecords.size()));
+				consumer.schedulePollTask(() -> {
+					for (int offset = 0; offset < headerRecords.size(); offset++) {
+						ProducerRecord<Long, byte[]> record = headerRecords.get(offset);
+						consumer.addRecord(new ConsumerRecord<>(HEADER_TOPIC, 0, offset, record.key(), record.value()));
+					}
+				});
+				return consumer;
+			}
+		};
+		deserializer.configure(Collections.singletonMap(InstanceDeserializer.HEADER_TOPIC_CONFIG, HEADER_TOPIC), false);
+
+		// a consumer resuming from a committed offset skips the records
+		// holding the header
+		for (int n = 0; n < 300; n++) {
+			Instance expected = generator.nextInstance().getData();
+			if (n >= NUM_PARTITIONS) {
+				Instance instance = deserializer.deserialize(TOPIC, instances.get(n).value());
+				assertArrayEquals(expected.toDoubleArray(), instance.toDoubleArray(), 0);
+				assertEquals(expected.numAttributes(), instance.dataset().numAttributes());
+			}
+		}
+
+		// without the header topic, they cannot be decoded
+		try {
+			new InstanceDeserializer().deserialize(TOPIC, instances.get(NUM_PARTITIONS).value());
+			fail("Decoded an instance whose header was never received");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Writes instances of a random tree generator to a mock producer.
+	 */
+	private static List<ProducerRecord<Long, byte[]>> write(int numInstances) {
+		return write(numInstances, "");
+	}
+
+	/**
+	 * Writes instances of a random tree generator to a mock producer, and
+	 * their header to the given topic if any.
+	 */
+	private static List<ProducerRecord<Long, byte[]>> write(int numInstances, String headerTopic) {
+		final MockProducer<Long, byte[]> producer = new MockProducer<>(cluster(), true, null,
+			new LongSerializer(), new ByteArraySerializer());
+		WriteToTopicTask task = new WriteToTopicTask() {
+			@Override
+			protected Producer<Long, byte[]> createProducer(String host, String port) {
+				return producer;
+			}
+		};
+		task.topicOption.setValue(TOPIC);
+		task.maxInstancesOption.setValue(numInstances);
+		task.headerTopicOption.setValue(headerTopic);
+		task.prepareForUse();
+		task.doTask(new NullMonitor(), null);
+		return producer.history();
+	}
+
+	private static Cluster cluster() {
+		Node node = new Node(0, "localhost", 9092);
+		List<PartitionInfo> partitions = new ArrayList<>();
+		for (int p = 0; p < NUM_PARTITIONS; p++) {
+			partitions.add(new PartitionInfo(TOPIC, p, node, new Node[]{node}, new Node[]{node}));
+		}
+		return new Cluster("cluster", Collections.singletonList(node), partitions,
+			Collections.<String>emptySet(), Collections.<String>emptySet());
+	}
+
+	/**
+	 * Stream consuming the records written, a few at a time.
+	 */
+	private static class MockKafkaStream extends KafkaStream {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<ProducerRecord<Long, byte[]>> written;
+
+		private final int recordsPerPoll;
+
+		MockKafkaStream(List<ProducerRecord<Long, byte[]>> written, int recordsPerPoll) {
+			this.written = written;
+			this.recordsPerPoll = recordsPerPoll;
+		}
+
+		@Override
+		protected Consumer<Long, Instance> createConsumer() {
+			final MockConsumer<Long, Instance> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+			List<TopicPartition> partitions = new ArrayList<>();
+			Map<TopicPartition, Long> offsets = new HashMap<>();
+			for (int p = 0; p < NUM_PARTITIONS; p++) {
+				partitions.add(new TopicPartition(TOPIC, p));
+				offsets.put(partitions.get(p), 0L);
+			}
+			consumer.subscribe(Collections.singletonList(TOPIC));
+			consumer.rebalance(partitions);
+			consumer.updateBeginningOffsets(offsets);
+			// records are decoded in the order they were written, and handed
+			// out a few per poll
+			final InstanceDeserializer deserializer = new InstanceDeserializer();
+			final long[] positions = new long[NUM_PARTITIONS];
+			for (int from = 0; from < written.size(); from += recordsPerPoll) {
+				final List<ProducerRecord<Long, byte[]>> batch =
+					written.subList(from, Math.min(written.size(), from + recordsPerPoll));
+				consumer.schedulePollTask(() -> {
+					for (ProducerRecord<Long, byte[]> record : batch) {
+						int p = record.partition();
+						consumer.addRecord(new ConsumerRecord<>(TOPIC, p, positions[p]++, record.key(),
+							deserializer.deserialize(TOPIC, record.value())));
+					}
+				});
+			}
+			return consumer;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package moa.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+import moa.streams.generators.RandomTreeGenerator;
+
+/**
+ * Test that instances come back unchanged from the compact form, and that
+ * the header is only sent when asked for.
+ */
+public class InstanceCodecTest {
+
+	@Test
+	public void testDenseInstances() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		InstanceCodec encoder = new InstanceCodec();
+		InstanceCodec decoder = new InstanceCodec();
+		ObjectSerializer<Instance> javaSerializer = new ObjectSerializer<>();
+		for (int n = 0; n < 100; n++) {
+			Instance instance = stream.nextInstance().getData();
+			if (n == 1) {
+				instance.setMissing(0);
+				instance.setMissing(instance.numAttributes() - 2);
+			}
+			if (n == 2) {
+				instance.setWeight(2.5);
+			}
+			byte[] bytes = encoder.encode(instance, n == 0);
+			assertTrue(InstanceCodec.isCompact(bytes));
+			if (n > 0) {
+				assertTrue(bytes.length * 5 < javaSerializer.serialize("topic", instance).length);
+			}
+			assertSameInstance(instance, decoder.decode(bytes));
+		}
+	}
+
+	@Test
+	public void testSparseInstances() {
+		List<Attribute> attributes = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		Instances dataset = new Instances("sparse", attributes, 0);
+		dataset.setClassIndex(999);
+		InstancesHeader header = new InstancesHeader(dataset);
+		Instance instance = new SparseInstance(0.5, new double[]{1.5, -2, 3}, new int[]{4, 500, 999}, 1000);
+		instance.setDataset(header);
+		InstanceCodec encoder = new InstanceCodec();
+		byte[] bytes = encoder.encode(instance, true);
+		Instance decoded = new InstanceCodec().decode(bytes);
+		assertTrue(decoded instanceof SparseInstance);
+		assertEquals(3, decoded.numValues());
+		assertSameInstance(instance, decoded);
+		assertEquals(1 + 1 + 8 + 8 + 4 + 3 * 12, encoder.encode(instance, false).length);
+	}
+
+	@Test
+	public void testHeaders() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		Instance first = stream.nextInstance().getData();
+		Instance second = stream.nextInstance().getData();
+		InstanceCodec encoder = new InstanceCodec();
+		byte[] withHeader = encoder.encode(first, true);
+		byte[] withoutHeader = encoder.encode(second, false);
+		assertTrue(withHeader.length > withoutHeader.length);
+		try {
+			new InstanceCodec().decode(withoutHeader);
+			fail("Decoded an instance whose header was never received");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		InstanceCodec decoder = new InstanceCodec();
+		decoder.decode(withHeader);
+		assertSameInstance(second, decoder.decode(withoutHeader));
+
+		// the serialiser adds the header to the first record, the deserialiser
+		// also reads Java serialisation
+		InstanceSerializer serializer = new InstanceSerializer();
+		InstanceDeserializer deserializer = new InstanceDeserializer();
+		assertSameInstance(first, deserializer.deserialize("topic", serializer.serialize("topic", first)));
+		assertSameInstance(second, deserializer.deserialize("topic", serializer.serialize("topic", second)));
+		assertEquals(withoutHeader.length, serializer.serialize("topic", second).length);
+		assertSameInstance(second, deserializer.deserialize("topic",
+			new ObjectSerializer<Instance>().serialize("topic", second)));
+		assertNull(deserializer.deserialize("topic", null));
+	}
+
+	@Test
+	public void testHeadersAddedApart() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		Instance instance = stream.nextInstance().getData();
+		InstanceCodec encoder = new InstanceCodec();
+		byte[] bytes = encoder.encode(instance, false);
+		long id = encoder.schemaId(instance.dataset());
+		assertEquals(id, InstanceCodec.schemaId(bytes));
+
+		InstanceCodec decoder = new InstanceCodec();
+		assertFalse(decoder.canDecode(bytes));
+		try {
+			decoder.addHeader(id + 1, encoder.headerBytes(instance.dataset()));
+			fail("Added a header under another schema ID");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		decoder.addHeader(id, encoder.headerBytes(instance.dataset()));
+		assertTrue(decoder.canDecode(bytes));
+		assertSameInstance(instance, decoder.decode(bytes));
+	}
+
+	private static void assertSameInstance(Instance expected, Instance actual) {
+		assertEquals(expected.numAttributes(), actual.numAttributes());
+		assertEquals(expected.weight(), actual.weight(), 0);
+		assertEquals(expected.classIndex(), actual.classIndex());
+		assertArrayEquals(expected.toDoubleArray(), actual.toDoubleArray(), 0);
+		for (int i = 0; i < expected.numAttributes(); i++) {
+			assertEquals(expected.attribute(i).name(), actual.attribute(i).name());
+		}
+		assertEquals(expected instanceof DenseInstance, actual instanceof DenseInstance);
+	}
+}
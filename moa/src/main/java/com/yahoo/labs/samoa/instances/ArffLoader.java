@@ -61,6 +61,13 @@ public class ArffLoader {
 
     protected Range range;
 
+    /**
+     * Instantiates an arff loader that reads the header itself, for subclasses
+     * that do not use a StreamTokenizer.
+     */
+    protected ArffLoader() {
+    }
+
     /**
      * Instantiates a new arff loader.
      *
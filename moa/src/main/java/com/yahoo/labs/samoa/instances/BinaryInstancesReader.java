@@ -0,0 +1,267 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.yahoo.labs.samoa.instances;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The Class BinaryInstancesReader. Replays the instances of a file written by
+ * BinaryInstancesWriter.
+ *
+ * The file is memory-mapped in large windows, so files larger than the heap
+ * (or than 2GB) can be read, and the values of the instances are taken
+ * directly from the columns of the mapped blocks without any parsing.
+ */
+public class BinaryInstancesReader implements Closeable {
+
+    /**
+     * The default size of the mapped windows of the file.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    protected final RandomAccessFile file;
+
+    protected final FileChannel channel;
+
+    protected final long fileLength;
+
+    protected final int windowSize;
+
+    protected final InstancesHeader header;
+
+    protected final boolean[] nominal;
+
+    protected final long numInstances;
+
+    protected final long firstBlockPosition;
+
+    protected MappedByteBuffer window;
+
+    protected long windowPosition;
+
+    protected long nextBlockPosition;
+
+    protected long numInstancesRead;
+
+    // the current block: its rows and the offsets of its columns in the window
+    protected int blockType;
+
+    protected int blockRows;
+
+    protected int blockRow;
+
+    protected int weightsOffset;
+
+    protected int[] columnOffsets;
+
+    protected int rowEndsOffset;
+
+    protected int indicesOffset;
+
+    protected int valuesOffset;
+
+    public BinaryInstancesReader(File sourceFile, int windowSize) throws IOException {
+        this.file = new RandomAccessFile(sourceFile, "r");
+        boolean opened = false;
+        try {
+            this.channel = this.file.getChannel();
+            this.fileLength = this.channel.size();
+            this.windowSize = windowSize;
+            map(0, BinaryInstancesWriter.FILE_HEADER_LENGTH);
+            if (this.window.getInt(0) != BinaryInstancesWriter.MAGIC) {
+                throw new IOException(sourceFile + " is not a binary instances file.");
+            }
+            int version = this.window.getInt(4);
+            if (version != BinaryInstancesWriter.VERSION) {
+                throw new IOException("Unsupported binary instances file version " + version);
+            }
+            this.numInstances = this.window.getLong(8);
+            int headerLength = this.window.getInt(16);
+            map(0, BinaryInstancesWriter.FILE_HEADER_LENGTH + headerLength);
+            byte[] headerBytes = new byte[headerLength];
+            this.window.position(BinaryInstancesWriter.FILE_HEADER_LENGTH);
+            this.window.get(headerBytes);
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(headerBytes));
+            try {
+                this.header = (InstancesHeader) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot read the header of " + sourceFile, e);
+            } finally {
+                in.close();
+            }
+            this.nominal = new boolean[this.header.numAttributes()];
+            for (int i = 0; i < this.nominal.length; i++) {
+                this.nominal[i] = this.header.attribute(i).isNominal();
+            }
+            this.columnOffsets = new int[this.nominal.length];
+            this.firstBlockPosition = BinaryInstancesWriter.FILE_HEADER_LENGTH + headerLength;
+            restart();
+            opened = true;
+        } finally {
+            if (!opened) {
+                this.file.close();
+            }
+        }
+    }
+
+    public BinaryInstancesReader(File sourceFile) throws IOException {
+        this(sourceFile, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @return the header of the instances, which is also the dataset of the
+     * instances read
+     */
+    public InstancesHeader getHeader() {
+        return this.header;
+    }
+
+    public long numInstances() {
+        return this.numInstances;
+    }
+
+    public long numInstancesRead() {
+        return this.numInstancesRead;
+    }
+
+    /**
+     * Goes back to the first instance of the file.
+     */
+    public void restart() {
+        this.nextBlockPosition = this.firstBlockPosition;
+        this.blockRows = 0;
+        this.blockRow = 0;
+        this.numInstancesRead = 0;
+    }
+
+    /**
+     * Reads the next instance.
+     *
+     * @return the instance, or null at the end of the file
+     */
+    public Instance readInstance() throws IOException {
+        if (this.blockRow == this.blockRows) {
+            if (this.numInstancesRead == this.numInstances) {
+                return null;
+            }
+            readBlock();
+        }
+        int row = this.blockRow++;
+        this.numInstancesRead++;
+        ByteBuffer w = this.window;
+        double weight = this.weightsOffset < 0 ? 1.0 : w.getDouble(this.weightsOffset + 8 * row);
+        Instance instance;
+        if (this.blockType == BinaryInstancesWriter.BLOCK_DENSE) {
+            double[] values = new double[this.nominal.length];
+            for (int j = 0; j < values.length; j++) {
+                if (this.nominal[j]) {
+                    int index = w.getInt(this.columnOffsets[j] + 4 * row);
+                    values[j] = index < 0 ? Double.NaN : index;
+                } else {
+                    values[j] = w.getDouble(this.columnOffsets[j] + 8 * row);
+                }
+            }
+            instance = new DenseInstance(weight, values);
+        } else {
+            int start = row == 0 ? 0 : w.getInt(this.rowEndsOffset + 4 * (row - 1));
+            int end = w.getInt(this.rowEndsOffset + 4 * row);
+            int[] indices = new int[end - start];
+            double[] values = new double[end - start];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = w.getInt(this.indicesOffset + 4 * (start + i));
+                values[i] = w.getDouble(this.valuesOffset + 8 * (start + i));
+            }
+            instance = new SparseInstance(weight, values, indices, this.nominal.length);
+        }
+        instance.setDataset(this.header);
+        return instance;
+    }
+
+    protected void readBlock() throws IOException {
+        long position = this.nextBlockPosition;
+        int offset = ensureMapped(position, BinaryInstancesWriter.BLOCK_HEADER_LENGTH);
+        int type = this.window.getInt(offset);
+        int numRows = this.window.getInt(offset + 4);
+        int flags = this.window.getInt(offset + 8);
+        int bodyLength = this.window.getInt(offset + 12);
+        if (numRows <= 0 || bodyLength < 0) {
+            throw new IOException("Corrupted block at position " + position);
+        }
+        offset = ensureMapped(position, BinaryInstancesWriter.BLOCK_HEADER_LENGTH + bodyLength)
+                + BinaryInstancesWriter.BLOCK_HEADER_LENGTH;
+        this.nextBlockPosition = position + BinaryInstancesWriter.BLOCK_HEADER_LENGTH + bodyLength;
+
+        if ((flags & BinaryInstancesWriter.FLAG_WEIGHTS) != 0) {
+            this.weightsOffset = offset;
+            offset += 8 * numRows;
+        } else {
+            this.weightsOffset = -1;
+        }
+        if (type == BinaryInstancesWriter.BLOCK_DENSE) {
+            for (int j = 0; j < this.nominal.length; j++) {
+                this.columnOffsets[j] = offset;
+                offset += (this.nominal[j] ? 4 : 8) * numRows;
+            }
+        } else if (type == BinaryInstancesWriter.BLOCK_SPARSE) {
+            this.rowEndsOffset = offset;
+            int numValues = this.window.getInt(offset + 4 * (numRows - 1));
+            this.indicesOffset = offset + 4 * numRows;
+            this.valuesOffset = this.indicesOffset + 4 * numValues;
+        } else {
+            throw new IOException("Unknown block type " + type + " at position " + position);
+        }
+        this.blockType = type;
+        this.blockRows = numRows;
+        this.blockRow = 0;
+    }
+
+    /**
+     * Makes sure that the given range of the file is in the mapped window.
+     *
+     * @return the offset of the start of the range in the window
+     */
+    protected int ensureMapped(long position, int length) throws IOException {
+        if (position < this.windowPosition
+                || position + length > this.windowPosition + this.window.capacity()) {
+            map(position, length);
+        }
+        return (int) (position - this.windowPosition);
+    }
+
+    protected void map(long position, int length) throws IOException {
+        if (position + length > this.fileLength) {
+            throw new IOException("Unexpected end of file at position " + position);
+        }
+        long size = Math.min(Math.max(this.windowSize, length), this.fileLength - position);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        this.window.order(BinaryInstancesWriter.BYTE_ORDER);
+        this.windowPosition = position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        this.file.close();
+    }
+}
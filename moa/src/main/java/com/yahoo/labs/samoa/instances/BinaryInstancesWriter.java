@@ -0,0 +1,275 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.yahoo.labs.samoa.instances;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class BinaryInstancesWriter. Writes instances to a binary file that
+ * BinaryInstancesReader replays without any parsing.
+ *
+ * The file starts with a fixed header (magic number, version, number of
+ * instances) followed by the serialized InstancesHeader. The instances are
+ * then stored in blocks of consecutive rows, each one laid out by columns:
+ * <ul>
+ * <li>a dense block holds one column per attribute, a column of ints for
+ * nominal attributes (-1 for missing values) and a column of doubles for the
+ * other ones;</li>
+ * <li>a sparse block holds the end offset of every row, followed by a column
+ * with the indices and a column with the values of all rows.</li>
+ * </ul>
+ * A column of weights is added to a block only if one of its instances has a
+ * weight other than 1. Sparse instances go to sparse blocks and are read back
+ * as SparseInstance, the other ones go to dense blocks and are read back as
+ * DenseInstance.
+ */
+public class BinaryInstancesWriter implements Closeable {
+
+    /**
+     * The first bytes of a binary instances file ("MOAB").
+     */
+    public static final int MAGIC = 0x4D4F4142;
+
+    public static final int VERSION = 1;
+
+    /**
+     * All numbers in the file are little endian.
+     */
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Magic, version, number of instances and length of the header.
+     */
+    public static final int FILE_HEADER_LENGTH = 4 + 4 + 8 + 4;
+
+    /**
+     * Type, number of rows, flags and length of the body.
+     */
+    public static final int BLOCK_HEADER_LENGTH = 4 + 4 + 4 + 4;
+
+    public static final int BLOCK_DENSE = 0;
+
+    public static final int BLOCK_SPARSE = 1;
+
+    public static final int FLAG_WEIGHTS = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /**
+     * Blocks are flushed early when their body would be larger than this,
+     * so that they can always be mapped in one piece.
+     */
+    public static final int MAX_BLOCK_BYTES = 1 << 24;
+
+    protected final RandomAccessFile file;
+
+    protected final FileChannel channel;
+
+    protected final InstancesHeader header;
+
+    protected final boolean[] nominal;
+
+    protected final int blockSize;
+
+    protected final List<Instance> block;
+
+    protected boolean blockIsSparse;
+
+    protected long blockBytes;
+
+    protected long numInstances;
+
+    /**
+     * Creates the file and writes the header of the instances to it.
+     *
+     * @param destFile the file to write
+     * @param header the header of the instances that will be written
+     * @param blockSize the maximum number of rows in a block
+     */
+    public BinaryInstancesWriter(File destFile, InstancesHeader header, int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.header = new InstancesHeader(header);
+        this.blockSize = blockSize;
+        this.block = new ArrayList<Instance>(blockSize);
+        this.nominal = new boolean[header.numAttributes()];
+        for (int i = 0; i < this.nominal.length; i++) {
+            this.nominal[i] = header.attribute(i).isNominal();
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(headerBytes);
+        out.writeObject(this.header);
+        out.close();
+
+        this.file = new RandomAccessFile(destFile, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER_LENGTH + headerBytes.size()).order(BYTE_ORDER);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(0); // number of instances, written on close
+        buffer.putInt(headerBytes.size());
+        buffer.put(headerBytes.toByteArray());
+        buffer.flip();
+        writeFully(buffer);
+    }
+
+    public BinaryInstancesWriter(File destFile, InstancesHeader header) throws IOException {
+        this(destFile, header, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Appends an instance to the file.
+     *
+     * @param instance the instance, which must have the attributes of the header
+     */
+    public void write(Instance instance) throws IOException {
+        if (instance.numAttributes() != this.nominal.length) {
+            throw new IllegalArgumentException("Instance has " + instance.numAttributes()
+                    + " attributes instead of " + this.nominal.length);
+        }
+        boolean sparse = isSparse(instance);
+        long rowBytes = sparse ? 8 + 12L * instance.numValues() : 8L * instance.numAttributes();
+        if (!this.block.isEmpty() && (sparse != this.blockIsSparse
+                || this.block.size() >= this.blockSize
+                || this.blockBytes + rowBytes > MAX_BLOCK_BYTES)) {
+            flushBlock();
+        }
+        this.blockIsSparse = sparse;
+        this.blockBytes += rowBytes;
+        this.block.add(instance);
+        this.numInstances++;
+    }
+
+    /**
+     * @return the number of instances written so far
+     */
+    public long numInstances() {
+        return this.numInstances;
+    }
+
+    /**
+     * Writes the pending rows and the number of instances, and closes the
+     * file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            ByteBuffer count = ByteBuffer.allocate(8).order(BYTE_ORDER);
+            count.putLong(this.numInstances);
+            count.flip();
+            this.channel.position(8);
+            writeFully(count);
+        } finally {
+            this.file.close();
+        }
+    }
+
+    protected static boolean isSparse(Instance instance) {
+        return instance instanceof SparseInstance || (instance instanceof InstanceImpl
+                && ((InstanceImpl) instance).instanceData instanceof SparseInstanceData);
+    }
+
+    protected void flushBlock() throws IOException {
+        int numRows = this.block.size();
+        if (numRows == 0) {
+            return;
+        }
+        int flags = 0;
+        for (Instance instance : this.block) {
+            if (instance.weight() != 1.0) {
+                flags |= FLAG_WEIGHTS;
+                break;
+            }
+        }
+        int bodyLength = (flags & FLAG_WEIGHTS) != 0 ? 8 * numRows : 0;
+        if (this.blockIsSparse) {
+            int numValues = 0;
+            for (Instance instance : this.block) {
+                numValues += instance.numValues();
+            }
+            bodyLength += 4 * numRows + 12 * numValues;
+        } else {
+            for (boolean isNominal : this.nominal) {
+                bodyLength += (isNominal ? 4 : 8) * numRows;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_LENGTH + bodyLength).order(BYTE_ORDER);
+        buffer.putInt(this.blockIsSparse ? BLOCK_SPARSE : BLOCK_DENSE);
+        buffer.putInt(numRows);
+        buffer.putInt(flags);
+        buffer.putInt(bodyLength);
+        if ((flags & FLAG_WEIGHTS) != 0) {
+            for (Instance instance : this.block) {
+                buffer.putDouble(instance.weight());
+            }
+        }
+        if (this.blockIsSparse) {
+            int end = 0;
+            for (Instance instance : this.block) {
+                end += instance.numValues();
+                buffer.putInt(end);
+            }
+            for (Instance instance : this.block) {
+                for (int i = 0; i < instance.numValues(); i++) {
+                    buffer.putInt(instance.index(i));
+                }
+            }
+            for (Instance instance : this.block) {
+                for (int i = 0; i < instance.numValues(); i++) {
+                    buffer.putDouble(instance.valueSparse(i));
+                }
+            }
+        } else {
+            for (int j = 0; j < this.nominal.length; j++) {
+                if (this.nominal[j]) {
+                    for (Instance instance : this.block) {
+                        double value = instance.value(j);
+                        buffer.putInt(Double.isNaN(value) ? -1 : (int) value);
+                    }
+                } else {
+                    for (Instance instance : this.block) {
+                        buffer.putDouble(instance.value(j));
+                    }
+                }
+            }
+        }
+        buffer.flip();
+        writeFully(buffer);
+        this.block.clear();
+        this.blockBytes = 0;
+    }
+
+    protected void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.yahoo.labs.samoa.instances;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Class FastArffLoader. Loads an Arff file with sparse or dense format,
+ * like ArffLoader, but parses the bytes of the file directly instead of going
+ * through a StreamTokenizer.
+ *
+ * The file is read in large blocks, and the tokens of the data rows are
+ * parsed in place: numbers are converted without creating strings, and
+ * nominal values are looked up from their bytes. Hence, apart from the
+ * instances themselves, reading a row does not allocate any objects.
+ *
+ * The instances read are the same as the ones of ArffLoader, the only
+ * difference being that a missing value ("?") is also accepted in sparse
+ * rows.
+ */
+public class FastArffLoader extends ArffLoader {
+
+    /**
+     * The default size of the read buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    protected static final int TT_EOF = -1;
+
+    protected static final int TT_EOL = '\n';
+
+    protected static final int TT_WORD = -3;
+
+    /**
+     * The powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest number of significant digits that fits in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * The largest mantissa that is exactly representable as a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    protected InputStream inputStream;
+
+    protected byte[] buffer;
+
+    protected int position;
+
+    protected int limit;
+
+    /**
+     * The bytes of the last word read, without the quotes.
+     */
+    protected byte[] token = new byte[64];
+
+    protected int tokenLength;
+
+    /**
+     * The lookup tables of the nominal attributes, built on demand.
+     */
+    protected NominalIndex[] nominalIndexes;
+
+    /**
+     * The indices and values of the sparse row being read.
+     */
+    protected int[] sparseIndices = new int[16];
+
+    protected double[] sparseValues = new double[16];
+
+    /**
+     * Instantiates a new fast arff loader.
+     *
+     * @param inputStream the input stream
+     * @param size the size
+     * @param classAttribute the class attribute
+     */
+    public FastArffLoader(InputStream inputStream, int size, int classAttribute) {
+        // size is not used
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+        if (classAttribute < 0) {
+            this.instanceInformation.setClassIndex(this.instanceInformation.numAttributes() - 1);
+        } else if (classAttribute > 0) {
+            this.instanceInformation.setClassIndex(classAttribute - 1);
+        }
+    }
+
+    /**
+     * Instantiates a new fast arff loader.
+     *
+     * @param inputStream the input stream
+     * @param bufferSize the size of the read buffer
+     */
+    public FastArffLoader(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[Math.max(bufferSize, 1024)];
+        this.instanceInformation = readHeader();
+        this.nominalIndexes = new NominalIndex[this.instanceInformation.numAttributes()];
+    }
+
+    /**
+     * Reads instance. It detects if it is dense or sparse.
+     *
+     * @return the instance, or null at the end of the file
+     */
+    @Override
+    public Instance readInstance() {
+        try {
+            int ttype = nextToken();
+            while (ttype == TT_EOL || ttype == '}') {
+                ttype = nextToken();
+            }
+            if (ttype == TT_EOF) {
+                return null;
+            }
+            if (ttype == '{') {
+                return readInstanceSparse();
+            }
+            return readInstanceDense(ttype);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read instance from arff file.", ex);
+        }
+    }
+
+    /**
+     * Reads the rest of a dense row.
+     *
+     * @param ttype the type of the first token of the row
+     * @return the instance
+     */
+    protected Instance readInstanceDense(int ttype) throws IOException {
+        double[] values = new double[this.instanceInformation.numAttributes()];
+        int numAttribute = 0;
+        while (ttype != TT_EOL && ttype != TT_EOF) {
+            if (ttype == TT_WORD) {
+                values[numAttribute] = parseValue(numAttribute);
+                numAttribute++;
+            }
+            ttype = nextToken();
+        }
+        return new DenseInstance(1.0, values);
+    }
+
+    /**
+     * Reads the rest of a sparse row, after the '{' char.
+     *
+     * @return the instance
+     */
+    protected Instance readInstanceSparse() throws IOException {
+        int numValues = 0;
+        int ttype = nextToken();
+        while (ttype != '}' && ttype != TT_EOL && ttype != TT_EOF) {
+            if (ttype == TT_WORD) {
+                int numAttribute = (int) parseNumber();
+                ttype = nextToken();
+                if (ttype != TT_WORD) {
+                    continue;
+                }
+                if (numValues == this.sparseIndices.length) {
+                    this.sparseIndices = Arrays.copyOf(this.sparseIndices, 2 * numValues);
+                    this.sparseValues = Arrays.copyOf(this.sparseValues, 2 * numValues);
+                }
+                this.sparseIndices[numValues] = numAttribute;
+                this.sparseValues[numValues] = parseValue(numAttribute);
+                numValues++;
+            }
+            ttype = nextToken();
+        }
+        // The rest of the row is not used
+        while (ttype != TT_EOL && ttype != TT_EOF) {
+            ttype = nextToken();
+        }
+        Instance instance = newSparseInstance(1.0);
+        instance.addSparseValues(Arrays.copyOf(this.sparseIndices, numValues),
+                Arrays.copyOf(this.sparseValues, numValues),
+                this.instanceInformation.numAttributes());
+        return instance;
+    }
+
+    /**
+     * Converts the last word read into a value of the attribute.
+     *
+     * @param numAttribute the index of the attribute
+     * @return the value
+     */
+    protected double parseValue(int numAttribute) {
+        if (this.tokenLength == 1 && this.token[0] == '?') {
+            return Double.NaN;
+        }
+        Attribute attribute = this.instanceInformation.attribute(numAttribute);
+        if (attribute.isNumeric()) {
+            return parseNumber();
+        }
+        NominalIndex index = this.nominalIndexes[numAttribute];
+        if (index == null) {
+            index = new NominalIndex(attribute);
+            this.nominalIndexes[numAttribute] = index;
+        }
+        return index.indexOf(this.token, this.tokenLength);
+    }
+
+    /**
+     * Converts the last word read into a number. When both the digits (as an
+     * integer) and the power of ten are exactly representable as doubles, a
+     * single multiplication or division gives the correctly rounded value,
+     * as Double.parseDouble does. This covers nearly all the numbers written
+     * by Double.toString, other ones go through Double.parseDouble.
+     *
+     * @return the number
+     */
+    protected double parseNumber() {
+        byte[] b = this.token;
+        int length = this.tokenLength;
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        while (i < length && b[i] >= '0' && b[i] <= '9') {
+            hasDigits = true;
+            if (mantissa != 0 || b[i] != '0') {
+                if (++significantDigits > MAX_LONG_DIGITS) {
+                    return parseNumberSlow();
+                }
+                mantissa = 10 * mantissa + (b[i] - '0');
+            }
+            i++;
+        }
+        if (i < length && b[i] == '.') {
+            i++;
+            while (i < length && b[i] >= '0' && b[i] <= '9') {
+                hasDigits = true;
+                if (mantissa != 0 || b[i] != '0') {
+                    if (++significantDigits > MAX_LONG_DIGITS) {
+                        return parseNumberSlow();
+                    }
+                    mantissa = 10 * mantissa + (b[i] - '0');
+                }
+                exponent--;
+                i++;
+            }
+        }
+        if (!hasDigits) {
+            return parseNumberSlow();
+        }
+        if (i < length && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (b[i] == '-' || b[i] == '+')) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            if (i == length) {
+                return parseNumberSlow();
+            }
+            int e = 0;
+            while (i < length && b[i] >= '0' && b[i] <= '9') {
+                if (e > 1000) {
+                    return parseNumberSlow();
+                }
+                e = 10 * e + (b[i] - '0');
+                i++;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != length) {
+            // e.g. NaN, Infinity, hexadecimal or a type suffix
+            return parseNumberSlow();
+        }
+        double value;
+        if (mantissa > MAX_EXACT_MANTISSA) {
+            return parseNumberSlow();
+        } else if (mantissa == 0) {
+            value = 0.0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseNumberSlow();
+        }
+        return negative ? -value : value;
+    }
+
+    protected double parseNumberSlow() {
+        return Double.parseDouble(tokenString());
+    }
+
+    protected String tokenString() {
+        return new String(this.token, 0, this.tokenLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next token, with the same syntax as the StreamTokenizer of
+     * ArffLoader: values are separated by white space or commas, can be
+     * quoted with single or double quotes, and '%' starts a comment.
+     *
+     * @return TT_WORD, TT_EOL, TT_EOF, '{' or '}'
+     */
+    protected int nextToken() throws IOException {
+        int c = read();
+        while (true) {
+            if (c == '%') {
+                do {
+                    c = read();
+                } while (c != '\n' && c != '\r' && c != -1);
+            } else if ((c >= 0 && c <= ' ' && c != '\n' && c != '\r') || c == ',') {
+                c = read();
+            } else {
+                break;
+            }
+        }
+        if (c == -1) {
+            return TT_EOF;
+        }
+        if (c == '\n') {
+            return TT_EOL;
+        }
+        if (c == '\r') {
+            if (peek() == '\n') {
+                this.position++;
+            }
+            return TT_EOL;
+        }
+        if (c == '{' || c == '}') {
+            return c;
+        }
+        this.tokenLength = 0;
+        if (c == '\'' || c == '"') {
+            readQuoted(c);
+            return TT_WORD;
+        }
+        appendToken(c);
+        while (true) {
+            c = peek();
+            if (c <= ' ' || c == ',' || c == '{' || c == '}' || c == '%' || c == '\'' || c == '"') {
+                // also stops at the end of the file, where c is -1
+                return TT_WORD;
+            }
+            this.position++;
+            appendToken(c);
+        }
+    }
+
+    /**
+     * Reads a quoted word, up to the closing quote or the end of the line.
+     */
+    private void readQuoted(int quote) throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == -1 || c == '\n' || c == '\r') {
+                return;
+            }
+            this.position++;
+            if (c == quote) {
+                return;
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case -1:
+                        return;
+                    default:
+                        break;
+                }
+            }
+            appendToken(c);
+        }
+    }
+
+    private void appendToken(int c) {
+        if (this.tokenLength == this.token.length) {
+            this.token = Arrays.copyOf(this.token, 2 * this.tokenLength);
+        }
+        this.token[this.tokenLength++] = (byte) c;
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = this.inputStream.read(this.buffer, 0, this.buffer.length);
+        while (n == 0) {
+            n = this.inputStream.read(this.buffer, 0, this.buffer.length);
+        }
+        this.position = 0;
+        this.limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Reads the header, up to and including the @data line.
+     *
+     * @return the instance information
+     */
+    private InstanceInformation readHeader() {
+        String relation = "file stream";
+        auxAttributes = new ArrayList<Attribute>();
+        try {
+            int ttype = nextToken();
+            while (ttype != TT_EOF) {
+                if (ttype == TT_WORD && this.tokenLength > 0 && this.token[0] == '@') {
+                    String keyword = tokenString().toUpperCase();
+                    if (keyword.startsWith("@RELATION")) {
+                        if (nextToken() == TT_WORD) {
+                            relation = tokenString();
+                        }
+                    } else if (keyword.startsWith("@ATTRIBUTE")) {
+                        nextToken();
+                        String name = tokenString();
+                        ttype = nextToken();
+                        if (ttype == '{') {
+                            List<String> attributeLabels = new ArrayList<String>();
+                            ttype = nextToken();
+                            while (ttype != '}' && ttype != TT_EOF) {
+                                if (ttype == TT_WORD) {
+                                    attributeLabels.add(tokenString());
+                                }
+                                ttype = nextToken();
+                            }
+                            auxAttributes.add(new Attribute(name, attributeLabels));
+                        } else {
+                            auxAttributes.add(new Attribute(name));
+                        }
+                    } else if (keyword.startsWith("@DATA")) {
+                        break;
+                    }
+                }
+                ttype = nextToken();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read arff header.", ex);
+        }
+        return new InstanceInformation(relation, auxAttributes);
+    }
+
+    /**
+     * Maps the bytes of the values of a nominal attribute to their indices,
+     * with open addressing. Unknown values are passed on to
+     * Attribute.indexOfValue, which adds them to the attribute.
+     */
+    protected static class NominalIndex {
+
+        protected final Attribute attribute;
+
+        protected byte[][] keys = new byte[16][];
+
+        protected int[] values = new int[16];
+
+        protected int size;
+
+        public NominalIndex(Attribute attribute) {
+            this.attribute = attribute;
+            for (int i = 0; i < attribute.numValues(); i++) {
+                String value = attribute.value(i);
+                // duplicated labels are mapped to the index returned by indexOfValue
+                byte[] key = value.getBytes(StandardCharsets.UTF_8);
+                if (find(key, key.length) < 0) {
+                    put(key, attribute.indexOfValue(value));
+                }
+            }
+        }
+
+        public int indexOf(byte[] bytes, int length) {
+            int index = find(bytes, length);
+            if (index >= 0) {
+                return index;
+            }
+            String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            index = this.attribute.indexOfValue(value);
+            put(Arrays.copyOf(bytes, length), index);
+            return index;
+        }
+
+        private int find(byte[] bytes, int length) {
+            int mask = this.keys.length - 1;
+            for (int slot = hash(bytes, length) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+                if (equals(this.keys[slot], bytes, length)) {
+                    return this.values[slot];
+                }
+            }
+            return -1;
+        }
+
+        private void put(byte[] key, int value) {
+            if (2 * (this.size + 1) > this.keys.length) {
+                byte[][] oldKeys = this.keys;
+                int[] oldValues = this.values;
+                this.keys = new byte[2 * oldKeys.length][];
+                this.values = new int[2 * oldKeys.length];
+                this.size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int mask = this.keys.length - 1;
+            int slot = hash(key, key.length) & mask;
+            while (this.keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = key;
+            this.values[slot] = value;
+            this.size++;
+        }
+
+        private static int hash(byte[] bytes, int length) {
+            int h = 0x811C9DC5;
+            for (int i = 0; i < length; i++) {
+                h = (h ^ bytes[i]) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equals(byte[] key, byte[] bytes, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.yahoo.labs.samoa.instances;
 
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
@@ -106,6 +107,21 @@ public class Instances implements Serializable {
         this.computeAttributesIndices();
     }
 
+    /**
+     * Instantiates a new instances, parsing the arff data with a
+     * FastArffLoader.
+     *
+     * @param inputStream the input stream
+     * @param size the size
+     * @param classAttribute the class attribute
+     */
+    public Instances(InputStream inputStream, int size, int classAttribute) {
+        arff = new FastArffLoader(inputStream, 0, classAttribute);
+        this.instanceInformation = arff.getStructure();
+        this.instances = new ArrayList<Instance>();
+        this.computeAttributesIndices();
+    }
+
     /**
      * Instantiates a new instances.
      *
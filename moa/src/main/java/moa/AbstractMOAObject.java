@@ -19,7 +19,7 @@
  */
 package moa;
 
-import moa.core.SerializeUtils;
+import moa.core.ObjectCopier;
 import moa.core.SizeOf;
 
 /**
@@ -61,19 +61,22 @@ public abstract class AbstractMOAObject implements MOAObject {
      */
     public static MOAObject copy(MOAObject obj) {
         try {
-            return (MOAObject) SerializeUtils.copyObject(obj);
+            return (MOAObject) ObjectCopier.copyObject(obj);
         } catch (Exception e) {
             throw new RuntimeException("Object copy failed.", e);
         }
     }
 
     /**
-     * Gets the memory size of an object.
+     * Gets the memory size of an object, measured by the SizeOf agent or,
+     * without the agent, by following the fields of the object.
      *
      * @param obj object to measure the memory size
      * @return the memory size of this object
      */
     public static int measureByteSize(MOAObject obj) {
-        return (int) SizeOf.fullSizeOf(obj);
+        // the agent measures 0 or -1 when it is not loaded
+        long size = SizeOf.fullSizeOf(obj);
+        return (int) (size > 0 ? size : SizeOf.reflectiveSizeOf(obj));
     }
 }
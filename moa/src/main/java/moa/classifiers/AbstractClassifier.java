@@ -20,6 +20,7 @@
 
 package moa.classifiers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -179,6 +180,31 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
         }
     }
 
+    /**
+     * Selects the instances of a batch that are used for training, as
+     * trainOnInstance does, and adds their weight to the training weight seen
+     * by the model. For the learners overriding
+     * {@link Classifier#trainOnInstances(List)} to process a batch at once.
+     *
+     * @param instances the batch of instances
+     * @return the instances to train on, in order
+     */
+    protected List<Instance> selectTrainingInstances(List<Instance> instances) {
+        List<Instance> trainingInstances = new ArrayList<Instance>(instances.size());
+        for (Instance inst : instances) {
+            boolean isTraining = (inst.weight() > 0.0);
+            if (this instanceof SemiSupervisedLearner == false &&
+                    inst.classIsMissing() == true){
+                isTraining = false;
+            }
+            if (isTraining) {
+                this.trainingWeightSeenByModel += inst.weight();
+                trainingInstances.add(inst);
+            }
+        }
+        return trainingInstances;
+    }
+
     @Override
     public Measurement[] getModelMeasurements() {
         List<Measurement> measurementList = new LinkedList<Measurement>();
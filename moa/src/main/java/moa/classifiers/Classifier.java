@@ -19,6 +19,8 @@
  */
 package moa.classifiers;
 
+import java.util.List;
+
 import moa.core.Example;
 import moa.learners.Learner;
 
@@ -67,6 +69,21 @@ public interface Classifier extends Learner<Example<Instance>> {
      */
     public void trainOnInstance(Instance inst);
 
+    /**
+     * Trains this learner incrementally using the given instances, in order.
+     * The outcome is the same as training on each instance in turn, but
+     * learners may process the whole batch at once, e.g. ensembles training
+     * their members concurrently. By default, trains on each instance in
+     * turn.
+     *
+     * @param instances the instances to be used for training
+     */
+    public default void trainOnInstances(List<Instance> instances) {
+        for (Instance inst : instances) {
+            trainOnInstance(inst);
+        }
+    }
+
     /**
      * Predicts the class memberships for a given instance. If an instance is
      * unclassified, the returned array elements must be all zero.
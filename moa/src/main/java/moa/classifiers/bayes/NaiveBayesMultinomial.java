@@ -100,9 +100,16 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
 
     protected boolean reset = false;
 
+    /**
+     * Logarithms of the word totals used in predictions, filled on the first
+     * prediction and then kept up to date while training.
+     */
+    protected transient double[][] m_logWordTotalForClass;
+
     @Override
     public void resetLearningImpl() {
         this.reset = true;
+        this.m_logWordTotalForClass = null;
     }
 
     /**
@@ -149,10 +156,38 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
                     laplaceCorrection = this.laplaceCorrectionOption.getValue();
                 }
                 m_wordTotalForClass[classValue].addToValue(index, w * inst.valueSparse(i) + laplaceCorrection);
+                if (m_logWordTotalForClass != null) {
+                    updateLogWordTotal(classValue, index);
+                }
             }
         }
     }
 
+    protected double[][] getLogWordTotals() {
+        if (m_logWordTotalForClass == null) {
+            m_logWordTotalForClass = new double[m_numClasses][];
+            for (int c = 0; c < m_numClasses; c++) {
+                m_logWordTotalForClass[c] = new double[0];
+                for (int index = m_wordTotalForClass[c].numValues() - 1; index >= 0; index--) {
+                    updateLogWordTotal(c, index);
+                }
+            }
+        }
+        return m_logWordTotalForClass;
+    }
+
+    protected void updateLogWordTotal(int classValue, int index) {
+        double[] logs = m_logWordTotalForClass[classValue];
+        if (index >= logs.length) {
+            int oldLength = logs.length;
+            logs = Arrays.copyOf(logs, Math.max(index + 1, m_wordTotalForClass[classValue].numValues()));
+            Arrays.fill(logs, oldLength, logs.length, Math.log(this.laplaceCorrectionOption.getValue()));
+            m_logWordTotalForClass[classValue] = logs;
+        }
+        double value = m_wordTotalForClass[classValue].getValue(index);
+        logs[index] = Math.log(value == 0 ? this.laplaceCorrectionOption.getValue() : value);
+    }
+
     /**
      * Calculates the class membership probabilities for the given test
      * instance.
@@ -172,6 +207,8 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
             probOfClassGivenDoc[i] = Math.log(m_probOfClass[i]) - totalSize * Math.log(m_classTotals[i]);
         }
 
+        double[][] logWordTotals = getLogWordTotals();
+        double logLaplace = Math.log(this.laplaceCorrectionOption.getValue());
         for (int i = 0; i < instance.numValues(); i++) {
 
             int index = instance.index(i);
@@ -181,8 +218,8 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
 
             double wordCount = instance.valueSparse(i);
             for (int c = 0; c < m_numClasses; c++) {
-                double value = m_wordTotalForClass[c].getValue(index);
-                probOfClassGivenDoc[c] += wordCount * Math.log(value == 0 ? this.laplaceCorrectionOption.getValue() : value );
+                double[] logs = logWordTotals[c];
+                probOfClassGivenDoc[c] += wordCount * (index < logs.length ? logs[index] : logLaplace);
             }
         }
 
@@ -0,0 +1,258 @@
+/*
+ *    NaiveBayesScorer.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.bayes;
+
+import java.util.List;
+
+import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.GaussianNumericAttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.NominalAttributeClassObserver;
+import moa.core.AutoExpandVector;
+import moa.core.DoubleVector;
+import moa.core.GaussianEstimator;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Naive Bayes model compiled into primitive tables. It gives exactly the
+ * votes of {@link NaiveBayes#doNaiveBayesPrediction}, but the total counts
+ * behind the probabilities of the values of nominal attributes, and the mean
+ * and the normalising terms of the Gaussian estimators of numeric attributes,
+ * are kept per class instead of being computed again for every instance.
+ * Observers of other types are still queried directly.
+ *
+ * <p>The scorer reads the value counts of the nominal observers it was built
+ * from. Training on an instance only changes the terms of its class, which
+ * {@link #update} computes again, so keeping a scorer up to date costs a
+ * fraction of a prediction.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class NaiveBayesScorer {
+
+    protected static final byte SKIPPED = 0;
+
+    protected static final byte NOMINAL = 1;
+
+    protected static final byte GAUSSIAN = 2;
+
+    protected static final byte OBSERVER = 3;
+
+    /** States of the Gaussian estimator of a class. */
+    protected static final double NO_DENSITY = 0, POINT_DENSITY = 1, NORMAL_DENSITY = 2;
+
+    protected final int numClasses;
+
+    protected final double[] classPriors;
+
+    protected final byte[] attributeKinds;
+
+    /**
+     * Per attribute, for nominal ones: the denominator of the probabilities of
+     * the values given class c at [c]. For numeric ones: the state, mean,
+     * normalising factor and twice the variance of the estimator of class c at
+     * [4 * c] to [4 * c + 3].
+     */
+    protected final double[][] tables;
+
+    /** Per nominal attribute, the counts of its values for each class. */
+    protected final DoubleVector[][] valueCounts;
+
+    /** The observers the scorer was built from. */
+    protected final AttributeClassObserver[] observers;
+
+    public NaiveBayesScorer(DoubleVector observedClassDistribution,
+            AutoExpandVector<AttributeClassObserver> attributeObservers) {
+        this.numClasses = observedClassDistribution.numValues();
+        this.classPriors = new double[this.numClasses];
+        int numAttributes = attributeObservers.size();
+        this.attributeKinds = new byte[numAttributes];
+        this.tables = new double[numAttributes][];
+        this.valueCounts = new DoubleVector[numAttributes][];
+        this.observers = new AttributeClassObserver[numAttributes];
+        for (int attIndex = 0; attIndex < numAttributes; attIndex++) {
+            AttributeClassObserver obs = attributeObservers.get(attIndex);
+            this.observers[attIndex] = obs;
+            if (obs == null) {
+                this.attributeKinds[attIndex] = SKIPPED;
+            } else if (obs.getClass() == NominalAttributeClassObserver.class) {
+                this.attributeKinds[attIndex] = NOMINAL;
+                this.tables[attIndex] = new double[this.numClasses];
+                this.valueCounts[attIndex] = new DoubleVector[this.numClasses];
+            } else if (obs.getClass() == GaussianNumericAttributeClassObserver.class) {
+                this.attributeKinds[attIndex] = GAUSSIAN;
+                this.tables[attIndex] = new double[4 * this.numClasses];
+            } else {
+                this.attributeKinds[attIndex] = OBSERVER;
+            }
+        }
+        updatePriors(observedClassDistribution);
+        for (int classIndex = 0; classIndex < this.numClasses; classIndex++) {
+            updateClass(classIndex);
+        }
+    }
+
+    /**
+     * Brings the scorer up to date after the model was trained on an
+     * instance, which only changes the statistics of its class.
+     *
+     * @return false if the model has changed in a way that needs a new scorer:
+     * a new class, or a new attribute or observer
+     */
+    public boolean update(DoubleVector observedClassDistribution,
+            AutoExpandVector<AttributeClassObserver> attributeObservers, int classIndex) {
+        if (observedClassDistribution.numValues() != this.numClasses
+                || attributeObservers.size() != this.observers.length) {
+            return false;
+        }
+        for (int attIndex = 0; attIndex < this.observers.length; attIndex++) {
+            if (attributeObservers.get(attIndex) != this.observers[attIndex]) {
+                return false;
+            }
+        }
+        updatePriors(observedClassDistribution);
+        updateClass(classIndex);
+        return true;
+    }
+
+    protected void updatePriors(DoubleVector observedClassDistribution) {
+        double observedClassSum = observedClassDistribution.sumOfValues();
+        for (int classIndex = 0; classIndex < this.numClasses; classIndex++) {
+            this.classPriors[classIndex] = observedClassDistribution.getValue(classIndex)
+                    / observedClassSum;
+        }
+    }
+
+    protected void updateClass(int classIndex) {
+        for (int attIndex = 0; attIndex < this.observers.length; attIndex++) {
+            if (this.attributeKinds[attIndex] == NOMINAL) {
+                DoubleVector valDist = ((NominalAttributeClassObserver) this.observers[attIndex])
+                        .attValDistPerClass.get(classIndex);
+                this.valueCounts[attIndex][classIndex] = valDist;
+                if (valDist != null) {
+                    // same expression as NominalAttributeClassObserver
+                    this.tables[attIndex][classIndex] = valDist.sumOfValues() + valDist.numValues();
+                }
+            } else if (this.attributeKinds[attIndex] == GAUSSIAN) {
+                GaussianEstimator estimator = ((GaussianNumericAttributeClassObserver) this.observers[attIndex])
+                        .getEstimator(classIndex);
+                double[] table = this.tables[attIndex];
+                if (estimator == null || !(estimator.getTotalWeightObserved() > 0.0)) {
+                    table[4 * classIndex] = NO_DENSITY;
+                    continue;
+                }
+                // same expressions as GaussianEstimator.probabilityDensity
+                double stdDev = estimator.getStdDev();
+                table[4 * classIndex + 1] = estimator.getMean();
+                if (stdDev > 0.0) {
+                    table[4 * classIndex] = NORMAL_DENSITY;
+                    table[4 * classIndex + 2] = 1.0 / (GaussianEstimator.NORMAL_CONSTANT * stdDev);
+                    table[4 * classIndex + 3] = 2.0 * stdDev * stdDev;
+                } else {
+                    table[4 * classIndex] = POINT_DENSITY;
+                }
+            }
+        }
+    }
+
+    public int numClasses() {
+        return this.numClasses;
+    }
+
+    public double[] getVotesForInstance(Instance inst) {
+        double[] votes = this.classPriors.clone();
+        int numAttributes = Math.min(inst.numAttributes() - 1, this.attributeKinds.length);
+        int classIndex = inst.classIndex();
+        for (int attIndex = 0; attIndex < numAttributes; attIndex++) {
+            if (this.attributeKinds[attIndex] == SKIPPED) {
+                continue;
+            }
+            int instAttIndex = classIndex > attIndex ? attIndex : attIndex + 1;
+            if (!inst.isMissing(instAttIndex)) {
+                multiplyProbabilities(attIndex, inst.value(instAttIndex), votes);
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * Scores a batch of instances, one attribute at a time.
+     *
+     * @return the votes of each instance, in the order of the list
+     */
+    public double[][] getVotesForInstances(List<Instance> instances) {
+        int numInstances = instances.size();
+        double[][] votes = new double[numInstances][];
+        for (int n = 0; n < numInstances; n++) {
+            votes[n] = this.classPriors.clone();
+        }
+        for (int attIndex = 0; attIndex < this.attributeKinds.length; attIndex++) {
+            if (this.attributeKinds[attIndex] == SKIPPED) {
+                continue;
+            }
+            for (int n = 0; n < numInstances; n++) {
+                Instance inst = instances.get(n);
+                if (attIndex >= inst.numAttributes() - 1) {
+                    continue;
+                }
+                int instAttIndex = inst.classIndex() > attIndex ? attIndex : attIndex + 1;
+                if (!inst.isMissing(instAttIndex)) {
+                    multiplyProbabilities(attIndex, inst.value(instAttIndex), votes[n]);
+                }
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * Multiplies the votes of every class by the probability of an attribute
+     * value given the class.
+     */
+    protected void multiplyProbabilities(int attIndex, double value, double[] votes) {
+        double[] table = this.tables[attIndex];
+        switch (this.attributeKinds[attIndex]) {
+            case NOMINAL: {
+                DoubleVector[] counts = this.valueCounts[attIndex];
+                int valueIndex = (int) value;
+                for (int c = 0; c < this.numClasses; c++) {
+                    votes[c] *= counts[c] != null ? (counts[c].getValue(valueIndex) + 1.0) / table[c] : 0.0;
+                }
+                break;
+            }
+            case GAUSSIAN:
+                for (int c = 0; c < this.numClasses; c++) {
+                    double state = table[4 * c];
+                    double mean = table[4 * c + 1];
+                    if (state == NORMAL_DENSITY) {
+                        double diff = value - mean;
+                        votes[c] *= table[4 * c + 2] * Math.exp(-(diff * diff / table[4 * c + 3]));
+                    } else if (state == POINT_DENSITY) {
+                        votes[c] *= value == mean ? 1.0 : 0.0;
+                    } else {
+                        votes[c] *= 0.0;
+                    }
+                }
+                break;
+            default:
+                AttributeClassObserver obs = this.observers[attIndex];
+                for (int c = 0; c < this.numClasses; c++) {
+                    votes[c] *= obs.probabilityOfAttributeValueGivenClass(value, c);
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *    AttributeSplitEvaluator.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core;
+
+import java.io.Serializable;
+import java.util.List;
+
+import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+import moa.core.AutoExpandVector;
+
+/**
+ * Finds the best split suggestion of every attribute of a tree node, spreading
+ * the attributes over the threads of an {@link EnsembleExecutor}. Each
+ * attribute is evaluated by its own observer, and the suggestions are returned
+ * in attribute order, so the result does not depend on the number of threads.
+ *
+ * <p>Split criteria and observers are only read while evaluating, which is
+ * what allows the observers of different attributes to be evaluated at the
+ * same time.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class AttributeSplitEvaluator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final EnsembleExecutor executor;
+
+    /**
+     * @param numberOfJobs the value of a numberOfJobs option: -1 uses all
+     * available processors, 0 and 1 evaluate on the calling thread
+     */
+    public AttributeSplitEvaluator(int numberOfJobs) {
+        this.executor = new EnsembleExecutor(numberOfJobs);
+    }
+
+    public int getNumberOfThreads() {
+        return this.executor.getNumberOfThreads();
+    }
+
+    /**
+     * Adds the best split suggestion of each attribute to a list, in
+     * attribute order. Attributes without an observer or without a suggestion
+     * are skipped.
+     */
+    public void addBestSplitSuggestions(List<AttributeSplitSuggestion> bestSuggestions,
+            final AutoExpandVector<AttributeClassObserver> attributeObservers,
+            final SplitCriterion criterion, final double[] preSplitDist,
+            final boolean binaryOnly) {
+        final AttributeSplitSuggestion[] suggestions = new AttributeSplitSuggestion[attributeObservers.size()];
+        this.executor.forEachMember(suggestions.length, new EnsembleExecutor.MemberTask() {
+            @Override
+            public void run(int attIndex) {
+                AttributeClassObserver obs = attributeObservers.get(attIndex);
+                if (obs != null) {
+                    suggestions[attIndex] = obs.getBestEvaluatedSplitSuggestion(criterion,
+                            preSplitDist, attIndex, binaryOnly);
+                }
+            }
+        });
+        for (AttributeSplitSuggestion suggestion : suggestions) {
+            if (suggestion != null) {
+                bestSuggestions.add(suggestion);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
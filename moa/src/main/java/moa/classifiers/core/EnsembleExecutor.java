@@ -0,0 +1,223 @@
+/*
+ *    EnsembleExecutor.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import moa.core.DoubleVector;
+
+/**
+ * Runs per-member work of an ensemble (voting and training) on a pool of
+ * worker threads. Members are handed out to the workers one at a time, so
+ * slow members do not hold up a whole block of fast ones, and the calling
+ * thread takes part in the work instead of waiting idle.
+ *
+ * <p>Votes are collected without locks: every member writes its vote into its
+ * own slot, and the slots are summed on the calling thread in member order
+ * once all members are done. The combined vote is therefore identical to the
+ * one of a sequential loop, whatever the number of threads.</p>
+ *
+ * <p>The thread pool is created lazily and is not serialized, so learners
+ * holding an executor can still be copied. With a single thread, all work is
+ * done in-place on the calling thread.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class EnsembleExecutor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Seconds an idle worker thread is kept alive. */
+    protected static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Work done for one member of the ensemble.
+     */
+    public interface MemberTask {
+
+        void run(int memberIndex);
+    }
+
+    /**
+     * Computes the contribution of one member to the combined vote.
+     */
+    public interface MemberVote {
+
+        /**
+         * @return the (already normalised or weighted) vote of the member, or
+         * null if the member does not take part in the vote
+         */
+        double[] getVotes(int memberIndex);
+    }
+
+    protected final int numberOfThreads;
+
+    protected transient ExecutorService pool;
+
+    /**
+     * @param numberOfJobs the value of a numberOfJobs option: -1 uses all
+     * available processors, 0 and 1 run everything on the calling thread
+     */
+    public EnsembleExecutor(int numberOfJobs) {
+        this.numberOfThreads = resolveNumberOfThreads(numberOfJobs);
+    }
+
+    /**
+     * Translates the value of a numberOfJobs option into a number of threads.
+     */
+    public static int resolveNumberOfThreads(int numberOfJobs) {
+        if (numberOfJobs == -1) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, numberOfJobs);
+    }
+
+    public int getNumberOfThreads() {
+        return this.numberOfThreads;
+    }
+
+    public boolean isParallel() {
+        return this.numberOfThreads > 1;
+    }
+
+    /**
+     * Runs the task once for every member and returns when all are done.
+     * Exceptions thrown by the task are rethrown on the calling thread.
+     */
+    public void forEachMember(int numMembers, final MemberTask task) {
+        if (!isParallel() || numMembers < 2) {
+            for (int i = 0; i < numMembers; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        final int members = numMembers;
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int i;
+                while ((i = next.getAndIncrement()) < members) {
+                    task.run(i);
+                }
+            }
+        };
+        int numWorkers = Math.min(this.numberOfThreads, numMembers) - 1;
+        List<Future<?>> futures = new ArrayList<Future<?>>(numWorkers);
+        ExecutorService executor = getPool();
+        for (int w = 0; w < numWorkers; w++) {
+            futures.add(executor.submit(worker));
+        }
+        RuntimeException failure = null;
+        try {
+            worker.run();
+        } catch (RuntimeException e) {
+            failure = e;
+            // stop handing out members, the workers finish their current one
+            next.set(members);
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for ensemble members.", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = (e.getCause() instanceof RuntimeException)
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Collects the votes of all members, one slot per member.
+     */
+    public double[][] collectVotes(int numMembers, final MemberVote voter) {
+        final double[][] votes = new double[numMembers][];
+        forEachMember(numMembers, new MemberTask() {
+            @Override
+            public void run(int memberIndex) {
+                votes[memberIndex] = voter.getVotes(memberIndex);
+            }
+        });
+        return votes;
+    }
+
+    /**
+     * Sums the votes of all members in member order, skipping members that
+     * returned null.
+     */
+    public DoubleVector combineVotes(int numMembers, MemberVote voter) {
+        double[][] votes = collectVotes(numMembers, voter);
+        DoubleVector combinedVote = new DoubleVector();
+        for (double[] vote : votes) {
+            if (vote != null) {
+                combinedVote.addValues(vote);
+            }
+        }
+        return combinedVote;
+    }
+
+    /**
+     * Stops the worker threads. A later call to forEachMember starts new ones.
+     */
+    public synchronized void shutdown() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    protected synchronized ExecutorService getPool() {
+        if (this.pool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    this.numberOfThreads - 1, this.numberOfThreads - 1,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ensemble-member-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // idle ensembles (e.g. discarded copies) must not keep threads alive
+            executor.allowCoreThreadTimeOut(true);
+            this.pool = executor;
+        }
+        return this.pool;
+    }
+}
@@ -29,6 +29,7 @@ import moa.core.Utils;
 
 import moa.core.AutoExpandVector;
 import moa.core.DoubleVector;
+import moa.core.SizeOf;
 import moa.options.AbstractOptionHandler;
 
 /**
@@ -160,6 +161,12 @@ public class NominalAttributeClassObserver extends AbstractOptionHandler impleme
                     notEqualDist.getArrayRef()};
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + this.attValDistPerClass.measureByteSize());
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
         // TODO Auto-generated method stub
@@ -0,0 +1,402 @@
+/*
+ *    SortedArrayNumericAttributeClassObserver.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core.attributeclassobservers;
+
+import java.util.Arrays;
+
+import com.github.javacliparser.IntOption;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+import moa.core.AutoExpandVector;
+import moa.core.GaussianEstimator;
+import moa.core.ObjectRepository;
+import moa.core.SizeOf;
+import moa.core.StringUtils;
+import moa.core.Utils;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+/**
+ * Class for observing the class data distribution for a numeric attribute
+ * using a sorted array of the observed values. It considers the same split
+ * points as {@link BinaryTreeNumericAttributeClassObserver}, every distinct
+ * value, but keeps the values and the weights of their classes in two arrays
+ * of primitives: observing a value is a binary search, and all the split
+ * points are evaluated in a single sweep over the values. Sorted or drifting
+ * values cannot unbalance it.
+ *
+ * <p>The number of distinct values kept can be bounded: beyond the bound, two
+ * neighbouring values are merged into the larger one, which loses the split
+ * point between them. The pair merged is the one with the smallest gap times
+ * weight, so the values kept follow the distribution of the data. The class
+ * weights of a value stay in the same slot while it is kept, the slots being
+ * linked in the order of the values, and the cost of merging each value with
+ * the next one is kept in a heap: an update only shifts the values and the
+ * indices of their slots, and finds the pair to merge in logarithmic
+ * time.</p>
+ *
+ * <p>The class distributions are also summarised by Gaussian estimators,
+ * which give the probabilities used by naive Bayes.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class SortedArrayNumericAttributeClassObserver extends AbstractOptionHandler
+        implements NumericAttributeClassObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    public IntOption maxValuesOption = new IntOption("maxValues", 'm',
+            "Maximum number of distinct values kept, neighbouring ones being merged beyond it (0 = no limit).",
+            1000, 0, Integer.MAX_VALUE);
+
+    /** Distinct values observed, in increasing order. */
+    protected double[] values = new double[16];
+
+    /** Slot of the i-th value. */
+    protected int[] slots = new int[16];
+
+    /** Weight of class c observed with the value in slot s, at [s * numClasses + c]. */
+    protected double[] classWeights = new double[16];
+
+    /** Total weight of the value in each slot. */
+    protected double[] rowWeights = new double[16];
+
+    /** Value in each slot. */
+    protected double[] slotValues = new double[16];
+
+    /** Slots of the next and previous values, -1 at the ends; free slots are chained by next. */
+    protected int[] next = new int[16];
+
+    protected int[] prev = new int[16];
+
+    /** Cost of merging the value in each slot with the next one. */
+    protected double[] mergeCosts = new double[16];
+
+    /** Heap of the slots that have a next value, cheapest merge first. */
+    protected int[] heap = new int[16];
+
+    /** Position of each slot in the heap, -1 if absent. */
+    protected int[] heapIndex = new int[16];
+
+    protected int heapSize = 0;
+
+    protected int freeSlot = -1;
+
+    protected int numValues = 0;
+
+    protected int numClasses = 1;
+
+    protected AutoExpandVector<GaussianEstimator> attValDistPerClass = new AutoExpandVector<GaussianEstimator>();
+
+    @Override
+    public void observeAttributeClass(double attVal, int classVal, double weight) {
+        if (Utils.isMissingValue(attVal)) {
+            return;
+        }
+        if (classVal >= this.numClasses) {
+            setNumClasses(classVal + 1);
+        }
+        int index = Arrays.binarySearch(this.values, 0, this.numValues, attVal);
+        if (index < 0) {
+            index = -index - 1;
+            insertValue(index, attVal);
+        }
+        int slot = this.slots[index];
+        this.classWeights[slot * this.numClasses + classVal] += weight;
+        this.rowWeights[slot] = rowWeight(slot);
+        updateMergeCost(this.prev[slot]);
+        updateMergeCost(slot);
+        int maxValues = this.maxValuesOption.getValue();
+        if (maxValues > 0 && this.numValues > maxValues) {
+            mergeClosestValues();
+        }
+
+        GaussianEstimator valDist = this.attValDistPerClass.get(classVal);
+        if (valDist == null) {
+            valDist = new GaussianEstimator();
+            this.attValDistPerClass.set(classVal, valDist);
+        }
+        valDist.addObservation(attVal, weight);
+    }
+
+    protected void setNumClasses(int numClasses) {
+        double[] weights = new double[this.values.length * numClasses];
+        for (int s = 0; s < this.values.length; s++) {
+            System.arraycopy(this.classWeights, s * this.numClasses, weights, s * numClasses, this.numClasses);
+        }
+        this.classWeights = weights;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Inserts a value with no weight at the given position, in a free slot.
+     * The merge costs around it are left to the caller, which adds its
+     * weight.
+     */
+    protected void insertValue(int index, double value) {
+        if (this.numValues == this.values.length) {
+            int capacity = 2 * this.values.length;
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.slots = Arrays.copyOf(this.slots, capacity);
+            this.classWeights = Arrays.copyOf(this.classWeights, capacity * this.numClasses);
+            this.rowWeights = Arrays.copyOf(this.rowWeights, capacity);
+            this.slotValues = Arrays.copyOf(this.slotValues, capacity);
+            this.next = Arrays.copyOf(this.next, capacity);
+            this.prev = Arrays.copyOf(this.prev, capacity);
+            this.mergeCosts = Arrays.copyOf(this.mergeCosts, capacity);
+            this.heap = Arrays.copyOf(this.heap, capacity);
+            this.heapIndex = Arrays.copyOf(this.heapIndex, capacity);
+        }
+        int slot = this.freeSlot;
+        if (slot >= 0) {
+            this.freeSlot = this.next[slot];
+        } else {
+            // no slot was freed, so exactly the first numValues are in use
+            slot = this.numValues;
+        }
+        System.arraycopy(this.values, index, this.values, index + 1, this.numValues - index);
+        System.arraycopy(this.slots, index, this.slots, index + 1, this.numValues - index);
+        this.values[index] = value;
+        this.slots[index] = slot;
+        Arrays.fill(this.classWeights, slot * this.numClasses, (slot + 1) * this.numClasses, 0.0);
+        this.rowWeights[slot] = 0.0;
+        this.slotValues[slot] = value;
+        this.heapIndex[slot] = -1;
+        int prevSlot = index > 0 ? this.slots[index - 1] : -1;
+        int nextSlot = index < this.numValues ? this.slots[index + 1] : -1;
+        this.prev[slot] = prevSlot;
+        this.next[slot] = nextSlot;
+        if (prevSlot >= 0) {
+            this.next[prevSlot] = slot;
+        }
+        if (nextSlot >= 0) {
+            this.prev[nextSlot] = slot;
+        }
+        this.numValues++;
+    }
+
+    /**
+     * Merges the two neighbouring values whose merge loses the least: the
+     * ones with the smallest gap times total weight, so that regions seen
+     * often keep a finer resolution. The weights of the smaller value go to
+     * the larger one.
+     */
+    protected void mergeClosestValues() {
+        int slot = this.heap[0];
+        int nextSlot = this.next[slot];
+        int prevSlot = this.prev[slot];
+        for (int c = 0; c < this.numClasses; c++) {
+            this.classWeights[nextSlot * this.numClasses + c] += this.classWeights[slot * this.numClasses + c];
+        }
+        this.rowWeights[nextSlot] = rowWeight(nextSlot);
+        this.prev[nextSlot] = prevSlot;
+        if (prevSlot >= 0) {
+            this.next[prevSlot] = nextSlot;
+        }
+        removeFromHeap(slot);
+        int index = Arrays.binarySearch(this.values, 0, this.numValues, this.slotValues[slot]);
+        System.arraycopy(this.values, index + 1, this.values, index, this.numValues - index - 1);
+        System.arraycopy(this.slots, index + 1, this.slots, index, this.numValues - index - 1);
+        this.numValues--;
+        this.next[slot] = this.freeSlot;
+        this.freeSlot = slot;
+        updateMergeCost(prevSlot);
+        updateMergeCost(nextSlot);
+    }
+
+    protected double rowWeight(int slot) {
+        double weight = 0.0;
+        for (int c = 0; c < this.numClasses; c++) {
+            weight += this.classWeights[slot * this.numClasses + c];
+        }
+        return weight;
+    }
+
+    /**
+     * Recomputes the cost of merging the value in a slot with the next one,
+     * and moves the slot in the heap accordingly.
+     */
+    protected void updateMergeCost(int slot) {
+        if (slot < 0) {
+            return;
+        }
+        int nextSlot = this.next[slot];
+        if (nextSlot < 0) {
+            if (this.heapIndex[slot] >= 0) {
+                removeFromHeap(slot);
+            }
+            return;
+        }
+        this.mergeCosts[slot] = (this.slotValues[nextSlot] - this.slotValues[slot])
+                * (this.rowWeights[slot] + this.rowWeights[nextSlot]);
+        int i = this.heapIndex[slot];
+        if (i < 0) {
+            i = this.heapSize++;
+            this.heap[i] = slot;
+            this.heapIndex[slot] = i;
+        }
+        siftDown(siftUp(i));
+    }
+
+    protected void removeFromHeap(int slot) {
+        int i = this.heapIndex[slot];
+        this.heapIndex[slot] = -1;
+        int last = this.heap[--this.heapSize];
+        if (i < this.heapSize) {
+            this.heap[i] = last;
+            this.heapIndex[last] = i;
+            siftDown(siftUp(i));
+        }
+    }
+
+    /**
+     * Whether merging the value in slot a is cheaper than in slot b. Equal
+     * costs are broken by the smaller value, so the first of the cheapest
+     * pairs is merged.
+     */
+    protected boolean cheaperMerge(int a, int b) {
+        return this.mergeCosts[a] < this.mergeCosts[b]
+                || (this.mergeCosts[a] == this.mergeCosts[b] && this.slotValues[a] < this.slotValues[b]);
+    }
+
+    protected int siftUp(int i) {
+        int slot = this.heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!cheaperMerge(slot, this.heap[parent])) {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            this.heapIndex[this.heap[i]] = i;
+            i = parent;
+        }
+        this.heap[i] = slot;
+        this.heapIndex[slot] = i;
+        return i;
+    }
+
+    protected void siftDown(int i) {
+        int slot = this.heap[i];
+        while (2 * i + 1 < this.heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < this.heapSize && cheaperMerge(this.heap[child + 1], this.heap[child])) {
+                child++;
+            }
+            if (!cheaperMerge(this.heap[child], slot)) {
+                break;
+            }
+            this.heap[i] = this.heap[child];
+            this.heapIndex[this.heap[i]] = i;
+            i = child;
+        }
+        this.heap[i] = slot;
+        this.heapIndex[slot] = i;
+    }
+
+    /**
+     * @return the number of distinct values kept
+     */
+    public int getNumValues() {
+        return this.numValues;
+    }
+
+    @Override
+    public double probabilityOfAttributeValueGivenClass(double attVal,
+            int classVal) {
+        GaussianEstimator obs = this.attValDistPerClass.get(classVal);
+        return obs != null ? obs.probabilityDensity(attVal) : 0.0;
+    }
+
+    @Override
+    public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(
+            SplitCriterion criterion, double[] preSplitDist, int attIndex,
+            boolean binaryOnly) {
+        double[] total = new double[this.numClasses];
+        for (int i = 0; i < this.numValues; i++) {
+            int row = this.slots[i] * this.numClasses;
+            for (int c = 0; c < this.numClasses; c++) {
+                total[c] += this.classWeights[row + c];
+            }
+        }
+        double[] left = new double[this.numClasses];
+        double[] right = new double[this.numClasses];
+        double[][] postSplitDists = new double[][]{left, right};
+        AttributeSplitSuggestion bestSuggestion = null;
+        // splitting after the largest value would send everything left
+        for (int i = 0; i < this.numValues - 1; i++) {
+            int row = this.slots[i] * this.numClasses;
+            for (int c = 0; c < this.numClasses; c++) {
+                left[c] += this.classWeights[row + c];
+                right[c] = Math.max(0.0, total[c] - left[c]);
+            }
+            double merit = criterion.getMeritOfSplit(preSplitDist, postSplitDists);
+            if ((bestSuggestion == null) || (merit > bestSuggestion.merit)) {
+                bestSuggestion = new AttributeSplitSuggestion(
+                        new NumericAttributeBinaryTest(attIndex, this.values[i], true),
+                        new double[][]{left.clone(), right.clone()}, merit);
+            }
+        }
+        return bestSuggestion;
+    }
+
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.shallowSizeOf(this.values)
+                + SizeOf.shallowSizeOf(this.slots)
+                + SizeOf.shallowSizeOf(this.classWeights)
+                + SizeOf.shallowSizeOf(this.rowWeights)
+                + SizeOf.shallowSizeOf(this.slotValues)
+                + SizeOf.shallowSizeOf(this.next)
+                + SizeOf.shallowSizeOf(this.prev)
+                + SizeOf.shallowSizeOf(this.mergeCosts)
+                + SizeOf.shallowSizeOf(this.heap)
+                + SizeOf.shallowSizeOf(this.heapIndex)
+                + this.attValDistPerClass.measureByteSize());
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        StringUtils.appendIndented(sb, indent, "Sorted array of " + this.numValues + " distinct values");
+        if (this.maxValuesOption.getValue() > 0) {
+            sb.append(" (at most ").append(this.maxValuesOption.getValue()).append(")");
+        }
+        if (this.numValues > 0) {
+            sb.append(" from ").append(this.values[0]).append(" to ").append(this.values[this.numValues - 1]);
+        }
+        sb.append(", ").append(this.numClasses).append(" classes");
+    }
+
+    @Override
+    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+    }
+
+    /**
+     * Not supported: the values are kept with the weights of their classes,
+     * and the split points are evaluated on class distributions, which a
+     * numeric target does not have.
+     * {@link BinaryTreeNumericAttributeClassObserverRegression} observes
+     * numeric targets.
+     */
+    @Override
+    public void observeAttributeTarget(double attVal, double target) {
+        throw new UnsupportedOperationException("Numeric targets are not supported, the values are kept with the weights of their classes; use BinaryTreeNumericAttributeClassObserverRegression for regression.");
+    }
+}
@@ -20,6 +20,7 @@
 package moa.classifiers.core.driftdetection;
 
 import moa.AbstractMOAObject;
+import moa.core.SizeOf;
 
 /**
  * ADaptive sliding WINdow method. This method is a change detector and estimator.
@@ -283,40 +284,40 @@ public class ADWIN extends AbstractMOAObject {
 
     public static final double DELTA = .002; //.1;
 
-    private static final int mintMinimLongitudWindow = 10; //10
+    protected static final int mintMinimLongitudWindow = 10; //10
 
-    private double mdbldelta = .002; //.1;
+    protected double mdbldelta = .002; //.1;
 
-    private int mintTime = 0;
+    protected int mintTime = 0;
 
-    private int mintClock = 32;
+    protected int mintClock = 32;
 
-    private double mdblWidth = 0; // Mean of Width = mdblWidth/Number of items
+    protected double mdblWidth = 0; // Mean of Width = mdblWidth/Number of items
     //BUCKET
 
     public static final int MAXBUCKETS = 5;
 
-    private int lastBucketRow = 0;
+    protected int lastBucketRow = 0;
 
-    private double TOTAL = 0;
+    protected double TOTAL = 0;
 
-    private double VARIANCE = 0;
+    protected double VARIANCE = 0;
 
-    private int WIDTH = 0;
+    protected int WIDTH = 0;
 
-    private int BucketNumber = 0;
+    protected int BucketNumber = 0;
 
-    private int Detect = 0;
+    protected int Detect = 0;
 
-    private int numberDetections = 0;
+    protected int numberDetections = 0;
 
-    private int DetectTwice = 0;
+    protected int DetectTwice = 0;
 
-    private boolean blnBucketDeleted = false;
+    protected boolean blnBucketDeleted = false;
 
-    private int BucketNumberMAX = 0;
+    protected int BucketNumberMAX = 0;
 
-    private int mintMinWinLength = 5;
+    protected int mintMinWinLength = 5;
 
     private List listRowBuckets;
 
@@ -372,7 +373,7 @@ public class ADWIN extends AbstractMOAObject {
         return mdblWidth;
     }
 
-    private void initBuckets() {
+    protected void initBuckets() {
         //Init buckets
         listRowBuckets = new List();
         lastBucketRow = 0;
@@ -602,6 +603,16 @@ public class ADWIN extends AbstractMOAObject {
     public void setW(int W0) {
     }
 
+    @Override
+    public int measureByteSize() {
+        long size = SizeOf.shallowSizeOf(this) + SizeOf.shallowSizeOf(listRowBuckets);
+        for (ListItem item = listRowBuckets.head(); item != null; item = item.next()) {
+            size += SizeOf.shallowSizeOf(item) + SizeOf.shallowSizeOf(item.bucketTotal)
+                    + SizeOf.shallowSizeOf(item.bucketVariance);
+        }
+        return (int) size;
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
     }
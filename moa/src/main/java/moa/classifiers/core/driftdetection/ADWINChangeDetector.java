@@ -18,8 +18,10 @@
  */
 package moa.classifiers.core.driftdetection;
 
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import moa.core.ObjectRepository;
+import moa.core.SizeOf;
 import moa.tasks.TaskMonitor;
 
 /**
@@ -40,6 +42,9 @@ public class ADWINChangeDetector extends AbstractChangeDetector {
     public FloatOption deltaAdwinOption = new FloatOption("deltaAdwin", 'a',
             "Delta of Adwin change detection", 0.002, 0.0, 1.0);
 
+    public FlagOption arrayBucketsOption = new FlagOption("arrayBuckets", 'p',
+            "Store the buckets of Adwin in arrays of primitives (see ArrayADWIN).");
+
     @Override
     public void input(double inputValue) {
         this.isChangeDetected = false;
@@ -59,10 +64,19 @@ public class ADWINChangeDetector extends AbstractChangeDetector {
 
     @Override
     public void resetLearning() {
-        adwin = new ADWIN((double) this.deltaAdwinOption.getValue());
+        if (this.arrayBucketsOption.isSet()) {
+            adwin = new ArrayADWIN((double) this.deltaAdwinOption.getValue());
+        } else {
+            adwin = new ADWIN((double) this.deltaAdwinOption.getValue());
+        }
         super.resetLearning();
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + SizeOf.estimatedFullSizeOf(this.adwin));
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
         // TODO Auto-generated method stub
@@ -0,0 +1,252 @@
+/*
+ *    ArrayADWIN.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core.driftdetection;
+
+import java.util.Arrays;
+
+import moa.core.SizeOf;
+
+/**
+ * ADWIN storing its buckets in flat arrays of primitives instead of a linked
+ * list of rows. It can be used wherever an ADWIN is expected and gives exactly
+ * the same estimations and detections.
+ *
+ * <p>Row i of the exponential histogram holds the buckets of 2^i items. The
+ * totals and variances of all the buckets are stored in two arrays, each row
+ * being a circular buffer of MAXBUCKETS + 1 slots, so that merging or removing
+ * the oldest buckets of a row does not move the other ones. When checking for
+ * a cut, the logarithm and the variance of the window are computed once per
+ * scan instead of once per bucket, and the variances of the two sub-windows,
+ * which the cut expression does not use, are not computed.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class ArrayADWIN extends ADWIN {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int ROW_LENGTH = MAXBUCKETS + 1;
+
+    // not initialized here: initBuckets is called by the constructor of ADWIN
+    protected double[] bucketTotal;
+
+    protected double[] bucketVariance;
+
+    /** Slot of the oldest bucket of each row. */
+    protected int[] rowStart;
+
+    /** Number of buckets in each row. */
+    protected int[] rowCount;
+
+    public ArrayADWIN() {
+        super();
+    }
+
+    public ArrayADWIN(double d) {
+        super(d);
+    }
+
+    public ArrayADWIN(int cl) {
+        super(cl);
+    }
+
+    @Override
+    protected void initBuckets() {
+        this.bucketTotal = new double[8 * ROW_LENGTH];
+        this.bucketVariance = new double[8 * ROW_LENGTH];
+        this.rowStart = new int[8];
+        this.rowCount = new int[8];
+        this.lastBucketRow = 0;
+        this.TOTAL = 0;
+        this.VARIANCE = 0;
+        this.WIDTH = 0;
+        this.BucketNumber = 0;
+    }
+
+    /**
+     * @return the index in the arrays of the k-th oldest bucket of a row
+     */
+    protected int slot(int row, int k) {
+        int position = this.rowStart[row] + k;
+        if (position >= ROW_LENGTH) {
+            position -= ROW_LENGTH;
+        }
+        return row * ROW_LENGTH + position;
+    }
+
+    protected void insertBucket(int row, double total, double variance) {
+        int slot = slot(row, this.rowCount[row]);
+        this.bucketTotal[slot] = total;
+        this.bucketVariance[slot] = variance;
+        this.rowCount[row]++;
+    }
+
+    protected void removeOldestBuckets(int row, int numBuckets) {
+        int start = this.rowStart[row] + numBuckets;
+        this.rowStart[row] = start >= ROW_LENGTH ? start - ROW_LENGTH : start;
+        this.rowCount[row] -= numBuckets;
+    }
+
+    protected void addRow() {
+        int row = this.lastBucketRow + 1;
+        if (row == this.rowCount.length) {
+            this.bucketTotal = Arrays.copyOf(this.bucketTotal, 2 * row * ROW_LENGTH);
+            this.bucketVariance = Arrays.copyOf(this.bucketVariance, 2 * row * ROW_LENGTH);
+            this.rowStart = Arrays.copyOf(this.rowStart, 2 * row);
+            this.rowCount = Arrays.copyOf(this.rowCount, 2 * row);
+        }
+        this.rowStart[row] = 0;
+        this.rowCount[row] = 0;
+        this.lastBucketRow = row;
+    }
+
+    protected void insertElement(double value) {
+        this.WIDTH++;
+        insertBucket(0, value, 0);
+        this.BucketNumber++;
+        if (this.BucketNumber > this.BucketNumberMAX) {
+            this.BucketNumberMAX = this.BucketNumber;
+        }
+        double incVariance = 0;
+        if (this.WIDTH > 1) {
+            incVariance = (this.WIDTH - 1) * (value - this.TOTAL / (this.WIDTH - 1)) * (value - this.TOTAL / (this.WIDTH - 1)) / this.WIDTH;
+        }
+        this.VARIANCE += incVariance;
+        this.TOTAL += value;
+        compressBuckets();
+    }
+
+    @Override
+    public int deleteElement() {
+        int row = this.lastBucketRow;
+        int oldest = slot(row, 0);
+        int n1 = 1 << row;
+        this.WIDTH -= n1;
+        this.TOTAL -= this.bucketTotal[oldest];
+        double u1 = this.bucketTotal[oldest] / n1;
+        double incVariance = this.bucketVariance[oldest] + n1 * this.WIDTH * (u1 - this.TOTAL / this.WIDTH) * (u1 - this.TOTAL / this.WIDTH) / (n1 + this.WIDTH);
+        this.VARIANCE -= incVariance;
+
+        removeOldestBuckets(row, 1);
+        this.BucketNumber--;
+        if (this.rowCount[row] == 0) {
+            this.lastBucketRow--;
+        }
+        return n1;
+    }
+
+    @Override
+    public void compressBuckets() {
+        for (int row = 0; this.rowCount[row] == MAXBUCKETS + 1; row++) {
+            if (row == this.lastBucketRow) {
+                addRow();
+            }
+            int first = slot(row, 0);
+            int second = slot(row, 1);
+            int n = 1 << row;
+            double u1 = this.bucketTotal[first] / n;
+            double u2 = this.bucketTotal[second] / n;
+            double incVariance = n * n * (u1 - u2) * (u1 - u2) / (n + n);
+            insertBucket(row + 1, this.bucketTotal[first] + this.bucketTotal[second],
+                    this.bucketVariance[first] + this.bucketVariance[second] + incVariance);
+            this.BucketNumber++;
+            removeOldestBuckets(row, 2);
+        }
+    }
+
+    @Override
+    public boolean setInput(double intEntrada, double delta) {
+        boolean blnChange = false;
+        this.mintTime++;
+
+        insertElement(intEntrada);
+        this.blnBucketDeleted = false;
+        if (this.mintTime % this.mintClock == 0 && getWidth() > mintMinimLongitudWindow) {
+            boolean blnReduceWidth = true;
+            while (blnReduceWidth) {
+                blnReduceWidth = false;
+                // constant terms of the cut expression for this scan
+                double dd = Math.log(2 * Math.log(this.WIDTH) / delta);
+                double v = getVariance();
+                int n0 = 0;
+                int n1 = this.WIDTH;
+                double u0 = 0;
+                double u1 = this.TOTAL;
+
+                scan:
+                for (int row = this.lastBucketRow; row >= 0; row--) {
+                    int n2 = 1 << row;
+                    int count = this.rowCount[row];
+                    for (int k = 0; k < count; k++) {
+                        double total = this.bucketTotal[slot(row, k)];
+                        n0 += n2;
+                        n1 -= n2;
+                        u0 += total;
+                        u1 -= total;
+                        if (row == 0 && k == count - 1) {
+                            break scan;
+                        }
+                        if (n1 > this.mintMinWinLength + 1 && n0 > this.mintMinWinLength + 1
+                                && isCut(n0, n1, u0, u1, v, dd)) {
+                            this.blnBucketDeleted = true;
+                            this.Detect = this.mintTime;
+                            if (this.DetectTwice == 0) {
+                                this.DetectTwice = this.mintTime;
+                            }
+                            blnReduceWidth = true;
+                            blnChange = true;
+                            if (getWidth() > 0) {
+                                deleteElement();
+                                break scan;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        this.mdblWidth += getWidth();
+        if (blnChange) {
+            this.numberDetections++;
+        }
+        return blnChange;
+    }
+
+    /**
+     * Same test as the cut expression of ADWIN, given the constant terms
+     * computed from the current width and variance of the window.
+     */
+    protected boolean isCut(int n0, int n1, double u0, double u1, double v, double dd) {
+        double absvalue = (double) (u0 / n0) - (u1 / n1);
+        double m = ((double) 1 / ((n0 - this.mintMinWinLength + 1))) + ((double) 1 / ((n1 - this.mintMinWinLength + 1)));
+        double epsilon = Math.sqrt(2 * m * v * dd) + (double) 2 / 3 * dd * m;
+        return (Math.abs(absvalue) > epsilon);
+    }
+
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this)
+                + SizeOf.shallowSizeOf(this.bucketTotal) + SizeOf.shallowSizeOf(this.bucketVariance)
+                + SizeOf.shallowSizeOf(this.rowStart) + SizeOf.shallowSizeOf(this.rowCount));
+    }
+
+    @Override
+    public String getEstimatorInfo() {
+        return "ArrayADWIN;;";
+    }
+}
@@ -30,6 +30,7 @@ import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.meta.WEKAClassifier;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.Utils;
 import moa.classifiers.core.driftdetection.ChangeDetector;
 import moa.options.ClassOption;
@@ -174,6 +175,14 @@ public class DriftDetectionMethodClassifier extends AbstractClassifier implement
         ((AbstractClassifier) this.classifier).getModelDescription(out, indent);
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.classifier)
+                + SizeOf.estimatedFullSizeOf(this.newclassifier)
+                + SizeOf.estimatedFullSizeOf(this.driftDetectionMethod));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         List<Measurement> measurementList = new LinkedList<Measurement>();
@@ -20,6 +20,7 @@
 package moa.classifiers.functions;
 
 import moa.core.DoubleVector;
+import moa.core.SizeOf;
 import com.github.javacliparser.FloatOption;
 import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.Utils;
@@ -159,31 +160,33 @@ public class AdaGrad extends SGD{
             dldz = z - y;
         }
 
-        int n = instance.numValues();
-        DoubleVector gradients = new DoubleVector();
-        gradients.setValue(instance.numAttributes(), 0);
-
-        for(int i = 0; i < n; i++)
-        {
-            int idx = instance.index(i);
-            gradients.setValue(idx, instance.valueSparse(i) * dldz + (m_lambda / (m_t + m_epsilon)) * m_weights.getValue(idx));
-        }
-
         //Weight update for the bias
         double biasGradient = dldz;
         m_biasVelocity += biasGradient * biasGradient;
         m_bias -= (m_learningRate / (Math.sqrt(m_biasVelocity) + m_epsilon)) * biasGradient;
 
-        for(int i = 0; i < m_weights.numValues(); i++) {
+        // the gradient is zero outside of the values of the instance, whose
+        // weights are therefore the only ones to update
+        int n = instance.numValues();
+        double[] weights = m_weights.getArrayRef();
+        double[] velocity = m_velocity.getArrayRef();
+        for(int i = 0; i < n; i++)
+        {
+            int idx = instance.index(i);
             //Weight update
-            double g = gradients.getValue(i);
-            m_velocity.addToValue(i, g * g);
-            m_weights.addToValue(i, -(m_learningRate / (Math.sqrt(m_velocity.getValue(i)) + m_epsilon)) * g);
+            double g = instance.valueSparse(i) * dldz + (m_lambda / (m_t + m_epsilon)) * weights[idx];
+            velocity[idx] += g * g;
+            weights[idx] += -(m_learningRate / (Math.sqrt(velocity[idx]) + m_epsilon)) * g;
         }
 
         m_t += 1.0;
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (super.measureByteSize() + SizeOf.estimatedFullSizeOf(m_velocity));
+    }
+
     @Override
     protected String getModelName() {
         return "AdaGrad";
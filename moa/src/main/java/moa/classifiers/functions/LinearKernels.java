@@ -0,0 +1,97 @@
+/*
+ *    LinearKernels.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.functions;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.core.DoubleVector;
+
+/**
+ * Dot products and updates between instances and the weight vectors of linear
+ * models. They only visit the values an instance stores, through numValues()
+ * and index(), so a sparse instance costs its number of non-zero values
+ * whatever the number of attributes. The class attribute and missing values
+ * are skipped.
+ *
+ * <p>Learners with weight decay keep their weights as a vector times a scale
+ * factor: decaying all the weights is then a single multiplication of the
+ * scale, and updates divide by it. {@link #MIN_SCALE} is the scale below
+ * which it should be folded back into the vector, before precision is
+ * lost.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public final class LinearKernels {
+
+    /** Smallest absolute scale kept before folding it into the weights. */
+    public static final double MIN_SCALE = 1e-6;
+
+    private LinearKernels() {
+    }
+
+    /**
+     * @param numWeights the number of weights to use, attributes with a
+     * larger index count as having a weight of zero
+     * @return the dot product of the instance and the weights
+     */
+    public static double dotProduct(Instance inst, double[] weights,
+            int numWeights, int classIndex) {
+        double result = 0;
+        int n = inst.numValues();
+        for (int p = 0; p < n; p++) {
+            int index = inst.index(p);
+            if (index >= numWeights) {
+                break;
+            }
+            if (index != classIndex && !inst.isMissingSparse(p)) {
+                result += inst.valueSparse(p) * weights[index];
+            }
+        }
+        return result;
+    }
+
+    public static double dotProduct(Instance inst, DoubleVector weights, int classIndex) {
+        return dotProduct(inst, weights.getArrayRef(), weights.numValues(), classIndex);
+    }
+
+    /**
+     * Adds the values of the instance times a factor to the weights, which
+     * grow to the largest index updated.
+     */
+    public static void addScaled(Instance inst, DoubleVector weights,
+            double factor, int classIndex) {
+        int n = inst.numValues();
+        // grow once rather than once per new index
+        for (int p = n - 1; p >= 0; p--) {
+            int index = inst.index(p);
+            if (index != classIndex && !inst.isMissingSparse(p)) {
+                if (index >= weights.numValues()) {
+                    weights.setValue(index, 0.0);
+                }
+                break;
+            }
+        }
+        double[] array = weights.getArrayRef();
+        for (int p = 0; p < n; p++) {
+            int index = inst.index(p);
+            if (index != classIndex && !inst.isMissingSparse(p)) {
+                array[index] += factor * inst.valueSparse(p);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.StringUtils;
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -59,6 +60,12 @@ public class MajorityClass extends AbstractClassifier implements MultiClassClass
         return this.observedClassDistribution.getArrayCopy();
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.observedClassDistribution));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -22,6 +22,7 @@ package moa.classifiers.functions;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.Utils;
 import com.github.javacliparser.FloatOption;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -88,10 +89,16 @@ public class Perceptron extends AbstractClassifier  implements MultiClassClassif
         for (int i = 0; i < inst.numClasses(); i++) {
             double actual = (i == actualClass) ? 1.0 : 0.0;
             double delta = (actual - preds[i]) * preds[i] * (1 - preds[i]);
-            for (int j = 0; j < inst.numAttributes() - 1; j++) {
-                this.weightAttribute[i][j] += learningRatio * delta * inst.valueInputAttribute(j);
+            double[] weights = this.weightAttribute[i];
+            // zero values leave their weights unchanged
+            int n = inst.numValues();
+            for (int p = 0; p < n; p++) {
+                int j = inputAttributeIndex(inst, p);
+                if (j >= 0) {
+                    weights[j] += learningRatio * delta * inst.valueSparse(p);
+                }
             }
-            this.weightAttribute[i][inst.numAttributes() - 1] += learningRatio * delta;
+            weights[inst.numAttributes() - 1] += learningRatio * delta;
         }
     }
 
@@ -116,14 +123,32 @@ public class Perceptron extends AbstractClassifier  implements MultiClassClassif
     }
 
     public double prediction(Instance inst, int classVal) {
+        double[] weights = weightAttribute[classVal];
         double sum = 0.0;
-        for (int i = 0; i < inst.numAttributes() - 1; i++) {
-            sum += weightAttribute[classVal][i] * inst.valueInputAttribute(i);
+        int n = inst.numValues();
+        for (int p = 0; p < n; p++) {
+            int i = inputAttributeIndex(inst, p);
+            if (i >= 0) {
+                sum += weights[i] * inst.valueSparse(p);
+            }
         }
-        sum += weightAttribute[classVal][inst.numAttributes() - 1];
+        sum += weights[inst.numAttributes() - 1];
         return 1.0 / (1.0 + Math.exp(-sum));
     }
 
+    /**
+     * @return the index among the input attributes of the p-th value stored
+     * by the instance, or -1 for the class
+     */
+    protected static int inputAttributeIndex(Instance inst, int p) {
+        int index = inst.index(p);
+        int classIndex = inst.classIndex();
+        if (index == classIndex) {
+            return -1;
+        }
+        return index < classIndex ? index : index - 1;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
         double[] votes = new double[inst.numClasses()];
@@ -140,6 +165,18 @@ public class Perceptron extends AbstractClassifier  implements MultiClassClassif
         return votes;
     }
 
+    @Override
+    public int measureByteSize() {
+        long size = SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.shallowSizeOf(this.weightAttribute);
+        if (this.weightAttribute != null) {
+            for (double[] weights : this.weightAttribute) {
+                size += SizeOf.shallowSizeOf(weights);
+            }
+        }
+        return (int) size;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -31,6 +31,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.StringUtils;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.MultiChoiceOption;
@@ -71,6 +72,12 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
 
     /** Stores the weights (+ bias in the last element) */
     protected DoubleVector m_weights;
+
+    /**
+     * The scale of the weights: the weights of the model are m_weights times
+     * m_wScale, so that weight decay does not have to visit every weight
+     */
+    protected double m_wScale = 1.0;
     
     protected double m_bias;
 
@@ -156,6 +163,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
     public void reset() {
         m_t = 1;
         m_weights = null;
+        m_wScale = 1.0;
         m_bias = 0.0;
     }
 
@@ -179,27 +187,20 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
     }
 
     protected static double dotProd(Instance inst1, DoubleVector weights, int classIndex) {
-        double result = 0;
-
-        int n1 = inst1.numValues();
-        int n2 = weights.numValues();
-
-        for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
-            int ind1 = inst1.index(p1);
-            int ind2 = p2;
-            if (ind1 == ind2) {
-                if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-                    result += inst1.valueSparse(p1) * weights.getValue(p2);
-                }
-                p1++;
-                p2++;
-            } else if (ind1 > ind2) {
-                p2++;
-            } else {
-                p1++;
-            }
+        return LinearKernels.dotProduct(inst1, weights, classIndex);
+    }
+
+    /**
+     * Multiplies all the weights by a factor, through their scale.
+     *
+     * @param multiplier the factor
+     */
+    protected void scaleWeights(double multiplier) {
+        m_wScale *= multiplier;
+        if (Math.abs(m_wScale) < LinearKernels.MIN_SCALE) {
+            m_weights.scaleValues(m_wScale);
+            m_wScale = 1.0;
         }
-        return (result);
     }
 
     @Override
@@ -225,7 +226,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
 
         if (!instance.classIsMissing()) {
 
-            double wx = dotProd(instance, m_weights, instance.classIndex());
+            double wx = dotProd(instance, m_weights, instance.classIndex()) * m_wScale;
 
             double y;
             double z;
@@ -245,9 +246,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
             } else {
                 multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
             }
-            for (int i = 0; i < m_weights.numValues(); i++) {
-                m_weights.setValue(i,m_weights.getValue (i) * multiplier);
-            }
+            scaleWeights(multiplier);
 
             // Only need to do the following if the loss is non-zero
             if (m_loss != HINGE || (z < 1)) {
@@ -256,13 +255,8 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 double factor = m_learningRate * y * dloss(z);
 
                 // Update coefficients for attributes
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-                        m_weights.addToValue(indS, factor * instance.valueSparse(p1));
-                    }
-                }
+                LinearKernels.addScaled(instance, m_weights, factor / m_wScale,
+                        instance.classIndex());
 
                 // update the bias
                 m_bias += factor;
@@ -289,7 +283,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 : new double[1];
 
 
-        double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
+        double wx = dotProd(inst, m_weights, inst.classIndex()) * m_wScale;
         double z = (wx + m_bias);
 
         if (inst.classAttribute().isNumeric()) {
@@ -356,7 +350,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights.getValue(i), 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights.getValue(i) * m_wScale, 12, 4) + " "
                     // + m_data.attribute(i).name()
                     + "\n");
 
@@ -373,6 +367,12 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
         return buff.toString();
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(m_weights));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
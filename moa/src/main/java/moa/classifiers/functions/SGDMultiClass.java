@@ -32,6 +32,7 @@ import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.Regressor;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.StringUtils;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.MultiChoiceOption;
@@ -72,6 +73,13 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
 
     /** Stores the weights (+ bias in the last element) */
     protected DoubleVector[] m_weights;
+
+    /**
+     * The scale of the weights of each class: the weights of the model are
+     * m_weights times m_wScale, so that weight decay does not have to visit
+     * every weight
+     */
+    protected double[] m_wScale;
     
     protected double[] m_bias;
 
@@ -157,6 +165,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
     public void reset() {
         m_t = 1;
         m_weights = null;
+        m_wScale = null;
         m_bias = null; //0.0;
     }
 
@@ -180,27 +189,21 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
     }
 
     protected static double dotProd(Instance inst1, DoubleVector weights, int classIndex) {
-        double result = 0;
-
-        int n1 = inst1.numValues();
-        int n2 = weights.numValues();
+        return LinearKernels.dotProduct(inst1, weights, classIndex);
+    }
 
-        for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
-            int ind1 = inst1.index(p1);
-            int ind2 = p2;
-            if (ind1 == ind2) {
-                if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-                    result += inst1.valueSparse(p1) * weights.getValue(p2);
-                }
-                p1++;
-                p2++;
-            } else if (ind1 > ind2) {
-                p2++;
-            } else {
-                p1++;
-            }
+    /**
+     * Multiplies all the weights of a class by a factor, through their scale.
+     *
+     * @param classLabel the class
+     * @param multiplier the factor
+     */
+    protected void scaleWeights(int classLabel, double multiplier) {
+        m_wScale[classLabel] *= multiplier;
+        if (Math.abs(m_wScale[classLabel]) < LinearKernels.MIN_SCALE) {
+            m_weights[classLabel].scaleValues(m_wScale[classLabel]);
+            m_wScale[classLabel] = 1.0;
         }
-        return (result);
     }
 
     @Override
@@ -227,9 +230,11 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                  length = 1;
              }
             m_weights = new DoubleVector[length];
+            m_wScale = new double[length];
             m_bias = new double[length];
             for (int i = 0; i < m_weights.length; i++){
                 m_weights[i] = new DoubleVector(); 
+                m_wScale[i] = 1.0;
                 m_bias[i] = 0.0;
             }
         }
@@ -241,7 +246,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
     public void trainOnInstanceImpl(Instance instance, int classLabel) {    
         if (!instance.classIsMissing()) {
 
-            double wx = dotProd(instance, m_weights[classLabel], instance.classIndex());
+            double wx = dotProd(instance, m_weights[classLabel], instance.classIndex()) * m_wScale[classLabel];
 
             double y;
             double z;
@@ -261,9 +266,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
             } else {
                 multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
             }
-            for (int i = 0; i < m_weights[classLabel].numValues(); i++) {
-                m_weights[classLabel].setValue(i,m_weights[classLabel].getValue (i) * multiplier);
-            }
+            scaleWeights(classLabel, multiplier);
 
             // Only need to do the following if the loss is non-zero
             if (m_loss != HINGE || (z < 1)) {
@@ -272,13 +275,8 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 double factor = m_learningRate * y * dloss(z);
 
                 // Update coefficients for attributes
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-                        m_weights[classLabel].addToValue(indS, factor * instance.valueSparse(p1));
-                    }
-                }
+                LinearKernels.addScaled(instance, m_weights[classLabel],
+                        factor / m_wScale[classLabel], instance.classIndex());
 
                 // update the bias
                 m_bias[classLabel] += factor;
@@ -305,14 +303,14 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 : new double[1];
         
         if (inst.classAttribute().isNumeric()) {
-            double wx = dotProd(inst, m_weights[0], inst.classIndex());// * m_wScale;
+            double wx = dotProd(inst, m_weights[0], inst.classIndex()) * m_wScale[0];
             double z = (wx + m_bias[0]);
             result[0] = z;
             return result;
         }
 
         for (int i = 0; i < m_weights.length; i++){
-            double wx = dotProd(inst, m_weights[i], inst.classIndex());// * m_wScale;
+            double wx = dotProd(inst, m_weights[i], inst.classIndex()) * m_wScale[i];
             double z = (wx + m_bias[i]);
             if (z <= 0) {
                 //  z = 0;
@@ -374,7 +372,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights[0].getValue(i), 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights[0].getValue(i) * m_wScale[0], 12, 4) + " "
                     // + m_data.attribute(i).name()
                     + "\n");
 
@@ -391,6 +389,13 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
         return buff.toString();
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(m_weights)
+                + SizeOf.shallowSizeOf(m_wScale) + SizeOf.shallowSizeOf(m_bias));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -28,6 +28,7 @@ package moa.classifiers.functions;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import moa.core.StringUtils;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.MultiChoiceOption;
@@ -98,6 +99,16 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
      */
     protected double[] m_weights;
 
+    /**
+     * The scale of the weights: the weights of the model are m_weights (but
+     * the bias) times m_wScale, so that scaling them does not have to visit
+     * every weight
+     */
+    protected double m_wScale = 1.0;
+
+    /** The squared norm of m_weights, without the bias */
+    protected double m_squaredNorm;
+
     /**
      * Holds the current iteration number
      */
@@ -145,30 +156,30 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
     public void reset() {
         m_t = 2;
         m_weights = null;
+        m_wScale = 1.0;
+        m_squaredNorm = 0.0;
     }
 
     protected static double dotProd(Instance inst1, double[] weights, int classIndex) {
-        double result = 0;
-
-        int n1 = inst1.numValues();
-        int n2 = weights.length - 1;
+        return LinearKernels.dotProduct(inst1, weights, weights.length - 1, classIndex);
+    }
 
-        for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
-            int ind1 = inst1.index(p1);
-            int ind2 = p2;
-            if (ind1 == ind2) {
-                if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-                    result += inst1.valueSparse(p1) * weights[p2];
-                }
-                p1++;
-                p2++;
-            } else if (ind1 > ind2) {
-                p2++;
-            } else {
-                p1++;
+    /**
+     * Multiplies all the weights but the bias by a factor, through their
+     * scale.
+     *
+     * @param multiplier the factor
+     */
+    protected void scaleWeights(double multiplier) {
+        m_wScale *= multiplier;
+        if (Math.abs(m_wScale) < LinearKernels.MIN_SCALE) {
+            m_squaredNorm = 0.0;
+            for (int j = 0; j < m_weights.length - 1; j++) {
+                m_weights[j] *= m_wScale;
+                m_squaredNorm += m_weights[j] * m_weights[j];
             }
+            m_wScale = 1.0;
         }
-        return (result);
     }
 
     protected double dloss(double z) {
@@ -209,14 +220,10 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
             //double scale = 1.0 - learningRate * m_lambda;
             double scale = 1.0 - 1.0 / m_t;
             double y = (instance.classValue() == 0) ? -1 : 1;
-            double wx = dotProd(instance, m_weights, instance.classIndex());
+            double wx = dotProd(instance, m_weights, instance.classIndex()) * m_wScale;
             double z = y * (wx + m_weights[m_weights.length - 1]);
 
-            for (int j = 0; j < m_weights.length - 1; j++) {
-                if (j != instance.classIndex()) {
-                    m_weights[j] *= scale;
-                }
-            }
+            scaleWeights(scale);
 
             if (m_loss == LOGLOSS || (z < 1)) {
                 double loss = dloss(z);
@@ -225,7 +232,9 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
                     int indS = instance.index(p1);
                     if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
                         double m = learningRate * loss * (instance.valueSparse(p1) * y);
-                        m_weights[indS] += m;
+                        double weight = m_weights[indS];
+                        m_weights[indS] += m / m_wScale;
+                        m_squaredNorm += m_weights[indS] * m_weights[indS] - weight * weight;
                     }
                 }
 
@@ -233,21 +242,13 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
                 m_weights[m_weights.length - 1] += learningRate * loss * y;
             }
 
-            double norm = 0;
-            for (int k = 0; k < m_weights.length - 1; k++) {
-                if (k != instance.classIndex()) {
-                    norm += (m_weights[k] * m_weights[k]);
-                }
-            }
+            // the weight of the class attribute is never updated and stays 0
+            double norm = Math.max(0.0, m_squaredNorm) * m_wScale * m_wScale;
 
             double scale2 = Math.min(1.0, (1.0 / (m_lambda * norm)));
             if (scale2 < 1.0) {
                 scale2 = Math.sqrt(scale2);
-                for (int j = 0; j < m_weights.length - 1; j++) {
-                    if (j != instance.classIndex()) {
-                        m_weights[j] *= scale2;
-                    }
-                }
+                scaleWeights(scale2);
             }
             m_t++;
         }
@@ -269,7 +270,7 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
 
         double[] result = new double[2];
 
-        double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
+        double wx = dotProd(inst, m_weights, inst.classIndex()) * m_wScale;
         double z = (wx + m_weights[m_weights.length - 1]);
         //System.out.print("" + z + ": ");
         // System.out.println(1.0 / (1.0 + Math.exp(-z)));
@@ -325,7 +326,7 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights[i], 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights[i] * m_wScale, 12, 4) + " "
                     //+ m_data.attribute(i).name()
                     + "\n");
 
@@ -342,6 +343,12 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
         return buff.toString();
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.shallowSizeOf(m_weights));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -17,13 +17,14 @@
 package moa.classifiers.lazy;
 import java.util.*;
 
-import com.yahoo.labs.samoa.instances.InstanceImpl;
 import moa.capabilities.CapabilitiesHandler;
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
+import moa.classifiers.lazy.neighboursearch.RingBufferWindow;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
@@ -80,8 +81,8 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
         return "SAMkNN: special.";
     }
 
-    private Instances stm;
-	private Instances ltm;
+    private RingBufferWindow stm;
+	private RingBufferWindow ltm;
 	private int maxLTMSize;
 	private int maxSTMSize;
 	private List<Integer> stmHistory;
@@ -108,10 +109,11 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 	@Override
 	public void setModelContext(InstancesHeader context) {
 		try {
-			this.stm = new Instances(context,0);
-			this.stm.setClassIndex(context.classIndex());
-			this.ltm = new Instances(context,0); 
-			this.ltm.setClassIndex(context.classIndex());
+			Instances header = new Instances(context,0);
+			header.setClassIndex(context.classIndex());
+			//both memories are sized by memorySizeCheck, the windows themselves are unbounded
+			this.stm = new RingBufferWindow(header, Integer.MAX_VALUE);
+			this.ltm = new RingBufferWindow(header, Integer.MAX_VALUE);
 			this.init();
 		} catch(Exception e) {
 			System.err.println("Error: no Model Context available.");
@@ -139,23 +141,23 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		this.stm.add(inst);
 		memorySizeCheck();
 		clean(this.stm, this.ltm, true);
-		double distancesSTM[] = this.get1ToNDistances(inst, this.stm);
-		for (int i =0; i < this.stm.numInstances();i++){
-			this.distanceMatrixSTM[this.stm.numInstances()-1][i] = distancesSTM[i];
+		double distancesSTM[] = this.get1ToNDistances(this.stm, this.stm.size()-1, this.stm);
+		for (int i =0; i < this.stm.size();i++){
+			this.distanceMatrixSTM[this.stm.size()-1][i] = distancesSTM[i];
 		}
-		int oldWindowSize = this.stm.numInstances();
+		int oldWindowSize = this.stm.size();
 		int newWindowSize = this.getNewSTMSize(recalculateSTMErrorOption.isSet());
 
 		if (newWindowSize < oldWindowSize) {
 			int diff = oldWindowSize - newWindowSize;
-			Instances discardedSTMInstances = new Instances(this.stm, 0);
+			RingBufferWindow discardedSTMInstances = new RingBufferWindow(this.stm.getHeader(), Integer.MAX_VALUE);
 
 			for (int i = diff; i>0;i--){
-				discardedSTMInstances.add(this.stm.get(0).copy());
-				this.stm.delete(0);
+				discardedSTMInstances.add(this.stm, 0);
+				this.stm.removeOldest();
 			}
-			for (int i = 0; i < this.stm.numInstances(); i++){
-				for (int j = 0; j < this.stm.numInstances(); j++){
+			for (int i = 0; i < this.stm.size(); i++){
+				for (int j = 0; j < this.stm.size(); j++){
 					this.distanceMatrixSTM[i][j] = this.distanceMatrixSTM[diff+i][diff+j];
 				}
 			}
@@ -166,8 +168,8 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 			}
 
 			this.clean(this.stm, discardedSTMInstances, false);
-			for (int i = 0; i < discardedSTMInstances.numInstances(); i++){
-				this.ltm.add(discardedSTMInstances.get(i).copy());
+			for (int i = 0; i < discardedSTMInstances.size(); i++){
+				this.ltm.add(discardedSTMInstances, i);
 			}
 			memorySizeCheck();
 		}
@@ -188,7 +190,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
         int predClassLTM = 0;
         int predClassCM = 0;
 		try {
-			if (this.stm.numInstances()>0) {
+			if (this.stm.size()>0) {
 				distancesSTM = get1ToNDistances(inst, this.stm);
 				int nnIndicesSTM[] = nArgMin(Math.min(distancesSTM.length, this.kOption.getValue()), distancesSTM);
 				vSTM = getDistanceWeightedVotes(distancesSTM, nnIndicesSTM, this.stm);
@@ -196,7 +198,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
                 distancesLTM = get1ToNDistances(inst, this.ltm);
                 vCM = getCMVotes(distancesSTM, this.stm, distancesLTM, this.ltm);
                 predClassCM = this.getClassFromVotes(vCM);
-				if (this.ltm.numInstances() >= 0) {
+				if (this.ltm.size() >= 0) {
                     int nnIndicesLTM[] = nArgMin(Math.min(distancesLTM.length, this.kOption.getValue()), distancesLTM);
                     vLTM = getDistanceWeightedVotes(distancesLTM, nnIndicesLTM, this.ltm);
                     predClassLTM = this.getClassFromVotes(vLTM);
@@ -225,6 +227,28 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		return v;
     }
 
+    @Override
+    public int measureByteSize() {
+        long size = SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.stmHistory)
+                + SizeOf.estimatedFullSizeOf(this.ltmHistory)
+                + SizeOf.estimatedFullSizeOf(this.cmHistory)
+                + SizeOf.shallowSizeOf(this.distanceMatrixSTM)
+                + SizeOf.estimatedFullSizeOf(this.predictionHistories);
+        if (this.distanceMatrixSTM != null) {
+            for (double[] distances : this.distanceMatrixSTM) {
+                size += SizeOf.shallowSizeOf(distances);
+            }
+        }
+        if (this.stm != null) {
+            size += this.stm.measureByteSize();
+        }
+        if (this.ltm != null) {
+            size += this.ltm.measureByteSize();
+        }
+        return (int) size;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -259,14 +283,29 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 	 */
 	private void clusterDown(){
 		int classIndex = this.ltm.classIndex();
+		int numAttributes = this.ltm.numAttributes();
+		//split the LTM into the samples of every class (newest first) and the remaining ones in a single pass
+		List<List<double[]>> samplesPerClass = new ArrayList<>();
 		for (int c = 0; c <= this.maxClassValue; c++){
-			List<double[]> classSamples = new ArrayList<>();
-			for (int i = this.ltm.numInstances()-1; i >-1 ; i--) {
-				if (this.ltm.get(i).classValue() == c) {
-					classSamples.add(this.ltm.get(i).toDoubleArray());
-					this.ltm.delete(i);
-				}
+			samplesPerClass.add(new ArrayList<double[]>());
+		}
+		List<double[]> remaining = new ArrayList<>();
+		for (int i = this.ltm.size()-1; i >-1 ; i--) {
+			double[] sample = new double[numAttributes];
+			System.arraycopy(this.ltm.values(), this.ltm.offset(i), sample, 0, numAttributes);
+			double classValue = sample[classIndex];
+			if (classValue >= 0 && classValue <= this.maxClassValue && classValue == (int) classValue) {
+				samplesPerClass.get((int) classValue).add(sample);
+			} else {
+				remaining.add(0, sample);
 			}
+		}
+		this.ltm.clear();
+		for (double[] sample : remaining) {
+			this.ltm.add(sample, 0, 1);
+		}
+		for (int c = 0; c <= this.maxClassValue; c++){
+			List<double[]> classSamples = samplesPerClass.get(c);
 			if (classSamples.size() > 0) {
 				//used kMeans++ implementation expects the weight of each sample at the first index,
 				// make sure that the first value gets the uniform weight 1, overwrite class value
@@ -281,17 +320,15 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 
 				for (double[] centroid : centroids) {
 
-					double[] attributes = new double[this.ltm.numAttributes()];
+					double[] attributes = new double[numAttributes];
 					//returned centroids do not contain the weight anymore, but simply the data
-					System.arraycopy(centroid, 0, attributes, 1, this.ltm.numAttributes() - 1);
+					System.arraycopy(centroid, 0, attributes, 1, numAttributes - 1);
 					//switch back if necessary
 					if (classIndex != 0) {
 						attributes[0] = attributes[classIndex];
 					}
 					attributes[classIndex] = c;
-					Instance inst = new InstanceImpl(1, attributes);
-					inst.setDataset(this.ltm);
-					this.ltm.add(inst);
+					this.ltm.add(attributes, 0, 1);
 				}
 			}
 
@@ -302,22 +339,22 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
      * Makes sure that the STM and LTM combined doe not surpass the maximum size.
      */
 	private void memorySizeCheck(){
-		if (this.stm.numInstances() + this.ltm.numInstances() > this.maxSTMSize + this.maxLTMSize){
-			if (this.ltm.numInstances() > this.maxLTMSize){
+		if (this.stm.size() + this.ltm.size() > this.maxSTMSize + this.maxLTMSize){
+			if (this.ltm.size() > this.maxLTMSize){
 				this.clusterDown();
 			}else{ //shift values from STM directly to LTM since STM is full
-				int numShifts = this.maxLTMSize - this.ltm.numInstances() + 1;
+				int numShifts = this.maxLTMSize - this.ltm.size() + 1;
 				for (int i = 0; i < numShifts; i++){
-					this.ltm.add(this.stm.get(0).copy());
-					this.stm.delete(0);
+					this.ltm.add(this.stm, 0);
+					this.stm.removeOldest();
 					this.stmHistory.remove(0);
 					this.ltmHistory.remove(0);
 					this.cmHistory.remove(0);
 				}
 				this.clusterDown();
 				this.predictionHistories.clear();
-				for (int i = 0; i < this.stm.numInstances(); i++){
-					for (int j = 0; j < this.stm.numInstances(); j++){
+				for (int i = 0; i < this.stm.size(); i++){
+					for (int j = 0; j < this.stm.size(); j++){
 						this.distanceMatrixSTM[i][j] = this.distanceMatrixSTM[numShifts+i][numShifts+j];
 					}
 				}
@@ -325,17 +362,21 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		}
 	}
 
-	private void cleanSingle(Instances cleanAgainst, int cleanAgainstindex, Instances toClean){
-		Instances cleanAgainstTmp = new Instances(cleanAgainst);
-		cleanAgainstTmp.delete(cleanAgainstindex);
-		double distancesSTM[] = get1ToNDistances(cleanAgainst.get(cleanAgainstindex), cleanAgainstTmp);
+	private void cleanSingle(RingBufferWindow cleanAgainst, int cleanAgainstindex, RingBufferWindow toClean){
+		double cleanAgainstClass = cleanAgainst.classValue(cleanAgainstindex);
+		//distances to all other samples of cleanAgainst, positions after the sample itself are shifted down by one
+		double distancesAll[] = get1ToNDistances(cleanAgainst, cleanAgainstindex, cleanAgainst);
+		double distancesSTM[] = new double[distancesAll.length - 1];
+		System.arraycopy(distancesAll, 0, distancesSTM, 0, cleanAgainstindex);
+		System.arraycopy(distancesAll, cleanAgainstindex + 1, distancesSTM, cleanAgainstindex, distancesSTM.length - cleanAgainstindex);
 		int nnIndicesSTM[] = nArgMin(Math.min(this.kOption.getValue(), distancesSTM.length), distancesSTM);
 
-		double distancesLTM[] = get1ToNDistances(cleanAgainst.get(cleanAgainstindex), toClean);
+		double distancesLTM[] = get1ToNDistances(cleanAgainst, cleanAgainstindex, toClean);
 		int nnIndicesLTM[] = nArgMin(Math.min(this.kOption.getValue(), distancesLTM.length), distancesLTM);
 		double distThreshold = 0;
 		for (int nnIdx: nnIndicesSTM){
-			if (cleanAgainstTmp.get(nnIdx).classValue() == cleanAgainst.get(cleanAgainstindex).classValue()){
+			int idx = (nnIdx < cleanAgainstindex) ? nnIdx : nnIdx + 1;
+			if (cleanAgainst.classValue(idx) == cleanAgainstClass){
 				if (distancesSTM[nnIdx] > distThreshold){
 					distThreshold = distancesSTM[nnIdx];
 				}
@@ -343,7 +384,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		}
 		List<Integer> delIndices = new ArrayList<>();
         for (int nnIdx: nnIndicesLTM){
-			if (toClean.get(nnIdx).classValue() != cleanAgainst.get(cleanAgainstindex).classValue()) {
+			if (toClean.classValue(nnIdx) != cleanAgainstClass) {
 				if (distancesLTM[nnIdx] <= distThreshold){
 					delIndices.add(nnIdx);
 				}
@@ -351,17 +392,17 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		}
 		Collections.sort(delIndices, Collections.reverseOrder());
 		for (Integer idx : delIndices)
-			toClean.delete(idx);
+			toClean.remove(idx);
 	}
     /**
      * Removes distance-based all instances from the input samples that contradict those in the STM.
      */
-	private void clean(Instances cleanAgainst, Instances toClean, boolean onlyLast) {
-		if (cleanAgainst.numInstances() > this.kOption.getValue() && toClean.numInstances() > 0){
+	private void clean(RingBufferWindow cleanAgainst, RingBufferWindow toClean, boolean onlyLast) {
+		if (cleanAgainst.size() > this.kOption.getValue() && toClean.size() > 0){
 			if (onlyLast){
-				cleanSingle(cleanAgainst, (cleanAgainst.numInstances()-1), toClean);
+				cleanSingle(cleanAgainst, (cleanAgainst.size()-1), toClean);
 			}else{
-				for (int i=0; i < cleanAgainst.numInstances(); i++){
+				for (int i=0; i < cleanAgainst.size(); i++){
 					cleanSingle(cleanAgainst, i, toClean);
 				}
 			}
@@ -370,22 +411,22 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
     /**
      * Returns the distance weighted votes.
      */
-	private double [] getDistanceWeightedVotes(double distances[], int[] nnIndices, Instances instances){
+	private double [] getDistanceWeightedVotes(double distances[], int[] nnIndices, RingBufferWindow instances){
 
 		double v[] = new double[this.maxClassValue +1];
         for (int nnIdx : nnIndices) {
-            v[(int)instances.instance(nnIdx).classValue()] += 1./Math.max(distances[nnIdx], 0.000000001);
+            v[(int)instances.classValue(nnIdx)] += 1./Math.max(distances[nnIdx], 0.000000001);
         }
 		return v;
 	}
 
-	private double [] getDistanceWeightedVotesCM(double distances[], int[] nnIndices, Instances stm, Instances ltm){
+	private double [] getDistanceWeightedVotesCM(double distances[], int[] nnIndices, RingBufferWindow stm, RingBufferWindow ltm){
 		double v[] = new double[this.maxClassValue +1];
         for (int nnIdx : nnIndices) {
-			if (nnIdx < stm.numInstances()) {
-				v[(int) stm.instance(nnIdx).classValue()] += 1. / Math.max(distances[nnIdx], 0.000000001);
+			if (nnIdx < stm.size()) {
+				v[(int) stm.classValue(nnIdx)] += 1. / Math.max(distances[nnIdx], 0.000000001);
 			} else{
-				v[(int) ltm.instance((nnIdx-stm.numInstances())).classValue()] += 1. / Math.max(distances[nnIdx], 0.000000001);
+				v[(int) ltm.classValue(nnIdx-stm.size())] += 1. / Math.max(distances[nnIdx], 0.000000001);
 			}
 		}
 		return v;
@@ -394,7 +435,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
     /**
      * Returns the distance weighted votes for the combined memory (CM).
      */
-	private double [] getCMVotes(double distancesSTM[], Instances stm, double distancesLTM[], Instances ltm){
+	private double [] getCMVotes(double distancesSTM[], RingBufferWindow stm, double distancesLTM[], RingBufferWindow ltm){
 		double[] distancesCM = new double[distancesSTM.length + distancesLTM.length];
 		System.arraycopy(distancesSTM, 0, distancesCM, 0, distancesSTM.length);
 		System.arraycopy(distancesLTM, 0, distancesCM, distancesSTM.length, distancesLTM.length);
@@ -417,21 +458,23 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
 		return maxVoteClass;
 	}
 
-	private int getLabelFct(double distances[], Instances instances, int startIdx, int endIdx){
+	private int getLabelFct(double distances[], RingBufferWindow instances, int startIdx, int endIdx){
 		int nnIndices[] = nArgMin(Math.min(this.kOption.getValue(), distances.length), distances, startIdx, endIdx);
 		double votes[] = getDistanceWeightedVotes(distances, nnIndices, instances);
 		return this.getClassFromVotes(votes);
 	}
 
     /**
-     * Returns the Euclidean distance.
+     * Returns the Euclidean distance between the input attributes of two rows.
      */
-	private double getDistance(Instance sample, Instance sample2)
+	private double getDistance(double[] values, int offset, double[] values2, int offset2, int numAttributes, int classIndex)
     {
         double sum=0;
-        for (int i=0; i<sample.numInputAttributes(); i++)
+        for (int i=0; i<numAttributes; i++)
         {
-            double diff = sample.valueInputAttribute(i)-sample2.valueInputAttribute(i);
+            if (i == classIndex)
+                continue;
+            double diff = values[offset+i]-values2[offset2+i];
             sum += diff*diff;
         }
         return Math.sqrt(sum);
@@ -440,10 +483,29 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
     /**
      * Returns the Euclidean distance between one sample and a collection of samples in an 1D-array.
      */
-	private double[] get1ToNDistances(Instance sample, Instances samples){
-		double distances[] = new double[samples.numInstances()];
-		for (int i=0; i<samples.numInstances(); i++){
-			distances[i] = this.getDistance(sample, samples.get(i));
+	private double[] get1ToNDistances(Instance sample, RingBufferWindow samples){
+		int numAttributes = samples.numAttributes();
+		double values[] = new double[numAttributes];
+		for (int i=0; i<numAttributes; i++){
+			values[i] = sample.value(i);
+		}
+		return get1ToNDistances(values, 0, samples);
+	}
+
+    /**
+     * Returns the Euclidean distance between a row of a memory and a collection of samples in an 1D-array.
+     */
+	private double[] get1ToNDistances(RingBufferWindow memory, int index, RingBufferWindow samples){
+		return get1ToNDistances(memory.values(), memory.offset(index), samples);
+	}
+
+	private double[] get1ToNDistances(double[] values, int offset, RingBufferWindow samples){
+		int numAttributes = samples.numAttributes();
+		int classIndex = samples.classIndex();
+		double rows[] = samples.values();
+		double distances[] = new double[samples.size()];
+		for (int i=0; i<samples.size(); i++){
+			distances[i] = this.getDistance(values, offset, rows, samples.offset(i), numAttributes, classIndex);
 		}
 		return distances;
 	}
@@ -495,19 +557,19 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
     /**
      * Creates a prediction history incrementally by using the previous predictions.
      */
-	private List<Integer> getIncrementalTestTrainPredHistory(Instances instances, int startIdx, List<Integer> predictionHistory){
-		for (int i= startIdx + this.kOption.getValue() + predictionHistory.size(); i < instances.numInstances(); i++){
-			predictionHistory.add((this.getLabelFct(distanceMatrixSTM[i], instances, startIdx,  i-1)==instances.get(i).classValue()) ? 1 : 0);
+	private List<Integer> getIncrementalTestTrainPredHistory(RingBufferWindow instances, int startIdx, List<Integer> predictionHistory){
+		for (int i= startIdx + this.kOption.getValue() + predictionHistory.size(); i < instances.size(); i++){
+			predictionHistory.add((this.getLabelFct(distanceMatrixSTM[i], instances, startIdx,  i-1)==instances.classValue(i)) ? 1 : 0);
 		}
 		return predictionHistory;
 	}
     /**
      * Creates a prediction history from the scratch.
      */
-	private List<Integer> getTestTrainPredHistory(Instances instances, int startIdx){
+	private List<Integer> getTestTrainPredHistory(RingBufferWindow instances, int startIdx){
 		List<Integer> predictionHistory = new ArrayList<>();
-		for (int i= startIdx + this.kOption.getValue(); i < instances.numInstances(); i++){
-			predictionHistory.add((this.getLabelFct(distanceMatrixSTM[i], instances, startIdx, i-1)==instances.get(i).classValue()) ? 1 : 0);
+		for (int i= startIdx + this.kOption.getValue(); i < instances.size(); i++){
+			predictionHistory.add((this.getLabelFct(distanceMatrixSTM[i], instances, startIdx, i-1)==instances.classValue(i)) ? 1 : 0);
 		}
 		return predictionHistory;
 	}
@@ -516,7 +578,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
      */
 	private int getMinErrorRateWindowSize() {
 
-		int numSamples = this.stm.numInstances();
+		int numSamples = this.stm.size();
 		if (numSamples < 2 * this.minSTMSizeOption.getValue()) {
 			return numSamples;
 		} else {
@@ -567,7 +629,7 @@ public class SAMkNN extends AbstractClassifier implements MultiClassClassifier,
      * Returns the window size with the minimum Interleaved test-train error, using bisection (without recalculation using an incremental approximation).
      */
 	private int getMinErrorRateWindowSizeIncremental() {
-		int numSamples = this.stm.numInstances();
+		int numSamples = this.stm.size();
 		if (numSamples < 2 * this.minSTMSizeOption.getValue()) {
 			return numSamples;
 		} else {
@@ -17,7 +17,6 @@
  */
 package moa.classifiers.lazy;
 
-import java.io.StringReader;
 import java.util.Arrays;
 
 import com.github.javacliparser.FlagOption;
@@ -25,9 +24,11 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.Regressor;
 import moa.classifiers.lazy.neighboursearch.KDTree;
-import moa.classifiers.lazy.neighboursearch.LinearNNSearch;
 import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+import moa.classifiers.lazy.neighboursearch.RingBufferNNSearch;
+import moa.classifiers.lazy.neighboursearch.RingBufferWindow;
 import moa.core.Measurement;
+import moa.core.SizeOf;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
@@ -70,13 +71,17 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
         return "kNN: special.";
     }
 
-    protected Instances window; 
+    /** The stored instances, as primitive rows in a ring buffer. */
+    protected RingBufferWindow window;
+
+    /** The brute force search bound to the window, kept across calls. */
+    protected RingBufferNNSearch search;
 
 	@Override
 	public void setModelContext(InstancesHeader context) {
 		try {
-			this.window = new Instances(context,0); //new StringReader(context.toString())
-			this.window.setClassIndex(context.classIndex());
+			this.window = newWindow(context);
+			this.search = new RingBufferNNSearch(this.window);
 		} catch(Exception e) {
 			System.err.println("Error: no Model Context available.");
 			e.printStackTrace();
@@ -84,9 +89,20 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 		}
 	}
 
+	/**
+	 * Creates the window that stores the training instances.
+	 *
+	 * @param header the header of the instances
+	 * @return the empty window
+	 */
+	protected RingBufferWindow newWindow(Instances header) {
+		return new RingBufferWindow(header, this.limitOption.getValue());
+	}
+
     @Override
     public void resetLearningImpl() {
 		this.window = null;
+		this.search = null;
     }
 
     @Override
@@ -94,10 +110,8 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 		if (inst.classValue() > C)
 			C = (int)inst.classValue();
 		if (this.window == null) {
-			this.window = new Instances(inst.dataset());
-		}
-		if (this.limitOption.getValue() <= this.window.numInstances()) {
-			this.window.delete(0);
+			this.window = newWindow(inst.dataset());
+			this.search = new RingBufferNNSearch(this.window);
 		}
 		this.window.add(inst);
     }
@@ -105,31 +119,40 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 	@Override
     public double[] getVotesForInstance(Instance inst) {
 		double v[] = new double[C+1];
+		if (this.window == null) {
+			return new double[inst.numClasses()];
+		}
 		try {
-			NearestNeighbourSearch search;
-			if (this.nearestNeighbourSearchOption.getChosenIndex()== 0) {
-				search = new LinearNNSearch(this.window);  
-			} else {
-				search = new KDTree();
-				search.setInstances(this.window);
-			}	
-			if (this.window.numInstances()>0) {	
-				Instances neighbours = search.kNearestNeighbours(inst,Math.min(kOption.getValue(),this.window.numInstances()));
+			if (this.window.size()>0) {
+				int k = Math.min(kOption.getValue(),this.window.size());
+				double[] neighbours;
+				if (this.nearestNeighbourSearchOption.getChosenIndex()== 0) {
+					int[] indices = this.search.kNearestNeighbourIndices(inst, k);
+					neighbours = new double[indices.length];
+					for (int i = 0; i < indices.length; i++) {
+						neighbours[i] = this.window.classValue(indices[i]);
+					}
+				} else {
+					NearestNeighbourSearch kdTree = new KDTree();
+					kdTree.setInstances(this.window.toInstances());
+					Instances found = kdTree.kNearestNeighbours(inst, k);
+					neighbours = new double[found.numInstances()];
+					for (int i = 0; i < neighbours.length; i++) {
+						neighbours[i] = found.instance(i).classValue();
+					}
+				}
 				//================== Regression ====================
 				if(inst.classAttribute().isNumeric()){
 					double[] result = new double[1];
 					// For storing the sum of class values of all the k nearest neighbours
 					double sum = 0;
 					// For storing the number of the nearest neighbours
-					int num = neighbours.numInstances();
+					int num = neighbours.length;
 					//================== Median ====================
 					if(medianOption.isSet()){
 						// For storing every neighbour's class value
-						double[] classValues = new double[num];
+						double[] classValues = neighbours.clone();
 
-						for(int i=0;i<num;i++){
-							classValues[i] = neighbours.instance(i).classValue();
-						}
 						// Sort the class values
 						Arrays.sort(classValues);
 						// Assign the median value into result
@@ -143,7 +166,7 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 					}else{
 						//================== Mean ==================
 						for(int i=0;i<num;i++){
-							sum += neighbours.instance(i).classValue();
+							sum += neighbours[i];
 						}
 						// Calculate the mean of all k nearest neighbours' class values
 						result[0] = sum / num;
@@ -152,8 +175,8 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 					}
 					//============= End of Regression ==============
 				}else{
-					for (int i = 0; i < neighbours.numInstances(); i++) {
-						v[(int) neighbours.instance(i).classValue()]++;
+					for (int i = 0; i < neighbours.length; i++) {
+						v[(int) neighbours[i]]++;
 					}
 				}
 			}
@@ -166,6 +189,15 @@ public class kNN extends AbstractClassifier implements MultiClassClassifier, Reg
 		return v;
     }
 
+    @Override
+    public int measureByteSize() {
+        long size = SizeOf.shallowSizeOf(this) + measureOptionsByteSize();
+        if (this.window != null) {
+            size += this.window.measureByteSize() + this.search.measureByteSize();
+        }
+        return (int) size;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -18,7 +18,8 @@
 package moa.classifiers.lazy;
 
 import moa.classifiers.MultiClassClassifier;
-import moa.classifiers.core.driftdetection.ADWIN;
+import moa.classifiers.lazy.neighboursearch.RingBufferNNSearch;
+import moa.classifiers.lazy.neighboursearch.RingBufferWindow;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
@@ -46,9 +47,15 @@ public class kNNwithPAW extends kNN implements MultiClassClassifier {
 
     protected double prob;
 
+    @Override
+    protected RingBufferWindow newWindow(Instances header) {
+        return new RingBufferWindow(header, Integer.MAX_VALUE);
+    }
+
     @Override
     public void resetLearningImpl() {
         this.window = null;
+        this.search = null;
         this.prob = Math.pow(2.0, -1.0 / this.limitOption.getValue());
     }
 
@@ -58,12 +65,13 @@ public class kNNwithPAW extends kNN implements MultiClassClassifier {
             C = (int) inst.classValue();
         }
         if (this.window == null) {
-            this.window = new Instances(inst.dataset());
+            this.window = newWindow(inst.dataset());
+            this.search = new RingBufferNNSearch(this.window);
         }
 
         for (int i = 0; i < this.window.size(); i++) {
             if (this.classifierRandom.nextDouble() > this.prob) {
-                this.window.delete(i);
+                this.window.remove(i);
             }
         }
         this.window.add(inst);
@@ -17,10 +17,11 @@
  */
 package moa.classifiers.lazy;
 
-import java.util.ArrayList;
-
 import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.core.driftdetection.ADWIN;
+import moa.classifiers.lazy.neighboursearch.RingBufferNNSearch;
+import moa.classifiers.lazy.neighboursearch.RingBufferWindow;
+import moa.core.SizeOf;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
@@ -43,8 +44,6 @@ public class kNNwithPAWandADWIN extends kNN implements MultiClassClassifier {
 
     protected int marker = 0;
 
-    protected ArrayList<Integer> timeStamp;
-
     @Override
     public String getPurposeString() {
         return "kNNwithPAWandADWIN: kNN with Probabilistic Approximate Window and ADWIN";
@@ -52,9 +51,15 @@ public class kNNwithPAWandADWIN extends kNN implements MultiClassClassifier {
 
     protected double prob;
 
+    @Override
+    protected RingBufferWindow newWindow(Instances header) {
+        return new RingBufferWindow(header, Integer.MAX_VALUE);
+    }
+
     @Override
     public void resetLearningImpl() {
         this.window = null;
+        this.search = null;
         this.adwin = new ADWIN();
         this.prob = Math.pow(2.0, -1.0 / this.limitOption.getValue());
         this.time = 0;
@@ -69,35 +74,35 @@ public class kNNwithPAWandADWIN extends kNN implements MultiClassClassifier {
         }
         // ADWIN
         if (this.window == null) {
-            this.window = new Instances(inst.dataset());
+            this.window = newWindow(inst.dataset());
+            this.search = new RingBufferNNSearch(this.window);
         }
 
-        if (this.timeStamp == null) {
-            this.timeStamp = new ArrayList<Integer>(10);
-        }
         for (int i = 0; i < this.window.size(); i++) {
             if (this.classifierRandom.nextDouble() > this.prob) {
-                this.window.delete(i);
-                this.timeStamp.remove(i);
+                this.window.remove(i);
             }
         }
         this.window.add(inst);
-        this.timeStamp.add(this.time);
         this.time++;
         boolean correctlyClassifies = this.correctlyClassifies(inst);
         if (this.adwin.setInput(correctlyClassifies ? 0 : 1)) {
             //Change
             int size = (int) this.adwin.getWidth();
             for (int i = 0; i < this.window.size(); i++) {
-                if (this.timeStamp.get(i) < this.time - size) {
-                    this.window.delete(i);
-                    this.timeStamp.remove(i);
+                if (this.window.stamp(i) < this.window.numAdded() - size) {
+                    this.window.remove(i);
                 }
             }
         }
 
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (super.measureByteSize() + SizeOf.estimatedFullSizeOf(this.adwin));
+    }
+
     @Override
     public void getModelDescription(StringBuilder out, int indent) {
     }
@@ -0,0 +1,318 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    RingBufferNNSearch.java
+ *    Copyright (C) 2023 University of Waikato
+ */
+
+package moa.classifiers.lazy.neighboursearch;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.core.SizeOf;
+
+/**
+ * Brute force nearest neighbour search over the rows of a
+ * {@link RingBufferWindow}. The search is bound to the window once and follows
+ * its insertions and evictions without any rebuilding: the attribute ranges
+ * used for normalisation are maintained by the window, and the distances are
+ * computed directly on the primitive rows, abandoning a row as soon as its
+ * partial distance exceeds the current k-th nearest one.<p/>
+ *
+ * Distances and neighbours (including ties at the k-th distance) are the same
+ * as those of {@link LinearNNSearch} with a normalised
+ * {@link EuclideanDistance}.
+ *
+ * @version $Revision$
+ */
+public class RingBufferNNSearch
+  extends NearestNeighbourSearch {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 6120953651457722018L;
+
+  /** the window to search. */
+  protected RingBufferWindow m_Window;
+
+  /** the distances of the neighbours found by the last search. */
+  protected double[] m_Distances;
+
+  /** the normalised values of the target, reused between searches. */
+  protected double[] m_Target = new double[0];
+
+  /** whether the values of the target are missing. */
+  protected boolean[] m_TargetMissing = new boolean[0];
+
+  /**
+   * Constructor that uses the supplied window.
+   *
+   * @param window	the window to search
+   */
+  public RingBufferNNSearch(RingBufferWindow window) {
+    super();
+    m_Window = window;
+  }
+
+  /**
+   * Returns a string describing this nearest neighbour search algorithm.
+   *
+   * @return 		a description of the algorithm
+   */
+  @Override
+  public String globalInfo() {
+    return
+        "Class implementing the brute force search algorithm for nearest "
+      + "neighbour search over a ring buffer window of primitive rows.";
+  }
+
+  /**
+   * Returns the window that is searched.
+   *
+   * @return		the window
+   */
+  public RingBufferWindow getWindow() {
+    return m_Window;
+  }
+
+  /**
+   * Estimates the size of the search with its buffers, without the window,
+   * which is measured by its owner.
+   *
+   * @return		the estimated size in bytes
+   */
+  public long measureByteSize() {
+    return SizeOf.shallowSizeOf(this) + SizeOf.shallowSizeOf(m_Distances)
+      + SizeOf.shallowSizeOf(m_Target) + SizeOf.shallowSizeOf(m_TargetMissing);
+  }
+
+  /**
+   * Returns the positions in the window of the k nearest rows to the supplied
+   * instance, nearest first. Rows at the same distance as the k-th nearest
+   * one are included as well.
+   *
+   * @param target 	The instance to find the k nearest neighbours for.
+   * @param kNN		The number of nearest neighbours to find.
+   * @return		the positions of the neighbours in the window
+   * @throws Exception  if the neighbours could not be found.
+   */
+  public int[] kNearestNeighbourIndices(Instance target, int kNN) throws Exception {
+    RingBufferWindow window = m_Window;
+    double[][] ranges = window.getRanges();
+    int numAttributes = window.numAttributes();
+    int size = window.size();
+
+    prepareTarget(target, ranges);
+
+    MyHeap heap = new MyHeap(kNN);
+    double distance;
+    int firstkNN = 0;
+    for (int i = 0; i < size; i++) {
+      if (firstkNN < kNN) {
+        distance = distance(window.values(), window.offset(i), numAttributes, ranges, Double.POSITIVE_INFINITY);
+        heap.put(i, distance);
+        firstkNN++;
+      }
+      else {
+        MyHeapElement temp = heap.peek();
+        distance = distance(window.values(), window.offset(i), numAttributes, ranges, temp.distance);
+        if (distance < temp.distance) {
+          heap.putBySubstitute(i, distance);
+        }
+        else if (distance == temp.distance) {
+          heap.putKthNearest(i, distance);
+        }
+      }
+    }
+
+    m_Distances = new double[heap.totalSize()];
+    int[] indices = new int[heap.totalSize()];
+    int i = 1;
+    MyHeapElement h;
+    while (heap.noOfKthNearest() > 0) {
+      h = heap.getKthNearest();
+      indices[indices.length - i] = h.index;
+      m_Distances[indices.length - i] = h.distance;
+      i++;
+    }
+    while (heap.size() > 0) {
+      h = heap.get();
+      indices[indices.length - i] = h.index;
+      m_Distances[indices.length - i] = h.distance;
+      i++;
+    }
+    for (int k = 0; k < m_Distances.length; k++)
+      m_Distances[k] = Math.sqrt(m_Distances[k]);
+
+    return indices;
+  }
+
+  /**
+   * Stores the target values, normalised where applicable, for the next
+   * search.
+   *
+   * @param target	the instance to search the neighbours for
+   * @param ranges	the current attribute ranges
+   */
+  protected void prepareTarget(Instance target, double[][] ranges) {
+    int numAttributes = m_Window.numAttributes();
+    if (m_Target.length != numAttributes) {
+      m_Target        = new double[numAttributes];
+      m_TargetMissing = new boolean[numAttributes];
+    }
+    for (int j = 0; j < numAttributes; j++) {
+      double value = target.value(j);
+      m_TargetMissing[j] = Double.isNaN(value);
+      if (m_TargetMissing[j] || m_Window.isNominal(j))
+        m_Target[j] = value;
+      else
+        m_Target[j] = norm(value, ranges[j]);
+    }
+  }
+
+  /**
+   * Normalises the value to the range.
+   *
+   * @param x		the value
+   * @param range	the range of the attribute
+   * @return		the normalised value
+   */
+  protected static double norm(double x, double[] range) {
+    if (Double.isNaN(range[NormalizableDistance.R_MIN])
+        || (range[NormalizableDistance.R_MAX] == range[NormalizableDistance.R_MIN]))
+      return 0;
+    else
+      return (x - range[NormalizableDistance.R_MIN]) / range[NormalizableDistance.R_WIDTH];
+  }
+
+  /**
+   * Computes the squared distance between the prepared target and a row.
+   *
+   * @param values		the row values of the window
+   * @param offset		the offset of the row
+   * @param numAttributes	the number of attributes
+   * @param ranges		the current attribute ranges
+   * @param cutOffValue		the distance beyond which the row is abandoned
+   * @return			the squared distance, or positive infinity if
+   * 				larger than the cut-off
+   */
+  protected double distance(double[] values, int offset, int numAttributes, double[][] ranges, double cutOffValue) {
+    double[] target = m_Target;
+    boolean[] targetMissing = m_TargetMissing;
+    int classIndex = m_Window.classIndex();
+    double distance = 0;
+
+    for (int j = 0; j < numAttributes; j++) {
+      if (j == classIndex)
+        continue;
+      double val1 = target[j];
+      double val2 = values[offset + j];
+      boolean missing1 = targetMissing[j];
+      boolean missing2 = Double.isNaN(val2);
+      double diff;
+      if (m_Window.isNominal(j)) {
+        diff = (missing1 || missing2 || ((int) val1 != (int) val2)) ? 1 : 0;
+      }
+      else if (missing1 || missing2) {
+        if (missing1 && missing2) {
+          diff = 1;
+        }
+        else {
+          diff = missing2 ? val1 : norm(val2, ranges[j]);
+          if (diff < 0.5)
+            diff = 1.0 - diff;
+        }
+      }
+      else {
+        diff = val1 - norm(val2, ranges[j]);
+      }
+
+      distance += diff * diff;
+      if (distance > cutOffValue)
+        return Double.POSITIVE_INFINITY;
+    }
+
+    return distance;
+  }
+
+  /**
+   * Returns the nearest instance in the window to the supplied instance.
+   *
+   * @param target 	The instance to find the nearest neighbour for.
+   * @return		the nearest instance
+   * @throws Exception 	if the nearest neighbour could not be found.
+   */
+  @Override
+  public Instance nearestNeighbour(Instance target) throws Exception {
+    return (kNearestNeighbours(target, 1)).instance(0);
+  }
+
+  /**
+   * Returns k nearest instances in the window to the supplied instance.
+   *
+   * @param target 	The instance to find the k nearest neighbours for.
+   * @param kNN		The number of nearest neighbours to find.
+   * @return		the k nearest neighbors
+   * @throws Exception  if the neighbours could not be found.
+   */
+  @Override
+  public Instances kNearestNeighbours(Instance target, int kNN) throws Exception {
+    int[] indices = kNearestNeighbourIndices(target, kNN);
+    Instances neighbours = new Instances(m_Window.getHeader(), indices.length);
+    for (int index : indices)
+      neighbours.add(m_Window.instance(index));
+    return neighbours;
+  }
+
+  /**
+   * Returns the distances of the neighbours found by the last search.
+   *
+   * @return 		the distances, in the order of the neighbours
+   * @throws Exception 	if no search has been performed yet
+   */
+  @Override
+  public double[] getDistances() throws Exception {
+    if (m_Distances == null)
+      throw new Exception("No distances available. Please call either "
+                          + "kNearestNeighbours or nearestNeighbours first.");
+    return m_Distances;
+  }
+
+  /**
+   * Does nothing, since the window keeps the attribute ranges up to date
+   * when instances are added to it.
+   *
+   * @param ins 	the instance that was added
+   */
+  @Override
+  public void update(Instance ins) {
+  }
+
+  /**
+   * Replaces the window with one holding the given instances.
+   *
+   * @param insts 	the instances to search
+   * @throws Exception	if the window cannot be created
+   */
+  @Override
+  public void setInstances(Instances insts) throws Exception {
+    RingBufferWindow window = new RingBufferWindow(insts, Math.max(1, insts.numInstances()));
+    for (int i = 0; i < insts.numInstances(); i++)
+      window.add(insts.instance(i));
+    m_Window = window;
+    m_Instances = insts;
+  }
+}
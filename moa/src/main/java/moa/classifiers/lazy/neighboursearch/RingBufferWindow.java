@@ -0,0 +1,533 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    RingBufferWindow.java
+ *    Copyright (C) 2023 University of Waikato
+ */
+
+package moa.classifiers.lazy.neighboursearch;
+
+import java.io.Serializable;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.core.SizeOf;
+
+/**
+ * Sliding window of instances stored as contiguous rows of primitive values
+ * in a ring buffer. Adding an instance to a full window evicts the oldest row
+ * in constant time, without shifting the remaining rows. The window also
+ * keeps the per-attribute ranges used for normalised distances up to date:
+ * additions widen the ranges incrementally, and they are only recomputed
+ * when a row that defined a bound has been removed.
+ *
+ * @version $Revision$
+ */
+public class RingBufferWindow
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3102683468733432419L;
+
+  /** the initial number of rows allocated. */
+  protected static final int INITIAL_CAPACITY = 64;
+
+  /** the header of the stored instances. */
+  protected Instances m_Header;
+
+  /** the number of attributes, including the class. */
+  protected int m_NumAttributes;
+
+  /** the class index, -1 if not set. */
+  protected int m_ClassIndex;
+
+  /** whether each attribute is nominal. */
+  protected boolean[] m_Nominal;
+
+  /** the maximum number of rows in the window. */
+  protected int m_MaxSize;
+
+  /** the number of rows allocated. */
+  protected int m_Capacity;
+
+  /** the row values, m_NumAttributes per row. */
+  protected double[] m_Values;
+
+  /** the instance weights, one per row. */
+  protected double[] m_Weights;
+
+  /** the time stamps (order of insertion), one per row. */
+  protected long[] m_Stamps;
+
+  /** the slot of the oldest row. */
+  protected int m_Start;
+
+  /** the number of rows in the window. */
+  protected int m_Size;
+
+  /** the number of rows added so far. */
+  protected long m_NumAdded;
+
+  /** the ranges of the attributes, in the layout of NormalizableDistance. */
+  protected double[][] m_Ranges;
+
+  /** whether the ranges reflect the current content of the window. */
+  protected boolean m_RangesValid;
+
+  /**
+   * Creates an empty window.
+   *
+   * @param header	the header of the instances to store
+   * @param maxSize	the maximum number of instances to keep
+   */
+  public RingBufferWindow(Instances header, int maxSize) {
+    m_Header        = header;
+    m_NumAttributes = header.numAttributes();
+    m_ClassIndex    = header.classIndex();
+    m_Nominal       = new boolean[m_NumAttributes];
+    for (int i = 0; i < m_NumAttributes; i++)
+      m_Nominal[i] = header.attribute(i).isNominal();
+    m_MaxSize  = maxSize;
+    m_Capacity = Math.max(1, Math.min(maxSize, INITIAL_CAPACITY));
+    m_Values   = new double[m_Capacity * m_NumAttributes];
+    m_Weights  = new double[m_Capacity];
+    m_Stamps   = new long[m_Capacity];
+    m_Ranges   = new double[m_NumAttributes][3];
+    clear();
+  }
+
+  /**
+   * Removes all rows from the window.
+   */
+  public void clear() {
+    m_Start = 0;
+    m_Size  = 0;
+    resetRanges();
+  }
+
+  /**
+   * Resets the ranges to those of an empty window.
+   */
+  protected void resetRanges() {
+    for (int j = 0; j < m_NumAttributes; j++) {
+      m_Ranges[j][NormalizableDistance.R_MIN]   = Double.POSITIVE_INFINITY;
+      m_Ranges[j][NormalizableDistance.R_MAX]   = -Double.POSITIVE_INFINITY;
+      m_Ranges[j][NormalizableDistance.R_WIDTH] = Double.POSITIVE_INFINITY;
+    }
+    m_RangesValid = true;
+  }
+
+  /**
+   * Returns the header of the stored instances.
+   *
+   * @return		the header
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the number of attributes per row, including the class.
+   *
+   * @return		the number of attributes
+   */
+  public int numAttributes() {
+    return m_NumAttributes;
+  }
+
+  /**
+   * Returns the class index.
+   *
+   * @return		the class index
+   */
+  public int classIndex() {
+    return m_ClassIndex;
+  }
+
+  /**
+   * Returns whether the attribute is nominal.
+   *
+   * @param attIndex	the attribute index
+   * @return		true if nominal
+   */
+  public boolean isNominal(int attIndex) {
+    return m_Nominal[attIndex];
+  }
+
+  /**
+   * Returns the number of rows in the window.
+   *
+   * @return		the number of rows
+   */
+  public int size() {
+    return m_Size;
+  }
+
+  /**
+   * Returns the maximum number of rows in the window.
+   *
+   * @return		the maximum size
+   */
+  public int maxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the number of rows added since the window was created.
+   *
+   * @return		the number of rows added
+   */
+  public long numAdded() {
+    return m_NumAdded;
+  }
+
+  /**
+   * Appends the instance as newest row, evicting the oldest row if the window
+   * is full.
+   *
+   * @param inst	the instance to add
+   * @return		true if a row was evicted
+   */
+  public boolean add(Instance inst) {
+    boolean evicted = makeRoom();
+    int slot = (m_Start + m_Size) % m_Capacity;
+    int offset = slot * m_NumAttributes;
+    for (int j = 0; j < m_NumAttributes; j++)
+      m_Values[offset + j] = inst.value(j);
+    append(slot, inst.weight());
+    return evicted;
+  }
+
+  /**
+   * Appends a row of values as newest row, evicting the oldest row if the
+   * window is full.
+   *
+   * @param values	the array holding the values of all attributes
+   * @param offset	the offset of the first value in the array
+   * @param weight	the weight of the row
+   * @return		true if a row was evicted
+   */
+  public boolean add(double[] values, int offset, double weight) {
+    boolean evicted = makeRoom();
+    int slot = (m_Start + m_Size) % m_Capacity;
+    System.arraycopy(values, offset, m_Values, slot * m_NumAttributes, m_NumAttributes);
+    append(slot, weight);
+    return evicted;
+  }
+
+  /**
+   * Appends the row at the given position of another window with the same
+   * header, evicting the oldest row if this window is full.
+   *
+   * @param other	the window to copy the row from
+   * @param index	the position of the row in the other window
+   * @return		true if a row was evicted
+   */
+  public boolean add(RingBufferWindow other, int index) {
+    return add(other.values(), other.offset(index), other.weight(index));
+  }
+
+  /**
+   * Evicts the oldest row if the window is full, or grows the buffer if all
+   * allocated rows are in use.
+   *
+   * @return		true if a row was evicted
+   */
+  protected boolean makeRoom() {
+    if (m_Size == m_MaxSize) {
+      removeOldest();
+      return true;
+    }
+    if (m_Size == m_Capacity)
+      grow();
+    return false;
+  }
+
+  /**
+   * Completes the addition of the row whose values have been written to the
+   * slot after the newest row.
+   *
+   * @param slot	the slot of the new row
+   * @param weight	the weight of the row
+   */
+  protected void append(int slot, double weight) {
+    int offset = slot * m_NumAttributes;
+    for (int j = 0; j < m_NumAttributes; j++) {
+      double value = m_Values[offset + j];
+      if (!Double.isNaN(value))
+        widenRange(j, value);
+    }
+    m_Weights[slot] = weight;
+    m_Stamps[slot]  = m_NumAdded++;
+    m_Size++;
+  }
+
+  /**
+   * Removes the oldest row.
+   */
+  public void removeOldest() {
+    if (m_Size == 0)
+      return;
+    checkRanges(m_Start);
+    m_Start = (m_Start + 1) % m_Capacity;
+    m_Size--;
+  }
+
+  /**
+   * Removes the row at the given position, 0 being the oldest row. The older
+   * or the newer part of the window is moved, whichever is shorter.
+   *
+   * @param index	the position of the row
+   */
+  public void remove(int index) {
+    if ((index < 0) || (index >= m_Size))
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_Size);
+    if (index == 0) {
+      removeOldest();
+      return;
+    }
+
+    checkRanges(slot(index));
+    if (index < m_Size / 2) {
+      for (int i = index; i > 0; i--)
+        copyRow(slot(i - 1), slot(i));
+      m_Start = (m_Start + 1) % m_Capacity;
+    }
+    else {
+      for (int i = index; i < m_Size - 1; i++)
+        copyRow(slot(i + 1), slot(i));
+    }
+    m_Size--;
+  }
+
+  /**
+   * Returns the slot in the buffer of the row at the given position.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the slot
+   */
+  protected int slot(int index) {
+    int slot = m_Start + index;
+    return (slot >= m_Capacity) ? slot - m_Capacity : slot;
+  }
+
+  /**
+   * Returns the offset of the row at the given position in the array returned
+   * by {@link #values()}.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the offset of the first attribute value
+   */
+  public int offset(int index) {
+    return slot(index) * m_NumAttributes;
+  }
+
+  /**
+   * Returns the backing array with the row values. Use {@link #offset(int)}
+   * to locate a row; the array is replaced when the window grows.
+   *
+   * @return		the values
+   */
+  public double[] values() {
+    return m_Values;
+  }
+
+  /**
+   * Returns the value of an attribute of the row at the given position.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @param attIndex	the attribute index
+   * @return		the value
+   */
+  public double value(int index, int attIndex) {
+    return m_Values[offset(index) + attIndex];
+  }
+
+  /**
+   * Returns the class value of the row at the given position.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the class value
+   */
+  public double classValue(int index) {
+    return m_Values[offset(index) + m_ClassIndex];
+  }
+
+  /**
+   * Returns the weight of the row at the given position.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the weight
+   */
+  public double weight(int index) {
+    return m_Weights[slot(index)];
+  }
+
+  /**
+   * Returns the time stamp of the row at the given position, i.e., the number
+   * of rows that had been added before it.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the time stamp
+   */
+  public long stamp(int index) {
+    return m_Stamps[slot(index)];
+  }
+
+  /**
+   * Creates an instance from the row at the given position.
+   *
+   * @param index	the position of the row, 0 being the oldest
+   * @return		the instance
+   */
+  public Instance instance(int index) {
+    double[] values = new double[m_NumAttributes];
+    System.arraycopy(m_Values, offset(index), values, 0, m_NumAttributes);
+    Instance result = new DenseInstance(weight(index), values);
+    result.setDataset(m_Header);
+    return result;
+  }
+
+  /**
+   * Creates a dataset from the rows, oldest first.
+   *
+   * @return		the dataset
+   */
+  public Instances toInstances() {
+    Instances result = new Instances(m_Header, m_Size);
+    for (int i = 0; i < m_Size; i++)
+      result.add(instance(i));
+    return result;
+  }
+
+  /**
+   * Returns the ranges of the attributes over the rows in the window, in the
+   * layout used by {@link NormalizableDistance}.
+   *
+   * @return		the ranges, not to be modified
+   */
+  public double[][] getRanges() {
+    if (!m_RangesValid)
+      recomputeRanges();
+    return m_Ranges;
+  }
+
+  /**
+   * Estimates the size of the window with its allocated rows and ranges. The
+   * header is not counted, it is shared with the model context.
+   *
+   * @return		the estimated size in bytes
+   */
+  public long measureByteSize() {
+    long size = SizeOf.shallowSizeOf(this) + SizeOf.shallowSizeOf(m_Nominal)
+      + SizeOf.shallowSizeOf(m_Values) + SizeOf.shallowSizeOf(m_Weights)
+      + SizeOf.shallowSizeOf(m_Stamps) + SizeOf.shallowSizeOf(m_Ranges);
+    for (double[] range : m_Ranges)
+      size += SizeOf.shallowSizeOf(range);
+    return size;
+  }
+
+  /**
+   * Doubles the number of allocated rows, unrolling the ring.
+   */
+  protected void grow() {
+    int capacity = (int) Math.min((long) m_MaxSize, 2L * m_Capacity);
+    double[] values = new double[capacity * m_NumAttributes];
+    double[] weights = new double[capacity];
+    long[] stamps = new long[capacity];
+    for (int i = 0; i < m_Size; i++) {
+      int slot = slot(i);
+      System.arraycopy(m_Values, slot * m_NumAttributes, values, i * m_NumAttributes, m_NumAttributes);
+      weights[i] = m_Weights[slot];
+      stamps[i]  = m_Stamps[slot];
+    }
+    m_Values   = values;
+    m_Weights  = weights;
+    m_Stamps   = stamps;
+    m_Capacity = capacity;
+    m_Start    = 0;
+  }
+
+  /**
+   * Copies a row from one slot to another.
+   *
+   * @param from	the source slot
+   * @param to		the target slot
+   */
+  protected void copyRow(int from, int to) {
+    System.arraycopy(m_Values, from * m_NumAttributes, m_Values, to * m_NumAttributes, m_NumAttributes);
+    m_Weights[to] = m_Weights[from];
+    m_Stamps[to]  = m_Stamps[from];
+  }
+
+  /**
+   * Widens the range of the attribute to include the value.
+   *
+   * @param attIndex	the attribute index
+   * @param value	the (non-missing) value
+   */
+  protected void widenRange(int attIndex, double value) {
+    double[] range = m_Ranges[attIndex];
+    if (value < range[NormalizableDistance.R_MIN]) {
+      range[NormalizableDistance.R_MIN] = value;
+      if (value > range[NormalizableDistance.R_MAX])
+        range[NormalizableDistance.R_MAX] = value;
+      range[NormalizableDistance.R_WIDTH] = range[NormalizableDistance.R_MAX] - range[NormalizableDistance.R_MIN];
+    }
+    else if (value > range[NormalizableDistance.R_MAX]) {
+      range[NormalizableDistance.R_MAX] = value;
+      range[NormalizableDistance.R_WIDTH] = range[NormalizableDistance.R_MAX] - range[NormalizableDistance.R_MIN];
+    }
+  }
+
+  /**
+   * Invalidates the ranges if the row in the slot, which is about to be
+   * removed, lies on the bound of any attribute range.
+   *
+   * @param slot	the slot of the row
+   */
+  protected void checkRanges(int slot) {
+    if (!m_RangesValid)
+      return;
+    int offset = slot * m_NumAttributes;
+    for (int j = 0; j < m_NumAttributes; j++) {
+      double value = m_Values[offset + j];
+      if ((value == m_Ranges[j][NormalizableDistance.R_MIN])
+          || (value == m_Ranges[j][NormalizableDistance.R_MAX])) {
+        m_RangesValid = false;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Recomputes the ranges from all rows in the window.
+   */
+  protected void recomputeRanges() {
+    resetRanges();
+    for (int i = 0; i < m_Size; i++) {
+      int offset = offset(i);
+      for (int j = 0; j < m_NumAttributes; j++) {
+        double value = m_Values[offset + j];
+        if (!Double.isNaN(value))
+          widenRange(j, value);
+      }
+    }
+    m_RangesValid = true;
+  }
+}
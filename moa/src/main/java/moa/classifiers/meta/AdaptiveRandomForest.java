@@ -20,6 +20,8 @@ package moa.classifiers.meta;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
+import java.util.List;
+
 import moa.capabilities.CapabilitiesHandler;
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
@@ -30,22 +32,18 @@ import moa.core.DoubleVector;
 import moa.core.InstanceExample;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.SizeOf;
 import moa.options.ClassOption;
 
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.concurrent.Callable;
-
 import moa.classifiers.trees.ARFHoeffdingTree;
 import moa.evaluation.BasicClassificationPerformanceEvaluator;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import moa.AbstractMOAObject;
+import moa.classifiers.core.EnsembleExecutor;
 import moa.classifiers.core.driftdetection.ChangeDetector;
 
 
@@ -73,7 +71,7 @@ import moa.classifiers.core.driftdetection.ChangeDetector;
  * <li>-m : Number of features allowed considered for each split. Negative 
  * values corresponds to M - m</li>
  * <li>-a : The lambda value for bagging (lambda=6 corresponds to levBag)</li>
- * <li>-j : Number of threads to be used for training</li>
+ * <li>-j : Number of threads to be used for training and prediction</li>
  * <li>-x : Change detector for drifts and its parameters</li>
  * <li>-p : Change detector for warnings (start training bkg learner)</li>
  * <li>-w : Should use weighted voting?</li>
@@ -143,7 +141,8 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
     protected int subspaceSize;
     protected BasicClassificationPerformanceEvaluator evaluator;
 
-    private ExecutorService executor;
+    // Runs voting and training of the members, in-place for SINGLE_THREAD and 1 job.
+    protected EnsembleExecutor executor;
     
     @Override
     public void resetLearningImpl() {
@@ -154,15 +153,9 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         this.evaluator = new BasicClassificationPerformanceEvaluator();
         
         // Multi-threading
-        int numberOfJobs;
-        if(this.numberOfJobsOption.getValue() == -1) 
-            numberOfJobs = Runtime.getRuntime().availableProcessors();
-        else 
-            numberOfJobs = this.numberOfJobsOption.getValue();
-        // SINGLE_THREAD and requesting for only 1 thread are equivalent. 
-        // this.executor will be null and not used...
-        if(numberOfJobs != AdaptiveRandomForest.SINGLE_THREAD && numberOfJobs != 1)
-            this.executor = Executors.newFixedThreadPool(numberOfJobs);
+        if(this.executor != null)
+            this.executor.shutdown();
+        this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -171,30 +164,55 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         if(this.ensemble == null) 
             initEnsemble(instance);
         
-        Collection<TrainingRunnable> trainers = new ArrayList<TrainingRunnable>();
-        for (int i = 0 ; i < this.ensemble.length ; i++) {
-            DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
-            InstanceExample example = new InstanceExample(instance);
-            this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
-            int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
-            if (k > 0) {
-                if(this.executor != null) {
-                    TrainingRunnable trainer = new TrainingRunnable(this.ensemble[i], 
-                        instance, k, this.instancesSeen);
-                    trainers.add(trainer);
-                }
-                else { // SINGLE_THREAD is in-place... 
-                    this.ensemble[i].trainOnInstance(instance, k, this.instancesSeen);
-                }
-            }
-        }
-        if(this.executor != null) {
-            try {
-                this.executor.invokeAll(trainers);
-            } catch (InterruptedException ex) {
-                throw new RuntimeException("Could not call invokeAll() on training threads.");
-            }
-        }
+        // The weights are drawn upfront, in member order, so that the random 
+        // sequence does not depend on the number of threads.
+        final int[] weights = new int[this.ensemble.length];
+        for (int i = 0 ; i < this.ensemble.length ; i++)
+            weights[i] = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+        
+        final long seen = this.instancesSeen;
+        this.executor.forEachMember(this.ensemble.length,
+                i -> trainMember(i, instance, weights[i], seen));
+    }
+
+    /**
+     * Trains on a batch of instances. Each member goes through the whole batch
+     * on its own, so with multiple threads the members are only handed out
+     * once per batch instead of once per instance. The outcome is the same as
+     * training on one instance at a time.
+     */
+    @Override
+    public void trainOnInstances(List<Instance> instances) {
+        final List<Instance> batch = selectTrainingInstances(instances);
+        if (batch.isEmpty())
+            return;
+        ++this.instancesSeen;
+        if(this.ensemble == null)
+            initEnsemble(batch.get(0));
+        final long firstSeen = this.instancesSeen;
+        this.instancesSeen += batch.size() - 1;
+
+        final int[][] weights = new int[batch.size()][this.ensemble.length];
+        for (int b = 0 ; b < batch.size() ; b++)
+            for (int i = 0 ; i < this.ensemble.length ; i++)
+                weights[b][i] = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+
+        this.executor.forEachMember(this.ensemble.length, i -> {
+            for (int b = 0 ; b < batch.size() ; b++)
+                trainMember(i, batch.get(b), weights[b][i], firstSeen + b);
+        });
+    }
+
+    /**
+     * Evaluates a member on the instance (for its weighted vote) and then 
+     * trains it on the instance, if its weight is above 0.
+     */
+    protected void trainMember(int index, Instance instance, int weight, long instancesSeen) {
+        DoubleVector vote = new DoubleVector(this.ensemble[index].getVotesForInstance(instance));
+        InstanceExample example = new InstanceExample(instance);
+        this.ensemble[index].evaluator.addResult(example, vote.getArrayRef());
+        if (weight > 0)
+            this.ensemble[index].trainOnInstance(instance, weight, instancesSeen);
     }
 
     @Override
@@ -202,9 +220,8 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         Instance testInstance = instance.copy();
         if(this.ensemble == null) 
             initEnsemble(testInstance);
-        DoubleVector combinedVote = new DoubleVector();
 
-        for(int i = 0 ; i < this.ensemble.length ; ++i) {
+        DoubleVector combinedVote = this.executor.combineVotes(this.ensemble.length, i -> {
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(testInstance));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
@@ -214,9 +231,10 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                         vote.setValue(v, vote.getValue(v) * acc);
                     }
                 }
-                combinedVote.addValues(vote);
+                return vote.getArrayRef();
             }
-        }
+            return null;
+        });
         return combinedVote.getArrayRef();
     }
 
@@ -229,6 +247,13 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
     public void getModelDescription(StringBuilder arg0, int arg1) {
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.ensemble)
+                + SizeOf.estimatedFullSizeOf(this.evaluator));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -379,7 +404,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
             init(indexOriginal, instantiatedClassifier, evaluatorInstantiated, instancesSeen, useBkgLearner, useDriftDetector, driftOption, warningOption, isBackgroundLearner);
         }
 
-        public void reset() {
+        public void reset(long instancesSeen) {
             if(this.useBkgLearner && this.bkgLearner != null) {
                 this.classifier = this.bkgLearner.classifier;
                 
@@ -442,7 +467,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                 if(this.driftDetectionMethod.getChange()) {
                     this.lastDriftOn = instancesSeen;
                     this.numberOfDriftsDetected++;
-                    this.reset();
+                    this.reset(instancesSeen);
                 }
             }
         }
@@ -453,36 +478,16 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         }
 
         @Override
-        public void getDescription(StringBuilder sb, int indent) {
-        }
-    }
-    
-    /***
-     * Inner class to assist with the multi-thread execution. 
-     */
-    protected class TrainingRunnable implements Runnable, Callable<Integer> {
-        final private ARFBaseLearner learner;
-        final private Instance instance;
-        final private double weight;
-        final private long instancesSeen;
-
-        public TrainingRunnable(ARFBaseLearner learner, Instance instance, 
-                double weight, long instancesSeen) {
-            this.learner = learner;
-            this.instance = instance;
-            this.weight = weight;
-            this.instancesSeen = instancesSeen;
-        }
-
-        @Override
-        public void run() {
-            learner.trainOnInstance(this.instance, this.weight, this.instancesSeen);
+        public int measureByteSize() {
+            return (int) (SizeOf.shallowSizeOf(this) + SizeOf.estimatedFullSizeOf(this.classifier)
+                    + SizeOf.estimatedFullSizeOf(this.driftDetectionMethod)
+                    + SizeOf.estimatedFullSizeOf(this.warningDetectionMethod)
+                    + SizeOf.estimatedFullSizeOf(this.bkgLearner)
+                    + SizeOf.estimatedFullSizeOf(this.evaluator));
         }
 
         @Override
-        public Integer call() {
-            run();
-            return 0;
+        public void getDescription(StringBuilder sb, int indent) {
         }
     }
 }
@@ -21,9 +21,11 @@ import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
 import com.yahoo.labs.samoa.instances.Instance;
+import java.util.List;
 import moa.AbstractMOAObject;
 import moa.classifiers.Regressor;
 import moa.classifiers.AbstractClassifier;
+import moa.classifiers.core.EnsembleExecutor;
 import moa.classifiers.core.driftdetection.ChangeDetector;
 import moa.classifiers.trees.ARFFIMTDD;
 import moa.core.DoubleVector;
@@ -69,6 +71,9 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
     public FloatOption lambdaOption = new FloatOption("lambda", 'a',
             "The lambda parameter for bagging.", 6.0, 1.0, Float.MAX_VALUE);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
     public ClassOption driftDetectionMethodOption = new ClassOption("driftDetectionMethod", 'x',
             "Change detector for drifts and its parameters", ChangeDetector.class, "ADWINChangeDetector -a 1.0E-3");
 
@@ -90,6 +95,7 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
     protected long instancesSeen;
     protected int subspaceSize;
     protected BasicRegressionPerformanceEvaluator evaluator;
+    protected EnsembleExecutor executor;
 
     @Override
     public void resetLearningImpl() {
@@ -98,6 +104,11 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         this.subspaceSize = 0;
         this.instancesSeen = 0;
         this.evaluator = new BasicRegressionPerformanceEvaluator();
+
+        // Multi-threading
+        if(this.executor != null)
+            this.executor.shutdown();
+        this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -106,14 +117,48 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         if(this.ensemble == null)
             initEnsemble(instance);
 
-        for (int i = 0 ; i < this.ensemble.length ; i++) {
-            DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
-            InstanceExample example = new InstanceExample(instance);
-            this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
-            int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
-            if (k > 0) {
-                this.ensemble[i].trainOnInstance(instance, k, this.instancesSeen);
-            }
+        // Drawn upfront, in member order, so that results do not depend on the number of threads.
+        final int[] weights = new int[this.ensemble.length];
+        for (int i = 0 ; i < this.ensemble.length ; i++)
+            weights[i] = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+
+        final long seen = this.instancesSeen;
+        this.executor.forEachMember(this.ensemble.length,
+                i -> trainMember(i, instance, weights[i], seen));
+    }
+
+    /**
+     * Trains on a batch of instances, each member going through the whole batch on its own.
+     * The outcome is the same as training on one instance at a time.
+     */
+    @Override
+    public void trainOnInstances(List<Instance> instances) {
+        final List<Instance> batch = selectTrainingInstances(instances);
+        if (batch.isEmpty())
+            return;
+        ++this.instancesSeen;
+        if(this.ensemble == null)
+            initEnsemble(batch.get(0));
+        final long firstSeen = this.instancesSeen;
+        this.instancesSeen += batch.size() - 1;
+
+        final int[][] weights = new int[batch.size()][this.ensemble.length];
+        for (int b = 0 ; b < batch.size() ; b++)
+            for (int i = 0 ; i < this.ensemble.length ; i++)
+                weights[b][i] = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+
+        this.executor.forEachMember(this.ensemble.length, i -> {
+            for (int b = 0 ; b < batch.size() ; b++)
+                trainMember(i, batch.get(b), weights[b][i], firstSeen + b);
+        });
+    }
+
+    protected void trainMember(int index, Instance instance, int weight, long instancesSeen) {
+        DoubleVector vote = new DoubleVector(this.ensemble[index].getVotesForInstance(instance));
+        InstanceExample example = new InstanceExample(instance);
+        this.ensemble[index].evaluator.addResult(example, vote.getArrayRef());
+        if (weight > 0) {
+            this.ensemble[index].trainOnInstance(instance, weight, instancesSeen);
         }
     }
 
@@ -127,8 +172,10 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         DoubleVector ages = new DoubleVector();
         DoubleVector performance = new DoubleVector();
 
+        double[][] votes = this.executor.collectVotes(this.ensemble.length,
+                i -> this.ensemble[i].getVotesForInstance(testInstance));
         for(int i = 0 ; i < this.ensemble.length ; ++i) {
-            double currentPrediction = this.ensemble[i].getVotesForInstance(testInstance)[0];
+            double currentPrediction = votes[i][0];
 
             ages.addToValue(i, this.instancesSeen - this.ensemble[i].createdOn);
             performance.addToValue(i, this.ensemble[i].evaluator.getSquareError());
@@ -282,7 +329,7 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
             init(indexOriginal, instantiatedClassifier, evaluatorInstantiated, instancesSeen, useBkgLearner, useDriftDetector, driftOption, warningOption, isBackgroundLearner);
         }
 
-        public void reset() {
+        public void reset(long instancesSeen) {
             if(this.useBkgLearner && this.bkgLearner != null) {
                 this.classifier = this.bkgLearner.classifier;
 
@@ -347,7 +394,7 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
                 if(this.driftDetectionMethod.getChange()) {
                     this.lastDriftOn = instancesSeen;
                     this.numberOfDriftsDetected++;
-                    this.reset();
+                    this.reset(instancesSeen);
                 }
             }
         }
@@ -31,11 +31,14 @@ import com.github.javacliparser.MultiChoiceOption;
 import moa.classifiers.core.driftdetection.ADWIN;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
+import moa.classifiers.core.EnsembleExecutor;
 import com.yahoo.labs.samoa.instances.Instance;
 
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Utils;
+import moa.core.SizeOf;
 
 /**
  * Leveraging Bagging for evolving data streams using ADWIN. Leveraging Bagging
@@ -84,6 +87,9 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
                 "Leveraging Subagging using resampling without replacement."
             }, 0);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
     protected Classifier[] ensemble;
 
     protected ADWIN[] ADError;
@@ -94,6 +100,8 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
 
     protected boolean initMatrixCodes = false;
 
+    protected EnsembleExecutor executor;
+
     @Override
     public void resetLearningImpl() {
         this.ensemble = new Classifier[this.ensembleSizeOption.getValue()];
@@ -110,6 +118,10 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         if (this.outputCodesOption.isSet()) {
             this.initMatrixCodes = true;
         }
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+        this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -145,6 +157,10 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
             this.initMatrixCodes = false;
         }
 
+        if (this.executor.isParallel()) {
+            trainOnInstanceParallel(inst);
+            return;
+        }
 
         boolean Change = false;
         Instance weightedInst = (Instance) inst.copy();
@@ -191,21 +207,107 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
             }
         }
         if (Change) {
-            numberOfChangesDetected++;
-            double max = 0.0;
-            int imax = -1;
-            for (int i = 0; i < this.ensemble.length; i++) {
-                if (max < this.ADError[i].getEstimation()) {
-                    max = this.ADError[i].getEstimation();
-                    imax = i;
-                }
+            resetWorstClassifier();
+        }
+    }
+
+    /**
+     * Trains the members concurrently, with the same outcome as the sequential
+     * loop: the weights and the class values the members see are first decided
+     * in member order on the calling thread, then every member trains on its
+     * own copy of the instance and updates its own ADWIN.
+     *
+     * @param inst the training instance
+     */
+    protected void trainOnInstanceParallel(final Instance inst) {
+        final int n = this.ensemble.length;
+        final int algorithm = this.leveraginBagAlgorithmOption.getChosenIndex();
+
+        // LeveragingBagME weights the instance by whether the member classified it correctly
+        final int[] predictedClass = new int[n];
+        if (algorithm == 1) {
+            this.executor.forEachMember(n, i ->
+                    predictedClass[i] = Utils.maxIndex(this.ensemble[i].getVotesForInstance(inst)));
+        }
+
+        final double[] weights = new double[n];
+        final double[] classValues = new double[n];
+        double classValue = inst.classValue();
+        double w = this.weightShrinkOption.getValue();
+        for (int i = 0; i < n; i++) {
+            double k = 0.0;
+            switch (algorithm) {
+                case 0: //LeveragingBag
+                    k = MiscUtils.poisson(w, this.classifierRandom);
+                    break;
+                case 1: //LeveragingBagME
+                    double error = this.ADError[i].getEstimation();
+                    k = predictedClass[i] != (int) classValue ? 1.0 : (this.classifierRandom.nextDouble() < (error / (1.0 - error)) ? 1.0 : 0.0);
+                    break;
+                case 2: //LeveragingBagHalf
+                    w = 1.0;
+                    k = this.classifierRandom.nextBoolean() ? 0.0 : w;
+                    break;
+                case 3: //LeveragingBagWT
+                    w = 1.0;
+                    k = 1.0 + MiscUtils.poisson(w, this.classifierRandom);
+                    break;
+                case 4: //LeveragingSubag
+                    w = 1.0;
+                    k = MiscUtils.poisson(1, this.classifierRandom);
+                    k = (k > 0) ? w : 0;
+                    break;
+            }
+            // As in the sequential loop, the output code of the last trained member sticks to the instance
+            if (k > 0 && this.outputCodesOption.isSet()) {
+                classValue = (double) this.matrixCodes[i][(int) inst.classValue()];
+            }
+            weights[i] = k;
+            classValues[i] = classValue;
+        }
+
+        final boolean[] changes = new boolean[n];
+        this.executor.forEachMember(n, i -> {
+            Instance weightedInst = (Instance) inst.copy();
+            weightedInst.setClassValue(classValues[i]);
+            if (weights[i] > 0) {
+                weightedInst.setWeight(inst.weight() * weights[i]);
+                this.ensemble[i].trainOnInstance(weightedInst);
+            }
+            boolean correctlyClassifies = this.ensemble[i].correctlyClassifies(weightedInst);
+            double ErrEstim = this.ADError[i].getEstimation();
+            if (this.ADError[i].setInput(correctlyClassifies ? 0 : 1)) {
+                changes[i] = this.ADError[i].getEstimation() > ErrEstim;
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            if (changes[i]) {
+                resetWorstClassifier();
+                break;
             }
-            if (imax != -1) {
-                this.ensemble[imax].resetLearning();
-                //this.ensemble[imax].trainOnInstance(inst);
-                this.ADError[imax] = new ADWIN((double) this.deltaAdwinOption.getValue());
+        }
+    }
+
+    /**
+     * Resets the member with the highest estimated error, after a change was
+     * detected by one of the members.
+     */
+    protected void resetWorstClassifier() {
+        numberOfChangesDetected++;
+        double max = 0.0;
+        int imax = -1;
+        for (int i = 0; i < this.ensemble.length; i++) {
+            if (max < this.ADError[i].getEstimation()) {
+                max = this.ADError[i].getEstimation();
+                imax = i;
             }
         }
+        if (imax != -1) {
+            this.ensemble[imax].resetLearning();
+            //this.ensemble[imax].trainOnInstance(inst);
+            this.ADError[imax] = new ADWIN((double) this.deltaAdwinOption.getValue());
+        }
     }
 
     @Override
@@ -213,27 +315,27 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         if (this.outputCodesOption.isSet()) {
             return getVotesForInstanceBinary(inst);
         }
-        DoubleVector combinedVote = new DoubleVector();
-        for (int i = 0; i < this.ensemble.length; i++) {
+        return this.executor.combineVotes(this.ensemble.length, i -> {
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(inst));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
-                combinedVote.addValues(vote);
+                return vote.getArrayRef();
             }
-        }
-        return combinedVote.getArrayRef();
+            return null;
+        }).getArrayRef();
     }
 
-    public double[] getVotesForInstanceBinary(Instance inst) {
+    public double[] getVotesForInstanceBinary(final Instance inst) {
         double combinedVote[] = new double[(int) inst.numClasses()];
-        Instance weightedInst = (Instance) inst.copy();
         if (this.initMatrixCodes == false) {
-            for (int i = 0; i < this.ensemble.length; i++) {
+            double[][] votes = this.executor.collectVotes(this.ensemble.length, i -> {
                 //Replace class by OC
+                Instance weightedInst = (Instance) inst.copy();
                 weightedInst.setClassValue((double) this.matrixCodes[i][(int) inst.classValue()]);
-
-                double vote[];
-                vote = this.ensemble[i].getVotesForInstance(weightedInst);
+                return this.ensemble[i].getVotesForInstance(weightedInst);
+            });
+            for (int i = 0; i < this.ensemble.length; i++) {
+                double vote[] = votes[i];
                 //Binary Case
                 int voteClass = 0;
                 if (vote.length == 2) {
@@ -260,6 +362,14 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.ensemble)
+                + SizeOf.estimatedFullSizeOf(this.ADError)
+                + SizeOf.estimatedFullSizeOf(this.matrixCodes));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return new Measurement[]{new Measurement("ensemble size",
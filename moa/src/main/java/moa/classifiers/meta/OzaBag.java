@@ -27,12 +27,16 @@ import moa.classifiers.Classifier;
 import com.yahoo.labs.samoa.instances.Instance;
 
 import moa.classifiers.MultiClassClassifier;
+import moa.classifiers.core.EnsembleExecutor;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.SizeOf;
 import moa.options.ClassOption;
 import com.github.javacliparser.IntOption;
 
+import java.util.List;
+
 /**
  * Incremental on-line bagging of Oza and Russell.
  *
@@ -48,7 +52,8 @@ import com.github.javacliparser.IntOption;
  *
  * <p>Parameters:</p> <ul>
  * <li>-l : Classiﬁer to train</li>
- * <li>-s : The number of models in the bag</li> </ul>
+ * <li>-s : The number of models in the bag</li>
+ * <li>-j : The number of threads used to train the models and to vote</li> </ul>
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
@@ -69,8 +74,13 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier,
     public IntOption ensembleSizeOption = new IntOption("ensembleSize", 's',
             "The number of models in the bag.", 10, 1, Integer.MAX_VALUE);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
     protected Classifier[] ensemble;
 
+    protected EnsembleExecutor executor;
+
     @Override
     public void resetLearningImpl() {
         this.ensemble = new Classifier[this.ensembleSizeOption.getValue()];
@@ -79,31 +89,64 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier,
         for (int i = 0; i < this.ensemble.length; i++) {
             this.ensemble[i] = baseLearner.copy();
         }
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+        this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
     }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
+        // the weights are drawn in member order, whatever the number of threads
+        final int[] weights = new int[this.ensemble.length];
         for (int i = 0; i < this.ensemble.length; i++) {
-            int k = MiscUtils.poisson(1.0, this.classifierRandom);
-            if (k > 0) {
+            weights[i] = MiscUtils.poisson(1.0, this.classifierRandom);
+        }
+        this.executor.forEachMember(this.ensemble.length, i -> {
+            if (weights[i] > 0) {
                 Instance weightedInst = (Instance) inst.copy();
-                weightedInst.setWeight(inst.weight() * k);
+                weightedInst.setWeight(inst.weight() * weights[i]);
                 this.ensemble[i].trainOnInstance(weightedInst);
             }
+        });
+    }
+
+    /**
+     * Trains on a batch of instances, each model going through the whole batch
+     * on its own. The outcome is the same as training on one instance at a
+     * time.
+     */
+    @Override
+    public void trainOnInstances(List<Instance> instances) {
+        final List<Instance> batch = selectTrainingInstances(instances);
+        final int[][] weights = new int[batch.size()][this.ensemble.length];
+        for (int b = 0; b < batch.size(); b++) {
+            for (int i = 0; i < this.ensemble.length; i++) {
+                weights[b][i] = MiscUtils.poisson(1.0, this.classifierRandom);
+            }
         }
+        this.executor.forEachMember(this.ensemble.length, i -> {
+            for (int b = 0; b < batch.size(); b++) {
+                if (weights[b][i] > 0) {
+                    Instance inst = batch.get(b);
+                    Instance weightedInst = (Instance) inst.copy();
+                    weightedInst.setWeight(inst.weight() * weights[b][i]);
+                    this.ensemble[i].trainOnInstance(weightedInst);
+                }
+            }
+        });
     }
 
     @Override
     public double[] getVotesForInstance(Instance inst) {
-        DoubleVector combinedVote = new DoubleVector();
-        for (int i = 0; i < this.ensemble.length; i++) {
+        return this.executor.combineVotes(this.ensemble.length, i -> {
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(inst));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
-                combinedVote.addValues(vote);
+                return vote.getArrayRef();
             }
-        }
-        return combinedVote.getArrayRef();
+            return null;
+        }).getArrayRef();
     }
 
     @Override
@@ -116,6 +159,12 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier,
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.ensemble));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return new Measurement[]{new Measurement("ensemble size",
@@ -31,6 +31,7 @@ import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.SizeOf;
 import moa.options.ClassOption;
 import com.github.javacliparser.IntOption;
 
@@ -175,6 +176,13 @@ public class OzaBagAdwin extends AbstractClassifier implements MultiClassClassif
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.ensemble)
+                + SizeOf.estimatedFullSizeOf(this.ADError));
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return new Measurement[]{new Measurement("ensemble size",
@@ -27,6 +27,7 @@ import com.yahoo.labs.samoa.instances.Instances;
 import moa.AbstractMOAObject;
 import moa.capabilities.Capabilities;
 import moa.classifiers.*;
+import moa.classifiers.core.EnsembleExecutor;
 import moa.core.*;
 import moa.options.ClassOption;
 import moa.classifiers.meta.StreamingRandomPatches;
@@ -60,8 +61,14 @@ import java.util.stream.IntStream;
  * <li>-M : Multiple training iterations by Ceiling (Hessian * M).</li>
  * <li>-S : Randomly skipp 1/S th of instances at training (S=1: No Skip, use all instances for training).</li>
  * <li>-K : Use Squared Loss for Classification.</li>
+ * <li>-j : Number of concurrent jobs training and scoring the committees of the classes.</li>
  * </ul>
  *
+ * <p>With more than two classes, the one-vs-rest committees of the classes are
+ * trained and scored on a bounded pool of threads. With one committee, its
+ * boosting steps are scored on that pool instead. The binary class instances
+ * and the sub-instances of the boosting steps share headers built once.</p>
+ *
  * @author Nuwan Gunasekara (ng98 at students dot waikato dot ac dot nz)
  * @version $Revision: 1 $
  */
@@ -86,6 +93,8 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
             "Randomly skip 1/S th of instances at training (S=1: No Skip, use all instances for training).", 1, 1, Integer.MAX_VALUE);
     public FlagOption useSquaredLossForClassification = new FlagOption("useSquaredLossForClassification", 'K', "Use Squared Loss for Classification.");
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r', "The random seed", 1);
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", -1, -1, Integer.MAX_VALUE);
     //endregion ================ OPTIONS ================
 
     //region ================ VARIABLES ================
@@ -93,6 +102,10 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
     protected boolean reset;
     protected int numberClasses;
     protected double[] lastPrediction = null;
+    /** Pool of the committees, created from the numberOfJobs option when first needed. */
+    protected transient EnsembleExecutor executor;
+    /** Header of the instances given to the committees of the classes, built once. */
+    protected transient Instances binaryClassHeader;
     //endregion ================ VARIABLES ================
 
     //region ================ OVERRIDDEN METHODS ================
@@ -100,6 +113,11 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
     public void resetLearningImpl() {
         this.reset = true;
         this.classifierRandom = new Random(randomSeedOption.getValue());
+        this.binaryClassHeader = null;
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor = null;
+        }
     }
 
     @Override
@@ -143,15 +161,15 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
             }
             createSGBTs(this.numberClasses <= 2 ? 1 : this.numberClasses);
         }
+        EnsembleExecutor executor = getExecutor();
 
         if (this.numberClasses <= 2){ // regression or binary classification
             SGBTCommittee[0].trainOnInstance(inst);
         }else {  // multi class classification
             Instance[] binaryClassInstanceArray = getBinaryClassInstanceArray(inst);
             // train each learner
-            IntStream.range(0, SGBTCommittee.length)
-                    .parallel()
-                    .forEach(i -> SGBTCommittee[i].trainOnInstance(binaryClassInstanceArray[i]));
+            executor.forEachMember(SGBTCommittee.length,
+                    i -> SGBTCommittee[i].trainOnInstance(binaryClassInstanceArray[i]));
         }
     }
 
@@ -159,14 +177,15 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
     public double[] getVotesForInstance(Instance inst) {
         double[] votes = new double[inst.classAttribute().isNominal() ? inst.numClasses(): 1];
         if (!this.reset) {
+            EnsembleExecutor executor = getExecutor();
             if (this.numberClasses <= 2){ // regression or binary classification
                 return SGBTCommittee[0].getVotesForInstance(inst);
             }else { // multi class classification
-                Instance[] binaryClassInstanceArray = getBinaryClassInstanceArray(inst);
+                // the committees only read the attributes, so they share one instance
+                Instance binaryInstance = getBinaryClassInstance(inst, 0.0);
                 // get prediction from each base learner
-                IntStream.range(0, SGBTCommittee.length)
-                        .parallel()
-                        .forEach(i -> votes[i] = getVoteForPositiveClass(SGBTCommittee[i], binaryClassInstanceArray[i]));
+                executor.forEachMember(SGBTCommittee.length,
+                        i -> votes[i] = getVoteForPositiveClass(SGBTCommittee[i], binaryInstance));
 
                 if (Utils.sum(votes) > 0.0) {
                     try {
@@ -238,36 +257,40 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
         }
     }
     public static Instance getSubInstance(Instance instance, double weight, ArrayList<Integer> subSpaceFeaturesIndexes, boolean setNumericClassAttribute, double numericClassValue, boolean useOneHotEncoding) {
-        Instances subset;
+        Instances subset = getSubInstanceHeader(instance, subSpaceFeaturesIndexes, setNumericClassAttribute, useOneHotEncoding);
+        double[] values = getSubInstanceValues(instance, subSpaceFeaturesIndexes,
+                setNumericClassAttribute ? numericClassValue : instance.classValue(), useOneHotEncoding);
+
+        DenseInstance subInstance = new DenseInstance(weight, values);
+        subInstance.setWeight(weight);
+        subInstance.setDataset(subset);
+
+        subset.add(subInstance);
+        return subInstance;
+    }
+
+    /**
+     * Builds the header of the sub-instances of a subspace: the attributes of
+     * the subspace, nominal ones being one-hot encoded if asked, followed by
+     * the class attribute.
+     */
+    public static Instances getSubInstanceHeader(Instance instance, ArrayList<Integer> subSpaceFeaturesIndexes, boolean setNumericClassAttribute, boolean useOneHotEncoding) {
         ArrayList<Attribute> attSub = new ArrayList<>();
-        ArrayList<Double> v = new ArrayList<>();
         Attribute classAttribute;
-        int totalOneHotEncodedSize = 0;
-        int totalOneHotEncodedInstances = 0;
-        int i = 0;
         // Add attributes of the selected subset
         for (Integer featuresIndex : subSpaceFeaturesIndexes) {
-            int index = i + totalOneHotEncodedSize - totalOneHotEncodedInstances;
             if (useOneHotEncoding && instance.attribute(featuresIndex).isNominal()) {
                 if (instance.attribute(featuresIndex).numValues() > 2){
                     // Do one hot-encoding
                     for (int j = 0; j < instance.attribute(featuresIndex).numValues(); j++) {
                         attSub.add(new Attribute(""));
-                        v.add(0.0);
                     }
-                    v.set(index + (int) instance.value(featuresIndex), 1.0);
-
-                    totalOneHotEncodedSize += instance.attribute(featuresIndex).numValues();
-                    totalOneHotEncodedInstances++;
                 }else{ // binary feature
                     attSub.add(new Attribute("")); // create a numeric attribute
-                    v.add(instance.value(featuresIndex)); // sets the index as value
                 }
             } else {
                 attSub.add(instance.attribute(featuresIndex));
-                v.add(instance.value(featuresIndex));
             }
-            i++;
         }
         // add class attribute
         if (setNumericClassAttribute) {
@@ -277,22 +300,35 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
             classAttribute = instance.classAttribute();
         }
         attSub.add(classAttribute);
-        v.add(setNumericClassAttribute ? numericClassValue : instance.classValue());
-        subset = new Instances("Subsets Candidate Instances", attSub, 100);
+        Instances subset = new Instances("Subsets Candidate Instances", attSub, 100);
         subset.setClassIndex(subset.numAttributes() - 1);
+        return subset;
+    }
 
-        // Set the class value for each value array.
-        double[] values = new double[v.size()];
-        for (int k = 0; k < v.size(); k++) {
-            values[k] = v.get(k);
+    /**
+     * @return the values of the sub-instance of a subspace, laid out as in
+     * {@link #getSubInstanceHeader}, with the given class value last
+     */
+    public static double[] getSubInstanceValues(Instance instance, ArrayList<Integer> subSpaceFeaturesIndexes, double classValue, boolean useOneHotEncoding) {
+        int size = 1;
+        for (Integer featuresIndex : subSpaceFeaturesIndexes) {
+            Attribute attribute = instance.attribute(featuresIndex);
+            size += useOneHotEncoding && attribute.isNominal() && attribute.numValues() > 2 ? attribute.numValues() : 1;
         }
-
-        DenseInstance subInstance = new DenseInstance(weight, values);
-        subInstance.setWeight(weight);
-        subInstance.setDataset(subset);
-
-        subset.add(subInstance);
-        return subInstance;
+        double[] values = new double[size];
+        int index = 0;
+        for (Integer featuresIndex : subSpaceFeaturesIndexes) {
+            Attribute attribute = instance.attribute(featuresIndex);
+            if (useOneHotEncoding && attribute.isNominal() && attribute.numValues() > 2) {
+                // Do one hot-encoding
+                values[index + (int) instance.value(featuresIndex)] = 1.0;
+                index += attribute.numValues();
+            } else {
+                values[index++] = instance.value(featuresIndex);
+            }
+        }
+        values[index] = classValue;
+        return values;
     }
 
     public static double[] getScoresWhenNullTree(int outputSize) {
@@ -326,27 +362,58 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
         for (int i = 0; i < SGBTCommittee.length; i++) {
             SGBTCommittee[i] = (SGBT) base.copy();
         }
+        if (numSGBTs == 1) {
+            // the pool is free for the boosting steps of the only committee
+            SGBTCommittee[0].setExecutor(getExecutor());
+        }
+    }
+
+    /**
+     * @return the pool of the committees. It is not serialized, so a copied or
+     * deserialized learner creates a new one from the numberOfJobs option, and
+     * hands it again to the boosting steps of its only committee.
+     */
+    protected EnsembleExecutor getExecutor() {
+        if (this.executor == null) {
+            this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
+            if (this.SGBTCommittee != null && this.SGBTCommittee.length == 1) {
+                this.SGBTCommittee[0].setExecutor(this.executor);
+            }
+        }
+        return this.executor;
     }
 
     Instance[] getBinaryClassInstanceArray(Instance inst){
         int actualClass = (int) inst.classValue();
 
-        // create binaryClassInstanceArray
-        Instance binaryInstance = newBinaryClassInstance(inst);
-
-        // generate multiple instances
+        // generate multiple instances, labelled based on actualClass
         Instance[] binaryClassInstanceArray = new Instance[SGBTCommittee.length];
-        IntStream.range(0, SGBTCommittee.length)
-//                .parallel()
-                .forEach(i -> binaryClassInstanceArray[i] = binaryInstance.copy());
-
-        // set label based on actualClass binaryClassInstanceArray
-        IntStream.range(0, SGBTCommittee.length)
-//                .parallel()
-                .forEach(i -> binaryClassInstanceArray[i].setClassValue((i == actualClass) ? 1.0 : 0.0));
-
+        for (int i = 0; i < binaryClassInstanceArray.length; i++) {
+            binaryClassInstanceArray[i] = getBinaryClassInstance(inst, (i == actualClass) ? 1.0 : 0.0);
+        }
         return binaryClassInstanceArray;
     }
+
+    /**
+     * @return a copy of the instance with a binary class, sharing the header
+     * of the other binary class instances
+     */
+    Instance getBinaryClassInstance(Instance inst, double classValue) {
+        if (this.binaryClassHeader == null) {
+            this.binaryClassHeader = new Instances(newBinaryClassInstance(inst).dataset(), 0);
+        }
+        int classIndex = inst.classIndex();
+        double[] values = new double[inst.numAttributes()];
+        for (int i = 0, j = 0; i < inst.numAttributes(); i++) {
+            if (i != classIndex) {
+                values[j++] = inst.value(i);
+            }
+        }
+        values[values.length - 1] = classValue;
+        DenseInstance binaryInstance = new DenseInstance(inst.weight(), values);
+        binaryInstance.setDataset(this.binaryClassHeader);
+        return binaryInstance;
+    }
     //endregion ================ OTHER METHODS ================
 
     public static class SGBT extends AbstractMOAObject {
@@ -377,6 +444,10 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
             private long instancesSeenAtTrain;
             private Classifier baseLearner = null;
             private Random classifierRandom = null;
+            /** Pool scoring the boosting steps, null to score them on the calling thread. */
+            protected transient EnsembleExecutor executor;
+            /** Header of the sub-instances of each boosting step, built once. */
+            protected transient Instances[] subInstanceHeaders;
             // endregion ================ SGBT VARIABLES ================
 
             // region ================ SGBT METHODS ================
@@ -384,10 +455,10 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
                 this.classifierRandom = classifierRandom;
                 this.baseLearner = baseLearner;
             }
+            public void setExecutor(EnsembleExecutor executor) {
+                this.executor = executor;
+            }
             public void trainOnInstance(Instance inst) {
-                if ((this.instancesSeenAtTrain % 1000) == 0) {
-                    System.gc();
-                }
                 if ((this.randomlySkip1SthOfInstancesAtTraining.getValue() > 1) && (this.classifierRandom.nextInt(this.randomlySkip1SthOfInstancesAtTraining.getValue()) == 0)) {
                     // skip training
                     return;
@@ -423,6 +494,7 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
             }
             public void initEnsemble(Instance inst) {
                 System.out.println("Initializing booster.");
+                this.subInstanceHeaders = null;
                 Attribute target = inst.classAttribute();
 
                 if (booster == null) {
@@ -527,7 +599,7 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
                     // at m th iteration, gets the adjustment by the m th committee considering all the previous adjustments
                     GradHess[] gradHess = mObjective.computeDerivatives(groundTruth, rawScore.getArrayRef(), false, false);
                     // create a sub instance from the inst
-                    subInstance = getSubInstance(inst, 1.0, subSpacesForEachBoostingIteration.get(m), true, -1, useOneHotEncoding.isSet());
+                    subInstance = getBoostingStepInstance(m, inst, -1);
                     //create sub instance for each committee member
                     Instance[] subInstArray = new Instance[gradHess.length];
                     if (gradHess.length == 1) {
@@ -556,18 +628,41 @@ public class StreamingGradientBoostedTrees extends AbstractClassifier implements
                 DoubleVector rawScore = new DoubleVector(getScoresWhenNullTree(committeeSize));
 
                 double[][] s = new double[booster.size()][];
-                if (booster.size() == 1) {
-                    s[0] = getScoreFromSubInstance(inst, subSpacesForEachBoostingIteration.get(0), true, booster.get(0), useOneHotEncoding.isSet());
+                // build the headers before the boosting steps share them
+                getSubInstanceHeaders(inst);
+                if (this.executor == null) {
+                    for (int m = 0; m < booster.size(); m++) {
+                        s[m] = booster.get(m).getScoresForInstance(getBoostingStepInstance(m, inst, -1));
+                    }
                 } else {
-                        IntStream.range(0, booster.size())
-                                .parallel()
-                                .forEach(m -> s[m] = getScoreFromSubInstance(inst, subSpacesForEachBoostingIteration.get(m), true, booster.get(m), useOneHotEncoding.isSet()));
+                    this.executor.forEachMember(booster.size(),
+                            m -> s[m] = booster.get(m).getScoresForInstance(getBoostingStepInstance(m, inst, -1)));
                 }
                 for (int i = 0; i < booster.size(); i++) {
                     rawScore.addValues(s[i]);
                 }
                 return rawScore;
             }
+            /**
+             * @return the sub-instance of the instance seen by the m th
+             * boosting step, with a numeric class value
+             */
+            protected Instance getBoostingStepInstance(int m, Instance inst, double classValue) {
+                double[] values = getSubInstanceValues(inst, subSpacesForEachBoostingIteration.get(m), classValue, useOneHotEncoding.isSet());
+                DenseInstance subInstance = new DenseInstance(1.0, values);
+                subInstance.setDataset(getSubInstanceHeaders(inst)[m]);
+                return subInstance;
+            }
+            protected Instances[] getSubInstanceHeaders(Instance inst) {
+                if (this.subInstanceHeaders == null) {
+                    Instances[] headers = new Instances[booster.size()];
+                    for (int m = 0; m < headers.length; m++) {
+                        headers[m] = getSubInstanceHeader(inst, subSpacesForEachBoostingIteration.get(m), true, useOneHotEncoding.isSet());
+                    }
+                    this.subInstanceHeaders = headers;
+                }
+                return this.subInstanceHeaders;
+            }
             public double[] getVotesForInstance(Instance inst) {
                 double[] prediction = null;
                 if (booster == null) {
@@ -32,12 +32,15 @@ import moa.capabilities.ImmutableCapabilities;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
+import moa.classifiers.core.EnsembleExecutor;
 import moa.classifiers.core.driftdetection.ChangeDetector;
 import moa.core.*;
 import moa.evaluation.BasicClassificationPerformanceEvaluator;
 import moa.options.ClassOption;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -60,6 +63,7 @@ import java.util.Random;
  * <li>-m : Number of features allowed considered for each split. Negative values corresponds to M - m.</li>
  * <li>-t : The training method to use: Random Patches, Random Subspaces or Bagging.</li>
  * <li>-a : The lambda value for the poisson distribution (used to emulate bagging).</li>
+ * <li>-j : Number of threads to be used for training and prediction.</li>
  * <li>-x : Change detector for drifts and its parameters.</li>
  * <li>-p : Change detector for warnings.</li>
  * <li>-w : Should use weighted voting?</li>
@@ -100,6 +104,9 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
     public FloatOption lambdaOption = new FloatOption("lambda", 'a',
             "The lambda parameter for bagging.", 6.0, 1, Float.MAX_VALUE);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
     // DRIFT and WARNING DETECTION
     public ClassOption driftDetectionMethodOption = new ClassOption("driftDetectionMethod", 'x',
             "Change detector for drifts and its parameters", ChangeDetector.class, "ADWINChangeDetector -a 1.0E-5");
@@ -130,10 +137,18 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
     protected StreamingRandomPatchesClassifier[] ensemble;
     protected long instancesSeen;
     protected ArrayList<ArrayList<Integer>> subspaces;
+    protected EnsembleExecutor executor;
+    // One random generator per member, used to reset its subspace
+    protected Random[] memberRandoms;
 
     @Override
     public void resetLearningImpl() {
         this.instancesSeen = 0;
+        this.memberRandoms = null;
+
+        if(this.executor != null)
+            this.executor.shutdown();
+        this.executor = new EnsembleExecutor(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -142,6 +157,11 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
         if(this.ensemble == null)
             initEnsemble(instance);
 
+        if(this.executor.isParallel()) {
+            trainParallel(Collections.singletonList(instance), this.instancesSeen);
+            return;
+        }
+
         for (int i = 0 ; i < this.ensemble.length ; i++) {
             double[] rawVote = this.ensemble[i].getVotesForInstance(instance);
             DoubleVector vote = new DoubleVector(rawVote);
@@ -150,19 +170,86 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
             this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
             // Train using random subspaces without resampling, i.e. all instances are used for training.
             if(this.trainingMethodOption.getChosenIndex() == TRAIN_RANDOM_SUBSPACES) {
-                this.ensemble[i].trainOnInstance(instance,1, this.instancesSeen, this.classifierRandom);
+                this.ensemble[i].trainOnInstance(instance,1, this.instancesSeen, memberRandom(i));
             }
             // Train using random patches or resampling, thus we simulate online bagging with poisson(lambda=...)
             else {
                 int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
                 if (k > 0) {
                     double weight = k;
-                    this.ensemble[i].trainOnInstance(instance, weight, this.instancesSeen, this.classifierRandom);
+                    this.ensemble[i].trainOnInstance(instance, weight, this.instancesSeen, memberRandom(i));
                 }
             }
         }
     }
 
+    /**
+     * Trains on a batch of instances. With multiple threads, each member goes through the whole batch on
+     * its own, with the same outcome as training the members concurrently on one instance at a time.
+     */
+    @Override
+    public void trainOnInstances(List<Instance> instances) {
+        if(!this.executor.isParallel()) {
+            super.trainOnInstances(instances);
+            return;
+        }
+        List<Instance> batch = selectTrainingInstances(instances);
+        if(batch.isEmpty())
+            return;
+        ++this.instancesSeen;
+        if(this.ensemble == null)
+            initEnsemble(batch.get(0));
+        long firstSeen = this.instancesSeen;
+        this.instancesSeen += batch.size() - 1;
+        trainParallel(batch, firstSeen);
+    }
+
+    /**
+     * Gets the random generator a member resets its subspace with. The members do not share the generator
+     * of the ensemble, which only draws the bagging weights, in member order: the outcome does not depend
+     * on the order the members are trained in, hence on the number of threads.
+     */
+    protected Random memberRandom(int index) {
+        if(this.memberRandoms == null || this.memberRandoms.length != this.ensemble.length) {
+            this.memberRandoms = new Random[this.ensemble.length];
+            for(int i = 0 ; i < this.ensemble.length ; ++i)
+                this.memberRandoms[i] = new Random(31L * this.randomSeed + i);
+        }
+        return this.memberRandoms[index];
+    }
+
+    /**
+     * Trains the members concurrently. The bagging weights are drawn upfront from the ensemble generator,
+     * in member order, as the sequential training does.
+     *
+     * @param batch the training instances
+     * @param firstSeen the number of instances seen, including the first one of the batch
+     */
+    protected void trainParallel(final List<Instance> batch, final long firstSeen) {
+        for(int i = 0 ; i < this.ensemble.length ; ++i)
+            memberRandom(i);
+
+        final int[][] weights = new int[batch.size()][this.ensemble.length];
+        for (int b = 0 ; b < batch.size() ; b++) {
+            for (int i = 0 ; i < this.ensemble.length ; i++) {
+                // Random subspaces without resampling, i.e. all instances are used for training.
+                weights[b][i] = this.trainingMethodOption.getChosenIndex() == TRAIN_RANDOM_SUBSPACES ? 1 :
+                        MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+            }
+        }
+
+        this.executor.forEachMember(this.ensemble.length, i -> {
+            for (int b = 0 ; b < batch.size() ; b++) {
+                Instance instance = batch.get(b);
+                DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
+                InstanceExample example = new InstanceExample(instance);
+                this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
+                if (weights[b][i] > 0)
+                    this.ensemble[i].trainOnInstance(instance, weights[b][i], firstSeen + b, memberRandom(i));
+            }
+        });
+    }
+
     @Override
     public double[] getVotesForInstance(Instance instance) {
         Instance testInstance = instance.copy();
@@ -170,9 +257,8 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
         testInstance.setClassValue(0.0);
         if(this.ensemble == null)
             initEnsemble(testInstance);
-        DoubleVector combinedVote = new DoubleVector();
 
-        for(int i = 0 ; i < this.ensemble.length ; ++i) {
+        DoubleVector combinedVote = this.executor.combineVotes(this.ensemble.length, i -> {
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(testInstance));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
@@ -182,9 +268,10 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
                         vote.setValue(v, vote.getValue(v) * acc);
                     }
                 }
-                combinedVote.addValues(vote);
+                return vote.getArrayRef();
             }
-        }
+            return null;
+        });
         return combinedVote.getArrayRef();
     }
 
@@ -23,6 +23,7 @@ import com.github.javacliparser.IntOption;
 import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.core.Utils;
+import moa.core.SizeOf;
 import com.yahoo.labs.samoa.instances.Instance;
 
 import java.util.ArrayList;
@@ -72,9 +73,12 @@ public class ARFHoeffdingTree extends HoeffdingTree {
         }
 
         @Override
-        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
-            this.observedClassDistribution.addToValue((int) inst.classValue(),
-                    inst.weight());
+        public int measureByteSize() {
+            return super.measureByteSize() + (int) SizeOf.shallowSizeOf(this.listAttributes);
+        }
+
+        @Override
+        protected void observeAttributes(Instance inst, HoeffdingTree ht) {
             if (this.listAttributes == null) {
                 // -1 to not count the class attribute
                 int totalInstanceNumberOfAttributes = (inst.numAttributes()-1);
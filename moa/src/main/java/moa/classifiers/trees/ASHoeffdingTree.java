@@ -91,6 +91,7 @@ public class ASHoeffdingTree extends HoeffdingTree {
     @Override
     public void resetLearningImpl() {
         this.treeRoot = null;
+        invalidateFlatTree();
         this.decisionNodeCount = 0;
         this.activeLeafNodeCount = 0;
         this.inactiveLeafNodeCount = 0;
@@ -105,6 +106,7 @@ public class ASHoeffdingTree extends HoeffdingTree {
         if (this.treeRoot == null) {
             this.treeRoot = newLearningNode();
             this.activeLeafNodeCount = 1;
+            invalidateFlatTree();
         }
         FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst, null, -1);
         Node leafNode = foundNode.node;
@@ -112,6 +114,7 @@ public class ASHoeffdingTree extends HoeffdingTree {
             leafNode = newLearningNode();
             foundNode.parent.setChild(foundNode.parentBranch, leafNode);
             this.activeLeafNodeCount++;
+            invalidateFlatTree();
         }
         if (leafNode instanceof LearningNode) {
             LearningNode learningNode = (LearningNode) leafNode;
@@ -130,6 +133,7 @@ public class ASHoeffdingTree extends HoeffdingTree {
                         if (this.resetTree == false) {
                             resizeTree(this.treeRoot, ((SplitNode) this.treeRoot).instanceChildIndex(inst));
                             this.treeRoot = ((SplitNode) this.treeRoot).getChild(((SplitNode) this.treeRoot).instanceChildIndex(inst));
+                            invalidateFlatTree();
                         } else {
                             resetLearningImpl();
                         }
@@ -58,6 +58,7 @@ import moa.AbstractMOAObject;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.core.AttributeSplitEvaluator;
 import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.DiscreteAttributeClassObserver;
@@ -160,8 +161,23 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
     "The number of instances a leaf should observe before permitting Naive Bayes.",
     0, 0, Integer.MAX_VALUE);
 
+  public FlagOption flatInferenceOption = new FlagOption("flatInference", 'f',
+    "Route instances through a flattened copy of the tree when predicting.");
+
+  public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+    "Number of threads evaluating the attributes of a node when attempting or re-evaluating a split (-1 = number of processors).",
+    1, -1, Integer.MAX_VALUE);
+
   protected Node treeRoot = null;
 
+  /**
+   * The flattened copy of the tree used for prediction, built when needed
+   * and dropped whenever nodes are added, removed or replaced.
+   */
+  protected transient FlatTree<Node> flatTree;
+
+  protected transient AttributeSplitEvaluator splitEvaluator;
+
   protected int decisionNodeCount;
 
   protected int activeLeafNodeCount;
@@ -201,6 +217,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
   @Override
   public void resetLearningImpl() {
     this.treeRoot = null;
+    invalidateFlatTree();
     this.decisionNodeCount = 0;
     this.activeLeafNodeCount = 0;
     this.inactiveLeafNodeCount = 0;
@@ -208,6 +225,10 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
     this.activeLeafByteSizeEstimate = 0.0;
     this.byteSizeEstimateOverheadFraction = 1.0;
     this.growthAllowed = true;
+    if (this.splitEvaluator != null) {
+      this.splitEvaluator.shutdown();
+      this.splitEvaluator = null;
+    }
     if (this.leafpredictionOption.getChosenIndex() > 0) {
       this.removePoorAttsOption = null;
     }
@@ -216,11 +237,17 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
   @Override
   public double[] getVotesForInstance(Instance inst) {
     if (this.treeRoot != null) {
-      FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst,
-	null, -1);
-      Node leafNode = foundNode.node;
-      if (leafNode == null) {
-	leafNode = foundNode.parent;
+      Node leafNode;
+      if (this.flatInferenceOption.isSet()) {
+	leafNode = getFlatTree().route(inst);
+      }
+      else {
+	FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst,
+	  null, -1);
+	leafNode = foundNode.node;
+	if (leafNode == null) {
+	  leafNode = foundNode.parent;
+	}
       }
       return leafNode.getClassVotes(inst, this);
     }
@@ -383,6 +410,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
     else {
       parent.setChild(parentBranch, newLeaf);
     }
+    invalidateFlatTree();
     this.activeLeafNodeCount--;
     this.inactiveLeafNodeCount++;
   }
@@ -396,6 +424,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
     else {
       parent.setChild(parentBranch, newLeaf);
     }
+    invalidateFlatTree();
     this.activeLeafNodeCount++;
     this.inactiveLeafNodeCount--;
   }
@@ -565,6 +594,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	  else {
 	    parent.setChild(parentIndex, newSplit);
 	  }
+	  invalidateFlatTree();
 
 	}
 	// manage memory
@@ -580,6 +610,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
       this.treeRoot = newLearningNode();
       ((EFDTNode) this.treeRoot).setRoot(true);
       this.activeLeafNodeCount = 1;
+      invalidateFlatTree();
     }
 
     FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst, null, -1);
@@ -589,6 +620,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
       leafNode = newLearningNode();
       foundNode.parent.setChild(foundNode.parentBranch, leafNode);
       this.activeLeafNodeCount++;
+      invalidateFlatTree();
     }
 
     ((EFDTNode) this.treeRoot).learnFromInstance(inst, this, null, -1);
@@ -597,6 +629,50 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
   }
 
 
+  /**
+   * Returns the flattened copy of the tree, building it if the tree changed
+   * since the last call.
+   */
+  protected FlatTree<Node> getFlatTree() {
+    if (this.flatTree == null) {
+      this.flatTree = FlatTree.compile(this.treeRoot, NODE_ADAPTER);
+    }
+    return this.flatTree;
+  }
+
+  protected AttributeSplitEvaluator getSplitEvaluator() {
+    if (this.splitEvaluator == null) {
+      this.splitEvaluator = new AttributeSplitEvaluator(this.numberOfJobsOption.getValue());
+    }
+    return this.splitEvaluator;
+  }
+
+  /**
+   * Must be called whenever nodes are added to the tree, removed from it or
+   * replaced.
+   */
+  protected void invalidateFlatTree() {
+    this.flatTree = null;
+  }
+
+  protected static final FlatTree.NodeAdapter<Node> NODE_ADAPTER = new FlatTree.NodeAdapter<Node>() {
+
+    @Override
+    public InstanceConditionalTest getSplitTest(Node node) {
+      return node instanceof SplitNode ? ((SplitNode) node).splitTest : null;
+    }
+
+    @Override
+    public int numChildren(Node node) {
+      return ((SplitNode) node).numChildren();
+    }
+
+    @Override
+    public Node getChild(Node node, int index) {
+      return ((SplitNode) node).getChild(index);
+    }
+  };
+
   protected LearningNode newLearningNode() {
     return new EFDTLearningNode(new double[0]);
   }
@@ -936,16 +1012,9 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	  new double[0][], criterion.getMeritOfSplit(
 	  preSplitDist, new double[][]{preSplitDist})));
       }
-      for (int i = 0; i < this.attributeObservers.size(); i++) {
-	AttributeClassObserver obs = this.attributeObservers.get(i);
-	if (obs != null) {
-	  AttributeSplitSuggestion bestSuggestion = obs.getBestEvaluatedSplitSuggestion(criterion,
-	    preSplitDist, i, ht.binarySplitsOption.isSet());
-	  if (bestSuggestion != null) {
-	    bestSuggestions.add(bestSuggestion);
-	  }
-	}
-      }
+      ht.getSplitEvaluator().addBestSplitSuggestions(bestSuggestions,
+	this.attributeObservers, criterion, preSplitDist,
+	ht.binarySplitsOption.isSet());
       return bestSuggestions.toArray(new AttributeSplitSuggestion[bestSuggestions.size()]);
     }
 
@@ -1079,6 +1148,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	    assert (node.isRoot());
 	    node.setRoot(true);
 	  }
+	  EFDT.this.invalidateFlatTree();
 	}
 
 	else {
@@ -1138,6 +1208,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	    ((EFDTNode) newSplit).setParent(parent);
 	    parent.setChild(parentIndex, newSplit);
 	  }
+	  EFDT.this.invalidateFlatTree();
 	}
       }
     }
@@ -1304,16 +1375,9 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	  new double[0][], criterion.getMeritOfSplit(
 	  preSplitDist, new double[][]{preSplitDist})));
       }
-      for (int i = 0; i < this.attributeObservers.size(); i++) {
-	AttributeClassObserver obs = this.attributeObservers.get(i);
-	if (obs != null) {
-	  AttributeSplitSuggestion bestSuggestion = obs.getBestEvaluatedSplitSuggestion(criterion,
-	    preSplitDist, i, ht.binarySplitsOption.isSet());
-	  if (bestSuggestion != null) {
-	    bestSuggestions.add(bestSuggestion);
-	  }
-	}
-      }
+      ht.getSplitEvaluator().addBestSplitSuggestions(bestSuggestions,
+	this.attributeObservers, criterion, preSplitDist,
+	ht.binarySplitsOption.isSet());
       return bestSuggestions.toArray(new AttributeSplitSuggestion[bestSuggestions.size()]);
     }
 
@@ -1533,6 +1597,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	    } else {
 	      parent.setChild(parentIndex, newSplit);
 	    }
+	    invalidateFlatTree();
 
 	  }
 
@@ -1579,6 +1644,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
       if (this.treeRoot == null) {
 	this.treeRoot = newLearningNode();
 	this.activeLeafNodeCount = 1;
+	invalidateFlatTree();
       }
       FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst, null, -1);
       Node leafNode = foundNode.node;
@@ -1587,6 +1653,7 @@ public class EFDT extends AbstractClassifier implements MultiClassClassifier {
 	leafNode = newLearningNode();
 	foundNode.parent.setChild(foundNode.parentBranch, leafNode);
 	this.activeLeafNodeCount++;
+	invalidateFlatTree();
       }
 
       if (leafNode instanceof LearningNode) {
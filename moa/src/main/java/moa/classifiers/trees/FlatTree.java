@@ -0,0 +1,312 @@
+/*
+ *    FlatTree.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.trees;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
+import moa.classifiers.core.conditionaltests.NominalAttributeBinaryTest;
+import moa.classifiers.core.conditionaltests.NominalAttributeMultiwayTest;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Flattened copy of the decision nodes of a tree, used to route instances to
+ * their leaves when predicting.
+ *
+ * <p>The split nodes are numbered in depth-first order and their tests are
+ * stored in parallel arrays (attribute, split value, kind of test), with the
+ * children of all nodes in one table. Routing an instance is then a loop over
+ * these arrays instead of a chain of virtual calls through the node objects
+ * and their tests, and does not allocate anything. The nodes reached (leaves,
+ * or split nodes when a branch is missing) are the original node objects, so
+ * the votes are still computed by the tree.</p>
+ *
+ * <p>The copy does not follow changes of the tree: it must be compiled again
+ * after nodes are added, removed or replaced. The routing is the same as the
+ * one of the split tests of the tree, tests other than the standard numeric
+ * and nominal ones being called directly.</p>
+ *
+ * @param <N> the type of the nodes of the tree
+ * @version $Revision: 1 $
+ */
+public class FlatTree<N> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Gives access to the structure of a tree.
+     */
+    public interface NodeAdapter<N> {
+
+        /**
+         * @return the split test of the node, or null if it is a leaf
+         */
+        InstanceConditionalTest getSplitTest(N node);
+
+        int numChildren(N node);
+
+        N getChild(N node, int index);
+
+        /**
+         * @return the alternate tree of the node, which is also routed by
+         * routeAll, or null
+         */
+        default N getAlternateTree(N node) {
+            return null;
+        }
+    }
+
+    protected static final int NUMERIC_EQUALS_LEFT = 0;
+
+    protected static final int NUMERIC_EQUALS_RIGHT = 1;
+
+    protected static final int NOMINAL_BINARY = 2;
+
+    protected static final int NOMINAL_MULTIWAY = 3;
+
+    protected static final int OTHER = 4;
+
+    /** Reference to nothing, for branches that are not followed. */
+    protected static final int NONE = Integer.MIN_VALUE;
+
+    // references are split node indices if >= 0, or ~(target index) if < 0
+    protected int root;
+
+    protected int numSplits;
+
+    protected int[] kind;
+
+    protected int[] attIndex;
+
+    protected double[] splitValue;
+
+    protected InstanceConditionalTest[] otherTests;
+
+    protected int[] firstChild;
+
+    protected int[] numChildren;
+
+    protected int[] children;
+
+    protected int numChildRefs;
+
+    protected int[] selfTarget;
+
+    protected int[] alternate;
+
+    protected boolean hasAlternates;
+
+    protected Object[] targets;
+
+    protected int numTargets;
+
+    protected FlatTree() {
+        this.kind = new int[16];
+        this.attIndex = new int[16];
+        this.splitValue = new double[16];
+        this.otherTests = new InstanceConditionalTest[16];
+        this.firstChild = new int[16];
+        this.numChildren = new int[16];
+        this.selfTarget = new int[16];
+        this.alternate = new int[16];
+        this.children = new int[32];
+        this.targets = new Object[32];
+    }
+
+    /**
+     * Builds the flat copy of the tree.
+     *
+     * @param root the root of the tree
+     * @param adapter the accessor of the nodes
+     */
+    public static <N> FlatTree<N> compile(N root, NodeAdapter<N> adapter) {
+        FlatTree<N> tree = new FlatTree<N>();
+        tree.root = tree.add(root, adapter);
+        return tree;
+    }
+
+    public int numSplitNodes() {
+        return this.numSplits;
+    }
+
+    /**
+     * Finds the node an instance is sorted into: the leaf at the end of its
+     * path, or the last split node of the path if the instance has a missing
+     * value for its test or the branch has no child. This is the node found by
+     * filterInstanceToLeaf in the trees.
+     */
+    @SuppressWarnings("unchecked")
+    public N route(Instance inst) {
+        int ref = this.root;
+        while (ref >= 0) {
+            int branch = branchForInstance(ref, inst);
+            if (branch < 0) {
+                return (N) this.targets[this.selfTarget[ref]];
+            }
+            ref = childRef(ref, branch);
+        }
+        return (N) this.targets[~ref];
+    }
+
+    /**
+     * Finds all the nodes an instance is sorted into when the alternate trees
+     * are followed as well, in the order of a depth-first search that visits
+     * the child of a node before its alternate tree. A path ending on a
+     * missing value gives no node, as in the filterInstanceToLeaves method of
+     * HoeffdingAdaptiveTree.
+     */
+    @SuppressWarnings("unchecked")
+    public void routeAll(Instance inst, List<N> found) {
+        int[] pending = null;
+        int numPending = 0;
+        int ref = this.root;
+        while (true) {
+            while (ref >= 0) {
+                if (this.hasAlternates && this.alternate[ref] != NONE) {
+                    if (pending == null) {
+                        pending = new int[8];
+                    } else if (numPending == pending.length) {
+                        pending = Arrays.copyOf(pending, 2 * numPending);
+                    }
+                    pending[numPending++] = this.alternate[ref];
+                }
+                int branch = branchForInstance(ref, inst);
+                ref = branch < 0 ? NONE : childRef(ref, branch);
+            }
+            if (ref != NONE) {
+                found.add((N) this.targets[~ref]);
+            }
+            if (numPending == 0) {
+                return;
+            }
+            ref = pending[--numPending];
+        }
+    }
+
+    protected int childRef(int split, int branch) {
+        return branch < this.numChildren[split]
+                ? this.children[this.firstChild[split] + branch]
+                : ~this.selfTarget[split];
+    }
+
+    /**
+     * Same as the branchForInstance method of the test of the split node.
+     */
+    protected int branchForInstance(int split, Instance inst) {
+        int att = this.attIndex[split];
+        switch (this.kind[split]) {
+            case NUMERIC_EQUALS_LEFT:
+            case NUMERIC_EQUALS_RIGHT: {
+                if (inst.isMissing(att)) {
+                    return -1;
+                }
+                double v = inst.valueInputAttribute(att);
+                double splitValue = this.splitValue[split];
+                if (v == splitValue) {
+                    return this.kind[split] == NUMERIC_EQUALS_LEFT ? 0 : 1;
+                }
+                return v < splitValue ? 0 : 1;
+            }
+            case NOMINAL_BINARY: {
+                int instAttIndex = att < inst.classIndex() ? att : att + 1;
+                if (inst.isMissing(instAttIndex)) {
+                    return -1;
+                }
+                return (int) inst.value(instAttIndex) == (int) this.splitValue[split] ? 0 : 1;
+            }
+            case NOMINAL_MULTIWAY:
+                return inst.isMissing(att) ? -1 : (int) inst.value(att);
+            default:
+                return this.otherTests[split].branchForInstance(inst);
+        }
+    }
+
+    protected int add(N node, NodeAdapter<N> adapter) {
+        InstanceConditionalTest test = adapter.getSplitTest(node);
+        if (test == null) {
+            return ~addTarget(node);
+        }
+        int split = this.numSplits++;
+        if (split == this.kind.length) {
+            int capacity = 2 * split;
+            this.kind = Arrays.copyOf(this.kind, capacity);
+            this.attIndex = Arrays.copyOf(this.attIndex, capacity);
+            this.splitValue = Arrays.copyOf(this.splitValue, capacity);
+            this.otherTests = Arrays.copyOf(this.otherTests, capacity);
+            this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+            this.numChildren = Arrays.copyOf(this.numChildren, capacity);
+            this.selfTarget = Arrays.copyOf(this.selfTarget, capacity);
+            this.alternate = Arrays.copyOf(this.alternate, capacity);
+        }
+        // subclasses of the tests may route differently, hence the exact classes
+        if (test.getClass() == NumericAttributeBinaryTest.class) {
+            NumericAttributeBinaryTest numericTest = (NumericAttributeBinaryTest) test;
+            this.kind[split] = numericTest.isEqualsPassesTest() ? NUMERIC_EQUALS_LEFT : NUMERIC_EQUALS_RIGHT;
+            this.attIndex[split] = numericTest.getAttIndex();
+            this.splitValue[split] = numericTest.getSplitValue();
+        } else if (test.getClass() == NominalAttributeBinaryTest.class) {
+            NominalAttributeBinaryTest nominalTest = (NominalAttributeBinaryTest) test;
+            this.kind[split] = NOMINAL_BINARY;
+            this.attIndex[split] = nominalTest.getAttIndex();
+            this.splitValue[split] = nominalTest.getAttValue();
+        } else if (test.getClass() == NominalAttributeMultiwayTest.class) {
+            this.kind[split] = NOMINAL_MULTIWAY;
+            this.attIndex[split] = ((NominalAttributeMultiwayTest) test).getAttIndex();
+        } else {
+            this.kind[split] = OTHER;
+            this.otherTests[split] = test;
+        }
+        this.selfTarget[split] = addTarget(node);
+
+        int numChildren = adapter.numChildren(node);
+        int first = this.numChildRefs;
+        this.numChildRefs += numChildren;
+        if (this.numChildRefs > this.children.length) {
+            this.children = Arrays.copyOf(this.children, Math.max(2 * this.children.length, this.numChildRefs));
+        }
+        this.firstChild[split] = first;
+        this.numChildren[split] = numChildren;
+        for (int i = 0; i < numChildren; i++) {
+            N child = adapter.getChild(node, i);
+            // a missing child sends the instances to the split node itself,
+            // and the arrays may be grown while adding the child
+            int childRef = child == null ? ~this.selfTarget[split] : add(child, adapter);
+            this.children[first + i] = childRef;
+        }
+
+        N alternateTree = adapter.getAlternateTree(node);
+        int alternateRef = NONE;
+        if (alternateTree != null) {
+            this.hasAlternates = true;
+            alternateRef = add(alternateTree, adapter);
+        }
+        this.alternate[split] = alternateRef;
+        return split;
+    }
+
+    protected int addTarget(N node) {
+        if (this.numTargets == this.targets.length) {
+            this.targets = Arrays.copyOf(this.targets, 2 * this.numTargets);
+        }
+        this.targets[this.numTargets] = node;
+        return this.numTargets++;
+    }
+}
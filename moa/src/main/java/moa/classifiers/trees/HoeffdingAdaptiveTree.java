@@ -19,17 +19,18 @@
  */
 package moa.classifiers.trees;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
-import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
 import moa.classifiers.core.driftdetection.ADWIN;
 import moa.core.DoubleVector;
 import moa.core.MiscUtils;
+import moa.core.SizeOf;
 import moa.core.Utils;
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -113,7 +114,7 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
                 byteSize += alternateTree.calcByteSizeIncludingSubtree();
             }
             if (estimationErrorWeight != null) {
-                byteSize += estimationErrorWeight.measureByteSize();
+                byteSize += SizeOf.fullSizeOf(estimationErrorWeight);
             }
             for (Node child : this.children) {
                 if (child != null) {
@@ -122,6 +123,13 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
             }
             return byteSize;
         }
+
+        @Override
+        public int measureByteSize() {
+            return super.measureByteSize() + (int) (SizeOf.estimatedFullSizeOf(this.alternateTree)
+                    + SizeOf.estimatedFullSizeOf(this.estimationErrorWeight)
+                    + SizeOf.estimatedFullSizeOf(this.classifierRandom));
+        }
         
         public AdaSplitNode(InstanceConditionalTest splitTest,
                 double[] classObservations, int size) {
@@ -203,6 +211,7 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
                 this.alternateTree = ht.newLearningNode();
                 //this.alternateTree.isAlternateTree = true;
                 ht.alternateTrees++;
+                ht.invalidateFlatTree();
             } // Check condition to replace tree
             else if (this.alternateTree != null && ((NewNode) this.alternateTree).isNullError() == false) {
                 if (this.getErrorWidth() > 300 && ((NewNode) this.alternateTree).getErrorWidth() > 300) {
@@ -225,6 +234,7 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
                             ht.treeRoot = ((AdaSplitNode) ht.treeRoot).alternateTree;
                         }
                         ht.switchedAlternateTrees++;
+                        ht.invalidateFlatTree();
                     } else if (Bound < altErrorRate - oldErrorRate) {
                         // Erase alternate tree
                         if (this.alternateTree instanceof ActiveLearningNode) {
@@ -237,6 +247,7 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
                             ((AdaSplitNode) this.alternateTree).killTreeChilds(ht);
                         }
                         ht.prunedAlternateTrees++;
+                        ht.invalidateFlatTree();
                     }
                 }
             }
@@ -317,11 +328,17 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
         public int calcByteSize() {
             int byteSize = super.calcByteSize();
             if (estimationErrorWeight != null) {
-                byteSize += estimationErrorWeight.measureByteSize();
+                byteSize += SizeOf.fullSizeOf(estimationErrorWeight);
             }
             return byteSize;
         }
 
+        @Override
+        public int measureByteSize() {
+            return super.measureByteSize() + (int) (SizeOf.estimatedFullSizeOf(this.estimationErrorWeight)
+                    + SizeOf.estimatedFullSizeOf(this.classifierRandom));
+        }
+
         public AdaLearningNode(double[] initialClassObservations) {
             super(initialClassObservations);
             this.classifierRandom = new Random(this.randomSeed);
@@ -409,14 +426,12 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
             if (predictionOption == 0) { //MC
                 dist = this.observedClassDistribution.getArrayCopy();
             } else if (predictionOption == 1) { //NB
-                dist = NaiveBayes.doNaiveBayesPrediction(inst,
-                        this.observedClassDistribution, this.attributeObservers);
+                dist = getNaiveBayesVotes(inst);
             } else { //NBAdaptive
                 if (this.mcCorrectWeight > this.nbCorrectWeight) {
                     dist = this.observedClassDistribution.getArrayCopy();
                 } else {
-                    dist = NaiveBayes.doNaiveBayesPrediction(inst,
-                            this.observedClassDistribution, this.attributeObservers);
+                    dist = getNaiveBayesVotes(inst);
                 }
             }
             //New for option votes
@@ -465,6 +480,7 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
         if (this.treeRoot == null) {
             this.treeRoot = newLearningNode();
             this.activeLeafNodeCount = 1;
+            invalidateFlatTree();
         }
         ((NewNode) this.treeRoot).learnFromInstance(inst, this, null, -1);
     }
@@ -481,6 +497,15 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
     @Override
     public double[] getVotesForInstance(Instance inst) {
         if (this.treeRoot != null) {
+            if (this.flatInferenceOption.isSet()) {
+                List<Node> leafNodes = new ArrayList<Node>();
+                getFlatTree().routeAll(inst, leafNodes);
+                DoubleVector result = new DoubleVector();
+                for (Node leafNode : leafNodes) {
+                    result.addValues(leafNode.getClassVotes(inst, this));
+                }
+                return result.getArrayRef();
+            }
             FoundNode[] foundNodes = filterInstanceToLeaves(inst,
                     null, -1, false);
             DoubleVector result = new DoubleVector();
@@ -509,6 +534,36 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
         return new double[0];
     }
 
+    @Override
+    protected FlatTree.NodeAdapter<Node> flatNodeAdapter() {
+        return ADA_NODE_ADAPTER;
+    }
+
+    protected static final FlatTree.NodeAdapter<Node> ADA_NODE_ADAPTER = new FlatTree.NodeAdapter<Node>() {
+
+        @Override
+        public InstanceConditionalTest getSplitTest(Node node) {
+            return NODE_ADAPTER.getSplitTest(node);
+        }
+
+        @Override
+        public int numChildren(Node node) {
+            return NODE_ADAPTER.numChildren(node);
+        }
+
+        @Override
+        public Node getChild(Node node, int index) {
+            return NODE_ADAPTER.getChild(node, index);
+        }
+
+        @Override
+        public Node getAlternateTree(Node node) {
+            // alternate trees that are still a single leaf do not vote
+            Node alternateTree = node instanceof AdaSplitNode ? ((AdaSplitNode) node).alternateTree : null;
+            return alternateTree instanceof SplitNode ? alternateTree : null;
+        }
+    };
+
     @Override
     public ImmutableCapabilities defineImmutableCapabilities() {
         if (this.getClass() == HoeffdingAdaptiveTree.class)
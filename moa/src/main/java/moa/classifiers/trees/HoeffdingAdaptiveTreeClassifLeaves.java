@@ -29,6 +29,7 @@ import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.classifiers.trees.HoeffdingAdaptiveTree;
 import moa.classifiers.trees.HoeffdingTree;
 import moa.options.ClassOption;
+import moa.core.SizeOf;
 
 /**
  * Hoeffding Adaptive Tree for evolving data streams that has a classifier at
@@ -135,6 +136,7 @@ public class HoeffdingAdaptiveTreeClassifLeaves extends HoeffdingAdaptiveTree {
 		    } else {
 			parent.setChild(parentIndex, newSplit);
 		    }
+		    invalidateFlatTree();
 		}
 		// manage memory
 		enforceTrackerLimit();
@@ -162,6 +164,11 @@ public class HoeffdingAdaptiveTreeClassifLeaves extends HoeffdingAdaptiveTree {
 	    }
 	}
 
+	@Override
+	public int measureByteSize() {
+	    return super.measureByteSize() + (int) SizeOf.estimatedFullSizeOf(this.classifier);
+	}
+
 	@Override
 	public double[] getClassVotes(Instance inst, HoeffdingTree ht) {
 	    if (getWeightSeen() >= ((HoeffdingAdaptiveTreeClassifLeaves) ht).nbThresholdOption.getValue()) {
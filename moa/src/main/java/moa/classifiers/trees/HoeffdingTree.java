@@ -19,12 +19,22 @@
  */
 package moa.classifiers.trees;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
@@ -36,6 +46,8 @@ import moa.capabilities.ImmutableCapabilities;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.bayes.NaiveBayesScorer;
+import moa.classifiers.core.AttributeSplitEvaluator;
 import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.DiscreteAttributeClassObserver;
@@ -91,6 +103,8 @@ import com.yahoo.labs.samoa.instances.Instance;
  * adaptive (NBAdaptive).</li>
  *  <li> -q : The number of instances a leaf should observe before
  * permitting Naive Bayes</li>
+ *  <li> -f : Route instances through a flattened copy of the tree when
+ * predicting</li>
  * </ul>
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
@@ -167,6 +181,16 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
     public FlagOption noPrePruneOption = new FlagOption("noPrePrune", 'p',
             "Disable pre-pruning.");
 
+    public FlagOption flatInferenceOption = new FlagOption("flatInference", 'f',
+            "Route instances through a flattened copy of the tree when predicting.");
+
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of threads evaluating the attributes of a leaf when attempting a split (-1 = number of processors).",
+            1, -1, Integer.MAX_VALUE);
+
+    public FlagOption asyncSplitsOption = new FlagOption("asyncSplits", 'a',
+            "Attempt splits on a background thread while the leaves keep learning. The tree grown then depends on thread timing.");
+
     public static class FoundNode {
 
         public Node node;
@@ -200,6 +224,15 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             return calcByteSize();
         }
 
+        /**
+         * Estimates the size of the node and its subtree from their structure,
+         * without the SizeOf agent.
+         */
+        @Override
+        public int measureByteSize() {
+            return (int) (SizeOf.shallowSizeOf(this) + this.observedClassDistribution.measureByteSize());
+        }
+
         public boolean isLeaf() {
             return true;
         }
@@ -278,6 +311,13 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             return byteSize;
         }
 
+        @Override
+        public int measureByteSize() {
+            // the children are measured by the vector
+            return super.measureByteSize() + this.children.measureByteSize()
+                    + (int) SizeOf.estimatedFullSizeOf(this.splitTest);
+        }
+
         @Override
         public double[] getObservedClassDistributionAtLeavesReachableThroughThisNode() {
             // Start a new DoubleVector with 0 in all positions.
@@ -422,6 +462,15 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         
         protected boolean isInitialized;
 
+        /** The split attempt reading the observers of this leaf, if any. */
+        protected transient PendingSplit pendingSplit;
+
+        /**
+         * Instances learnt while a split attempt read the observers, which
+         * observe them once the attempt is done.
+         */
+        protected List<Instance> deferredInstances;
+
         public ActiveLearningNode(double[] initialClassObservations) {
             super(initialClassObservations);
             this.weightSeenAtLastSplitEvaluation = getWeightSeen();
@@ -434,6 +483,11 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                     + (int) (SizeOf.fullSizeOf(this.attributeObservers));
         }
 
+        @Override
+        public int measureByteSize() {
+            return super.measureByteSize() + this.attributeObservers.measureByteSize();
+        }
+
         @Override
         public void learnFromInstance(Instance inst, HoeffdingTree ht) {
             if (this.isInitialized == false) {
@@ -442,6 +496,22 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             }
             this.observedClassDistribution.addToValue((int) inst.classValue(),
                     inst.weight());
+            if (this.pendingSplit != null) {
+                if (this.deferredInstances == null) {
+                    this.deferredInstances = new ArrayList<Instance>();
+                }
+                this.deferredInstances.add(inst);
+                return;
+            }
+            // left over if the leaf was copied during a split attempt
+            observeDeferredInstances(ht);
+            observeAttributes(inst, ht);
+        }
+
+        /**
+         * Updates the attribute observers with an instance.
+         */
+        protected void observeAttributes(Instance inst, HoeffdingTree ht) {
             for (int i = 0; i < inst.numAttributes() - 1; i++) {
                 int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
                 AttributeClassObserver obs = this.attributeObservers.get(i);
@@ -453,6 +523,31 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             }
         }
 
+        /**
+         * Updates the attribute observers with the instances learnt during a
+         * split attempt.
+         */
+        protected void observeDeferredInstances(HoeffdingTree ht) {
+            if (this.deferredInstances != null) {
+                List<Instance> instances = this.deferredInstances;
+                this.deferredInstances = null;
+                for (Instance inst : instances) {
+                    observeAttributes(inst, ht);
+                }
+            }
+        }
+
+        /**
+         * Drops the split attempt of this leaf once it no longer reads the
+         * observers.
+         */
+        protected void abandonSplitAttempt() {
+            if (this.pendingSplit != null) {
+                this.pendingSplit.getSuggestions();
+                this.pendingSplit = null;
+            }
+        }
+
         public double getWeightSeen() {
             return this.observedClassDistribution.sumOfValues();
         }
@@ -476,16 +571,9 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                         preSplitDist,
                         new double[][]{preSplitDist})));
             }
-            for (int i = 0; i < this.attributeObservers.size(); i++) {
-                AttributeClassObserver obs = this.attributeObservers.get(i);
-                if (obs != null) {
-                    AttributeSplitSuggestion bestSuggestion = obs.getBestEvaluatedSplitSuggestion(criterion,
-                            preSplitDist, i, ht.binarySplitsOption.isSet());
-                    if (bestSuggestion != null) {
-                        bestSuggestions.add(bestSuggestion);
-                    }
-                }
-            }
+            ht.getSplitEvaluator().addBestSplitSuggestions(bestSuggestions,
+                    this.attributeObservers, criterion, preSplitDist,
+                    ht.binarySplitsOption.isSet());
             return bestSuggestions.toArray(new AttributeSplitSuggestion[bestSuggestions.size()]);
         }
 
@@ -499,6 +587,12 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
     protected int decisionNodeCount;
 
+    /**
+     * The flattened copy of the tree used for prediction, built when needed
+     * and dropped whenever nodes are added, removed or replaced.
+     */
+    protected transient FlatTree<Node> flatTree;
+
     protected int activeLeafNodeCount;
 
     protected int inactiveLeafNodeCount;
@@ -511,6 +605,48 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
     protected boolean growthAllowed;
 
+    protected transient AttributeSplitEvaluator splitEvaluator;
+
+    /** Seconds an idle split attempt thread is kept alive. */
+    protected static final long SPLIT_ATTEMPT_KEEP_ALIVE_SECONDS = 60;
+
+    /** Runs the split attempts of the asyncSplits option of all trees. */
+    protected static ExecutorService splitAttemptPool;
+
+    /**
+     * A split attempt running in the background on a snapshot of a leaf.
+     */
+    protected static class PendingSplit {
+
+        protected final ActiveLearningNode snapshot;
+
+        protected final SplitCriterion splitCriterion;
+
+        protected final Future<AttributeSplitSuggestion[]> suggestions;
+
+        public PendingSplit(ActiveLearningNode snapshot, SplitCriterion splitCriterion,
+                Future<AttributeSplitSuggestion[]> suggestions) {
+            this.snapshot = snapshot;
+            this.splitCriterion = splitCriterion;
+            this.suggestions = suggestions;
+        }
+
+        /**
+         * @return the split suggestions of the leaf copy, waiting for them if
+         * needed
+         */
+        public AttributeSplitSuggestion[] getSuggestions() {
+            try {
+                return this.suggestions.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while attempting a split.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Unable to attempt a split.", e.getCause());
+            }
+        }
+    }
+
     public int calcByteSize() {
         int size = (int) SizeOf.sizeOf(this);
         if (this.treeRoot != null) {
@@ -527,14 +663,21 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         return this.treeRoot;
     }
 
+    /**
+     * Estimates the size of the tree from its structure, which is much faster
+     * than calcByteSize and does not need the SizeOf agent. The memory
+     * management of the tree still uses calcByteSize.
+     */
     @Override
     public int measureByteSize() {
-        return calcByteSize();
+        return (int) (SizeOf.shallowSizeOf(this) + measureOptionsByteSize()
+                + SizeOf.estimatedFullSizeOf(this.treeRoot));
     }
 
     @Override
     public void resetLearningImpl() {
         this.treeRoot = null;
+        invalidateFlatTree();
         this.decisionNodeCount = 0;
         this.activeLeafNodeCount = 0;
         this.inactiveLeafNodeCount = 0;
@@ -542,6 +685,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         this.activeLeafByteSizeEstimate = 0.0;
         this.byteSizeEstimateOverheadFraction = 1.0;
         this.growthAllowed = true;
+        shutdownSplitExecutors();
         if (this.leafpredictionOption.getChosenIndex()>0) { 
             this.removePoorAttsOption = null;
         }
@@ -552,6 +696,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         if (this.treeRoot == null) {
             this.treeRoot = newLearningNode();
             this.activeLeafNodeCount = 1;
+            invalidateFlatTree();
         }
         FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst, null, -1);
         Node leafNode = foundNode.node;
@@ -559,6 +704,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             leafNode = newLearningNode();
             foundNode.parent.setChild(foundNode.parentBranch, leafNode);
             this.activeLeafNodeCount++;
+            invalidateFlatTree();
         }
         if (leafNode instanceof LearningNode) {
             LearningNode learningNode = (LearningNode) leafNode;
@@ -567,12 +713,18 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                     && (learningNode instanceof ActiveLearningNode)) {
                 ActiveLearningNode activeLearningNode = (ActiveLearningNode) learningNode;
                 double weightSeen = activeLearningNode.getWeightSeen();
-                if (weightSeen
+                if (this.asyncSplitsOption.isSet()) {
+                    attemptToSplitInBackground(activeLearningNode, foundNode.parent,
+                            foundNode.parentBranch);
+                } else if (weightSeen
                         - activeLearningNode.getWeightSeenAtLastSplitEvaluation() >= this.gracePeriodOption.getValue()) {
                     attemptToSplit(activeLearningNode, foundNode.parent,
                             foundNode.parentBranch);
                     activeLearningNode.setWeightSeenAtLastSplitEvaluation(weightSeen);
                 }
+            } else if (learningNode instanceof ActiveLearningNode) {
+                // no more splits, the observers of the leaf learn again
+                ((ActiveLearningNode) learningNode).abandonSplitAttempt();
             }
         }
         if (this.trainingWeightSeenByModel
@@ -584,11 +736,16 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
     @Override
     public double[] getVotesForInstance(Instance inst) {
         if (this.treeRoot != null) {
-            FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst,
-                    null, -1);
-            Node leafNode = foundNode.node;
-            if (leafNode == null) {
-                leafNode = foundNode.parent;
+            Node leafNode;
+            if (this.flatInferenceOption.isSet()) {
+                leafNode = getFlatTree().route(inst);
+            } else {
+                FoundNode foundNode = this.treeRoot.filterInstanceToLeaf(inst,
+                        null, -1);
+                leafNode = foundNode.node;
+                if (leafNode == null) {
+                    leafNode = foundNode.parent;
+                }
             }
             return leafNode.getClassVotes(inst, this);
           } else {
@@ -662,16 +819,36 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
     protected void attemptToSplit(ActiveLearningNode node, SplitNode parent,
             int parentIndex) {
+        attemptToSplit(node, parent, parentIndex, null);
+    }
+
+    /**
+     * @param pending the background split attempt whose outcome to apply, or
+     * null to evaluate the split suggestions of the leaf now
+     */
+    protected void attemptToSplit(ActiveLearningNode node, SplitNode parent,
+            int parentIndex, PendingSplit pending) {
         if (!node.observedClassDistributionIsPure()) {
-            SplitCriterion splitCriterion = (SplitCriterion) getPreparedClassOption(this.splitCriterionOption);
-            AttributeSplitSuggestion[] bestSplitSuggestions = node.getBestSplitSuggestions(splitCriterion, this);
+            SplitCriterion splitCriterion;
+            AttributeSplitSuggestion[] bestSplitSuggestions;
+            // the node the suggestions were evaluated on
+            ActiveLearningNode evaluatedNode;
+            if (pending == null) {
+                splitCriterion = (SplitCriterion) getPreparedClassOption(this.splitCriterionOption);
+                bestSplitSuggestions = node.getBestSplitSuggestions(splitCriterion, this);
+                evaluatedNode = node;
+            } else {
+                splitCriterion = pending.splitCriterion;
+                bestSplitSuggestions = pending.getSuggestions();
+                evaluatedNode = pending.snapshot;
+            }
             Arrays.sort(bestSplitSuggestions);
             boolean shouldSplit = false;
             if (bestSplitSuggestions.length < 2) {
                 shouldSplit = bestSplitSuggestions.length > 0;
             } else {
-                double hoeffdingBound = computeHoeffdingBound(splitCriterion.getRangeOfMerit(node.getObservedClassDistribution()),
-                        this.splitConfidenceOption.getValue(), node.getWeightSeen());
+                double hoeffdingBound = computeHoeffdingBound(splitCriterion.getRangeOfMerit(evaluatedNode.getObservedClassDistribution()),
+                        this.splitConfidenceOption.getValue(), evaluatedNode.getWeightSeen());
                 AttributeSplitSuggestion bestSuggestion = bestSplitSuggestions[bestSplitSuggestions.length - 1];
                 AttributeSplitSuggestion secondBestSuggestion = bestSplitSuggestions[bestSplitSuggestions.length - 2];
                 if ((bestSuggestion.merit - secondBestSuggestion.merit > hoeffdingBound)
@@ -731,6 +908,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                     } else {
                         parent.setChild(parentIndex, newSplit);
                     }
+                    invalidateFlatTree();
                 }
                 // manage memory
                 enforceTrackerLimit();
@@ -738,6 +916,102 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         }
     }
 
+    /**
+     * Attempts splits without holding up training, for the asyncSplits
+     * option. Once a leaf has seen a grace period, its attribute observers
+     * are handed to a background thread along with a copy of its class
+     * distribution. The leaf keeps learning its class distribution, and puts
+     * the instances aside for its observers until the attempt is done. The
+     * outcome is applied the first time the leaf learns after the evaluation
+     * is done, or after another grace period at the latest, when the leaf
+     * waits for it. The instances the leaf learnt in the meantime do not
+     * reach its children.
+     */
+    protected void attemptToSplitInBackground(ActiveLearningNode node,
+            SplitNode parent, int parentIndex) {
+        double weightSeen = node.getWeightSeen();
+        boolean gracePeriodElapsed = weightSeen
+                - node.getWeightSeenAtLastSplitEvaluation() >= this.gracePeriodOption.getValue();
+        PendingSplit pending = node.pendingSplit;
+        if (pending != null) {
+            if (!pending.suggestions.isDone() && !gracePeriodElapsed) {
+                return;
+            }
+            node.pendingSplit = null;
+            attemptToSplit(node, parent, parentIndex, pending);
+            Node current = parent == null ? this.treeRoot : parent.getChild(parentIndex);
+            if (current != node || !this.growthAllowed) {
+                // split or deactivated
+                return;
+            }
+            node.observeDeferredInstances(this);
+        }
+        if (gracePeriodElapsed) {
+            node.setWeightSeenAtLastSplitEvaluation(weightSeen);
+            if (!node.observedClassDistributionIsPure()) {
+                final ActiveLearningNode snapshot = new ActiveLearningNode(node.getObservedClassDistribution());
+                // shared, the leaf leaves its observers alone until the attempt is done
+                snapshot.attributeObservers = node.attributeObservers;
+                final SplitCriterion splitCriterion = (SplitCriterion) getPreparedClassOption(this.splitCriterionOption);
+                // created here, the background thread only reads it
+                getSplitEvaluator();
+                node.pendingSplit = new PendingSplit(snapshot, splitCriterion,
+                        getSplitAttemptPool().submit(new Callable<AttributeSplitSuggestion[]>() {
+
+                            @Override
+                            public AttributeSplitSuggestion[] call() {
+                                return snapshot.getBestSplitSuggestions(splitCriterion, HoeffdingTree.this);
+                            }
+                        }));
+            }
+        }
+    }
+
+    protected AttributeSplitEvaluator getSplitEvaluator() {
+        if (this.splitEvaluator == null) {
+            this.splitEvaluator = new AttributeSplitEvaluator(this.numberOfJobsOption.getValue());
+        }
+        return this.splitEvaluator;
+    }
+
+    /**
+     * @return the pool shared by all trees for their split attempts, whose
+     * threads stop when idle and do not refer to any tree
+     */
+    protected static synchronized ExecutorService getSplitAttemptPool() {
+        if (splitAttemptPool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            int numberOfThreads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    numberOfThreads, numberOfThreads,
+                    SPLIT_ATTEMPT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "split-attempt-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            splitAttemptPool = executor;
+        }
+        return splitAttemptPool;
+    }
+
+    /**
+     * Stops the threads evaluating the attributes of a leaf. Pending split
+     * attempts are abandoned.
+     */
+    protected void shutdownSplitExecutors() {
+        if (this.splitEvaluator != null) {
+            this.splitEvaluator.shutdown();
+            this.splitEvaluator = null;
+        }
+    }
+
     public void enforceTrackerLimit() {
         if ((this.inactiveLeafNodeCount > 0)
                 || ((this.activeLeafNodeCount * this.activeLeafByteSizeEstimate + this.inactiveLeafNodeCount
@@ -804,7 +1078,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             this.inactiveLeafByteSizeEstimate = (double) totalInactiveSize
                     / this.inactiveLeafNodeCount;
         }
-        int actualModelSize = this.measureByteSize();
+        int actualModelSize = this.calcByteSize();
         double estimatedModelSize = (this.activeLeafNodeCount
                 * this.activeLeafByteSizeEstimate + this.inactiveLeafNodeCount
                 * this.inactiveLeafByteSizeEstimate);
@@ -834,6 +1108,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         } else {
             parent.setChild(parentBranch, newLeaf);
         }
+        invalidateFlatTree();
         this.activeLeafNodeCount--;
         this.inactiveLeafNodeCount++;
     }
@@ -846,10 +1121,52 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         } else {
             parent.setChild(parentBranch, newLeaf);
         }
+        invalidateFlatTree();
         this.activeLeafNodeCount++;
         this.inactiveLeafNodeCount--;
     }
 
+    /**
+     * Returns the flattened copy of the tree, building it if the tree changed
+     * since the last call.
+     */
+    protected FlatTree<Node> getFlatTree() {
+        if (this.flatTree == null) {
+            this.flatTree = FlatTree.compile(this.treeRoot, flatNodeAdapter());
+        }
+        return this.flatTree;
+    }
+
+    /**
+     * Must be called whenever nodes are added to the tree, removed from it or
+     * replaced.
+     */
+    protected void invalidateFlatTree() {
+        this.flatTree = null;
+    }
+
+    protected FlatTree.NodeAdapter<Node> flatNodeAdapter() {
+        return NODE_ADAPTER;
+    }
+
+    protected static final FlatTree.NodeAdapter<Node> NODE_ADAPTER = new FlatTree.NodeAdapter<Node>() {
+
+        @Override
+        public InstanceConditionalTest getSplitTest(Node node) {
+            return node instanceof SplitNode ? ((SplitNode) node).splitTest : null;
+        }
+
+        @Override
+        public int numChildren(Node node) {
+            return ((SplitNode) node).numChildren();
+        }
+
+        @Override
+        public Node getChild(Node node, int index) {
+            return ((SplitNode) node).getChild(index);
+        }
+    };
+
     protected FoundNode[] findLearningNodes() {
         List<FoundNode> foundList = new LinkedList<FoundNode>();
         findLearningNodes(this.treeRoot, null, -1, foundList);
@@ -889,20 +1206,50 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
         private static final long serialVersionUID = 1L;
 
+        /** Built on the first prediction, then kept up to date while learning. */
+        protected transient NaiveBayesScorer naiveBayesScorer;
+
         public LearningNodeNB(double[] initialClassObservations) {
             super(initialClassObservations);
         }
 
+        @Override
+        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
+            super.learnFromInstance(inst, ht);
+            if (this.naiveBayesScorer != null && !this.naiveBayesScorer.update(
+                    this.observedClassDistribution, this.attributeObservers, (int) inst.classValue())) {
+                this.naiveBayesScorer = null;
+            }
+        }
+
+        @Override
+        protected void observeDeferredInstances(HoeffdingTree ht) {
+            super.observeDeferredInstances(ht);
+            // the scorer was only updated for the classes of the instances
+            // learnt, not for the observers they have now changed
+            this.naiveBayesScorer = null;
+        }
+
         @Override
         public double[] getClassVotes(Instance inst, HoeffdingTree ht) {
             if (getWeightSeen() >= ht.nbThresholdOption.getValue()) {
-                return NaiveBayes.doNaiveBayesPrediction(inst,
-                        this.observedClassDistribution,
-                        this.attributeObservers);
+                return getNaiveBayesVotes(inst);
             }
             return super.getClassVotes(inst, ht);
         }
 
+        /**
+         * @return the same votes as {@link NaiveBayes#doNaiveBayesPrediction}
+         * on the statistics of the leaf
+         */
+        public double[] getNaiveBayesVotes(Instance inst) {
+            if (this.naiveBayesScorer == null) {
+                this.naiveBayesScorer = new NaiveBayesScorer(this.observedClassDistribution,
+                        this.attributeObservers);
+            }
+            return this.naiveBayesScorer.getVotesForInstance(inst);
+        }
+
         @Override
         public void disableAttribute(int attIndex) {
             // should not disable poor atts - they are used in NB calc
@@ -927,8 +1274,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             if (this.observedClassDistribution.maxIndex() == trueClass) {
                 this.mcCorrectWeight += inst.weight();
             }
-            if (Utils.maxIndex(NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers)) == trueClass) {
+            if (Utils.maxIndex(getNaiveBayesVotes(inst)) == trueClass) {
                 this.nbCorrectWeight += inst.weight();
             }
             super.learnFromInstance(inst, ht);
@@ -939,8 +1285,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             if (this.mcCorrectWeight > this.nbCorrectWeight) {
                 return this.observedClassDistribution.getArrayCopy();
             }
-            return NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers);
+            return getNaiveBayesVotes(inst);
         }
     }
 
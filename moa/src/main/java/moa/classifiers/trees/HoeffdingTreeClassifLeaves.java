@@ -27,6 +27,7 @@ import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.classifiers.trees.HoeffdingTree;
 import moa.options.ClassOption;
+import moa.core.SizeOf;
 import com.yahoo.labs.samoa.instances.Instance;
 
 /**
@@ -65,6 +66,11 @@ public class HoeffdingTreeClassifLeaves extends HoeffdingTree {
                 this.classifier = cl.copy();
             }
         }
+
+        @Override
+        public int measureByteSize() {
+            return super.measureByteSize() + (int) SizeOf.estimatedFullSizeOf(this.classifier);
+        }
 	
         @Override
         public double[] getClassVotes(Instance inst, HoeffdingTree ht) {
@@ -180,6 +186,7 @@ public class HoeffdingTreeClassifLeaves extends HoeffdingTree {
                     } else {
                         parent.setChild(parentIndex, newSplit);
                     }
+                    invalidateFlatTree();
                 }
                 // manage memory
                 enforceTrackerLimit();
@@ -87,9 +87,7 @@ public class LimAttHoeffdingTree extends HoeffdingTree {
         }
 
         @Override
-        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
-            this.observedClassDistribution.addToValue((int) inst.classValue(),
-                    inst.weight());
+        protected void observeAttributes(Instance inst, HoeffdingTree ht) {
             if (this.listAttributes == null) {
                 setlistAttributes(((LimAttHoeffdingTree) ht).listAttributes);
             }
@@ -52,9 +52,7 @@ public class RandomHoeffdingTree extends HoeffdingTree {
         }
 
         @Override
-        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
-            this.observedClassDistribution.addToValue((int) inst.classValue(),
-                    inst.weight());
+        protected void observeAttributes(Instance inst, HoeffdingTree ht) {
             if (this.listAttributes == null) {
                 this.numAttributes = (int) Math.floor(Math.sqrt(inst.numAttributes()));
                 this.listAttributes = new int[this.numAttributes];
@@ -103,11 +103,15 @@ public abstract class Cluster extends AbstractMOAObject {
 
 
     public void setMeasureValue(String measureKey, String value){
-        measure_values.put(measureKey, value);
+        synchronized(measure_values){
+            measure_values.put(measureKey, value);
+        }
     }
 
     public void setMeasureValue(String measureKey, double value){
-        measure_values.put(measureKey, Double.toString(value));
+        synchronized(measure_values){
+            measure_values.put(measureKey, Double.toString(value));
+        }
     }
 
 
@@ -0,0 +1,558 @@
+/*
+ *    CenterIndex.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.clusterers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Index of the centers of the micro-clusters of a clusterer, for the
+ * searches of the center nearest to a point. Centers are stored in slots
+ * numbered like the micro-clusters, and the searches are exact: they return
+ * the same slot as a linear scan keeping the first smallest distance.
+ *
+ * <p>The centers are kept in a tree of bounding boxes, built by splitting the
+ * widest dimension at the median. A search skips the boxes farther from the
+ * point than the best center found so far. Micro-clusters move as they
+ * absorb points: a center moving a little enlarges the boxes holding it, and
+ * one jumping away, like a new center, is kept aside and scanned linearly
+ * until the tree is rebuilt. Rebuilding is lazy and happens once enough
+ * changes accumulated, so that keeping the tree costs a logarithmic time per
+ * change.</p>
+ *
+ * <p>Each slot can also have a reach, for the searches of the
+ * micro-clusters whose center is within their reach of a point.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class CenterIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Largest number of centers in a leaf of the tree. */
+    protected static final int LEAF_SIZE = 8;
+
+    protected final int dimensions;
+
+    protected int size = 0;
+
+    /** Center of slot s, at [s * dimensions]. */
+    protected double[] centers = new double[0];
+
+    protected double[] reaches = new double[0];
+
+    /** Position of each slot in the tree, -1 for slots kept aside. */
+    protected int[] positions = new int[0];
+
+    /** Slots kept aside, scanned linearly. */
+    protected int[] detached = new int[0];
+
+    protected int numDetached = 0;
+
+    /** Slot at each position of the tree, -1 if it left the tree. */
+    protected int[] entries = new int[0];
+
+    /** Leaf holding each position. */
+    protected int[] leaves = new int[0];
+
+    protected int numNodes = 0;
+
+    /** First child of each node, the second one follows it; -1 for leaves. */
+    protected int[] children = new int[0];
+
+    protected int[] parents = new int[0];
+
+    /** Positions covered by each node, from starts (inclusive) to ends. */
+    protected int[] starts = new int[0];
+
+    protected int[] ends = new int[0];
+
+    /** Bounding box of node n, at [n * dimensions]. */
+    protected double[] lowerBounds = new double[0];
+
+    protected double[] upperBounds = new double[0];
+
+    protected double[] maxReaches = new double[0];
+
+    /** Boxes enlarged since the tree was built. */
+    protected int numEnlargements = 0;
+
+    public CenterIndex(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getDimensions() {
+        return this.dimensions;
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.numDetached = 0;
+        this.entries = new int[0];
+        this.leaves = new int[0];
+        this.numNodes = 0;
+        this.numEnlargements = 0;
+    }
+
+    /**
+     * Sets the center of a slot, size() adding a slot.
+     */
+    public void set(int slot, double[] center) {
+        set(slot, center, 0.0);
+    }
+
+    /**
+     * Sets the center and the reach of a slot, size() adding a slot.
+     */
+    public void set(int slot, double[] center, double reach) {
+        if (slot < 0 || slot > this.size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + this.size);
+        }
+        if (slot == this.size) {
+            ensureCapacity(this.size + 1);
+            this.size++;
+            this.positions[slot] = -1;
+            addDetached(slot);
+        }
+        System.arraycopy(center, 0, this.centers, slot * this.dimensions, this.dimensions);
+        this.reaches[slot] = reach;
+        int position = this.positions[slot];
+        if (position >= 0) {
+            int leaf = this.leaves[position];
+            if (isNear(leaf, slot)) {
+                enlarge(leaf, slot);
+            } else {
+                this.entries[position] = -1;
+                this.positions[slot] = -1;
+                addDetached(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes a slot, the following ones moving down by one like in a list.
+     */
+    public void remove(int slot) {
+        if (slot < 0 || slot >= this.size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + this.size);
+        }
+        if (this.positions[slot] >= 0) {
+            this.entries[this.positions[slot]] = -1;
+        } else {
+            int i = 0;
+            while (this.detached[i] != slot) {
+                i++;
+            }
+            System.arraycopy(this.detached, i + 1, this.detached, i, this.numDetached - i - 1);
+            this.numDetached--;
+        }
+        int following = this.size - slot - 1;
+        System.arraycopy(this.centers, (slot + 1) * this.dimensions, this.centers,
+                slot * this.dimensions, following * this.dimensions);
+        System.arraycopy(this.reaches, slot + 1, this.reaches, slot, following);
+        System.arraycopy(this.positions, slot + 1, this.positions, slot, following);
+        this.size--;
+        for (int p = 0; p < this.entries.length; p++) {
+            if (this.entries[p] > slot) {
+                this.entries[p]--;
+            }
+        }
+        for (int i = 0; i < this.numDetached; i++) {
+            if (this.detached[i] > slot) {
+                this.detached[i]--;
+            }
+        }
+    }
+
+    /**
+     * @return the Euclidean distance between a point and the center of a
+     * slot, computed like a loop over the dimensions in order
+     */
+    public double distance(double[] point, int slot) {
+        int base = slot * this.dimensions;
+        double distance = 0.0;
+        for (int i = 0; i < this.dimensions; i++) {
+            double d = point[i] - this.centers[base + i];
+            distance += d * d;
+        }
+        return Math.sqrt(distance);
+    }
+
+    /**
+     * @return the first slot at the smallest distance of the point, or -1 if
+     * no distance is smaller than Double.MAX_VALUE
+     */
+    public int nearest(double[] point) {
+        return nearest(point, 0, -1, Double.MAX_VALUE);
+    }
+
+    /**
+     * @param fromSlot the first slot searched
+     * @param excludedSlot a slot skipped, -1 for none
+     * @param maxDistance the distance the slot found must be below
+     * @return the first slot from fromSlot at the smallest distance of the
+     * point, or -1 if no distance is smaller than maxDistance
+     */
+    public int nearest(double[] point, int fromSlot, int excludedSlot, double maxDistance) {
+        ensureBuilt();
+        Search search = new Search(point, fromSlot, excludedSlot, maxDistance);
+        if (this.numNodes > 0) {
+            searchNearest(0, search);
+        }
+        for (int i = 0; i < this.numDetached; i++) {
+            search.offer(this.detached[i]);
+        }
+        return search.slot;
+    }
+
+    /**
+     * @return the slots, in increasing order, whose center is not farther
+     * from the point than their reach
+     */
+    public int[] withinReach(double[] point) {
+        ensureBuilt();
+        int[] found = new int[16];
+        int numFound = 0;
+        if (this.numNodes > 0) {
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (boxDistance(point, node) > this.maxReaches[node]) {
+                    continue;
+                }
+                if (this.children[node] < 0) {
+                    for (int p = this.starts[node]; p < this.ends[node]; p++) {
+                        int slot = this.entries[p];
+                        if (slot >= 0 && distance(point, slot) <= this.reaches[slot]) {
+                            if (numFound == found.length) {
+                                found = Arrays.copyOf(found, 2 * numFound);
+                            }
+                            found[numFound++] = slot;
+                        }
+                    }
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    }
+                    stack[top++] = this.children[node];
+                    stack[top++] = this.children[node] + 1;
+                }
+            }
+        }
+        for (int i = 0; i < this.numDetached; i++) {
+            int slot = this.detached[i];
+            if (distance(point, slot) <= this.reaches[slot]) {
+                if (numFound == found.length) {
+                    found = Arrays.copyOf(found, 2 * numFound);
+                }
+                found[numFound++] = slot;
+            }
+        }
+        found = Arrays.copyOf(found, numFound);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * State of a nearest center search. Among equal distances the smallest
+     * slot wins, so the order in which slots are offered does not matter.
+     */
+    protected class Search {
+
+        final double[] point;
+
+        final int fromSlot;
+
+        final int excludedSlot;
+
+        double distance;
+
+        int slot = -1;
+
+        Search(double[] point, int fromSlot, int excludedSlot, double maxDistance) {
+            this.point = point;
+            this.fromSlot = fromSlot;
+            this.excludedSlot = excludedSlot;
+            this.distance = maxDistance;
+        }
+
+        /**
+         * @return whether a center at this distance could be found
+         */
+        boolean accepts(double lowerBound) {
+            return lowerBound < this.distance || (lowerBound == this.distance && this.slot >= 0);
+        }
+
+        void offer(int candidate) {
+            if (candidate < this.fromSlot || candidate == this.excludedSlot) {
+                return;
+            }
+            double d = distance(this.point, candidate);
+            if (d < this.distance || (d == this.distance && this.slot >= 0 && candidate < this.slot)) {
+                this.distance = d;
+                this.slot = candidate;
+            }
+        }
+    }
+
+    protected void searchNearest(int node, Search search) {
+        if (this.children[node] < 0) {
+            for (int p = this.starts[node]; p < this.ends[node]; p++) {
+                if (this.entries[p] >= 0) {
+                    search.offer(this.entries[p]);
+                }
+            }
+            return;
+        }
+        int first = this.children[node];
+        int second = first + 1;
+        double firstDistance = boxDistance(search.point, first);
+        double secondDistance = boxDistance(search.point, second);
+        if (secondDistance < firstDistance) {
+            int swap = first;
+            first = second;
+            second = swap;
+            double swapDistance = firstDistance;
+            firstDistance = secondDistance;
+            secondDistance = swapDistance;
+        }
+        if (search.accepts(firstDistance)) {
+            searchNearest(first, search);
+            if (search.accepts(secondDistance)) {
+                searchNearest(second, search);
+            }
+        }
+    }
+
+    /**
+     * @return a lower bound of the distance between the point and the
+     * centers in the box of the node, never above the distance computed by
+     * {@link #distance}
+     */
+    protected double boxDistance(double[] point, int node) {
+        int base = node * this.dimensions;
+        double distance = 0.0;
+        for (int i = 0; i < this.dimensions; i++) {
+            double d;
+            if (point[i] < this.lowerBounds[base + i]) {
+                d = point[i] - this.lowerBounds[base + i];
+            } else if (point[i] > this.upperBounds[base + i]) {
+                d = point[i] - this.upperBounds[base + i];
+            } else {
+                continue;
+            }
+            distance += d * d;
+        }
+        return Math.sqrt(distance);
+    }
+
+    /**
+     * @return whether the center of the slot is within the box of the leaf
+     * widened by half its extent, in which case the box is enlarged rather
+     * than the slot taken out of the tree
+     */
+    protected boolean isNear(int leaf, int slot) {
+        int base = leaf * this.dimensions;
+        int center = slot * this.dimensions;
+        for (int i = 0; i < this.dimensions; i++) {
+            double margin = (this.upperBounds[base + i] - this.lowerBounds[base + i]) / 2;
+            double value = this.centers[center + i];
+            if (!(value >= this.lowerBounds[base + i] - margin && value <= this.upperBounds[base + i] + margin)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void enlarge(int leaf, int slot) {
+        int center = slot * this.dimensions;
+        double reach = this.reaches[slot];
+        boolean enlarged = false;
+        for (int node = leaf; node >= 0; node = this.parents[node]) {
+            int base = node * this.dimensions;
+            boolean changed = false;
+            for (int i = 0; i < this.dimensions; i++) {
+                double value = this.centers[center + i];
+                if (value < this.lowerBounds[base + i]) {
+                    this.lowerBounds[base + i] = value;
+                    changed = true;
+                }
+                if (value > this.upperBounds[base + i]) {
+                    this.upperBounds[base + i] = value;
+                    changed = true;
+                }
+            }
+            if (reach > this.maxReaches[node]) {
+                this.maxReaches[node] = reach;
+                changed = true;
+            }
+            if (!changed) {
+                break;
+            }
+            enlarged = true;
+        }
+        if (enlarged) {
+            this.numEnlargements++;
+        }
+    }
+
+    protected void addDetached(int slot) {
+        if (this.numDetached == this.detached.length) {
+            this.detached = Arrays.copyOf(this.detached, Math.max(16, 2 * this.numDetached));
+        }
+        this.detached[this.numDetached++] = slot;
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > this.reaches.length) {
+            int newCapacity = Math.max(16, Math.max(capacity, 2 * this.reaches.length));
+            this.centers = Arrays.copyOf(this.centers, newCapacity * this.dimensions);
+            this.reaches = Arrays.copyOf(this.reaches, newCapacity);
+            this.positions = Arrays.copyOf(this.positions, newCapacity);
+        }
+    }
+
+    /**
+     * Rebuilds the tree once the slots kept aside or the enlarged boxes make
+     * the searches slower than a rebuild.
+     */
+    protected void ensureBuilt() {
+        int numIndexed = this.size - this.numDetached;
+        if (this.numDetached > Math.max(2 * LEAF_SIZE, numIndexed / 16)
+                || this.numEnlargements > Math.max(2 * LEAF_SIZE, numIndexed)
+                || this.entries.length > 2 * Math.max(LEAF_SIZE, this.size)) {
+            build();
+        }
+    }
+
+    protected void build() {
+        this.entries = new int[this.size];
+        for (int slot = 0; slot < this.size; slot++) {
+            this.entries[slot] = slot;
+        }
+        this.leaves = new int[this.size];
+        this.numDetached = 0;
+        this.numEnlargements = 0;
+        this.numNodes = 0;
+        if (this.size > 0) {
+            // leaves hold at least LEAF_SIZE / 2 centers
+            int maxNodes = 2 * ((this.size + LEAF_SIZE / 2 - 1) / (LEAF_SIZE / 2)) + 1;
+            this.children = new int[maxNodes];
+            this.parents = new int[maxNodes];
+            this.starts = new int[maxNodes];
+            this.ends = new int[maxNodes];
+            this.lowerBounds = new double[maxNodes * this.dimensions];
+            this.upperBounds = new double[maxNodes * this.dimensions];
+            this.maxReaches = new double[maxNodes];
+            this.numNodes = 1;
+            buildNode(0, -1, 0, this.size);
+        }
+        for (int p = 0; p < this.size; p++) {
+            this.positions[this.entries[p]] = p;
+        }
+    }
+
+    protected void buildNode(int node, int parent, int start, int end) {
+        this.parents[node] = parent;
+        this.starts[node] = start;
+        this.ends[node] = end;
+        int base = node * this.dimensions;
+        Arrays.fill(this.lowerBounds, base, base + this.dimensions, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.upperBounds, base, base + this.dimensions, Double.NEGATIVE_INFINITY);
+        double maxReach = 0.0;
+        for (int p = start; p < end; p++) {
+            int center = this.entries[p] * this.dimensions;
+            for (int i = 0; i < this.dimensions; i++) {
+                this.lowerBounds[base + i] = Math.min(this.lowerBounds[base + i], this.centers[center + i]);
+                this.upperBounds[base + i] = Math.max(this.upperBounds[base + i], this.centers[center + i]);
+            }
+            maxReach = Math.max(maxReach, this.reaches[this.entries[p]]);
+        }
+        this.maxReaches[node] = maxReach;
+        int widest = -1;
+        double widestExtent = 0.0;
+        for (int i = 0; i < this.dimensions; i++) {
+            double extent = this.upperBounds[base + i] - this.lowerBounds[base + i];
+            if (extent > widestExtent) {
+                widest = i;
+                widestExtent = extent;
+            }
+        }
+        if (end - start <= LEAF_SIZE || widest < 0) {
+            this.children[node] = -1;
+            for (int p = start; p < end; p++) {
+                this.leaves[p] = node;
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        select(start, end, middle, widest);
+        int first = this.numNodes;
+        this.numNodes += 2;
+        this.children[node] = first;
+        buildNode(first, node, start, middle);
+        buildNode(first + 1, node, middle, end);
+    }
+
+    /**
+     * Reorders the entries from start to end so that the one at k has the
+     * k-th smallest value in the dimension, smaller ones before it and larger
+     * ones after.
+     */
+    protected void select(int start, int end, int k, int dimension) {
+        int left = start;
+        int right = end - 1;
+        while (left < right) {
+            double pivot = value(this.entries[(left + right) >>> 1], dimension);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (value(this.entries[i], dimension) < pivot) {
+                    i++;
+                }
+                while (value(this.entries[j], dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = this.entries[i];
+                    this.entries[i] = this.entries[j];
+                    this.entries[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    protected double value(int slot, int dimension) {
+        return this.centers[slot * this.dimensions + dimension];
+    }
+}
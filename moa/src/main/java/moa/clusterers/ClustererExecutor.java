@@ -0,0 +1,296 @@
+/*
+ *    ClustererExecutor.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.clusterers;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import moa.cluster.Clustering;
+import moa.classifiers.core.EnsembleExecutor;
+
+/**
+ * Parallel work of the clusterers keeping micro-clusters: the searches for
+ * the micro-cluster nearest to a point and for the two closest
+ * micro-clusters, and the offline macro-clustering phase.
+ *
+ * <p>Searches are cut into blocks handed out one at a time to the threads of
+ * an {@link EnsembleExecutor}, so threads done early take over the remaining
+ * blocks. Each block keeps its first minimum and the blocks are combined in
+ * order, which finds the same micro-cluster as a sequential loop. Searches
+ * too small to pay for the hand-over run on the calling thread.</p>
+ *
+ * <p>The macro-clustering phase can run asynchronously on a snapshot of the
+ * micro-clusters: the clusterer then returns the last macro-clustering
+ * finished, one request behind, and keeps absorbing points while the next
+ * one is computed. The first request waits for its result.</p>
+ *
+ * <p>Threads are created lazily and are not serialized, so clusterers holding
+ * an executor can still be copied. The asynchronous macro-clusterings of all
+ * clusterers share one pool, whose threads stop when idle.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class ClustererExecutor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Distances computed by a block of a search. */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Distance from the point searched to a candidate.
+     */
+    public interface Distance {
+
+        double distance(int index);
+    }
+
+    /**
+     * Distance between two candidates, i &lt; j.
+     */
+    public interface PairDistance {
+
+        double distance(int i, int j);
+    }
+
+    protected final EnsembleExecutor executor;
+
+    protected final boolean asynchronousMacroClustering;
+
+    /** Seconds an idle macro-clustering thread is kept alive. */
+    protected static final long MACRO_CLUSTERING_KEEP_ALIVE_SECONDS = 60;
+
+    /** Runs the asynchronous macro-clusterings of all clusterers. */
+    protected static ExecutorService macroClusteringPool;
+
+    protected transient Future<Clustering> pendingMacroClustering;
+
+    protected transient Clustering lastMacroClustering;
+
+    /**
+     * @param numberOfJobs the value of a numberOfJobs option: -1 uses all
+     * available processors, 0 and 1 search on the calling thread
+     * @param asynchronousMacroClustering whether the macro-clustering phase
+     * runs in the background
+     */
+    public ClustererExecutor(int numberOfJobs, boolean asynchronousMacroClustering) {
+        this.executor = new EnsembleExecutor(numberOfJobs);
+        this.asynchronousMacroClustering = asynchronousMacroClustering;
+    }
+
+    public int getNumberOfThreads() {
+        return this.executor.getNumberOfThreads();
+    }
+
+    /**
+     * @return the index of the first candidate at the smallest distance, or
+     * -1 if no distance is smaller than Double.MAX_VALUE
+     */
+    public int nearest(int numCandidates, final Distance distance) {
+        if (!this.executor.isParallel() || numCandidates < 2 * BLOCK_SIZE) {
+            return nearest(0, numCandidates, distance, new double[1]);
+        }
+        final int numBlocks = (numCandidates + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int candidates = numCandidates;
+        final int[] indices = new int[numBlocks];
+        final double[] minima = new double[numBlocks];
+        this.executor.forEachMember(numBlocks, new EnsembleExecutor.MemberTask() {
+            @Override
+            public void run(int block) {
+                double[] minimum = new double[1];
+                indices[block] = nearest(block * BLOCK_SIZE,
+                        Math.min(candidates, (block + 1) * BLOCK_SIZE), distance, minimum);
+                minima[block] = minimum[0];
+            }
+        });
+        int best = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int block = 0; block < numBlocks; block++) {
+            if (minima[block] < minDistance) {
+                minDistance = minima[block];
+                best = indices[block];
+            }
+        }
+        return best;
+    }
+
+    protected static int nearest(int from, int to, Distance distance, double[] minimum) {
+        int best = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double d = distance.distance(i);
+            if (d < minDistance) {
+                minDistance = d;
+                best = i;
+            }
+        }
+        minimum[0] = minDistance;
+        return best;
+    }
+
+    /**
+     * @return the first pair {i, j}, i &lt; j, at the smallest distance in
+     * the order of a loop over i then j, or {0, 0} if no distance is smaller
+     * than Double.MAX_VALUE
+     */
+    public int[] closestPair(int numCandidates, final PairDistance distance) {
+        long numPairs = (long) numCandidates * (numCandidates - 1) / 2;
+        if (!this.executor.isParallel() || numPairs < 2 * BLOCK_SIZE) {
+            return closestPair(0, numCandidates, numCandidates, distance, new double[1]);
+        }
+        // rows get shorter, blocks of rows hold about BLOCK_SIZE pairs on average
+        final int rowsPerBlock = (int) Math.max(1, (long) BLOCK_SIZE * numCandidates / (2 * numPairs));
+        final int numBlocks = (numCandidates + rowsPerBlock - 1) / rowsPerBlock;
+        final int candidates = numCandidates;
+        final int[][] pairs = new int[numBlocks][];
+        final double[] minima = new double[numBlocks];
+        this.executor.forEachMember(numBlocks, new EnsembleExecutor.MemberTask() {
+            @Override
+            public void run(int block) {
+                double[] minimum = new double[1];
+                pairs[block] = closestPair(block * rowsPerBlock,
+                        Math.min(candidates, (block + 1) * rowsPerBlock), candidates, distance, minimum);
+                minima[block] = minimum[0];
+            }
+        });
+        int[] best = new int[]{0, 0};
+        double minDistance = Double.MAX_VALUE;
+        for (int block = 0; block < numBlocks; block++) {
+            if (minima[block] < minDistance) {
+                minDistance = minima[block];
+                best = pairs[block];
+            }
+        }
+        return best;
+    }
+
+    protected static int[] closestPair(int fromRow, int toRow, int numCandidates,
+            PairDistance distance, double[] minimum) {
+        int[] best = new int[]{0, 0};
+        double minDistance = Double.MAX_VALUE;
+        for (int i = fromRow; i < toRow; i++) {
+            for (int j = i + 1; j < numCandidates; j++) {
+                double d = distance.distance(i, j);
+                if (d < minDistance) {
+                    minDistance = d;
+                    best[0] = i;
+                    best[1] = j;
+                }
+            }
+        }
+        minimum[0] = minDistance;
+        return best;
+    }
+
+    /**
+     * Runs the macro-clustering phase, or returns the last one finished and
+     * starts the next one if it runs asynchronously. The phase must only read
+     * a snapshot of the micro-clusters, never the live ones.
+     */
+    public Clustering macroClustering(Callable<Clustering> offlinePhase) {
+        if (!this.asynchronousMacroClustering) {
+            return call(offlinePhase);
+        }
+        if (this.pendingMacroClustering != null
+                && (this.pendingMacroClustering.isDone() || this.lastMacroClustering == null)) {
+            this.lastMacroClustering = get(this.pendingMacroClustering);
+            this.pendingMacroClustering = null;
+        }
+        if (this.pendingMacroClustering == null) {
+            this.pendingMacroClustering = getMacroClusteringPool().submit(offlinePhase);
+        }
+        if (this.lastMacroClustering == null) {
+            this.lastMacroClustering = get(this.pendingMacroClustering);
+            this.pendingMacroClustering = null;
+        }
+        return this.lastMacroClustering;
+    }
+
+    public boolean isAsynchronousMacroClustering() {
+        return this.asynchronousMacroClustering;
+    }
+
+    /**
+     * Stops the worker threads and forgets the macro-clusterings.
+     */
+    public synchronized void shutdown() {
+        this.executor.shutdown();
+        if (this.pendingMacroClustering != null) {
+            this.pendingMacroClustering.cancel(true);
+            this.pendingMacroClustering = null;
+        }
+        this.lastMacroClustering = null;
+    }
+
+    /**
+     * @return the pool shared by all clusterers for their macro-clusterings,
+     * whose threads stop when idle and do not refer to any clusterer
+     */
+    protected static synchronized ExecutorService getMacroClusteringPool() {
+        if (macroClusteringPool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            int numberOfThreads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    numberOfThreads, numberOfThreads,
+                    MACRO_CLUSTERING_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "macro-clustering-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            macroClusteringPool = executor;
+        }
+        return macroClusteringPool;
+    }
+
+    protected static Clustering call(Callable<Clustering> offlinePhase) {
+        try {
+            return offlinePhase.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static Clustering get(Future<Clustering> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the macro-clustering.", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof RuntimeException)
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        }
+    }
+}
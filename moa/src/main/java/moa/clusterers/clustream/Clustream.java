@@ -28,7 +28,9 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SphereCluster;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.CenterIndex;
 import moa.core.Measurement;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.DenseInstance;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -51,6 +53,9 @@ public class Clustream extends AbstractClusterer{
 			"kernelRadiFactor", 't',
 			"Multiplier for the kernel radius", 2);
 
+	public FlagOption linearSearchOption = new FlagOption("linearSearch", 'x',
+			"Scan all kernels for the nearest one instead of searching an index of their centers.");
+
 	private int timeWindow;
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
@@ -59,6 +64,7 @@ public class Clustream extends AbstractClusterer{
 	private int bufferSize;
 	private double t;
 	private int m;
+	private CenterIndex centerIndex;
 
 	public Clustream() {
 	}
@@ -73,6 +79,7 @@ public class Clustream extends AbstractClusterer{
 		this.bufferSize = maxNumKernelsOption.getValue();
 		t = kernelRadiFactorOption.getValue();
 		m = maxNumKernelsOption.getValue();
+		this.centerIndex = null;
 	}
 
 	@Override
@@ -103,36 +110,27 @@ public class Clustream extends AbstractClusterer{
 
 			buffer.clear();
 			initialized = true;
+			if ( !linearSearchOption.isSet() ) {
+				centerIndex = new CenterIndex( dim );
+				for ( int i = 0; i < kernels.length; i++ ) {
+					centerIndex.set( i, kernels[i].getCenter() );
+				}
+			}
 		}
 
 
 		// 1. Determine closest kernel
-		ClustreamKernel closestKernel = null;
-		double minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter() );
-			if ( distance < minDistance ) {
-				closestKernel = kernels[i];
-				minDistance = distance;
-			}
-		}
+		double[] point = instance.toDoubleArray();
+		int closest = nearestKernel( point );
+		ClustreamKernel closestKernel = closest < 0 ? null : kernels[closest];
+		double minDistance = closest < 0 ? Double.MAX_VALUE : distance( point, closestKernel.getCenter() );
 
 		// 2. Check whether instance fits into closestKernel
 		double radius = 0.0;
 		if ( closestKernel.getWeight() == 1 ) {
 			// Special case: estimate radius by determining the distance to the
 			// next closest cluster
-			radius = Double.MAX_VALUE;
-			double[] center = closestKernel.getCenter();
-			for ( int i = 0; i < kernels.length; i++ ) {
-				if ( kernels[i] == closestKernel ) {
-					continue;
-				}
-
-				double distance = distance(kernels[i].getCenter(), center );
-				radius = Math.min( distance, radius );
-			}
+			radius = distanceToNextKernel( closest );
 		} else {
 			radius = closestKernel.getRadius();
 		}
@@ -140,6 +138,7 @@ public class Clustream extends AbstractClusterer{
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged( closest );
 			return;
 		}
 
@@ -151,16 +150,84 @@ public class Clustream extends AbstractClusterer{
 		for ( int i = 0; i < kernels.length; i++ ) {
 			if ( kernels[i].getRelevanceStamp() < threshold ) {
 				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
+				kernelChanged( i );
 				return;
 			}
 		}
 
 		// 3.2 Merge closest two kernels
+		int[] closestPair = closestKernels();
+		int closestA = closestPair[0];
+		int closestB = closestPair[1];
+		assert (closestA != closestB);
+
+		kernels[closestA].add( kernels[closestB] );
+		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged( closestA );
+		kernelChanged( closestB );
+	}
+
+	/**
+	 * @return the index of the first kernel nearest to the point, -1 if none
+	 * is at a distance below Double.MAX_VALUE
+	 */
+	private int nearestKernel( double[] point ) {
+		if ( centerIndex != null ) {
+			return centerIndex.nearest( point );
+		}
+		int closest = -1;
+		double minDistance = Double.MAX_VALUE;
+		for ( int i = 0; i < kernels.length; i++ ) {
+			double distance = distance( point, kernels[i].getCenter() );
+			if ( distance < minDistance ) {
+				closest = i;
+				minDistance = distance;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * @return the distance between a kernel and the closest other kernel
+	 */
+	private double distanceToNextKernel( int kernel ) {
+		double[] center = kernels[kernel].getCenter();
+		if ( centerIndex != null ) {
+			int next = centerIndex.nearest( center, 0, kernel, Double.MAX_VALUE );
+			return next < 0 ? Double.MAX_VALUE : distance( kernels[next].getCenter(), center );
+		}
+		double radius = Double.MAX_VALUE;
+		for ( int i = 0; i < kernels.length; i++ ) {
+			if ( i == kernel ) {
+				continue;
+			}
+
+			double distance = distance( kernels[i].getCenter(), center );
+			radius = Math.min( distance, radius );
+		}
+		return radius;
+	}
+
+	/**
+	 * @return the first pair of kernels {i, j}, i &lt; j, at the smallest
+	 * distance
+	 */
+	private int[] closestKernels() {
 		int closestA = 0;
 		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
+		double minDistance = Double.MAX_VALUE;
 		for ( int i = 0; i < kernels.length; i++ ) {
 			double[] centerA = kernels[i].getCenter();
+			if ( centerIndex != null ) {
+				// the nearest following kernel, if closer than the best pair so far
+				int j = centerIndex.nearest( centerA, i + 1, -1, minDistance );
+				if ( j >= 0 ) {
+					minDistance = distance( centerA, kernels[j].getCenter() );
+					closestA = i;
+					closestB = j;
+				}
+				continue;
+			}
 			for ( int j = i + 1; j < kernels.length; j++ ) {
 				double dist = distance( centerA, kernels[j].getCenter() );
 				if ( dist < minDistance ) {
@@ -170,10 +237,13 @@ public class Clustream extends AbstractClusterer{
 				}
 			}
 		}
-		assert (closestA != closestB);
+		return new int[]{ closestA, closestB };
+	}
 
-		kernels[closestA].add( kernels[closestB] );
-		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+	private void kernelChanged( int kernel ) {
+		if ( centerIndex != null ) {
+			centerIndex.set( kernel, kernels[kernel].getCenter() );
+		}
 	}
 
 	@Override
@@ -251,17 +321,14 @@ public class Clustream extends AbstractClusterer{
 
 		int repetitions = 100;
 		while ( repetitions-- >= 0 ) {
+			CenterIndex centerIndex = new CenterIndex( dimensions );
+			for ( int i = 0; i < k; i++ ) {
+				centerIndex.set( i, centers[i].getCenter() );
+			}
 			// Assign points to clusters
 			for ( Cluster point : data ) {
-				double minDistance = distance( point.getCenter(), centers[0].getCenter() );
-				int closestCluster = 0;
-				for ( int i = 1; i < k; i++ ) {
-					double distance = distance( point.getCenter(), centers[i].getCenter() );
-					if ( distance < minDistance ) {
-						closestCluster = i;
-						minDistance = distance;
-					}
-				}
+				// the first center unless another one is closer
+				int closestCluster = Math.max( 0, centerIndex.nearest( point.getCenter() ) );
 
 				clustering.get( closestCluster ).add( point );
 			}
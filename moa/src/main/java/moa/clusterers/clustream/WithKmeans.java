@@ -37,7 +37,10 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SphereCluster;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.CenterIndex;
+import moa.clusterers.ClustererExecutor;
 import moa.core.Measurement;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.DenseInstance;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -61,6 +64,15 @@ public class WithKmeans extends AbstractClusterer {
 			"k", 'k',
 			"k of macro k-means (number of clusters)", 5);
 
+	public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+			"Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
+	public FlagOption asynchronousMacroClusteringOption = new FlagOption("asynchronousMacroClustering", 'a',
+			"Run k-means in the background on a snapshot of the micro-clusters, returning the last clustering finished.");
+
+	public FlagOption linearSearchOption = new FlagOption("linearSearch", 'x',
+			"Scan all kernels for the nearest one, on numberOfJobs threads, instead of searching an index of their centers.");
+
 	private int timeWindow;
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
@@ -69,6 +81,8 @@ public class WithKmeans extends AbstractClusterer {
 	private int bufferSize;
 	private double t;
 	private int m;
+	private ClustererExecutor executor;
+	private CenterIndex centerIndex;
 	
 	public WithKmeans() {
 	
@@ -83,6 +97,12 @@ public class WithKmeans extends AbstractClusterer {
 		this.bufferSize = maxNumKernelsOption.getValue();
 		t = kernelRadiFactorOption.getValue();
 		m = maxNumKernelsOption.getValue();
+		if (this.executor != null) {
+			this.executor.shutdown();
+		}
+		this.executor = new ClustererExecutor(numberOfJobsOption.getValue(),
+				asynchronousMacroClusteringOption.isSet());
+		this.centerIndex = null;
 	}
 
 	@Override
@@ -101,21 +121,22 @@ public class WithKmeans extends AbstractClusterer {
 	
 				buffer.clear();
 				initialized = true;
+				if (!linearSearchOption.isSet()) {
+					centerIndex = new CenterIndex(dim);
+					for (int i = 0; i < kernels.length; i++) {
+						centerIndex.set(i, kernels[i].getCenter());
+					}
+				}
 			}
 		}
 
 
 		// 1. Determine closest kernel
-		ClustreamKernel closestKernel = null;
-		double minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter());
-			if (distance < minDistance) {
-				closestKernel = kernels[i];
-				minDistance = distance;
-			}
-		}
+		final double[] point = instance.toDoubleArray();
+		int closest = centerIndex != null ? centerIndex.nearest(point)
+				: executor.nearest(kernels.length, i -> distance(point, kernels[i].getCenter()));
+		ClustreamKernel closestKernel = closest < 0 ? null : kernels[closest];
+		double minDistance = closest < 0 ? Double.MAX_VALUE : distance(point, closestKernel.getCenter());
 
 		// 2. Check whether instance fits into closestKernel
 		double radius = 0.0;
@@ -124,13 +145,20 @@ public class WithKmeans extends AbstractClusterer {
 			// next closest cluster
 			radius = Double.MAX_VALUE;
 			double[] center = closestKernel.getCenter();
-			for ( int i = 0; i < kernels.length; i++ ) {
-				if ( kernels[i] == closestKernel ) {
-					continue;
+			if (centerIndex != null) {
+				int next = centerIndex.nearest(center, 0, closest, Double.MAX_VALUE);
+				if (next >= 0) {
+					radius = distance(kernels[next].getCenter(), center);
 				}
+			} else {
+				for ( int i = 0; i < kernels.length; i++ ) {
+					if ( kernels[i] == closestKernel ) {
+						continue;
+					}
 
-				double distance = distance(kernels[i].getCenter(), center );
-				radius = Math.min( distance, radius );
+					double distance = distance(kernels[i].getCenter(), center );
+					radius = Math.min( distance, radius );
+				}
 			}
 		} else {
 			radius = closestKernel.getRadius();
@@ -139,6 +167,7 @@ public class WithKmeans extends AbstractClusterer {
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged(closest);
 			return;
 		}
 
@@ -150,29 +179,46 @@ public class WithKmeans extends AbstractClusterer {
 		for ( int i = 0; i < kernels.length; i++ ) {
 			if ( kernels[i].getRelevanceStamp() < threshold ) {
 				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
+				kernelChanged(i);
 				return;
 			}
 		}
 
 		// 3.2 Merge closest two kernels
-		int closestA = 0;
-		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
+		final double[][] centers = new double[kernels.length][];
 		for ( int i = 0; i < kernels.length; i++ ) {
-			double[] centerA = kernels[i].getCenter();
-			for ( int j = i + 1; j < kernels.length; j++ ) {
-				double dist = distance( centerA, kernels[j].getCenter() );
-				if ( dist < minDistance ) {
-					minDistance = dist;
-					closestA = i;
-					closestB = j;
+			centers[i] = kernels[i].getCenter();
+		}
+		int[] closestPair;
+		if (centerIndex != null) {
+			closestPair = new int[2];
+			minDistance = Double.MAX_VALUE;
+			for (int i = 0; i < kernels.length; i++) {
+				// the nearest following kernel, if closer than the best pair so far
+				int j = centerIndex.nearest(centers[i], i + 1, -1, minDistance);
+				if (j >= 0) {
+					minDistance = distance(centers[i], centers[j]);
+					closestPair[0] = i;
+					closestPair[1] = j;
 				}
 			}
+		} else {
+			closestPair = executor.closestPair(kernels.length, (i, j) -> distance(centers[i], centers[j]));
 		}
+		int closestA = closestPair[0];
+		int closestB = closestPair[1];
 		assert (closestA != closestB);
 
 		kernels[closestA].add( kernels[closestB] );
 		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged(closestA);
+		kernelChanged(closestB);
+	}
+
+	private void kernelChanged(int kernel) {
+		if (centerIndex != null) {
+			centerIndex.set(kernel, kernels[kernel].getCenter());
+		}
 	}
 	
 	@Override
@@ -194,7 +240,9 @@ public class WithKmeans extends AbstractClusterer {
                 if (!initialized) {
                     return new Clustering(new Cluster[0]);
 		}
-		return kMeans_rand(kOption.getValue(), getMicroClusteringResult());
+		final int k = kOption.getValue();
+		final Clustering microClustering = getMicroClusteringResult();
+		return executor.macroClustering(() -> kMeans_rand(k, microClustering));
 	}
 	
 	public Clustering getClusteringResult(Clustering gtClustering) {
@@ -129,7 +129,15 @@ public class MicroCluster extends CFCluster {
 
     @Override
     public MicroCluster copy() {
-        MicroCluster copy = new MicroCluster(this.LS.clone(), this.LS.length, this.getCreationTime(), this.lambda, this.currentTimestamp);
+        return copy(this.currentTimestamp);
+    }
+
+    /**
+     * @return a copy decaying with the given clock, e.g. a clock stopped at
+     * the current time for a snapshot read by another thread
+     */
+    public MicroCluster copy(Timestamp currentTimestamp) {
+        MicroCluster copy = new MicroCluster(this.LS.clone(), this.LS.length, this.getCreationTime(), this.lambda, currentTimestamp);
         copy.setWeight(this.N + 1);
         copy.N = this.N;
         copy.SS = this.SS.clone();
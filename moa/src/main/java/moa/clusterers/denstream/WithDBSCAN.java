@@ -29,8 +29,11 @@ import java.util.ArrayList;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.CenterIndex;
+import moa.clusterers.ClustererExecutor;
 import moa.clusterers.macro.dbscan.DBScan;
 import moa.core.Measurement;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.DenseInstance;
@@ -64,6 +67,15 @@ public class WithDBSCAN extends AbstractClusterer {
 	 public IntOption speedOption = new IntOption("processingSpeed", 's',
 				"Number of incoming points per time unit.", 100, 1, 1000);
 
+	public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+			"Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
+	public FlagOption asynchronousMacroClusteringOption = new FlagOption("asynchronousMacroClustering", 'a',
+			"Run DBSCAN in the background on a snapshot of the micro-clusters, returning the last clustering finished.");
+
+	public FlagOption linearSearchOption = new FlagOption("linearSearch", 'x',
+			"Scan all micro-clusters for the nearest one, on numberOfJobs threads, instead of searching an index of their centers.");
+
 	private double weightThreshold = 0.01;
 	double lambda;
 	double epsilon;
@@ -84,6 +96,10 @@ public class WithDBSCAN extends AbstractClusterer {
 	protected int numInitPoints;
 	protected int numProcessedPerUnit;
 	protected int processingSpeed;
+	protected ClustererExecutor executor;
+	/** Indexes of the centers of the micro-clusters, null when to be rebuilt. */
+	protected CenterIndex pIndex;
+	protected CenterIndex oIndex;
 	// TODO Some variables to prevent duplicated processes
 
 	private class DenPoint extends DenseInstance {
@@ -120,6 +136,13 @@ public class WithDBSCAN extends AbstractClusterer {
 		
 		numProcessedPerUnit = 0;
 		processingSpeed = speedOption.getValue();
+		if (executor != null) {
+			executor.shutdown();
+		}
+		executor = new ClustererExecutor(numberOfJobsOption.getValue(),
+				asynchronousMacroClusteringOption.isSet());
+		pIndex = null;
+		oIndex = null;
 	}
 
 	public void initialDBScan() {
@@ -168,16 +191,21 @@ public class WithDBSCAN extends AbstractClusterer {
 			// ////////////
 			boolean merged = false;
 			if (p_micro_cluster.getClustering().size() != 0) {
-				MicroCluster x = nearestCluster(point, p_micro_cluster);
+				pIndex = centerIndex(pIndex, p_micro_cluster);
+				int nearest = nearestCluster(point, p_micro_cluster, pIndex);
+				MicroCluster x = (MicroCluster) p_micro_cluster.get(nearest);
 				MicroCluster xCopy = x.copy();
 				xCopy.insert(point, timestamp);
 				if (xCopy.getRadius(timestamp) <= epsilon) {
 					x.insert(point, timestamp);
 					merged = true;
+					setCenter(pIndex, nearest, x);
 				}
 			}
 			if (!merged && (o_micro_cluster.getClustering().size() != 0)) {
-				MicroCluster x = nearestCluster(point, o_micro_cluster);
+				oIndex = centerIndex(oIndex, o_micro_cluster);
+				int nearest = nearestCluster(point, o_micro_cluster, oIndex);
+				MicroCluster x = (MicroCluster) o_micro_cluster.get(nearest);
 				MicroCluster xCopy = x.copy();
 				xCopy.insert(point, timestamp);
 
@@ -187,14 +215,21 @@ public class WithDBSCAN extends AbstractClusterer {
 					if (x.getWeight() > beta * mu) {
 						o_micro_cluster.getClustering().remove(x);
 						p_micro_cluster.getClustering().add(x);
+						if (oIndex != null) {
+							oIndex.remove(nearest);
+						}
+						setCenter(pIndex, p_micro_cluster.size() - 1, x);
+					} else {
+						setCenter(oIndex, nearest, x);
 					}
 				}
 			}
 			if (!merged) {
-				o_micro_cluster.getClustering().add(
-						new MicroCluster(point.toDoubleArray(), point
-								.toDoubleArray().length, timestamp, lambda,
-								currentTimestamp));
+				MicroCluster x = new MicroCluster(point.toDoubleArray(), point
+						.toDoubleArray().length, timestamp, lambda,
+						currentTimestamp);
+				o_micro_cluster.getClustering().add(x);
+				setCenter(oIndex, o_micro_cluster.size() - 1, x);
 			}
 
 			// //////////////////////////
@@ -208,7 +243,9 @@ public class WithDBSCAN extends AbstractClusterer {
 					}
 				}
 				for (Cluster c : removalList) {
-					p_micro_cluster.getClustering().remove(c);
+					if (p_micro_cluster.getClustering().remove(c)) {
+						pIndex = null;
+					}
 				}
 
 				for (Cluster c : o_micro_cluster.getClustering()) {
@@ -222,7 +259,9 @@ public class WithDBSCAN extends AbstractClusterer {
 					}
 				}
 				for (Cluster c : removalList) {
-					o_micro_cluster.getClustering().remove(c);
+					if (o_micro_cluster.getClustering().remove(c)) {
+						oIndex = null;
+					}
 				}
 			}
 
@@ -261,23 +300,65 @@ public class WithDBSCAN extends AbstractClusterer {
 		return neighbourIDs;
 	}
 
-	private MicroCluster nearestCluster(DenPoint p, Clustering cl) {
-		MicroCluster min = null;
+	/**
+	 * @return the position of the cluster nearest to the point, its distance
+	 * being the one to the center minus the radius: the first cluster unless
+	 * the point is inside other ones
+	 */
+	private int nearestCluster(DenPoint p, final Clustering cl, CenterIndex index) {
+		final double[] point = p.toDoubleArray();
+		if (index == null) {
+			int nearest = executor.nearest(cl.size(), c -> {
+				MicroCluster x = (MicroCluster) cl.get(c);
+				double dist = distance(point, x.getCenter()) - x.getRadius(timestamp);
+				return dist < 0 ? dist : (c == 0 ? 0 : Double.MAX_VALUE);
+			});
+			return Math.max(0, nearest);
+		}
+		int nearest = 0;
 		double minDist = 0;
-		for (int c = 0; c < cl.size(); c++) {
+		for (int c : index.withinReach(point)) {
 			MicroCluster x = (MicroCluster) cl.get(c);
-			if (min == null) {
-				min = x;
-			}
-			double dist = distance(p.toDoubleArray(), x.getCenter());
-			dist -= x.getRadius(timestamp);
+			double dist = distance(point, x.getCenter()) - x.getRadius(timestamp);
 			if (dist < minDist) {
 				minDist = dist;
-				min = x;
+				nearest = c;
 			}
 		}
-		return min;
+		return nearest;
+	}
+
+	/**
+	 * @return the index of the centers of the clusters, built if it was
+	 * dropped, or null for linear searches
+	 */
+	private CenterIndex centerIndex(CenterIndex index, Clustering cl) {
+		if (index != null || linearSearchOption.isSet()) {
+			return index;
+		}
+		index = new CenterIndex(cl.get(0).getCenter().length);
+		for (int c = 0; c < cl.size(); c++) {
+			setCenter(index, c, (MicroCluster) cl.get(c));
+		}
+		return index;
+	}
 
+	/**
+	 * Sets the center of a cluster in an index, reaching as far as its radius.
+	 * The radius of a cluster does not change as it fades, only its rounding
+	 * does, hence the reach slightly above it.
+	 */
+	private void setCenter(CenterIndex index, int c, MicroCluster x) {
+		if (index == null) {
+			return;
+		}
+		double[] center = x.getCenter();
+		double radius = x.getRadius(timestamp);
+		double scale = radius;
+		for (double value : center) {
+			scale = Math.max(scale, Math.abs(value));
+		}
+		index.set(c, center, radius + 1e-6 * (1 + scale));
 	}
 
 	private double distance(double[] pointA, double[] pointB) {
@@ -290,8 +371,23 @@ public class WithDBSCAN extends AbstractClusterer {
 	}
 
 	public Clustering getClusteringResult() {
-		DBScan dbscan = new DBScan(p_micro_cluster,offlineOption.getValue() * epsilon, minPoints);
-		return dbscan.getClustering(p_micro_cluster);
+		final Clustering microClusters;
+		if (executor.isAsynchronousMacroClustering()) {
+			// copies that stop decaying, as training goes on meanwhile
+			Timestamp snapshotTimestamp = new Timestamp(currentTimestamp.getTimestamp());
+			microClusters = new Clustering();
+			for (Cluster c : p_micro_cluster.getClustering()) {
+				microClusters.add(((MicroCluster) c).copy(snapshotTimestamp));
+			}
+		} else {
+			microClusters = p_micro_cluster;
+		}
+		final double eps = offlineOption.getValue() * epsilon;
+		final int minPts = minPoints;
+		return executor.macroClustering(() -> {
+			DBScan dbscan = new DBScan(microClusters, eps, minPts);
+			return dbscan.getClustering(microClusters);
+		});
 	}
 
 	@Override
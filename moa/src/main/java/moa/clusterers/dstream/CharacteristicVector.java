@@ -154,7 +154,7 @@ public class CharacteristicVector {
 	 */
 	public double getCurrGridDensity(int currTime, double decayFactor)
 	{
-		return Math.pow(decayFactor, (currTime-this.getUpdateTime())) * this.getGridDensity();
+		return Math.pow(decayFactor, (currTime-this.getDensityTimeStamp())) * this.getGridDensity();
 	}
 
 	/**
@@ -216,7 +216,7 @@ public class CharacteristicVector {
 		double densityOfG = this.getGridDensity();
 		
 		//System.out.print("["+decayFactor+"^("+currTime+" - "+this.getDensityTimeStamp()+") * "+densityOfG+"] + 1.0 = ");
-		densityOfG = (Math.pow(decayFactor, (currTime-this.getUpdateTime())) * densityOfG)+1.0;
+		densityOfG = (Math.pow(decayFactor, (currTime-this.getDensityTimeStamp())) * densityOfG)+1.0;
 		//System.out.println(densityOfG);
 		
 		this.setGridDensity(densityOfG, currTime);
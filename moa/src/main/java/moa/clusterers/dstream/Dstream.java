@@ -20,6 +20,7 @@ package moa.clusterers.dstream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -108,9 +109,10 @@ public class Dstream extends AbstractClusterer {
 	private int d;
 	
 	/**
-	 * The number of density grids; defined after eq 2 in Chen and Tu 2007
+	 * The number of density grids; defined after eq 2 in Chen and Tu 2007. It is a double
+	 * as the product over a few dimensions already overflows an int.
 	 */
-	private int N;
+	private double N;
 	
 	/**
 	 * True if initialization of D-Stream is complete, false otherwise
@@ -121,15 +123,51 @@ public class Dstream extends AbstractClusterer {
 	 * A list of all density grids which are being monitored;
 	 * given in figure 1 of Chen and Tu 2007
 	 */
-	private HashMap<DensityGrid,CharacteristicVector> grid_list;
-	
+	private GridList grid_list;
+
 	/**
 	 * A list of all density grids which have been deleted;
-	 * allows the recording of tm - the last time when the 
+	 * allows the recording of tm - the last time when the
 	 * grid is removed from grid list as a sporadic grid (if ever).
+	 * The remove time is kept in the grid's last characteristic vector.
 	 */
-	private HashMap<DensityGrid,Integer> deleted_grids;
-	
+	private GridList deleted_grids;
+
+	/**
+	 * True if dl, dm or N changed since the last call to the offline component. The attribute
+	 * and the sporadicity of every grid are then re-evaluated at the next call.
+	 */
+	private boolean refreshAll;
+
+	/**
+	 * For each slot of grid_list, the time from which its grid changes attribute or becomes
+	 * sporadic if it receives no more records; Integer.MAX_VALUE if never. Grids which receive
+	 * no record are only inspected from that time on, their density decays lazily meanwhile.
+	 */
+	private int[] eventTimes;
+
+	/**
+	 * A binary min-heap of the scheduled inspections, each packed as {@code (time << 32 | slot)}. An
+	 * entry whose time differs from eventTimes[slot] is stale and skipped.
+	 */
+	private long[] events;
+
+	private int numEvents;
+
+	/**
+	 * The slots of grid_list to inspect at the next call to the offline component
+	 */
+	private int[] dueSlots;
+
+	private int numDue;
+
+	/**
+	 * A slot is in dueSlots iff its entry in dueMarks equals dueMark
+	 */
+	private int[] dueMarks;
+
+	private int dueMark;
+
 	
 	/**
 	 * A list of all Grid Clusters, which are defined in 
@@ -203,9 +241,18 @@ public class Dstream extends AbstractClusterer {
 		//System.out.println("Option values set...");
 
 		this.initialized = false;
-		this.grid_list = new HashMap<DensityGrid, CharacteristicVector>();
-		this.deleted_grids = new HashMap<DensityGrid, Integer>();
+		// The grid lists are created with the first instance, once d is known
+		this.grid_list = null;
+		this.deleted_grids = null;
 		this.cluster_list = new ArrayList<GridCluster>();
+		this.refreshAll = true;
+		this.eventTimes = new int[0];
+		this.events = new long[16];
+		this.numEvents = 0;
+		this.dueSlots = new int[16];
+		this.numDue = 0;
+		this.dueMarks = new int[0];
+		this.dueMark = 1;
 		//System.out.println("Data structures initialized...");
 
 		this.gap = 1;
@@ -229,7 +276,7 @@ public class Dstream extends AbstractClusterer {
 		
 		//System.out.print("Dstream.trainOnInstanceImpl (");
 		int[]g;
-		DensityGrid dg;
+		int slot;
 		CharacteristicVector cv;
 		boolean recalculateN = false;	// flag indicating whether N needs to be recalculated after this instance
 
@@ -256,6 +303,8 @@ public class Dstream extends AbstractClusterer {
 				}
 			}
 			//System.out.println("...arrays initialized");
+			this.grid_list = new GridList(this.d);
+			this.deleted_grids = new GridList(this.d);
 			recalculateN = true;
 			this.initialized = true;
 			//System.out.println("...boolean values initialized");
@@ -292,7 +341,7 @@ public class Dstream extends AbstractClusterer {
 		if (recalculateN)
 		{
 			//System.out.print(" recalculateN:");
-			int n = 1;
+			double n = 1;
 			for (int i = 0 ; i < this.d ; i++)
 			{
 				//System.out.print(" "+n);
@@ -303,13 +352,14 @@ public class Dstream extends AbstractClusterer {
 			}
 			//System.out.print(" "+n);
 			this.N = n;
+			this.refreshAll = true;
 			this.dl = this.cl/(this.N * (1.0 - this.decayFactor));
 			this.dm = this.cm/(this.N * (1.0 - this.decayFactor));
 			//System.out.print(" dl = " + this.dl + ", dm = " + this.dm);
 			
 			//Calculate the value for gap using the method defined in eq 26 of Chen and Tu 2007 
 			double optionA = this.cl/this.cm;
-			double optionB = ((double)this.N-this.cm)/((double)this.N-this.cl);
+			double optionB = (this.N-this.cm)/(this.N-this.cl);
 			gap = (int)Math.floor(Math.log(Math.max(optionA, optionB))/Math.log(this.getDecayFactor()));
 			// Ensure that gap is not zero (i.e. if the procedure to calculate gap rounds down to zero, then set gap to 1 and adjust clustering every instance)
 			if(gap == 0)
@@ -319,42 +369,40 @@ public class Dstream extends AbstractClusterer {
 			//System.out.println(" A is "+optionA+", B is "+optionB+" and gap = "+gap);
 		}
 
-		dg = new DensityGrid(g);
-		//System.out.println(dg.toString());
-		
 		// 3. If (g not in grid_list) insert dg to grid_list
 		//System.out.println(" & Step 3 or 4");
+		slot = this.grid_list.find(g);
 		
-		if(!this.grid_list.containsKey(dg))
+		if(slot < 0)
 		{
 			//System.out.print("3 - dg wasn't in grid_list!");
-			if(this.deleted_grids.containsKey(dg))
+			int deleted = this.deleted_grids.find(g);
+			
+			if(deleted >= 0)
 			{
 				//System.out.print(" but it was in deleted_grids!");
-				cv = new CharacteristicVector(this.getCurrTime(), this.deleted_grids.get(dg).intValue(), 1.0, -1, false, this.getDL(), this.getDM());
-				this.deleted_grids.remove(dg);
+				cv = new CharacteristicVector(this.getCurrTime(), this.deleted_grids.getVector(deleted).getRemoveTime(), 1.0, -1, false, this.getDL(), this.getDM());
+				this.deleted_grids.remove(deleted);
 			}
 			else
 				cv = new CharacteristicVector(this.getCurrTime(), -1, 1.0, -1, false, this.getDL(), this.getDM());
 			
-			this.grid_list.put(dg, cv);
-			//System.out.print(" "+dg.toString()+" "+cv.toString());
+			slot = this.grid_list.add(g, new DensityGrid(g), cv);
 			//System.out.println(" The size of grid_list is now "+grid_list.size());
 		}
 		// 4. Update the characteristic vector of dg
 		else
 		{
 			//System.out.print("4 - dg was in grid_list!");
-			cv = this.grid_list.get(dg);
+			cv = this.grid_list.getVector(slot);
 				
 			cv.densityWithNew(this.getCurrTime(), this.getDecayFactor());
 				
 			cv.setUpdateTime(this.getCurrTime());
-		
-			//System.out.println(" "+dg.toString()+" "+cv.toString());
-		
-			grid_list.put(dg, cv);
 		}
+		
+		// The grid's attribute and sporadicity are re-evaluated at the next call to the offline component
+		this.markDue(slot);
 
 		// 5. If tc == gap, then initial clustering
 		// and
@@ -364,6 +412,8 @@ public class Dstream extends AbstractClusterer {
 		//System.out.println("\nCurrent Time is " + this.getCurrTime() + " and gap is " + this.gap);
 		if (this.getCurrTime() != 0 && this.getCurrTime() % gap == 0)
 		{
+			this.collectDueGrids();
+			
 			if (this.getCurrTime() == gap)
 			{
 				//System.out.print(" & Step 5 x6x");
@@ -375,6 +425,8 @@ public class Dstream extends AbstractClusterer {
 				this.removeSporadic();
 				this.adjustClustering();
 			}
+			
+			this.scheduleDueGrids();
 		}
 
 		// 7. Increment tc
@@ -409,18 +461,17 @@ public class Dstream extends AbstractClusterer {
 
 		updateGridListDensity();
 		//printGridList();
-				
+
 		// 2. Assign each dense grid to a distinct cluster
 		// and
-		// 3. Label all other grids as NO_CLASS	
-		Iterator<Map.Entry<DensityGrid, CharacteristicVector>> glIter = this.grid_list.entrySet().iterator();
-		HashMap<DensityGrid, CharacteristicVector> newGL = new HashMap<DensityGrid, CharacteristicVector>();
-		
-		while(glIter.hasNext())
+		// 3. Label all other grids as NO_CLASS
+		for (int slot = 0 ; slot < this.grid_list.getNumSlots() ; slot++)
 		{
-			Map.Entry<DensityGrid, CharacteristicVector> grid = glIter.next();
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cvOfG = grid.getValue();
+			if (!this.grid_list.isUsed(slot))
+				continue;
+
+			DensityGrid dg = this.grid_list.getGrid(slot);
+			CharacteristicVector cvOfG = this.grid_list.getVector(slot);
 
 			//System.out.print(dg.toString());
 			if(cvOfG.getAttribute() == DENSE)
@@ -436,27 +487,25 @@ public class Dstream extends AbstractClusterer {
 				cvOfG.setLabel(NO_CLASS);
 
 			//System.out.println();
-			newGL.put(dg, cvOfG);
 		}
 
-		this.grid_list = newGL;
 		//printGridClusters();
-		
+
 		// 4. Make changes to grid labels by doing:
 		//    a. For each cluster c
 		//    b. For each outside grid g of c
 		//    c. For each neighbouring grid h of g
-		//    d. If h belongs to c', label c and c' with 
+		//    d. If h belongs to c', label c and c' with
 		//       the label of the largest cluster
 		//    e. Else if h is transitional, assign it to c
 		//    f. While changes can be made
 
 		boolean changesMade;
 
-		do{	
+		do{
 			changesMade = adjustLabels();
 		}while(changesMade);	// while changes are being made
-		
+
 		//printGridList();
 		//printGridClusters();
 	}
@@ -470,7 +519,7 @@ public class Dstream extends AbstractClusterer {
 	 * <li>If h belongs to c', label c and c' with the label of the largest cluster</li>
 	 * <li>Else if h is transitional, assign it to c</li>
 	 * </ol>
-	 * 
+	 *
 	 * @return TRUE if a change was made to any cluster's labels, FALSE otherwise
 	 */
 	private boolean adjustLabels()
@@ -488,24 +537,20 @@ public class Dstream extends AbstractClusterer {
 			{
 				DensityGrid dg = grid.getKey();
 				Boolean inside = grid.getValue();
+				int slot = this.grid_list.find(dg);
 				//System.out.print(" Inspecting density grid, dg:"+dg.toString()+", standby...");
-				
+
 				// b. for each OUTSIDE grid, dg, of c
-				if (!inside)
+				if (!inside && slot >= 0)
 				{
 					//System.out.println(" Density grid dg is outside!");
 					// c. for each neighbouring grid, dgprime, of dg
-					Iterator<DensityGrid> dgNeighbourhood = dg.getNeighbours().iterator();
-					
-					while(dgNeighbourhood.hasNext())
+					for (int slotprime : this.getNeighbourSlots(slot))
 					{
-						DensityGrid dgprime = dgNeighbourhood.next();
-						//System.out.print("Inspecting neighbour, dgprime:"+dgprime.toString()+", standby...");
-						
-						if(this.grid_list.containsKey(dgprime))
+						if(slotprime >= 0)
 						{
-							CharacteristicVector cv1 = this.grid_list.get(dg);
-							CharacteristicVector cv2 = this.grid_list.get(dgprime);
+							CharacteristicVector cv1 = this.grid_list.getVector(slot);
+							CharacteristicVector cv2 = this.grid_list.getVector(slotprime);
 							//System.out.print(" 1: "+cv1.toString()+", 2: "+cv2.toString());
 							int class1 = cv1.getLabel();
 							int class2 = cv2.getLabel();
@@ -531,9 +576,8 @@ public class Dstream extends AbstractClusterer {
 								{
 									//System.out.println("h is transitional and is assigned to cluster "+class1);
 									cv2.setLabel(class1);
-									c.addGrid(dgprime);
+									c.addGrid(this.grid_list.getGrid(slotprime));
 									this.cluster_list.set(class1, c);
-									this.grid_list.put(dg, cv2);
 									return true;
 								}
 							}
@@ -544,143 +588,111 @@ public class Dstream extends AbstractClusterer {
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Performs the periodic adjustment of clusters every 'gap' timesteps.
 	 * Implements the procedure given in Figure 4 of Chen and Tu 2007
-	 * 
+	 *
 	 * @see moa.clusterers.dstream.Dstream#gap
 	 */
 	private void adjustClustering() {
 		//System.out.println("ADJUST CLUSTERING CALLED (time"+this.getCurrTime()+")");
 		//printDStreamState();
-		//printDStreamState();
 		//printGridClusters();
 		// 1. Update the density of all grids in grid_list
 
 		updateGridListDensity();
 		//printGridList();
-		
+
 		// 2. For each grid dg whose attribute is changed since last call
 		//    a. If dg is sparse
 		//    b. If dg is dense
 		//    c. If dg is transitional
-		boolean changesMade = false;
-		
-		do{
-			changesMade=inspectChangedGrids();
-		}while(changesMade);
+		inspectChangedGrids();
 
 		//printGridList();
 		//System.out.print("Time: "+this.getCurrTime()+" and ");
 		//printGridClusters();
-		//System.out.println("Wait...");
-		//try {
-		//System.in.read();
-		//} catch (IOException e) {
-		//e.printStackTrace();
-		//}
-		 
 	}
 
 	/**
-	 * Inspects each density grid in grid_list whose attribute has changed since the last 
-	 * call to adjustClustering. Implements lines 3/4/7/19 of the procedure given in Figure 
-	 * 4 of Chen and Tu 2007.
-	 * 
-	 * @return TRUE if any grids are updated; FALSE otherwise.
+	 * Inspects each density grid in grid_list whose attribute has changed since the last
+	 * call to adjustClustering. Implements lines 3/4/7/19 of the procedure given in Figure
+	 * 4 of Chen and Tu 2007. Only the grids whose density was updated in this call can have
+	 * changed, and they are inspected in the order of their slots.
 	 */
-	private boolean inspectChangedGrids()
+	private void inspectChangedGrids()
 	{
-		HashMap<DensityGrid, CharacteristicVector> glNew = new HashMap<DensityGrid, CharacteristicVector>();
-		Iterator<Map.Entry<DensityGrid, CharacteristicVector>> gridIter = this.grid_list.entrySet().iterator();
-		
-		while (gridIter.hasNext() && glNew.isEmpty())
+		for (int i = 0 ; i < this.numDue ; i++)
 		{
-			Map.Entry<DensityGrid, CharacteristicVector> grid = gridIter.next();
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cv = grid.getValue();
+			int slot = this.dueSlots[i];
+
+			if (!this.grid_list.isUsed(slot))
+				continue;
+
+			CharacteristicVector cv = this.grid_list.getVector(slot);
 			int dgClass = cv.getLabel();
-			
-			if(cv.isAttChanged() && !dg.isVisited())
+
+			if(cv.isAttChanged())
 			{
-				dg.setVisited(true);
-				glNew.put(dg, cv);
 				//System.out.print(dg.toString()+" is changed and now ");
 				if (cv.getAttribute() == SPARSE)
-					glNew.putAll(adjustForSparseGrid(dg, cv, dgClass));
+					adjustForSparseGrid(slot, cv, dgClass);
 				else if (cv.getAttribute() == DENSE)
-					glNew.putAll(adjustForDenseGrid(dg, cv, dgClass));
+					adjustForDenseGrid(slot, cv, dgClass);
 				else	// TRANSITIONAL
-					glNew.putAll(adjustForTransitionalGrid(dg, cv, dgClass));
+					adjustForTransitionalGrid(slot, cv, dgClass);
+
+				cleanClusters();
 			}
 		}
-		
-		// If there are grids in glNew, update the corresponding grids in grid_list and clean up the cluster list
-		if (!glNew.isEmpty())
-		{
-			//System.out.println("There are "+glNew.size()+" entries to update from glNew to grid_list.");
-			this.grid_list.putAll(glNew);
-			cleanClusters();
-			return true;
-		}
-		else
-			return false;
 	}
-	
-	
+
+
 	/**
 	 * Adjusts the clustering of a sparse density grid. Implements lines 5 and 6 from Figure 4 of Chen and Tu 2007.
-	 * 
-	 * @param dg the sparse density grid being adjusted
-	 * @param cv the characteristic vector of dg
-	 * @param dgClass the cluster to which dg belonged
-	 * 
-	 * @return a HashMap<DensityGrid, CharacteristicVector> containing density grids for update after this iteration
+	 *
+	 * @param slot the slot in grid_list of the sparse density grid being adjusted
+	 * @param cv the characteristic vector of the grid
+	 * @param dgClass the cluster to which the grid belonged
 	 */
-	private HashMap<DensityGrid, CharacteristicVector> adjustForSparseGrid(DensityGrid dg, CharacteristicVector cv, int dgClass)
+	private void adjustForSparseGrid(int slot, CharacteristicVector cv, int dgClass)
 	{
-		HashMap<DensityGrid, CharacteristicVector> glNew = new HashMap<DensityGrid, CharacteristicVector>();
 		//System.out.print("Density grid "+dg.toString()+" is adjusted as a sparse grid at time "+this.getCurrTime()+". ");
 		if (dgClass != NO_CLASS)
 		{
 			//System.out.println("It is removed from cluster "+dgClass+".");
 			GridCluster gc = this.cluster_list.get(dgClass);
-			gc.removeGrid(dg);
+			gc.removeGrid(this.grid_list.getGrid(slot));
 			cv.setLabel(NO_CLASS);
-			glNew.put(dg, cv);
 			this.cluster_list.set(dgClass, gc);
-			
+
 			if(gc.getWeight() > 0.0 && !gc.isConnected())
-				glNew.putAll(recluster(gc));
+				recluster(gc);
 		}
 		//else
 			//System.out.println("It was not clustered ("+dgClass+").");
-
-		return glNew;
 	}
-	
+
 	/**
 	 * Reclusters a gridcluster into two (or more) constituent clusters when it has been identified that the original cluster
 	 * is no longer a grid group. It does so by echoing the initial clustering procedure over only those grids in gc.
-	 * 
+	 *
 	 * @param gc the gridcluster to be reclustered
-	 * 
-	 * @return a HashMap<DensityGrid, CharacteristicVector> containing density grids for update after this iteration
 	 */
-	private HashMap<DensityGrid, CharacteristicVector> recluster (GridCluster gc)
+	private void recluster (GridCluster gc)
 	{
 		HashMap<DensityGrid, CharacteristicVector> glNew = new HashMap<DensityGrid, CharacteristicVector>();
 		Iterator<Map.Entry<DensityGrid,Boolean>> gcIter = gc.getGrids().entrySet().iterator();
 		newClusterList = new ArrayList<GridCluster>();
 		//System.out.println("Recluster called for cluster "+gc.getClusterLabel());
-		
+
 		// Assign every dense grid in gc to its own cluster, assign all other grids to NO_CLASS
 		while (gcIter.hasNext())
 		{
 			Map.Entry<DensityGrid,Boolean> grid = gcIter.next();
 			DensityGrid dg = grid.getKey();
-			CharacteristicVector cvOfG = this.grid_list.get(dg);
+			CharacteristicVector cvOfG = this.getVector(dg);
 
 			if(cvOfG.getAttribute() == DENSE)
 			{
@@ -693,33 +705,31 @@ public class Dstream extends AbstractClusterer {
 			else
 				cvOfG.setLabel(NO_CLASS);
 
-			glNew.put(dg, cvOfG);	
+			glNew.put(dg, cvOfG);
 		}
-		
+
 		boolean changesMade;
-		
+
 		// While changes can be made...
 		do
 		{
 			changesMade = false;
 			HashMap<DensityGrid, CharacteristicVector> glAdjusted = adjustNewLabels(glNew);
-			
+
 			if(!glAdjusted.isEmpty())
 			{
 				glNew.putAll(glAdjusted);
 				changesMade = true;
 			}
 		}while(changesMade);
-		
+
 		// Update the cluster list with the newly formed clusters
 		gc.getGrids().clear();
 		this.cluster_list.set(gc.getClusterLabel(), gc);
 		this.cluster_list.addAll(newClusterList);
-		
-		return glNew;
 	}
-	
-	
+
+
 	private HashMap<DensityGrid, CharacteristicVector> adjustNewLabels(HashMap<DensityGrid, CharacteristicVector> glNew)
 	{
 		Iterator<GridCluster> newClusIter = newClusterList.iterator();
@@ -819,56 +829,52 @@ public class Dstream extends AbstractClusterer {
 	
 	/**
 	 * Adjusts the clustering of a dense density grid. Implements lines 8 through 18 from Figure 4 of Chen and Tu 2007.
-	 * 
-	 * @param dg the dense density grid being adjusted
-	 * @param cv the characteristic vector of dg
-	 * @param dgClass the cluster to which dg belonged
-	 * 
-	 * @return a HashMap<DensityGrid, CharacteristicVector> containing density grids for update after this iteration
+	 *
+	 * @param slot the slot in grid_list of the dense density grid being adjusted
+	 * @param cv the characteristic vector of the grid
+	 * @param dgClass the cluster to which the grid belonged
 	 */
-	private HashMap<DensityGrid, CharacteristicVector> adjustForDenseGrid(DensityGrid dg, CharacteristicVector cv, int dgClass)
+	private void adjustForDenseGrid(int slot, CharacteristicVector cv, int dgClass)
 	{
 		//System.out.print("Density grid "+dg.toString()+" is adjusted as a dense grid at time "+this.getCurrTime()+". ");
+		DensityGrid dg = this.grid_list.getGrid(slot);
+		int[] neighbours = this.getNeighbourSlots(slot);
 
 		// Among all neighbours of dg, find the grid h whose cluster ch has the largest size
 		GridCluster ch;								// The cluster, ch, of h
-		DensityGrid hChosen = new DensityGrid(dg);	// The chosen grid h, whose cluster ch has the largest size
+		int hChosen = -1;							// The slot of the chosen grid h, whose cluster ch has the largest size
 		double hChosenSize = -1.0;					// The size of ch, the largest cluster
-		DensityGrid dgH;							// The neighbour of g being considered
 		int hClass = NO_CLASS;						// The class label of h
 		int hChosenClass = NO_CLASS;				// The class label of ch
-		Iterator<DensityGrid> dgNeighbourhood = dg.getNeighbours().iterator();
-		HashMap<DensityGrid, CharacteristicVector> glNew = new HashMap<DensityGrid, CharacteristicVector>();
-		
-		while (dgNeighbourhood.hasNext())
+
+		for (int slotH : neighbours)
 		{
-			dgH = dgNeighbourhood.next();
-		
-			if (this.grid_list.containsKey(dgH))
+			if (slotH >= 0)
 			{
-				hClass = this.grid_list.get(dgH).getLabel();
+				hClass = this.grid_list.getVector(slotH).getLabel();
 				if (hClass != NO_CLASS)
 				{
 					ch = this.cluster_list.get(hClass);
-			
+
 					if (ch.getWeight() > hChosenSize)
 					{
 						hChosenSize = ch.getWeight();
 						hChosenClass = hClass;
-						hChosen = new DensityGrid(dgH);
+						hChosen = slotH;
 					}
 				}
 			}
 		}
-		
-		//System.out.println(" Chosen neighbour is "+hChosen.toString()+" from cluster "+hChosenClass+".");
-		
+
+		//System.out.println(" Chosen neighbour is "+hChosen+" from cluster "+hChosenClass+".");
+
 		if (hChosenClass != NO_CLASS  && hChosenClass != dgClass)
 		{
 			ch = this.cluster_list.get(hChosenClass);
-			
+			CharacteristicVector cvhChosen = this.grid_list.getVector(hChosen);
+
 			// If h is a dense grid
-			if (this.grid_list.get(hChosen).getAttribute() == DENSE)
+			if (cvhChosen.getAttribute() == DENSE)
 			{
 				//System.out.println("h is dense.");
 				// If dg is labelled as NO_CLASS
@@ -876,33 +882,33 @@ public class Dstream extends AbstractClusterer {
 				{
 					//System.out.println("g was labelled NO_CLASS");
 					cv.setLabel(hChosenClass);
-					glNew.put(dg, cv);
 					ch.addGrid(dg);
 					this.cluster_list.set(hChosenClass, ch);
-					
+
 				}
 				// Else if dg belongs to cluster c and h belongs to c'
 				else
 				{
 					//System.out.println("g was labelled "+dgClass);
 					double gSize = this.cluster_list.get(dgClass).getWeight();
-					
+
 					if (gSize <= hChosenSize)
 						mergeClusters(dgClass, hChosenClass);
 					else
 						mergeClusters(hChosenClass, dgClass);
 				}
 			}
-		
+
 			// Else if h is a transitional grid
-			else if (this.grid_list.get(hChosen).getAttribute() == TRANSITIONAL)
+			else if (cvhChosen.getAttribute() == TRANSITIONAL)
 			{
 				//System.out.print("h is transitional.");
+				DensityGrid dgH = this.grid_list.getGrid(hChosen);
+
 				// If dg is labelled as no class and if h is an outside grid if dg is added to ch
-				if (dgClass == NO_CLASS && !ch.isInside(hChosen, dg))
+				if (dgClass == NO_CLASS && !ch.isInside(dgH, dg))
 				{
 					cv.setLabel(hChosenClass);
-					glNew.put(dg, cv);
 					ch.addGrid(dg);
 					this.cluster_list.set(hChosenClass, ch);
 					//System.out.println(" dg is added to cluster "+hChosenClass+".");
@@ -912,15 +918,13 @@ public class Dstream extends AbstractClusterer {
 				{
 					GridCluster c = this.cluster_list.get(dgClass);
 					double gSize = c.getWeight();
-					
+
 					if (gSize >= hChosenSize)
 					{
 						// Move h from cluster ch to cluster c
-						ch.removeGrid(hChosen);
-						c.addGrid(hChosen);
-						CharacteristicVector cvhChosen = this.grid_list.get(hChosen);
+						ch.removeGrid(dgH);
+						c.addGrid(dgH);
 						cvhChosen.setLabel(dgClass);
-						glNew.put(hChosen, cvhChosen);
 						//System.out.println("dgClass is "+dgClass+", hChosenClass is "+hChosenClass+", gSize is "+gSize+" and hChosenSize is "+hChosenSize+" h is added to cluster "+dgClass+".");
 						this.cluster_list.set(hChosenClass, ch);
 						this.cluster_list.set(dgClass, c);
@@ -939,70 +943,58 @@ public class Dstream extends AbstractClusterer {
 			//System.out.println("Added "+dg.toString()+" to cluster "+newClass+".");
 			this.cluster_list.add(c);
 			cv.setLabel(newClass);
-			glNew.put(dg, cv);
-			
+
 			// Iterate through the neighbourhood until no more transitional neighbours can be added
 			// (dense neighbours will add themselves as part of their adjust process)
-			dgNeighbourhood = dg.getNeighbours().iterator();
-					
-			while(dgNeighbourhood.hasNext())
+			for (int slotHPrime : neighbours)
 			{
-				DensityGrid dghprime = dgNeighbourhood.next();
-						
-				if (this.grid_list.containsKey(dghprime) && !c.getGrids().containsKey(dghprime))
+				if (slotHPrime >= 0)
 				{
-					CharacteristicVector cvhprime = this.grid_list.get(dghprime);
-					if(cvhprime.getAttribute() == TRANSITIONAL)
+					DensityGrid dghprime = this.grid_list.getGrid(slotHPrime);
+					CharacteristicVector cvhprime = this.grid_list.getVector(slotHPrime);
+
+					if(!c.getGrids().containsKey(dghprime) && cvhprime.getAttribute() == TRANSITIONAL)
 					{
 						//System.out.println("Added "+dghprime.toString()+" to cluster "+newClass+".");
 						c.addGrid(dghprime);
 						cvhprime.setLabel(newClass);
-						glNew.put(dghprime, cvhprime);
 					}
 				}
 			}
-	
+
 			this.cluster_list.set(newClass, c);
-			//System.out.println("Cluster "+newClass+": "+this.cluster_list.get(newClass).toString());		
+			//System.out.println("Cluster "+newClass+": "+this.cluster_list.get(newClass).toString());
 		}
-		
-		return glNew;
 	}
-	
+
 	/**
 	 * Adjusts the clustering of a transitional density grid. Implements lines 20 and 21 from Figure 4 of Chen and Tu 2007.
-	 * 
-	 * @param dg the dense density grid being adjusted
-	 * @param cv the characteristic vector of dg
-	 * @param dgClass the cluster to which dg belonged
-	 * 
-	 * @return a HashMap<DensityGrid, CharacteristicVector> containing density grids for update after this iteration
+	 *
+	 * @param slot the slot in grid_list of the transitional density grid being adjusted
+	 * @param cv the characteristic vector of the grid
+	 * @param dgClass the cluster to which the grid belonged
 	 */
-	private HashMap<DensityGrid, CharacteristicVector> adjustForTransitionalGrid(DensityGrid dg, CharacteristicVector cv, int dgClass)
+	private void adjustForTransitionalGrid(int slot, CharacteristicVector cv, int dgClass)
 	{
 		//System.out.print("Density grid "+dg.toString()+" is adjusted as a transitional grid at time "+this.getCurrTime()+". ");
-		
+		DensityGrid dg = this.grid_list.getGrid(slot);
+
 		// Among all neighbours of dg, find the grid h whose cluster ch has the largest size
 		// and satisfies that dg would be an outside grid if added to it
 		GridCluster ch;								// The cluster, ch, of h
 		double hChosenSize = 0.0;					// The size of ch, the largest cluster
-		DensityGrid dgH;							// The neighbour of dg being considered
 		int hClass = NO_CLASS;						// The class label of h
 		int hChosenClass = NO_CLASS;				// The class label of ch
-		Iterator<DensityGrid> dgNeighbourhood = dg.getNeighbours().iterator();
-		HashMap<DensityGrid, CharacteristicVector> glNew = new HashMap<DensityGrid, CharacteristicVector>();
-		
-		while (dgNeighbourhood.hasNext())
+
+		for (int slotH : this.getNeighbourSlots(slot))
 		{
-			dgH = dgNeighbourhood.next();
-			
-			if (this.grid_list.containsKey(dgH))
+			if (slotH >= 0)
 			{
-				hClass = this.grid_list.get(dgH).getLabel();
+				hClass = this.grid_list.getVector(slotH).getLabel();
 				if (hClass != NO_CLASS)
 				{
 					ch = this.cluster_list.get(hClass);
-			
+
 					if ((ch.getWeight() > hChosenSize) && !ch.isInside(dg, dg))
 					{
 						hChosenSize = ch.getWeight();
@@ -1011,89 +1003,72 @@ public class Dstream extends AbstractClusterer {
 				}
 			}
 		}
-		
+
 		//System.out.println(" Chosen neighbour is from cluster "+hChosenClass+", dgClass is "+dgClass+".");
-		
+
 		if (hChosenClass != NO_CLASS && hChosenClass != dgClass)
 		{
 			ch = this.cluster_list.get(hChosenClass);
 			ch.addGrid(dg);
 			this.cluster_list.set(hChosenClass, ch);
-			
+
 			if(dgClass != NO_CLASS)
 			{
 				GridCluster c = this.cluster_list.get(dgClass);
 				c.removeGrid(dg);
 				this.cluster_list.set(dgClass, c);
 			}
-			
+
 			cv.setLabel(hChosenClass);
-			glNew.put(dg, cv);
 		}
-		
-		return glNew;
 	}
-	
+
 	/**
 	 * Iterates through cluster_list to ensure that all empty clusters have been removed and
-	 * that all cluster IDs match the cluster's index in cluster_list.
+	 * that all cluster IDs match the cluster's index in cluster_list. Only the grids of the
+	 * clusters whose index changed are relabelled.
 	 */
 	private void cleanClusters()
 	{
 		//System.out.println("Clean Clusters");
 		Iterator<GridCluster> clusIter = this.cluster_list.iterator();
-		ArrayList<GridCluster> toRem = new ArrayList<GridCluster>();
-
-		// Check to see if there are any empty clusters
-		while(clusIter.hasNext())
-		{
-			GridCluster c = clusIter.next();
-
-			if(c.getWeight() == 0)
-				toRem.add(c);
-		}
 
 		// Remove empty clusters
-		if (!toRem.isEmpty())
+		while(clusIter.hasNext())
 		{
-			clusIter = toRem.iterator();
-
-			while(clusIter.hasNext())
-			{
-				this.cluster_list.remove(clusIter.next());
-			}
+			if(clusIter.next().getWeight() == 0)
+				clusIter.remove();
 		}
 
 		// Adjust remaining clusters as necessary
-		clusIter = this.cluster_list.iterator();
-
-		while(clusIter.hasNext())
+		for (int index = 0 ; index < this.cluster_list.size() ; index++)
 		{
-			GridCluster c = clusIter.next();
-			int index = this.cluster_list.indexOf(c);
+			GridCluster c = this.cluster_list.get(index);
+
+			if (c.getClusterLabel() == index)
+				continue;
 
 			c.setClusterLabel(index);
-			this.cluster_list.set(index, c);
 
 			Iterator<Map.Entry<DensityGrid, Boolean>> gridsOfClus = c.getGrids().entrySet().iterator();
 
 			while(gridsOfClus.hasNext())
 			{
 				DensityGrid dg = gridsOfClus.next().getKey();
-				CharacteristicVector cv = this.grid_list.get(dg);
+				CharacteristicVector cv = this.getVector(dg);
 				if(cv == null)
 				{
 					System.out.println("Warning, cv is null for "+dg.toString()+" from cluster "+index+".");
 					printGridList();
 					printGridClusters();
+					continue;
 				}
 				//System.out.println("Cluster "+index+": "+dg.toString()+" is here.");
 				cv.setLabel(index);
-				this.grid_list.put(dg, cv);
 			}
 		}
 	}
-	
+
 	private HashMap<DensityGrid, CharacteristicVector> cleanNewClusters(HashMap<DensityGrid, CharacteristicVector> glNew)
 	{
 		Iterator<GridCluster> clusIter = this.newClusterList.iterator();
@@ -1145,6 +1120,8 @@ public class Dstream extends AbstractClusterer {
 	
 	/**
 	 * Implements the procedure described in section 4.2 of Chen and Tu 2007
+	 * over the grids due for inspection; the sporadicity of the other grids
+	 * cannot have changed since they were last inspected.
 	 */
 	private void removeSporadic() {
 		//System.out.println("REMOVE SPORADIC CALLED");
@@ -1155,124 +1132,95 @@ public class Dstream extends AbstractClusterer {
 		//       iii. Else, mark as normal
 		//    b. Else
 		//       i. If (S1 && S2), mark as sporadic
-		
+
 		// For each grid g in grid_list
-		Iterator<Map.Entry<DensityGrid, CharacteristicVector>> glIter = this.grid_list.entrySet().iterator();
-		HashMap<DensityGrid, CharacteristicVector> newGL = new HashMap<DensityGrid, CharacteristicVector>();
-		ArrayList<DensityGrid> remGL = new ArrayList<DensityGrid>();
-				
-		while(glIter.hasNext())
+		for (int i = 0 ; i < this.numDue ; i++)
 		{
-			Map.Entry<DensityGrid, CharacteristicVector> grid = glIter.next();
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cv = grid.getValue();
-			
-			// If g is sporadic
-			if (cv.isSporadic())
+			int slot = this.dueSlots[i];
+			CharacteristicVector cv = this.grid_list.getVector(slot);
+
+			// If g is sporadic and currTime - tg > gap, delete g from grid_list
+			if (cv.isSporadic() && (this.getCurrTime() - cv.getUpdateTime()) >= gap)
 			{
-				// If currTime - tg > gap, delete g from grid_list
-				if ((this.getCurrTime() - cv.getUpdateTime()) >= gap)
-				{
-					int dgClass = cv.getLabel();
-					
-					if (dgClass != -1)
-						this.cluster_list.get(dgClass).removeGrid(dg);
-					
-					remGL.add(dg);
-					//System.out.println("Removed "+dg.toString()+" from cluster "+dgClass);
-				}
-				// Else if (S1 && S2), mark as sporadic - Else mark as normal
-				else
-				{
-					cv.setSporadic(checkIfSporadic(cv));
-					//System.out.println("within gap" + dg.toString() + " sporadicity assessed "+cv.isSporadic());
-					newGL.put(dg, cv);
-				}
-				
+				DensityGrid dg = this.grid_list.getGrid(slot);
+				int dgClass = cv.getLabel();
+
+				if (dgClass != -1)
+					this.cluster_list.get(dgClass).removeGrid(dg);
+
+				//System.out.println("Removing sporadic grid "+dg.toString()+" at time "+this.getCurrTime()+".");
+				cv.setRemoveTime(this.getCurrTime());
+				this.deleted_grids.add(dg.getCoordinates(), null, cv);
+				this.grid_list.remove(slot);
+				this.eventTimes[slot] = Integer.MAX_VALUE;
 			}
-			// Else if (S1 && S2), mark as sporadic
+			// Else if (S1 && S2), mark as sporadic - Else mark as normal
 			else
 			{
-				cv.setSporadic(checkIfSporadic(cv));
+				cv.setSporadic(checkIfSporadic(cv, this.getCurrTime()));
 				//System.out.println(dg.toString() + " sporadicity assessed "+cv.isSporadic());
-				newGL.put(dg, cv);
 			}
 		}
-		
-		this.grid_list.putAll(newGL);
-		
-		//System.out.println(" - Removed "+remGL.size()+" grids from grid_list.");
-		Iterator<DensityGrid> remIter = remGL.iterator();
-		
-		while(remIter.hasNext())
-		{
-			DensityGrid sporadicDG = remIter.next();
-			//System.out.println("Removing sporadic grid "+sporadicDG.toString()+" at time "+this.getCurrTime()+".");
-			this.deleted_grids.put(sporadicDG, new Integer(this.getCurrTime()));
-			this.grid_list.remove(sporadicDG);
-		}
-		
 	}
 
 	/**
 	 * Determines whether a sparse density grid is sporadic using rules S1 and S2 of Chen and Tu 2007
-	 * 
+	 *
 	 * @param cv - the CharacteristicVector of the density grid being assessed for sporadicity
+	 * @param t - the time at which the grid is assessed
 	 */
-	private boolean checkIfSporadic(CharacteristicVector cv)
+	private boolean checkIfSporadic(CharacteristicVector cv, int t)
 	{
 		// Check S1
-		if(cv.getCurrGridDensity(this.getCurrTime(), this.getDecayFactor()) < densityThresholdFunction(cv.getDensityTimeStamp(), this.cl, this.getDecayFactor(), this.N))
+		if(cv.getCurrGridDensity(t, this.getDecayFactor()) < densityThresholdFunction(t, cv.getUpdateTime(), this.cl, this.getDecayFactor(), this.N))
 		{
 			// Check S2
-			if(cv.getRemoveTime() == -1 || this.getCurrTime() >= ((1 + this.beta)*cv.getRemoveTime()))
+			if(cv.getRemoveTime() == -1 || t >= ((1 + this.beta)*cv.getRemoveTime()))
 				return true;
 		}
-		
-		return false; 
+
+		return false;
 	}
-	
+
 	/**
 	 * Implements the function pi given in Definition 4.1 of Chen and Tu 2007
-	 * 
+	 *
+	 * @param t - the time at which the function is evaluated
 	 * @param tg - the update time in the density grid's characteristic vector
 	 * @param cl - user defined parameter which controls the threshold for sparse grids
 	 * @param decayFactor - user defined parameter which is represented as lambda in Chen and Tu 2007
 	 * @param N - the number of density grids, defined after eq 2 in Chen and Tu 2007
 	 */
-	private double densityThresholdFunction(int tg, double cl, double decayFactor, int N)
+	private double densityThresholdFunction(int t, int tg, double cl, double decayFactor, double N)
 	{
-		return (cl * (1.0 - Math.pow(decayFactor, (this.getCurrTime()-tg+1.0))))/(N * (1.0 - decayFactor));
+		return (cl * (1.0 - Math.pow(decayFactor, (t-tg+1.0))))/(N * (1.0 - decayFactor));
 	}
-	
+
 	/**
 	 * Reassign all grids belonging in the small cluster to the big cluster
 	 * Merge the GridCluster objects representing each cluster
-	 * 
+	 *
 	 * @param smallClus - the index of the smaller cluster
 	 * @param bigClus - the index of the bigger cluster
 	 */
 	private void mergeClusters (int smallClus, int bigClus)
-	{		
+	{
 		//System.out.println("Merge clusters "+smallClus+" and "+bigClus+".");
-		// Iterate through the density grids in grid_list to find those which are in highClass
-		for (Map.Entry<DensityGrid, CharacteristicVector> grid : grid_list.entrySet())
+		GridCluster sGC = this.cluster_list.get(smallClus);
+
+		// Assign the density grids of smallClus to bigClus
+		for (DensityGrid dg : sGC.getGrids().keySet())
 		{
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cv = grid.getValue();
+			CharacteristicVector cv = this.getVector(dg);
 
-			// Assign density grids in smallClus to bigClus
-			if(cv.getLabel() == smallClus)
-			{
+			if(cv != null && cv.getLabel() == smallClus)
 				cv.setLabel(bigClus);
-				this.grid_list.put(dg, cv);
-			}
 		}
 		//System.out.println("Density grids assigned to cluster "+bigClus+".");
-		
+
 		// Merge the GridCluster objects representing each cluster
 		GridCluster bGC = this.cluster_list.get(bigClus);
-		bGC.absorbCluster(this.cluster_list.get(smallClus));
+		bGC.absorbCluster(sGC);
 		this.cluster_list.set(bigClus, bGC);
 		this.cluster_list.remove(smallClus);
 		//System.out.println("Cluster "+smallClus+" removed from list.");
@@ -1280,23 +1228,233 @@ public class Dstream extends AbstractClusterer {
 	}
 
 	/**
-	 * Iterates through grid_list and updates the density for each density grid therein.
-	 * Also marks each density grid as unvisited for this call to adjustClustering.
+	 * Updates the density of each density grid due for inspection. The density of the other
+	 * grids decays lazily from their time stamp, and their attribute cannot have changed.
 	 */
 	private void updateGridListDensity()
 	{
-		for (Map.Entry<DensityGrid, CharacteristicVector> grid : grid_list.entrySet())
+		for (int i = 0 ; i < this.numDue ; i++)
 		{
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cvOfG = grid.getValue();
+			int slot = this.dueSlots[i];
+
+			if (this.grid_list.isUsed(slot))
+				this.grid_list.getVector(slot).updateGridDensity(this.getCurrTime(), this.getDecayFactor(), this.getDL(), this.getDM());
+		}
+	}
+
+	/**
+	 * @param dg a density grid
+	 * @return the characteristic vector of dg in grid_list, null if dg is not in grid_list
+	 */
+	private CharacteristicVector getVector(DensityGrid dg)
+	{
+		int slot = this.grid_list.find(dg);
+		return slot < 0 ? null : this.grid_list.getVector(slot);
+	}
+
+	/**
+	 * @param slot the slot in grid_list of a density grid
+	 * @return the slots in grid_list of the neighbours of the grid, in the order given by
+	 * DensityGrid#getNeighbours, or -1 for the neighbours which are not in grid_list
+	 */
+	private int[] getNeighbourSlots(int slot)
+	{
+		int[] neighbours = new int[2 * this.d];
+
+		for (int i = 0 ; i < this.d ; i++)
+		{
+			neighbours[2 * i] = this.grid_list.findNeighbour(slot, i, -1);
+			neighbours[2 * i + 1] = this.grid_list.findNeighbour(slot, i, 1);
+		}
 
-			dg.setVisited(false);
-			cvOfG.updateGridDensity(this.getCurrTime(), this.getDecayFactor(), this.getDL(), this.getDM());
+		return neighbours;
+	}
 
-			this.grid_list.put(dg, cvOfG);
+	/**
+	 * Marks the grid of a slot of grid_list for inspection at the next call to the offline component.
+	 *
+	 * @param slot the slot of the grid
+	 */
+	private void markDue(int slot)
+	{
+		if (slot >= this.dueMarks.length)
+		{
+			int capacity = Math.max(slot + 1, 2 * this.dueMarks.length);
+			this.dueMarks = Arrays.copyOf(this.dueMarks, capacity);
+			this.eventTimes = Arrays.copyOf(this.eventTimes, capacity);
+		}
+
+		if (this.dueMarks[slot] != this.dueMark)
+		{
+			this.dueMarks[slot] = this.dueMark;
+			if (this.numDue == this.dueSlots.length)
+				this.dueSlots = Arrays.copyOf(this.dueSlots, 2 * this.numDue);
+			this.dueSlots[this.numDue++] = slot;
 		}
 	}
 
+	/**
+	 * Collects the grids to inspect in this call to the offline component: the grids which
+	 * received records, those whose scheduled time has come, or all of them if the thresholds
+	 * changed. They are sorted by slot so that they are inspected in a deterministic order.
+	 */
+	private void collectDueGrids()
+	{
+		while (this.numEvents > 0 && (int) (this.events[0] >>> 32) <= this.getCurrTime())
+		{
+			long event = this.popEvent();
+			int slot = (int) event;
+
+			if (this.grid_list.isUsed(slot) && this.eventTimes[slot] == (int) (event >>> 32))
+				this.markDue(slot);
+		}
+
+		if (this.refreshAll)
+		{
+			for (int slot = 0 ; slot < this.grid_list.getNumSlots() ; slot++)
+			{
+				if (this.grid_list.isUsed(slot))
+					this.markDue(slot);
+			}
+			this.refreshAll = false;
+		}
+
+		Arrays.sort(this.dueSlots, 0, this.numDue);
+	}
+
+	/**
+	 * Schedules the next inspection of each grid inspected in this call to the offline
+	 * component, and clears the grids due for inspection.
+	 */
+	private void scheduleDueGrids()
+	{
+		for (int i = 0 ; i < this.numDue ; i++)
+		{
+			int slot = this.dueSlots[i];
+
+			if (this.grid_list.isUsed(slot))
+				this.schedule(slot);
+		}
+
+		this.numDue = 0;
+		this.dueMark++;
+	}
+
+	/**
+	 * Computes the first time at which the grid of a slot changes attribute or becomes
+	 * sporadic if it receives no more records, and schedules its inspection then. A
+	 * sporadic grid is inspected at the next call, where it is deleted or cleared.
+	 *
+	 * @param slot the slot of the grid
+	 */
+	private void schedule(int slot)
+	{
+		CharacteristicVector cv = this.grid_list.getVector(slot);
+		int next;
+
+		if (cv.isSporadic())
+			next = this.getCurrTime() + 1;
+		else
+		{
+			next = this.firstTime(cv, true);
+			if (cv.getAttribute() != SPARSE)
+				next = Math.min(next, this.firstTime(cv, false));
+		}
+
+		this.eventTimes[slot] = next;
+		if (next != Integer.MAX_VALUE)
+			this.pushEvent(((long) next << 32) | slot);
+	}
+
+	/**
+	 * Searches the first time after the current time at which a grid which receives no more
+	 * records becomes sporadic, or changes attribute. Both conditions, once met, hold at all
+	 * later times, which allows an exponential search followed by a binary search.
+	 *
+	 * @param cv the characteristic vector of the grid
+	 * @param sporadic TRUE to search when the grid becomes sporadic, FALSE to search when it
+	 * changes attribute
+	 * @return the first time at which the condition holds, Integer.MAX_VALUE if it does not
+	 * hold within the range of the stream's internal time
+	 */
+	private int firstTime(CharacteristicVector cv, boolean sporadic)
+	{
+		long t = this.getCurrTime();
+		long low = t;
+		long high = t + 1;
+
+		while (!this.holdsAt(cv, (int) high, sporadic))
+		{
+			low = high;
+			high = t + 2 * (high - t);
+			if (high >= Integer.MAX_VALUE)
+				return Integer.MAX_VALUE;
+		}
+
+		while (high - low > 1)
+		{
+			long mid = (low + high) >>> 1;
+			if (this.holdsAt(cv, (int) mid, sporadic))
+				high = mid;
+			else
+				low = mid;
+		}
+
+		return (int) high;
+	}
+
+	private boolean holdsAt(CharacteristicVector cv, int t, boolean sporadic)
+	{
+		if (sporadic)
+			return this.checkIfSporadic(cv, t);
+
+		double density = cv.getCurrGridDensity(t, this.getDecayFactor());
+
+		if (cv.getAttribute() == DENSE)
+			return density < this.getDM();
+		else
+			return density <= this.getDL();
+	}
+
+	private void pushEvent(long event)
+	{
+		if (this.numEvents == this.events.length)
+			this.events = Arrays.copyOf(this.events, 2 * this.numEvents);
+
+		int i = this.numEvents++;
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (this.events[parent] <= event)
+				break;
+			this.events[i] = this.events[parent];
+			i = parent;
+		}
+		this.events[i] = event;
+	}
+
+	private long popEvent()
+	{
+		long top = this.events[0];
+		long last = this.events[--this.numEvents];
+		int i = 0;
+
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= this.numEvents)
+				break;
+			if (child + 1 < this.numEvents && this.events[child + 1] < this.events[child])
+				child++;
+			if (last <= this.events[child])
+				break;
+			this.events[i] = this.events[child];
+			i = child;
+		}
+		this.events[i] = last;
+		return top;
+	}
+
 	/**
 	 * @return currTime - the stream's internal time
 	 */
@@ -1344,6 +1502,17 @@ public class Dstream extends AbstractClusterer {
 	{
 		return this.dl;
 	}
+
+	/**
+	 * @param c - the coordinates of a density grid
+	 * @return the characteristic vector of the density grid, null if it is not in grid_list.
+	 * Its density is decayed lazily, getCurrGridDensity gives the density at the current time.
+	 */
+	public CharacteristicVector getCharacteristicVector(int[] c)
+	{
+		int slot = this.grid_list == null ? -1 : this.grid_list.find(c);
+		return slot < 0 ? null : this.grid_list.getVector(slot);
+	}
 	
 	public void printInst(Instance inst)
 	{
@@ -1379,14 +1548,17 @@ public class Dstream extends AbstractClusterer {
 	public void printGridList()
 	{
 		System.out.println("Grid List. Size "+this.grid_list.size()+".");
-		for (Map.Entry<DensityGrid, CharacteristicVector> grid : grid_list.entrySet())
+		for (int slot = 0 ; slot < this.grid_list.getNumSlots() ; slot++)
 		{
-			DensityGrid dg = grid.getKey();
-			CharacteristicVector cv = grid.getValue();
+			if (!this.grid_list.isUsed(slot))
+				continue;
+			
+			DensityGrid dg = this.grid_list.getGrid(slot);
+			CharacteristicVector cv = this.grid_list.getVector(slot);
 			
 			if (cv.getAttribute() != SPARSE)
 			{
-				double dtf = densityThresholdFunction(cv.getUpdateTime(), this.cl, this.getDecayFactor(), this.N);
+				double dtf = densityThresholdFunction(this.getCurrTime(), cv.getUpdateTime(), this.cl, this.getDecayFactor(), this.N);
 				System.out.println(dg.toString()+" "+cv.toString()+" // Density Threshold Function = "+dtf);
 			}
 		}
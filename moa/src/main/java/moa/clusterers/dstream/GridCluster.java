@@ -18,6 +18,7 @@
 
 package moa.clusterers.dstream;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -70,6 +71,9 @@ public class GridCluster extends NonConvexCluster
 	}
 	
 	/**
+	 * Adds a density grid to the cluster. Only the outside neighbours of the grid can become
+	 * inside grids, the other grids keep their label.
+	 * 
 	 * @param dg the density grid to add to the cluster
 	 */
 	public void addGrid(DensityGrid dg)
@@ -77,14 +81,21 @@ public class GridCluster extends NonConvexCluster
 		Boolean inside = isInside(dg);
 		this.grids.put(dg, inside);
 		
-		for(Map.Entry<DensityGrid, Boolean> gridToUpdate : this.grids.entrySet())
+		// h visits the neighbours of dg; putting it only updates the entry of an equal grid
+		DensityGrid h = new DensityGrid(dg);
+		int[] hCoord = h.getCoordinates();
+		
+		for (int i = 0 ; i < hCoord.length ; i++)
 		{
-			Boolean inside2U = gridToUpdate.getValue();
-			
-			if(!inside2U)
+			for (int delta = -1 ; delta <= 1 ; delta += 2)
 			{
-				DensityGrid dg2U = gridToUpdate.getKey();
-				this.grids.put(dg2U, this.isInside(dg2U));
+				hCoord[i] += delta;
+				Boolean inside2U = this.grids.get(h);
+				
+				if(inside2U != null && !inside2U)
+					this.grids.put(h, this.isInside(h));
+				
+				hCoord[i] -= delta;
 			}
 		}
 	}
@@ -144,18 +155,7 @@ public class GridCluster extends NonConvexCluster
 	 */
 	public Boolean isInside(DensityGrid dg)
 	{
-		Iterator<DensityGrid> dgNeighbourhood = dg.getNeighbours().iterator();
-		
-		while(dgNeighbourhood.hasNext())
-		{
-			DensityGrid dgprime = dgNeighbourhood.next();
-			if(!this.grids.containsKey(dgprime))
-			{
-				return false;
-			}
-		}
-		
-		return true;
+		return isInside(dg, null);
 	}
 	
 	/**
@@ -170,14 +170,22 @@ public class GridCluster extends NonConvexCluster
 	 */
 	public Boolean isInside(DensityGrid dg, DensityGrid dgH)
 	{
-		Iterator<DensityGrid> dgNeighbourhood = dg.getNeighbours().iterator();
+		// dgprime visits the neighbours of dg in turn
+		DensityGrid dgprime = new DensityGrid(dg);
+		int[] c = dgprime.getCoordinates();
 		
-		while(dgNeighbourhood.hasNext())
+		for (int i = 0 ; i < c.length ; i++)
 		{
-			DensityGrid dgprime = dgNeighbourhood.next();
-			if(!this.grids.containsKey(dgprime) && !dgprime.equals(dgH))
+			for (int delta = -1 ; delta <= 1 ; delta += 2)
 			{
-				return false;
+				c[i] += delta;
+				boolean missing = !this.grids.containsKey(dgprime) && !dgprime.equals(dgH);
+				c[i] -= delta;
+				
+				if(missing)
+				{
+					return false;
+				}
 			}
 		}
 		
@@ -229,44 +237,30 @@ public class GridCluster extends NonConvexCluster
 	{
 		this.visited = new HashMap<DensityGrid, Boolean>();
 		Iterator<DensityGrid> initIter = this.grids.keySet().iterator();
-		DensityGrid dg;
 		
 		if (initIter.hasNext())
 		{
-			dg = initIter.next();
+			DensityGrid dg = initIter.next();
+			ArrayDeque<DensityGrid> toVisit = new ArrayDeque<DensityGrid>();
 			visited.put(dg, this.grids.get(dg));
-			boolean changesMade;
+			toVisit.add(dg);
 			
-			do{
-				changesMade = false;
-				
-				Iterator<Map.Entry<DensityGrid, Boolean>> visIter = this.visited.entrySet().iterator();
-				HashMap<DensityGrid, Boolean> toAdd = new HashMap<DensityGrid, Boolean>();
+			while(!toVisit.isEmpty())
+			{
+				DensityGrid dg2V = toVisit.poll();
+				Iterator<DensityGrid> dg2VNeighbourhood = dg2V.getNeighbours().iterator();
 				
-				while(visIter.hasNext() && toAdd.isEmpty())
+				while(dg2VNeighbourhood.hasNext())
 				{
-					Map.Entry<DensityGrid, Boolean> toVisit = visIter.next();
-					DensityGrid dg2V = toVisit.getKey();
-					
-					Iterator<DensityGrid> dg2VNeighbourhood = dg2V.getNeighbours().iterator();
+					DensityGrid dg2VN = dg2VNeighbourhood.next();
 					
-					while(dg2VNeighbourhood.hasNext())
+					if(this.grids.containsKey(dg2VN) && !this.visited.containsKey(dg2VN))
 					{
-						DensityGrid dg2VN = dg2VNeighbourhood.next();
-						
-						if(this.grids.containsKey(dg2VN) && !this.visited.containsKey(dg2VN))
-							toAdd.put(dg2VN, this.grids.get(dg2VN));
+						this.visited.put(dg2VN, this.grids.get(dg2VN));
+						toVisit.add(dg2VN);
 					}
-					
-				}
-				
-				if(!toAdd.isEmpty())
-				{
-					this.visited.putAll(toAdd);
-					changesMade = true;
 				}
-			}while(changesMade);
-			
+			}
 		}		
 		
 		if (this.visited.size() == this.grids.size())
@@ -0,0 +1,296 @@
+/*
+ *    GridList.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package moa.clusterers.dstream;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A sparse set of density grids with their characteristic vectors, keyed by
+ * the coordinates of the grids.
+ *
+ * Grids are stored in numbered slots, which are reused once their grid is
+ * removed. The coordinates of all the grids are kept in one array, with a
+ * 64-bit hash of each, and an open addressing table finds the slot of some
+ * coordinates, or of the neighbour of a grid, without creating any object.
+ * Iterating over the slots visits the grids in a deterministic order.
+ */
+public class GridList implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int dimensions;
+
+	private int size = 0;
+
+	/**
+	 * Number of slots ever used, free or not
+	 */
+	private int numSlots = 0;
+
+	/**
+	 * Coordinates of the grid in slot s, at [s * dimensions]
+	 */
+	private int[] coordinates = new int[0];
+
+	private long[] hashes = new long[0];
+
+	private DensityGrid[] grids = new DensityGrid[0];
+
+	private CharacteristicVector[] vectors = new CharacteristicVector[0];
+
+	private boolean[] used = new boolean[0];
+
+	private int[] freeSlots = new int[0];
+
+	private int numFreeSlots = 0;
+
+	/**
+	 * Slot of each entry of the table, -1 for empty entries
+	 */
+	private int[] table;
+
+	/**
+	 * @param dimensions the number of coordinates of the grids
+	 */
+	public GridList(int dimensions)
+	{
+		this.dimensions = dimensions;
+		this.table = new int[16];
+		Arrays.fill(this.table, -1);
+	}
+
+	/**
+	 * @return the number of grids in the list
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * @return an upper bound of the slots in use, to iterate over them
+	 */
+	public int getNumSlots()
+	{
+		return this.numSlots;
+	}
+
+	/**
+	 * @return TRUE if the slot holds a grid, FALSE otherwise
+	 */
+	public boolean isUsed(int slot)
+	{
+		return this.used[slot];
+	}
+
+	public DensityGrid getGrid(int slot)
+	{
+		return this.grids[slot];
+	}
+
+	public CharacteristicVector getVector(int slot)
+	{
+		return this.vectors[slot];
+	}
+
+	/**
+	 * @param c the coordinates of a grid
+	 * @return the slot of the grid, -1 if it is not in the list
+	 */
+	public int find(int[] c)
+	{
+		long hash = hash(c);
+		int mask = this.table.length - 1;
+		for (int i = index(hash, mask) ; this.table[i] >= 0 ; i = (i + 1) & mask)
+		{
+			int slot = this.table[i];
+			if (this.hashes[slot] == hash && matches(slot, c))
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param dg a density grid
+	 * @return the slot of the grid, -1 if it is not in the list
+	 */
+	public int find(DensityGrid dg)
+	{
+		return find(dg.getCoordinates());
+	}
+
+	/**
+	 * Finds the neighbour of a grid of the list which differs from it by one in one dimension.
+	 *
+	 * @param slot the slot of the grid
+	 * @param dimension the dimension in which the neighbour differs
+	 * @param delta -1 or +1
+	 * @return the slot of the neighbour, -1 if it is not in the list
+	 */
+	public int findNeighbour(int slot, int dimension, int delta)
+	{
+		int[] c = this.coordinates;
+		int offset = slot * this.dimensions;
+		long hash = 1;
+		for (int i = 0 ; i < this.dimensions ; i++)
+			hash = mix(hash, c[offset + i] + (i == dimension ? delta : 0));
+		int mask = this.table.length - 1;
+		for (int i = index(hash, mask) ; this.table[i] >= 0 ; i = (i + 1) & mask)
+		{
+			int other = this.table[i];
+			if (this.hashes[other] == hash && matchesNeighbour(other, slot, dimension, delta))
+				return other;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a grid which is not in the list yet.
+	 *
+	 * @param c the coordinates of the grid
+	 * @param dg the density grid, may be null
+	 * @param cv the characteristic vector of the grid
+	 * @return the slot of the grid
+	 */
+	public int add(int[] c, DensityGrid dg, CharacteristicVector cv)
+	{
+		int slot;
+		if (this.numFreeSlots > 0)
+			slot = this.freeSlots[--this.numFreeSlots];
+		else
+		{
+			if (this.numSlots == this.used.length)
+				grow(Math.max(16, 2 * this.numSlots));
+			slot = this.numSlots++;
+		}
+		System.arraycopy(c, 0, this.coordinates, slot * this.dimensions, this.dimensions);
+		this.hashes[slot] = hash(c);
+		this.grids[slot] = dg;
+		this.vectors[slot] = cv;
+		this.used[slot] = true;
+		this.size++;
+
+		if (2 * this.size > this.table.length)
+			rehash(2 * this.table.length);
+		insert(slot);
+		return slot;
+	}
+
+	/**
+	 * Removes the grid of a slot, shifting back the entries which follow it in the table so
+	 * that no search stops early.
+	 *
+	 * @param slot the slot of the grid
+	 */
+	public void remove(int slot)
+	{
+		int mask = this.table.length - 1;
+		int i = index(this.hashes[slot], mask);
+		while (this.table[i] != slot)
+			i = (i + 1) & mask;
+		for (int j = (i + 1) & mask ; this.table[j] >= 0 ; j = (j + 1) & mask)
+		{
+			int home = index(this.hashes[this.table[j]], mask);
+			// the entry at j moves to i unless its home lies cyclically in (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j))
+			{
+				this.table[i] = this.table[j];
+				i = j;
+			}
+		}
+		this.table[i] = -1;
+
+		this.grids[slot] = null;
+		this.vectors[slot] = null;
+		this.used[slot] = false;
+		if (this.numFreeSlots == this.freeSlots.length)
+			this.freeSlots = Arrays.copyOf(this.freeSlots, Math.max(16, 2 * this.numFreeSlots));
+		this.freeSlots[this.numFreeSlots++] = slot;
+		this.size--;
+	}
+
+	private boolean matches(int slot, int[] c)
+	{
+		int offset = slot * this.dimensions;
+		for (int i = 0 ; i < this.dimensions ; i++)
+		{
+			if (this.coordinates[offset + i] != c[i])
+				return false;
+		}
+		return true;
+	}
+
+	private boolean matchesNeighbour(int slot, int of, int dimension, int delta)
+	{
+		int offset = slot * this.dimensions;
+		int ofOffset = of * this.dimensions;
+		for (int i = 0 ; i < this.dimensions ; i++)
+		{
+			if (this.coordinates[offset + i] != this.coordinates[ofOffset + i] + (i == dimension ? delta : 0))
+				return false;
+		}
+		return true;
+	}
+
+	private void insert(int slot)
+	{
+		int mask = this.table.length - 1;
+		int i = index(this.hashes[slot], mask);
+		while (this.table[i] >= 0)
+			i = (i + 1) & mask;
+		this.table[i] = slot;
+	}
+
+	private void rehash(int capacity)
+	{
+		this.table = new int[capacity];
+		Arrays.fill(this.table, -1);
+		for (int slot = 0 ; slot < this.numSlots ; slot++)
+		{
+			if (this.used[slot])
+				insert(slot);
+		}
+	}
+
+	private void grow(int capacity)
+	{
+		this.coordinates = Arrays.copyOf(this.coordinates, capacity * this.dimensions);
+		this.hashes = Arrays.copyOf(this.hashes, capacity);
+		this.grids = Arrays.copyOf(this.grids, capacity);
+		this.vectors = Arrays.copyOf(this.vectors, capacity);
+		this.used = Arrays.copyOf(this.used, capacity);
+	}
+
+	private long hash(int[] c)
+	{
+		long hash = 1;
+		for (int i = 0 ; i < this.dimensions ; i++)
+			hash = mix(hash, c[i]);
+		return hash;
+	}
+
+	private static long mix(long hash, int coordinate)
+	{
+		return (hash + coordinate) * 0x9E3779B97F4A7C15L;
+	}
+
+	private static int index(long hash, int mask)
+	{
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
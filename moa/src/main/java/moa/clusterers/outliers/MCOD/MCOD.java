@@ -26,6 +26,7 @@ import java.util.Vector;
 import moa.clusterers.outliers.MCOD.ISBIndex.ISBNode;
 import moa.clusterers.outliers.MCOD.ISBIndex.ISBNode.NodeType;
 import moa.clusterers.outliers.MCOD.ISBIndex.ISBSearchResult;
+import moa.clusterers.outliers.utils.RangeIndex;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -70,7 +71,7 @@ public class MCOD extends MCODBase {
         // create helper sets for micro-cluster management
         setMC = new TreeSet<MicroCluster>();
         // micro-cluster index
-        mtreeMC = new MTreeMicroClusters();
+        indexMC = new RangeIndex<MicroCluster>(m_radius);
         // create event queue
         eventQueue = new EventQueue();
         
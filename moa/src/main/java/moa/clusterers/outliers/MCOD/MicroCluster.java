@@ -27,6 +27,7 @@ import moa.clusterers.outliers.utils.mtree.DistanceFunctions.EuclideanCoordinate
 public class MicroCluster implements EuclideanCoordinate, Comparable<MicroCluster> {
     public ISBNode mcc;
     public ArrayList<ISBNode> nodes;
+    int slot = -1; // slot of the micro-cluster in the index
 
     public MicroCluster(ISBNode mcc) {
         this.mcc = mcc;
@@ -0,0 +1,514 @@
+/*
+ *    RangeIndex.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.clusterers.outliers.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import moa.clusterers.outliers.utils.mtree.DistanceFunctions.EuclideanCoordinate;
+
+/**
+ * Index of the points of a sliding window, for the range queries of the
+ * distance-based outlier detectors. Points are stored with an item, in slots
+ * that are reused once their point expires, and a range query returns the
+ * items whose point is within the range of the query point (distance equal to
+ * the range included), sorted by increasing distance, ties in the order the
+ * points were added.
+ *
+ * <p>Points are placed in a grid of cells according to their distances to two
+ * pivots: the first point added, and the first one far enough from it. Cells
+ * cover rings of distances as wide as the width given, usually the radius of
+ * the queries, so that a query only visits the few cells whose rings meet
+ * its range, and the triangle inequality on the pivot distances discards
+ * most of the points of these cells before their distance is computed.
+ * Cells are kept in a hash table and only exist while they hold points.</p>
+ *
+ * <p>Coordinates, pivot distances and cell members are kept in arrays of
+ * primitives, and adding or removing a point takes a constant time. The
+ * results of the last query are kept by the index, which is therefore not
+ * thread-safe.</p>
+ *
+ * @param <T> the type of the items
+ * @version $Revision: 1 $
+ */
+public class RangeIndex<T> {
+
+    /** Relative error allowed on distances computed in different orders. */
+    protected static final double SLACK = 1e-9;
+
+    protected final double width;
+
+    protected int dimensions = -1;
+
+    protected int size = 0;
+
+    /** Number of slots ever used, free or not. */
+    protected int numSlots = 0;
+
+    /** Point of slot s, at [s * dimensions]. */
+    protected double[] coordinates = new double[0];
+
+    /** Distances of the point of slot s to the pivots, at [2 * s]. */
+    protected double[] pivotDistances = new double[0];
+
+    protected Object[] items = new Object[0];
+
+    /** Order in which the points were added, for the ties. */
+    protected long[] sequences = new long[0];
+
+    protected long nextSequence = 0;
+
+    /** Cell of each slot, -1 for free slots. */
+    protected int[] slotCells = new int[0];
+
+    /** Position of each slot among the members of its cell. */
+    protected int[] positions = new int[0];
+
+    protected int[] freeSlots = new int[0];
+
+    protected int numFreeSlots = 0;
+
+    protected double[] pivot0 = null;
+
+    protected double[] pivot1 = null;
+
+    /** Rings of the pivot distances of each cell, packed in a long. */
+    protected long[] cellKeys = new long[0];
+
+    protected int[][] cellMembers = new int[0][];
+
+    protected int[] cellSizes = new int[0];
+
+    protected int numCells = 0;
+
+    protected int[] freeCells = new int[0];
+
+    protected int numFreeCells = 0;
+
+    /** Open addressing table of the cells by key, -1 for empty entries. */
+    protected int[] table = new int[0];
+
+    protected double[] query = new double[0];
+
+    protected int numResults = 0;
+
+    protected int[] resultSlots = new int[16];
+
+    protected double[] resultDistances = new double[16];
+
+    /**
+     * Creates an index.
+     *
+     * @param width the width of the rings of the cells, best close to the
+     *              range of the queries
+     */
+    public RangeIndex(double width) {
+        this.width = width > 0 ? width : 1.0;
+        clearTable(16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a point to the index.
+     *
+     * @return the slot of the point, to remove it
+     */
+    public int add(T item, EuclideanCoordinate point) {
+        if (dimensions < 0) {
+            dimensions = point.dimensions();
+            query = new double[dimensions];
+        } else if (point.dimensions() != dimensions) {
+            throw new IllegalArgumentException("Point has " + point.dimensions()
+                    + " dimensions instead of " + dimensions);
+        }
+        int slot;
+        if (numFreeSlots > 0) {
+            slot = freeSlots[--numFreeSlots];
+        } else {
+            if (numSlots == items.length) {
+                growSlots(Math.max(16, 2 * numSlots));
+            }
+            slot = numSlots++;
+        }
+        int offset = slot * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            coordinates[offset + i] = point.get(i);
+        }
+        items[slot] = item;
+        sequences[slot] = nextSequence++;
+        size++;
+
+        if (pivot0 == null) {
+            pivot0 = Arrays.copyOfRange(coordinates, offset, offset + dimensions);
+        }
+        double d0 = distance(pivot0, slot);
+        pivotDistances[2 * slot] = d0;
+        if (pivot1 == null && d0 > 2 * width) {
+            // spread the points over a second dimension of rings
+            pivot1 = Arrays.copyOfRange(coordinates, offset, offset + dimensions);
+            rebuildCells();
+        }
+        pivotDistances[2 * slot + 1] = pivot1 == null ? 0 : distance(pivot1, slot);
+        place(slot);
+        return slot;
+    }
+
+    /**
+     * Removes the point of a slot from the index.
+     */
+    public void remove(int slot) {
+        int cell = slotCells[slot];
+        if (cell < 0) {
+            throw new IllegalArgumentException("Slot " + slot + " is free");
+        }
+        int[] members = cellMembers[cell];
+        int last = members[--cellSizes[cell]];
+        members[positions[slot]] = last;
+        positions[last] = positions[slot];
+        if (cellSizes[cell] == 0) {
+            releaseCell(cell);
+        }
+        slotCells[slot] = -1;
+        items[slot] = null;
+        if (numFreeSlots == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, 2 * numFreeSlots));
+        }
+        freeSlots[numFreeSlots++] = slot;
+        size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int slot) {
+        return (T) items[slot];
+    }
+
+    /**
+     * Gets the items of the index, in the order of their slots.
+     */
+    public List<T> getItems() {
+        List<T> list = new ArrayList<T>(size);
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (slotCells[slot] >= 0) {
+                list.add(get(slot));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Finds the points within a range of a point. The results are read with
+     * {@link #getResult(int)} and {@link #getResultDistance(int)} until the
+     * next query.
+     *
+     * @return the number of points found
+     */
+    public int rangeSearch(EuclideanCoordinate point, double range) {
+        numResults = 0;
+        if (size == 0) {
+            return 0;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            query[i] = point.get(i);
+        }
+        double q0 = distance(pivot0, query);
+        double q1 = pivot1 == null ? 0 : distance(pivot1, query);
+        double bound = range + SLACK * (q0 + q1 + range + 1);
+        int low0 = ring(q0 - bound), high0 = ring(q0 + bound);
+        int low1 = ring(q1 - bound), high1 = ring(q1 + bound);
+
+        if ((double) (high0 - low0 + 1) * (high1 - low1 + 1) > numCells - numFreeCells) {
+            // fewer cells than rings to look up
+            for (int cell = 0; cell < numCells; cell++) {
+                int r0 = (int) (cellKeys[cell] >>> 32), r1 = (int) cellKeys[cell];
+                if (cellSizes[cell] > 0 && r0 >= low0 && r0 <= high0 && r1 >= low1 && r1 <= high1) {
+                    searchCell(cell, q0, q1, range, bound);
+                }
+            }
+        } else {
+            for (int r0 = low0; r0 <= high0; r0++) {
+                for (int r1 = low1; r1 <= high1; r1++) {
+                    int cell = findCell(key(r0, r1));
+                    if (cell >= 0) {
+                        searchCell(cell, q0, q1, range, bound);
+                    }
+                }
+            }
+        }
+        sortResults(0, numResults - 1);
+        return numResults;
+    }
+
+    public T getResult(int i) {
+        return get(resultSlots[i]);
+    }
+
+    public double getResultDistance(int i) {
+        return resultDistances[i];
+    }
+
+    protected void searchCell(int cell, double q0, double q1, double range, double bound) {
+        int[] members = cellMembers[cell];
+        for (int i = 0; i < cellSizes[cell]; i++) {
+            int slot = members[i];
+            if (Math.abs(pivotDistances[2 * slot] - q0) > bound
+                    || Math.abs(pivotDistances[2 * slot + 1] - q1) > bound) {
+                continue;
+            }
+            double d = distance(query, slot);
+            if (d <= range) {
+                if (numResults == resultSlots.length) {
+                    resultSlots = Arrays.copyOf(resultSlots, 2 * numResults);
+                    resultDistances = Arrays.copyOf(resultDistances, 2 * numResults);
+                }
+                resultSlots[numResults] = slot;
+                resultDistances[numResults] = d;
+                numResults++;
+            }
+        }
+    }
+
+    /**
+     * Sorts the results by distance, then by order of addition.
+     */
+    protected void sortResults(int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+            double pivotDistance = resultDistances[middle];
+            long pivotSequence = sequences[resultSlots[middle]];
+            int i = from, j = to;
+            while (i <= j) {
+                while (before(i, pivotDistance, pivotSequence)) {
+                    i++;
+                }
+                while (after(j, pivotDistance, pivotSequence)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swapResults(i++, j--);
+                }
+            }
+            // recurse on the smaller part
+            if (j - from < to - i) {
+                sortResults(from, j);
+                from = i;
+            } else {
+                sortResults(i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from
+                    && before(j, resultDistances[j - 1], sequences[resultSlots[j - 1]]); j--) {
+                swapResults(j, j - 1);
+            }
+        }
+    }
+
+    private boolean before(int i, double distance, long sequence) {
+        return resultDistances[i] < distance
+                || (resultDistances[i] == distance && sequences[resultSlots[i]] < sequence);
+    }
+
+    private boolean after(int i, double distance, long sequence) {
+        return resultDistances[i] > distance
+                || (resultDistances[i] == distance && sequences[resultSlots[i]] > sequence);
+    }
+
+    private void swapResults(int i, int j) {
+        int slot = resultSlots[i];
+        resultSlots[i] = resultSlots[j];
+        resultSlots[j] = slot;
+        double d = resultDistances[i];
+        resultDistances[i] = resultDistances[j];
+        resultDistances[j] = d;
+    }
+
+    /**
+     * Euclidean distance, summed in the order of
+     * {@link moa.clusterers.outliers.utils.mtree.DistanceFunctions#euclidean}.
+     */
+    protected double distance(double[] point, int slot) {
+        int offset = slot * dimensions;
+        double sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            double diff = point[i] - coordinates[offset + i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    protected double distance(double[] point, double[] other) {
+        double sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            double diff = point[i] - other[i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    protected int ring(double distance) {
+        if (distance <= 0) {
+            return 0;
+        }
+        double ring = distance / width;
+        return ring >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) ring;
+    }
+
+    protected static long key(int ring0, int ring1) {
+        return ((long) ring0 << 32) | (ring1 & 0xffffffffL);
+    }
+
+    protected void place(int slot) {
+        long key = key(ring(pivotDistances[2 * slot]), ring(pivotDistances[2 * slot + 1]));
+        int cell = findCell(key);
+        if (cell < 0) {
+            cell = createCell(key);
+        }
+        int[] members = cellMembers[cell];
+        if (cellSizes[cell] == members.length) {
+            members = cellMembers[cell] = Arrays.copyOf(members, 2 * members.length);
+        }
+        positions[slot] = cellSizes[cell];
+        members[cellSizes[cell]++] = slot;
+        slotCells[slot] = cell;
+    }
+
+    /**
+     * Computes the distances to the second pivot and places all the points
+     * again.
+     */
+    protected void rebuildCells() {
+        numCells = 0;
+        numFreeCells = 0;
+        clearTable(table.length);
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (slotCells[slot] >= 0) {
+                pivotDistances[2 * slot + 1] = distance(pivot1, slot);
+                place(slot);
+            }
+        }
+    }
+
+    protected int findCell(long key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int cell = table[i];
+            if (cell < 0) {
+                return -1;
+            }
+            if (cellKeys[cell] == key) {
+                return cell;
+            }
+        }
+    }
+
+    protected int createCell(long key) {
+        int cell;
+        if (numFreeCells > 0) {
+            cell = freeCells[--numFreeCells];
+        } else {
+            if (numCells == cellKeys.length) {
+                int capacity = Math.max(16, 2 * numCells);
+                cellKeys = Arrays.copyOf(cellKeys, capacity);
+                cellMembers = Arrays.copyOf(cellMembers, capacity);
+                cellSizes = Arrays.copyOf(cellSizes, capacity);
+            }
+            cell = numCells++;
+            cellMembers[cell] = new int[4];
+        }
+        cellKeys[cell] = key;
+        cellSizes[cell] = 0;
+        if (2 * (numCells - numFreeCells) > table.length) {
+            rehash(2 * table.length);
+        }
+        insertInTable(cell);
+        return cell;
+    }
+
+    /**
+     * Removes an empty cell from the table, shifting back the cells after it
+     * to keep the probe sequences unbroken.
+     */
+    protected void releaseCell(int cell) {
+        int mask = table.length - 1;
+        int i = hash(cellKeys[cell]) & mask;
+        while (table[i] != cell) {
+            i = (i + 1) & mask;
+        }
+        for (int j = (i + 1) & mask; table[j] >= 0; j = (j + 1) & mask) {
+            int home = hash(cellKeys[table[j]]) & mask;
+            // move the entry at j to the hole at i unless its home lies in (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = -1;
+        if (numFreeCells == freeCells.length) {
+            freeCells = Arrays.copyOf(freeCells, Math.max(16, 2 * numFreeCells));
+        }
+        freeCells[numFreeCells++] = cell;
+    }
+
+    protected void rehash(int capacity) {
+        clearTable(capacity);
+        boolean[] free = new boolean[numCells];
+        for (int i = 0; i < numFreeCells; i++) {
+            free[freeCells[i]] = true;
+        }
+        for (int cell = 0; cell < numCells; cell++) {
+            if (!free[cell]) {
+                insertInTable(cell);
+            }
+        }
+    }
+
+    protected void insertInTable(int cell) {
+        int mask = table.length - 1;
+        int i = hash(cellKeys[cell]) & mask;
+        while (table[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = cell;
+    }
+
+    protected void clearTable(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, -1);
+    }
+
+    protected static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    protected void growSlots(int capacity) {
+        coordinates = Arrays.copyOf(coordinates, capacity * dimensions);
+        pivotDistances = Arrays.copyOf(pivotDistances, 2 * capacity);
+        items = Arrays.copyOf(items, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        int previous = slotCells.length;
+        slotCells = Arrays.copyOf(slotCells, capacity);
+        Arrays.fill(slotCells, previous, capacity, -1);
+    }
+}
@@ -122,7 +122,11 @@ public class AutoExpandVector<T> extends ArrayList<T> implements MOAObject {
 
     @Override
     public int measureByteSize() {
-        return AbstractMOAObject.measureByteSize(this);
+        long size = SizeOf.shallowSizeOf(this) + SizeOf.arraySize(size(), SizeOf.REFERENCE_SIZE);
+        for (T element : this) {
+            size += SizeOf.estimatedFullSizeOf(element);
+        }
+        return (int) size;
     }
 
     @Override
@@ -195,6 +195,11 @@ public class DoubleVector extends AbstractMOAObject {
         out.append("}");
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) (SizeOf.shallowSizeOf(this) + SizeOf.shallowSizeOf(this.array));
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
         getSingleLineDescription(sb);
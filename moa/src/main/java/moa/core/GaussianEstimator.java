@@ -115,6 +115,11 @@ public class GaussianEstimator extends AbstractMOAObject {
         return new double[]{lessThanWeight, equalToWeight, greaterThanWeight};
     }
 
+    @Override
+    public int measureByteSize() {
+        return (int) SizeOf.shallowSizeOf(this);
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
         // TODO Auto-generated method stub
@@ -0,0 +1,529 @@
+/*
+ *    ObjectCopier.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Deep copies of serializable objects without going through object streams.
+ * The fields of the objects are copied directly, through reflection cached per
+ * class, giving the same copy as a serialization round-trip: shared and cyclic
+ * references are preserved, transient fields are left to their default values
+ * and the fields of non-serializable superclasses are initialized by their
+ * no-argument constructor.
+ *
+ * <p>Strings, boxed primitives, enums and classes are immutable and shared with
+ * the copy. The common collections of java.util are rebuilt with copies of
+ * their elements, the random number generators are copied through a single
+ * serialization of all of them. Graphs with any other class of the JDK, or with
+ * classes customizing their serialization (writeObject, readResolve, ...), are
+ * copied with {@link SerializeUtils#copyObject(Serializable)}.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class ObjectCopier {
+
+    /** Thrown when the graph has to be copied by serialization instead. */
+    protected static class UnsupportedCopyException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedCopyException() {
+            super(null, null, false, false);
+        }
+    }
+
+    protected static final UnsupportedCopyException UNSUPPORTED = new UnsupportedCopyException();
+
+    /** Marks the lists whose elements are being copied, before the list itself. */
+    protected static final Object IN_PROGRESS = new Object();
+
+    protected enum Kind {
+        IMMUTABLE, ARRAY, OBJECT, LIST_SUBCLASS, RANDOM, ARRAY_LIST, LINKED_LIST,
+        ARRAY_DEQUE, HASH_MAP, HASH_SET, TREE_MAP, TREE_SET, UNSUPPORTED
+    }
+
+    /** How the instances of a class are copied. */
+    protected static class ClassInfo {
+
+        protected final Kind kind;
+
+        protected final Constructor<?> constructor;
+
+        protected final Field[] fields;
+
+        /** the primitive type of each field, null for references */
+        protected final Class<?>[] primitiveTypes;
+
+        /** number of objects in the last graph copied from an instance */
+        protected volatile int lastGraphSize;
+
+        public ClassInfo(Kind kind) {
+            this(kind, null, null);
+        }
+
+        public ClassInfo(Kind kind, Constructor<?> constructor, Field[] fields) {
+            this.kind = kind;
+            this.constructor = constructor;
+            this.fields = fields;
+            if (fields != null) {
+                this.primitiveTypes = new Class<?>[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    if (fields[i].getType().isPrimitive()) {
+                        this.primitiveTypes[i] = fields[i].getType();
+                    }
+                }
+            } else {
+                this.primitiveTypes = null;
+            }
+        }
+    }
+
+    /** Creates the constructors used by deserialization, null if not available. */
+    protected static final Method m_NewConstructorForSerialization;
+
+    /** Same, calling a given constructor of a superclass. */
+    protected static final Method m_NewConstructorCallingForSerialization;
+
+    protected static final Object m_ReflectionFactory;
+
+    static {
+        Method method = null;
+        Method methodCalling = null;
+        Object factory = null;
+        try {
+            Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+            factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+            method = factoryClass.getMethod("newConstructorForSerialization", Class.class);
+            methodCalling = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+        } catch (Throwable e) {
+            // not available on this JVM, always copy by serialization
+            method = null;
+            methodCalling = null;
+            factory = null;
+        }
+        m_NewConstructorForSerialization = method;
+        m_NewConstructorCallingForSerialization = methodCalling;
+        m_ReflectionFactory = factory;
+    }
+
+    protected static final ClassValue<ClassInfo> m_ClassInfos = new ClassValue<ClassInfo>() {
+        @Override
+        protected ClassInfo computeValue(Class<?> type) {
+            try {
+                return createClassInfo(type);
+            } catch (RuntimeException e) {
+                // e.g. fields of a module that is not open
+                return new ClassInfo(Kind.UNSUPPORTED);
+            }
+        }
+    };
+
+    /** copies of the objects met so far */
+    protected final Map<Object, Object> m_Copies;
+
+    /** random number generators to copy at the end, with where to put them */
+    protected final List<Object[]> m_RandomFixups = new ArrayList<Object[]>();
+
+    /**
+     * @param expectedSize	the expected number of objects to copy
+     */
+    protected ObjectCopier(int expectedSize) {
+        this.m_Copies = new IdentityHashMap<Object, Object>(expectedSize);
+    }
+
+    /**
+     * Returns a deep copy of an object, the same as a serialization round-trip
+     * would return, falling back to serialization when the object cannot be
+     * copied directly.
+     *
+     * @param obj	the object to copy
+     * @return the copy
+     * @throws Exception	if the serialization fails
+     */
+    public static Object copyObject(Serializable obj) throws Exception {
+        if (m_NewConstructorForSerialization != null) {
+            try {
+                // sized from the previous copy of the same class, to avoid rehashing
+                ClassInfo info = m_ClassInfos.get(obj.getClass());
+                ObjectCopier copier = new ObjectCopier(Math.max(info.lastGraphSize, 32));
+                Object copy = copier.copyValue(obj);
+                copier.copyRandoms();
+                info.lastGraphSize = copier.m_Copies.size();
+                return copy;
+            } catch (UnsupportedCopyException e) {
+                // fall back to serialization
+            }
+        }
+        return SerializeUtils.copyObject(obj);
+    }
+
+    /**
+     * Returns whether an object can be copied without serialization, i.e.
+     * whether its class and the classes of the objects it refers to are
+     * supported.
+     *
+     * @param obj	the object to check
+     * @return true if {@link #copyObject(Serializable)} copies it directly
+     */
+    public static boolean isDirectCopySupported(Serializable obj) {
+        if (m_NewConstructorForSerialization == null) {
+            return false;
+        }
+        try {
+            new ObjectCopier(32).copyValue(obj);
+            return true;
+        } catch (UnsupportedCopyException e) {
+            return false;
+        }
+    }
+
+    protected Object copyValue(Object o) {
+        if (o == null) {
+            return null;
+        }
+        ClassInfo info = m_ClassInfos.get(o.getClass());
+        if (info.kind == Kind.IMMUTABLE) {
+            return o;
+        }
+        Object copy = this.m_Copies.get(o);
+        if (copy == IN_PROGRESS) {
+            // a list referred to by its own elements
+            throw UNSUPPORTED;
+        } else if (copy != null) {
+            return copy;
+        }
+        try {
+            switch (info.kind) {
+                case ARRAY:
+                    return copyArray(o);
+                case OBJECT:
+                    copy = register(o, info.constructor.newInstance());
+                    copyFields(o, copy, info);
+                    return copy;
+                case LIST_SUBCLASS:
+                    return copyListSubclass((Collection<?>) o, info);
+                case ARRAY_LIST:
+                    return copyElements((Collection<?>) o, register(o, new ArrayList<Object>(((Collection<?>) o).size())));
+                case LINKED_LIST:
+                    return copyElements((Collection<?>) o, register(o, new LinkedList<Object>()));
+                case ARRAY_DEQUE:
+                    return copyElements((Collection<?>) o, register(o, new ArrayDeque<Object>(((Collection<?>) o).size())));
+                case HASH_SET:
+                    // same capacity as given by HashSet.readObject
+                    return copyElements((Collection<?>) o, register(o, new HashSet<Object>(
+                            (int) Math.min(((Collection<?>) o).size() * Math.min(1 / 0.75f, 4.0f), 1 << 30))));
+                case TREE_SET:
+                    if (((TreeSet<?>) o).comparator() != null) {
+                        throw UNSUPPORTED;
+                    }
+                    return copyElements((Collection<?>) o, register(o, new TreeSet<Object>()));
+                case HASH_MAP:
+                    // same capacity as given by HashMap.readObject
+                    float capacity = ((Map<?, ?>) o).size() / 0.75f + 1.0f;
+                    return copyEntries((Map<?, ?>) o, register(o, new HashMap<Object, Object>(
+                            capacity < 16 ? 16 : (capacity >= (1 << 30) ? (1 << 30) : (int) capacity))));
+                case TREE_MAP:
+                    if (((TreeMap<?, ?>) o).comparator() != null) {
+                        throw UNSUPPORTED;
+                    }
+                    return copyEntries((Map<?, ?>) o, register(o, new TreeMap<Object, Object>()));
+                default:
+                    // random number generators are only supported as fields
+                    // or array elements, see setReference
+                    throw UNSUPPORTED;
+            }
+        } catch (ReflectiveOperationException e) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    protected <T> T register(Object o, T copy) {
+        this.m_Copies.put(o, copy);
+        return copy;
+    }
+
+    protected Object copyArray(Object o) {
+        if (o instanceof Object[]) {
+            Object[] array = (Object[]) o;
+            Object[] arrayCopy = register(o, array.clone());
+            for (int i = 0; i < array.length; i++) {
+                setReference(arrayCopy, i, null, array[i]);
+            }
+            return arrayCopy;
+        }
+        int length = Array.getLength(o);
+        Object copy = register(o, Array.newInstance(o.getClass().getComponentType(), length));
+        System.arraycopy(o, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Copies a subclass of a list of java.util: the list is created with the
+     * copies of the elements, by the constructor of the list taking a
+     * collection, so that methods overridden by the subclass are not called.
+     */
+    protected Object copyListSubclass(Collection<?> list, ClassInfo info) throws ReflectiveOperationException {
+        this.m_Copies.put(list, IN_PROGRESS);
+        ArrayList<Object> elements = new ArrayList<Object>(list.size());
+        copyElements(list, elements);
+        Object copy = info.constructor.newInstance(elements);
+        this.m_Copies.put(list, copy);
+        copyFields(list, copy, info);
+        return copy;
+    }
+
+    protected void copyFields(Object o, Object copy, ClassInfo info) throws ReflectiveOperationException {
+        Field[] fields = info.fields;
+        Class<?>[] primitiveTypes = info.primitiveTypes;
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            Class<?> type = primitiveTypes[i];
+            if (type == null) {
+                setReference(copy, -1, field, field.get(o));
+            } else if (type == double.class) {
+                field.setDouble(copy, field.getDouble(o));
+            } else if (type == int.class) {
+                field.setInt(copy, field.getInt(o));
+            } else if (type == long.class) {
+                field.setLong(copy, field.getLong(o));
+            } else if (type == boolean.class) {
+                field.setBoolean(copy, field.getBoolean(o));
+            } else if (type == float.class) {
+                field.setFloat(copy, field.getFloat(o));
+            } else if (type == char.class) {
+                field.setChar(copy, field.getChar(o));
+            } else if (type == short.class) {
+                field.setShort(copy, field.getShort(o));
+            } else {
+                field.setByte(copy, field.getByte(o));
+            }
+        }
+    }
+
+    /**
+     * Stores the copy of a value in a field, or in an array if the field is
+     * null. Random number generators are stored once copied by copyRandoms.
+     */
+    protected void setReference(Object target, int index, Field field, Object value) {
+        if (value != null && value.getClass() == Random.class) {
+            this.m_RandomFixups.add(new Object[]{target, index, field, value});
+            return;
+        }
+        Object copy = copyValue(value);
+        if (field == null) {
+            ((Object[]) target)[index] = copy;
+        } else {
+            try {
+                field.set(target, copy);
+            } catch (IllegalAccessException e) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    protected Object copyElements(Collection<?> collection, Collection<Object> copy) {
+        for (Object element : collection) {
+            if (element != null && element.getClass() == Random.class) {
+                throw UNSUPPORTED;
+            }
+            copy.add(copyValue(element));
+        }
+        return copy;
+    }
+
+    protected Object copyEntries(Map<?, ?> map, Map<Object, Object> copy) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if ((entry.getKey() != null && entry.getKey().getClass() == Random.class)
+                    || (entry.getValue() != null && entry.getValue().getClass() == Random.class)) {
+                throw UNSUPPORTED;
+            }
+            copy.put(copyValue(entry.getKey()), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Copies all the random number generators met in a single serialization
+     * round-trip, as their state is not accessible otherwise.
+     */
+    protected void copyRandoms() throws Exception {
+        if (this.m_RandomFixups.isEmpty()) {
+            return;
+        }
+        Map<Object, Integer> indices = new IdentityHashMap<Object, Integer>();
+        ArrayList<Object> randoms = new ArrayList<Object>();
+        for (Object[] fixup : this.m_RandomFixups) {
+            if (!indices.containsKey(fixup[3])) {
+                indices.put(fixup[3], randoms.size());
+                randoms.add(fixup[3]);
+            }
+        }
+        ArrayList<?> copies = (ArrayList<?>) SerializeUtils.copyObject(randoms);
+        for (Object[] fixup : this.m_RandomFixups) {
+            Object copy = copies.get(indices.get(fixup[3]));
+            if (fixup[2] == null) {
+                ((Object[]) fixup[0])[(Integer) fixup[1]] = copy;
+            } else {
+                ((Field) fixup[2]).set(fixup[0], copy);
+            }
+        }
+    }
+
+    protected static ClassInfo createClassInfo(Class<?> type) throws RuntimeException {
+        if (type.isArray()) {
+            return new ClassInfo(Kind.ARRAY);
+        }
+        if (type == String.class || type == Class.class || type.isEnum()
+                || (type.getSuperclass() != null && type.getSuperclass().isEnum())
+                || type == Double.class || type == Integer.class || type == Long.class
+                || type == Float.class || type == Boolean.class || type == Character.class
+                || type == Short.class || type == Byte.class
+                || type == BigInteger.class || type == BigDecimal.class) {
+            return new ClassInfo(Kind.IMMUTABLE);
+        }
+        if (type == Random.class) {
+            return new ClassInfo(Kind.RANDOM);
+        } else if (type == ArrayList.class) {
+            return new ClassInfo(Kind.ARRAY_LIST);
+        } else if (type == LinkedList.class) {
+            return new ClassInfo(Kind.LINKED_LIST);
+        } else if (type == ArrayDeque.class) {
+            return new ClassInfo(Kind.ARRAY_DEQUE);
+        } else if (type == HashMap.class) {
+            return new ClassInfo(Kind.HASH_MAP);
+        } else if (type == HashSet.class) {
+            return new ClassInfo(Kind.HASH_SET);
+        } else if (type == TreeMap.class) {
+            return new ClassInfo(Kind.TREE_MAP);
+        } else if (type == TreeSet.class) {
+            return new ClassInfo(Kind.TREE_SET);
+        }
+        if (isJdkClass(type) || !Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+                || type.isSynthetic() || Proxy.isProxyClass(type)) {
+            return new ClassInfo(Kind.UNSUPPORTED);
+        }
+        // the closest superclass from the JDK
+        Class<?> base = type.getSuperclass();
+        while (!isJdkClass(base)) {
+            base = base.getSuperclass();
+        }
+        boolean listSubclass = base == ArrayList.class || base == LinkedList.class;
+        if (!listSubclass && Serializable.class.isAssignableFrom(base)) {
+            // its serialized state is not accessible
+            return new ClassInfo(Kind.UNSUPPORTED);
+        }
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (listSubclass && c == base) {
+                break;
+            }
+            if (hasSerializationMethods(c)) {
+                return new ClassInfo(Kind.UNSUPPORTED);
+            }
+            if (!Serializable.class.isAssignableFrom(c)) {
+                // fields of non-serializable classes are set by their constructor
+                continue;
+            }
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        Constructor<?> constructor;
+        try {
+            if (listSubclass) {
+                constructor = (Constructor<?>) m_NewConstructorCallingForSerialization.invoke(
+                        m_ReflectionFactory, type, base.getConstructor(Collection.class));
+            } else {
+                constructor = (Constructor<?>) m_NewConstructorForSerialization.invoke(m_ReflectionFactory, type);
+            }
+        } catch (ReflectiveOperationException e) {
+            return new ClassInfo(Kind.UNSUPPORTED);
+        }
+        if (constructor == null) {
+            // no accessible no-argument constructor in the non-serializable superclasses
+            return new ClassInfo(Kind.UNSUPPORTED);
+        }
+        constructor.setAccessible(true);
+        return new ClassInfo(listSubclass ? Kind.LIST_SUBCLASS : Kind.OBJECT, constructor,
+                fields.toArray(new Field[fields.size()]));
+    }
+
+    protected static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")
+                || name.startsWith("sun.") || name.startsWith("com.sun.");
+    }
+
+    /**
+     * @return whether the class customizes how it is serialized
+     */
+    protected static boolean hasSerializationMethods(Class<?> c) {
+        return hasDeclaredMethod(c, "writeObject", ObjectOutputStream.class)
+                || hasDeclaredMethod(c, "readObject", ObjectInputStream.class)
+                || hasDeclaredMethod(c, "readObjectNoData")
+                || hasDeclaredMethod(c, "writeReplace")
+                || hasDeclaredMethod(c, "readResolve")
+                || hasDeclaredField(c, "serialPersistentFields");
+    }
+
+    protected static boolean hasDeclaredMethod(Class<?> c, String name, Class<?>... parameterTypes) {
+        try {
+            c.getDeclaredMethod(name, parameterTypes);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    protected static boolean hasDeclaredField(Class<?> c, String name) {
+        try {
+            c.getDeclaredField(name);
+            return true;
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+}
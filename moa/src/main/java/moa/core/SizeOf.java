@@ -20,10 +20,32 @@
  */
 package moa.core;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import moa.MOAObject;
 import sizeof.agent.SizeOfAgent;
 
 /**
  * Helper class for <a href="http://www.jroller.com/maxim/entry/again_about_determining_size_of" target="_blank">Maxim Zakharenkov's SizeOf agent</a>.
+ * <br>
+ * It also estimates sizes without the agent, from the fields of the classes
+ * and the lengths of the arrays (see {@link #shallowSizeOf(Object)}). The
+ * main models, from the trees and ensembles to the lazy and linear learners,
+ * use these estimates to measure their size from their own structure, which
+ * is much faster than the deep traversal of the agent.
+ * Other objects are measured by following their fields when the agent is not
+ * present (see {@link #reflectiveSizeOf(Object)}). All these estimates walk
+ * the model again on every call, they are not kept up to date while learning.
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -33,6 +55,60 @@ public class SizeOf {
     /** whether the agent is present. */
     protected static Boolean m_Present;
 
+    /** whether the references are compressed (64-bit JVM with a heap below 32GB). */
+    protected static final boolean COMPRESSED_REFERENCES =
+            !"32".equals(System.getProperty("sun.arch.data.model"))
+            && Runtime.getRuntime().maxMemory() < (32L << 30);
+
+    /** the estimated size of a reference. */
+    public static final int REFERENCE_SIZE =
+            "32".equals(System.getProperty("sun.arch.data.model")) || COMPRESSED_REFERENCES ? 4 : 8;
+
+    /** the estimated size of the header of an object. */
+    public static final int OBJECT_HEADER_SIZE =
+            "32".equals(System.getProperty("sun.arch.data.model")) ? 8 : (COMPRESSED_REFERENCES ? 12 : 16);
+
+    /** the estimated size of the header of an array, including its length. */
+    public static final int ARRAY_HEADER_SIZE = OBJECT_HEADER_SIZE + 4;
+
+    /** the estimated shallow sizes of the instances of the classes. */
+    protected static final ClassValue<Long> m_ShallowSizes = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long size = OBJECT_HEADER_SIZE;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += fieldSize(field.getType());
+                    }
+                }
+            }
+            return align(size);
+        }
+    };
+
+    /** the reference fields followed by reflectiveSizeOf, per class. */
+    protected static final ClassValue<Field[]> m_ReferenceFields = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<Field>();
+            // the fields of the classes of the JDK cannot be made accessible
+            for (Class<?> c = type; c != null && c.getClassLoader() != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        } catch (RuntimeException e) {
+                            // not accessible, only counted as a reference
+                        }
+                    }
+                }
+            }
+            return fields.toArray(new Field[fields.size()]);
+        }
+    };
+
     /**
      * Checks whteher the agent is present.
      *
@@ -78,4 +154,168 @@ public class SizeOf {
             return -1;
         }
     }
+
+    /**
+     * Returns whether the agent is present.
+     *
+     * @return true if the agent is present, false otherwise
+     */
+    public static boolean isAgentPresent() {
+        return isPresent();
+    }
+
+    /**
+     * Estimates the size of the object itself, without the objects it refers
+     * to, from its fields or its length if it is an array. Does not need the
+     * agent.
+     *
+     * @param o	the object to get the size for, may be null
+     * @return the estimated size of the object, 0 if it is null
+     */
+    public static long shallowSizeOf(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        Class<?> type = o.getClass();
+        if (type.isArray()) {
+            return arraySize(Array.getLength(o), fieldSize(type.getComponentType()));
+        }
+        return m_ShallowSizes.get(type);
+    }
+
+    /**
+     * Estimates the full size of an object by following its fields, without
+     * the agent. Objects reachable along several paths are counted once. The
+     * classes of the JDK are followed only when they are arrays, collections
+     * or maps, other ones count with their shallow size.
+     *
+     * @param o	the object to get the size for, may be null
+     * @return the estimated size of the object, 0 if it is null
+     */
+    public static long reflectiveSizeOf(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        ArrayDeque<Object> pending = new ArrayDeque<Object>();
+        visited.add(o);
+        pending.push(o);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object current = pending.pop();
+            size += shallowSizeOf(current);
+            List<Object> references = new ArrayList<Object>();
+            if (current instanceof Object[]) {
+                Collections.addAll(references, (Object[]) current);
+            } else if (!current.getClass().isArray()) {
+                for (Field field : m_ReferenceFields.get(current.getClass())) {
+                    try {
+                        references.add(field.get(current));
+                    } catch (IllegalAccessException e) {
+                        // made accessible before
+                    }
+                }
+                if (current instanceof Collection) {
+                    Collection<?> collection = (Collection<?>) current;
+                    size += arraySize(collection.size(), REFERENCE_SIZE);
+                    references.addAll(collection);
+                } else if (current instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) current).entrySet()) {
+                        size += REFERENCE_SIZE + shallowSizeOf(entry);
+                        references.add(entry.getKey());
+                        references.add(entry.getValue());
+                    }
+                }
+            }
+            for (Object reference : references) {
+                if (reference != null && visited.add(reference)) {
+                    pending.push(reference);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the full size of an object that is part of a model. MOA
+     * objects measure their own size, arrays of objects are measured with
+     * their elements, other objects are measured by the agent, or by
+     * following their fields if the agent is not present. A size that is not
+     * positive means the object could not be measured: the agent measures 0
+     * when it is not loaded, and measureByteSize returns -1.
+     *
+     * @param o	the object to get the size for, may be null
+     * @return the estimated size of the object, 0 if it is null
+     */
+    public static long estimatedFullSizeOf(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof MOAObject) {
+            long size = ((MOAObject) o).measureByteSize();
+            return size > 0 ? size : reflectiveSizeOf(o);
+        }
+        if (o instanceof Object[]) {
+            long size = shallowSizeOf(o);
+            for (Object element : (Object[]) o) {
+                size += estimatedFullSizeOf(element);
+            }
+            return size;
+        }
+        long size = fullSizeOf(o);
+        return size > 0 ? size : reflectiveSizeOf(o);
+    }
+
+    /**
+     * Estimates the size of a string with its characters.
+     *
+     * @param s	the string, may be null
+     * @return the estimated size of the string, 0 if it is null
+     */
+    public static long stringSize(String s) {
+        if (s == null) {
+            return 0;
+        }
+        return shallowSizeOf(s) + arraySize(s.length(), 1);
+    }
+
+    /**
+     * Estimates the size of an array.
+     *
+     * @param length	the length of the array
+     * @param elementSize	the size of an element, REFERENCE_SIZE for objects
+     * @return the estimated size of the array
+     */
+    public static long arraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER_SIZE + (long) length * elementSize);
+    }
+
+    /**
+     * Rounds a size up to the alignment of the objects in memory.
+     *
+     * @param size	the size
+     * @return the aligned size
+     */
+    public static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Returns the size of a field or array element of the given type.
+     *
+     * @param type	the type of the field
+     * @return the size of the field
+     */
+    protected static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_SIZE;
+    }
 }
@@ -39,7 +39,6 @@ import java.util.Iterator;
 import moa.cluster.Clustering;
 import moa.core.AutoExpandVector;
 import moa.gui.visualization.DataPoint;
-import com.yahoo.labs.samoa.instances.Instance;
 
 public class CMM_GTAnalysis{
 	
@@ -194,12 +193,21 @@ public class CMM_GTAnalysis{
          */
         protected ArrayList<Integer> knnIndices;
 
+        /**
+         * the numDims coordinates of the point, read once for all distance calculations
+         */
+        protected double[] position;
+
         public CMMPoint(DataPoint point, int id) {
             //make a copy, but keep reference
             super(point,point.getTimestamp());
             p = point;
             pID = id;
             trueClass = (int)point.classValue();
+            position = new double[numDims];
+            for (int i = 0; i < numDims; i++) {
+                position[i] = point.value(i);
+            }
         }
 
         
@@ -255,6 +263,14 @@ public class CMM_GTAnalysis{
         
         /** connectivity of the cluster to all other clusters */
         private ArrayList<Double> connections = new ArrayList<Double>();
+
+        /** knn distances of each point (by ID) to the points of the cluster, sorted,
+         *  null until needed. Kept over merges, as the knn of a merged cluster are
+         *  the nearest of the knn of its parts */
+        private double[][] knnDistances = new double[numPoints][];
+
+        /** knn indices corresponding to knnDistances (for debugging only) */
+        private int[][] knnPointIndices = new int[numPoints][];
         
 
         private GTCluster(int workclass, int label, int gtClusteringID) {
@@ -297,21 +313,21 @@ public class CMM_GTAnalysis{
             for (int p0 : points) {
                 CMMPoint cmdp = cmmpoints.get(p0);
                 if(!cmdp.isNoise()){
-                    AutoExpandVector<Double> knnDist = new AutoExpandVector<Double>();
-                    AutoExpandVector<Integer> knnPointIndex = new AutoExpandVector<Integer>();
-                    
                     //calculate nearest neighbours 
-                    getKnnInCluster(cmdp, knnNeighbourhood, points, knnDist,knnPointIndex);
+                    double[] knnDist = getKnnDistances(cmdp, this);
 
                     //TODO: What to do if we have less then k neighbours?
                     double avgKnn = 0;
-                    for (int i = 0; i < knnDist.size(); i++) {
-                        avgKnn+= knnDist.get(i);
+                    for (int i = 0; i < knnDist.length; i++) {
+                        avgKnn+= knnDist[i];
                     }
-                    if(knnDist.size()!=0)
-                        avgKnn/=knnDist.size();
+                    if(knnDist.length!=0)
+                        avgKnn/=knnDist.length;
                     cmdp.knnInCluster = avgKnn;
-                    cmdp.knnIndices = knnPointIndex;
+                    cmdp.knnIndices = new ArrayList<Integer>();
+                    for (int index : knnPointIndices[p0]) {
+                        cmdp.knnIndices.add(index);
+                    }
                     cmdp.p.setMeasureValue("knnAvg", cmdp.knnInCluster);
 
                     knnMeanAvg+=avgKnn;
@@ -384,6 +400,43 @@ public class CMM_GTAnalysis{
         }
 
         
+        /**
+         * Combine the knn distances of the points to a cluster being merged into this one
+         * with their knn distances to this cluster. Points for which either is missing
+         * are calculated again on demand.
+         * @param gtcMerge the cluster being merged
+         */
+        private void mergeKnn(GTCluster gtcMerge){
+            for (int p = 0; p < numPoints; p++) {
+                double[] distA = knnDistances[p];
+                double[] distB = gtcMerge.knnDistances[p];
+                if(distA == null || distB == null){
+                    knnDistances[p] = null;
+                    knnPointIndices[p] = null;
+                    continue;
+                }
+                int[] indexA = knnPointIndices[p];
+                int[] indexB = gtcMerge.knnPointIndices[p];
+                int size = Math.min(knnNeighbourhood, distA.length + distB.length);
+                double[] dist = new double[size];
+                int[] index = new int[size];
+                int a = 0;
+                int b = 0;
+                for (int i = 0; i < size; i++) {
+                    if(b == distB.length || (a < distA.length && distA[a] <= distB[b])){
+                        dist[i] = distA[a];
+                        index[i] = indexA[a++];
+                    }
+                    else{
+                        dist[i] = distB[b];
+                        index[i] = indexB[b++];
+                    }
+                }
+                knnDistances[p] = dist;
+                knnPointIndices[p] = index;
+            }
+        }
+
         /**
          * Merge a cluster into this cluster
          * @param mergeID the ID of the cluster to be merged
@@ -418,6 +471,7 @@ public class CMM_GTAnalysis{
 
                 //merge points from B into A
                 points.addAll(gtcMerge.points);
+                mergeKnn(gtcMerge);
                 clusterRepresentations.addAll(gtcMerge.clusterRepresentations);
                 if(mergedWorkLabels==null){
                     mergedWorkLabels = new ArrayList<Integer>();
@@ -543,20 +597,17 @@ public class CMM_GTAnalysis{
      */
     //TODO: Cache the connection value for a point to the different clusters???
     protected double getConnectionValue(CMMPoint cmmp, int clusterID){
-        AutoExpandVector<Double> knnDist = new AutoExpandVector<Double>();
-        AutoExpandVector<Integer> knnPointIndex = new AutoExpandVector<Integer>();
-        
         //calculate the knn distance of the point to the cluster
-        getKnnInCluster(cmmp, knnNeighbourhood, gt0Clusters.get(clusterID).points, knnDist, knnPointIndex);
+        double[] knnDist = getKnnDistances(cmmp, gt0Clusters.get(clusterID));
 
         //TODO: What to do if we have less then k neighbors?
         double avgDist = 0;
-        for (int i = 0; i < knnDist.size(); i++) {
-            avgDist+= knnDist.get(i);
+        for (int i = 0; i < knnDist.length; i++) {
+            avgDist+= knnDist[i];
         }
         //what to do if we only have a single point???
-        if(knnDist.size()!=0)
-            avgDist/=knnDist.size();
+        if(knnDist.length!=0)
+            avgDist/=knnDist.length;
         else
             return 0;
 
@@ -585,6 +636,31 @@ public class CMM_GTAnalysis{
     }
 
     
+    /**
+     * Returns the knn distances of a point to the points of a cluster, calculating
+     * them on the first request only
+     * @param cmmp point to get the knn distances for
+     * @param gtc the cluster
+     * @return sorted knn distances, less than k if the cluster is too small
+     */
+    private double[] getKnnDistances(CMMPoint cmmp, GTCluster gtc){
+        if(gtc.knnDistances[cmmp.pID] == null){
+            AutoExpandVector<Double> knnDist = new AutoExpandVector<Double>();
+            AutoExpandVector<Integer> knnPointIndex = new AutoExpandVector<Integer>();
+            getKnnInCluster(cmmp, knnNeighbourhood, gtc.points, knnDist, knnPointIndex);
+
+            double[] distances = new double[knnDist.size()];
+            int[] indices = new int[knnDist.size()];
+            for (int i = 0; i < distances.length; i++) {
+                distances[i] = knnDist.get(i);
+                indices[i] = knnPointIndex.get(i);
+            }
+            gtc.knnDistances[cmmp.pID] = distances;
+            gtc.knnPointIndices[cmmp.pID] = indices;
+        }
+        return gtc.knnDistances[cmmp.pID];
+    }
+
     /**
      * @param cmmp point to calculate knn distance for
      * @param k number of nearest neighbors to look for
@@ -601,7 +677,7 @@ public class CMM_GTAnalysis{
         for (int p1 = 0; p1 < pointIDs.size(); p1++) {
             int pid = pointIDs.get(p1);
             if(cmmp.pID == pid) continue;
-            double dist = distance(cmmp,cmmpoints.get(pid));
+            double dist = distance(cmmp.position,cmmpoints.get(pid).position);
             if(knnDist.size() < k || dist < knnDist.get(knnDist.size()-1)){
                 int index = 0;
                 while(index < knnDist.size() && dist > knnDist.get(index)) {
@@ -796,21 +872,10 @@ public class CMM_GTAnalysis{
      * @param inst2 point as double array
      * @return euclidian distance
      */
-    private double distance(Instance inst1, Instance inst2){
-          return distance(inst1, inst2.toDoubleArray());
-
-    }
-    
-    /**
-     * Calculates Euclidian distance 
-     * @param inst1 point as an instance
-     * @param inst2 point as double array
-     * @return euclidian distance
-     */
-    private double distance(Instance inst1, double[] inst2){
+    private double distance(double[] inst1, double[] inst2){
         double distance = 0.0;
         for (int i = 0; i < numDims; i++) {
-            double d = inst1.value(i) - inst2[i];
+            double d = inst1[i] - inst2[i];
             distance += d * d;
         }
         return Math.sqrt(distance);
@@ -43,6 +43,12 @@ public class SSQ extends MeasureCollection{
   }
     
     public void evaluateClustering(Clustering clustering, Clustering trueClsutering, ArrayList<DataPoint> points) {
+        //getCenter() computes or copies the center, so get them once
+        double[][] centers = new double[clustering.size()][];
+        for (int c = 0; c < clustering.size(); c++) {
+            centers[c] = clustering.get(c).getCenter();
+        }
+
         double sum = 0.0;
         for (int p = 0; p < points.size(); p++) {
             //don't include noise
@@ -52,9 +58,9 @@ public class SSQ extends MeasureCollection{
             // if(points.get(p).classValue()==-1) continue;
 
             double minDistance = Double.MAX_VALUE;
-            for (int c = 0; c < clustering.size(); c++) {
+            for (int c = 0; c < centers.length; c++) {
                 double distance = 0.0;
-                double[] center = clustering.get(c).getCenter();
+                double[] center = centers[c];
                 for (int i = 0; i < center.length; i++) {
                     double d = points.get(p).value(i) - center[i];
                     distance += d * d;
@@ -21,70 +21,118 @@
 package moa.evaluation; 
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Random;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.gui.visualization.DataPoint;
 
+/**
+ * Silhouette coefficient of the points covered by the found clustering.
+ *
+ * Each point needs its average distance to the points of every cluster, so the
+ * exact coefficient costs O(n^2) distances per horizon. With a sample size set,
+ * the coefficient is averaged over a uniform sample of the points instead, which
+ * costs O(sampleSize * n), and the standard error of the estimate is reported
+ * as a second measure, which is 0 for the exact coefficient.
+ */
 public class SilhouetteCoefficient extends MeasureCollection{
     private double pointInclusionProbThreshold = 0.8;
 
+    /**
+     * number of points the coefficient is averaged over, 0 for all points
+     */
+    private int sampleSize = 0;
+
+    private Random random = new Random(1);
+
+    /**
+     * standard error of the last (normalized) coefficient, 0 if it was exact
+     */
+    private double standardError = 0.0;
+
     public SilhouetteCoefficient() {
         super();
     }
 
+    /**
+     * @param sampleSize the number of points to average the coefficient over, 0
+     * (the default) for all points
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return the standard error of the last coefficient estimated from a sample,
+     * on the same 0-1 scale as the coefficient; 0 if all points were used
+     */
+    public double getStandardError() {
+        return standardError;
+    }
+
     @Override
     protected boolean[] getDefaultEnabled() {
-        boolean [] defaults = {false};
+        boolean [] defaults = {false, false};
         return defaults;
     }
 
     @Override
     public String[] getNames() {
-        String[] names = {"SilhCoeff"};
+        String[] names = {"SilhCoeff", "SilhCoeff SE"};
         return names;
     }
 
     public void evaluateClustering(Clustering clustering, Clustering trueClustering, ArrayList<DataPoint> points) {
         int numFCluster = clustering.size();
+        int numPoints = points.size();
 
-        double [][] pointInclusionProbFC = new double[points.size()][numFCluster];
-        for (int p = 0; p < points.size(); p++) {
+        //clusters covering each point, and its values for the distances
+        int[][] ownFC = new int[numPoints][];
+        double[][] values = new double[numPoints][];
+        int[] own = new int[numFCluster];
+        for (int p = 0; p < numPoints; p++) {
             DataPoint point = points.get(p);
+            int numOwn = 0;
             for (int fc = 0; fc < numFCluster; fc++) {
                 Cluster cl = clustering.get(fc);
-                pointInclusionProbFC[p][fc] = cl.getInclusionProbability(point);
+                if(cl.getInclusionProbability(point) > pointInclusionProbThreshold){
+                    own[numOwn++] = fc;
+                }
+            }
+            ownFC[p] = Arrays.copyOf(own, numOwn);
+            values[p] = new double[point.numAttributes()];
+            for (int i = 0; i < values[p].length; i++) {
+                values[p][i] = point.value(i);
             }
         }
 
+        int[] evaluated = selectPoints(numPoints);
+
         double silhCoeff = 0.0;
+        double silhSquares = 0.0;
         int totalCount = 0;
-        for (int p = 0; p < points.size(); p++) {
+        for (int p : evaluated) {
             DataPoint point = points.get(p);
-            ArrayList<Integer> ownClusters = new ArrayList<Integer>();
-            for (int fc = 0; fc < numFCluster; fc++) {
-                if(pointInclusionProbFC[p][fc] > pointInclusionProbThreshold){
-                    ownClusters.add(fc);
-                }
-            }
 
-            if(ownClusters.size() > 0){
+            if(ownFC[p].length > 0){
                 double[] distanceByClusters = new double[numFCluster];
                 int[] countsByClusters = new int[numFCluster];
                     //calculate averageDistance of p to all cluster
-                for (int p1 = 0; p1 < points.size(); p1++) {
-                    DataPoint point1 = points.get(p1);
-                    if(p1!= p){ 
+                for (int p1 = 0; p1 < numPoints; p1++) {
+                    if(p1!= p && ownFC[p1].length > 0){ 
                         // Matthias Carnein 2019/04/03
                         // Removed second part of if-condition: && point1.classValue() != -1 
                         // Accessing the classValue will go outOfBounds when no class label exists
                         // What is the purpose of this check anyway? Class label is not used for Silhouette calculation
-                        for (int fc = 0; fc < numFCluster; fc++) {
-                            if(pointInclusionProbFC[p1][fc] > pointInclusionProbThreshold){
-                                double distance = distance(point, point1);
-                                distanceByClusters[fc]+=distance;
-                                countsByClusters[fc]++;
-                            }
+                        double distance = distance(values[p], values[p1]);
+                        for (int fc : ownFC[p1]) {
+                            distanceByClusters[fc]+=distance;
+                            countsByClusters[fc]++;
                         }
                     }
                 }
@@ -92,7 +140,7 @@ public class SilhouetteCoefficient extends MeasureCollection{
                 //find closest OWN cluster as clusters might overlap
                 double minAvgDistanceOwn = Double.MAX_VALUE;
                 int minOwnIndex = -1;
-                for (int fc : ownClusters) {
+                for (int fc : ownFC[p]) {
                         double normDist = distanceByClusters[fc]/(double)countsByClusters[fc];
                         if(normDist < minAvgDistanceOwn){// && pointInclusionProbFC[p][fc] > pointInclusionProbThreshold){
                             minAvgDistanceOwn = normDist;
@@ -118,22 +166,62 @@ public class SilhouetteCoefficient extends MeasureCollection{
                 point.setMeasureValue("SC", silhP);
 
                 silhCoeff+=silhP;
+                silhSquares+=silhP*silhP;
                 totalCount++;
                 //System.out.println(point.getTimestamp()+" Silh "+silhP+" / "+avgDistanceOwn+" "+minAvgDistanceOther+" (C"+minIndex+")");
             }
         }
-        if(totalCount>0)
+        standardError = 0.0;
+        if(totalCount>0){
             silhCoeff/=(double)totalCount;
+            if(evaluated.length < numPoints && totalCount > 1){
+                double variance = (silhSquares - totalCount*silhCoeff*silhCoeff)/(totalCount-1);
+                //on the normalized scale below
+                standardError = Math.sqrt(Math.max(variance, 0.0)/totalCount)/2.0;
+            }
+        }
         //normalize from -1, 1 to 0,1
         silhCoeff = (silhCoeff+1)/2.0;
         addValue(0,silhCoeff);
+        addValue(1,standardError);
+    }
+
+    /**
+     * Draws the points the coefficient is averaged over with reservoir sampling.
+     *
+     * @param numPoints the number of points within the horizon
+     * @return the sorted indices of the selected points, all of them if no sample
+     * size is set or there are not more points than the sample size
+     */
+    private int[] selectPoints(int numPoints) {
+        if(sampleSize <= 0 || numPoints <= sampleSize){
+            int[] all = new int[numPoints];
+            for (int p = 0; p < numPoints; p++) {
+                all[p] = p;
+            }
+            return all;
+        }
+        int[] sample = new int[sampleSize];
+        for (int p = 0; p < numPoints; p++) {
+            if(p < sampleSize){
+                sample[p] = p;
+            }
+            else{
+                int r = random.nextInt(p + 1);
+                if(r < sampleSize){
+                    sample[r] = p;
+                }
+            }
+        }
+        Arrays.sort(sample);
+        return sample;
     }
 
-    private double distance(DataPoint inst1, DataPoint inst2){
+    private double distance(double[] inst1, double[] inst2){
         double distance = 0.0;
-        int numDims = inst1.numAttributes();
+        int numDims = inst1.length;
         for (int i = 0; i < numDims; i++) {
-            double d = inst1.value(i) - inst2.value(i);
+            double d = inst1[i] - inst2[i];
             distance += d * d;
         }
         return Math.sqrt(distance);
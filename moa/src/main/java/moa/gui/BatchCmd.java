@@ -32,6 +32,7 @@ import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import moa.classifiers.core.EnsembleExecutor;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
 import moa.clusterers.ClusterGenerator;
@@ -64,6 +65,12 @@ public class BatchCmd implements ClusterEventListener{
 	private int totalInstances;
 	public boolean useMicroGT = false;
 
+	/**
+	 * Evaluates the measure collections of a horizon concurrently; they only read the
+	 * clusterings and points, and write to their own collections.
+	 */
+	private EnsembleExecutor executor = new EnsembleExecutor(1);
+
 
 	public BatchCmd(AbstractClusterer clusterer, ClusteringStream stream, MeasureCollection[] measures, int totalInstances){
 		this.clusterer = clusterer;
@@ -128,11 +135,32 @@ public class BatchCmd implements ClusterEventListener{
 
 	public static void runBatch(ClusteringStream stream, AbstractClusterer clusterer,
 			boolean[] measureCollection, int amountInstances, String outputFile){
+		runBatch(stream, clusterer, measureCollection, amountInstances, outputFile, 1, 0);
+	}
+
+
+	/**
+	 * @param numberOfJobs the number of measure collections evaluated concurrently
+	 * (-1 = as many as processors)
+	 * @param silhouetteSampleSize the number of points the Silhouette coefficient is
+	 * averaged over at each horizon (0 = all points)
+	 */
+	public static void runBatch(ClusteringStream stream, AbstractClusterer clusterer,
+			boolean[] measureCollection, int amountInstances, String outputFile,
+			int numberOfJobs, int silhouetteSampleSize){
 		// create the measure collection 
 		MeasureCollection[] measures = getMeasures(getMeasureSelection(measureCollection));
+		for (MeasureCollection m : measures) {
+			if (m instanceof SilhouetteCoefficient) {
+				((SilhouetteCoefficient) m).setSampleSize(silhouetteSampleSize);
+				// the standard error is only of interest for a sampled coefficient
+				m.setEnabled(1, silhouetteSampleSize > 0);
+			}
+		}
 		
 		// run the batch job
 		BatchCmd batch = new BatchCmd(clusterer, stream, measures, amountInstances);
+		batch.setNumberOfJobs(numberOfJobs);
 		batch.run();
 
 		// read events and horizon
@@ -144,7 +172,26 @@ public class BatchCmd implements ClusterEventListener{
 	}
 
 
+	/**
+	 * @param numberOfJobs the number of measure collections evaluated concurrently
+	 * (-1 = as many as processors, 0 or 1 = one after the other)
+	 */
+	public void setNumberOfJobs(int numberOfJobs){
+		this.executor.shutdown();
+		this.executor = new EnsembleExecutor(numberOfJobs);
+	}
+
+
 	public void run(){
+		try {
+			runHorizons();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	private void runHorizons(){
 		ArrayList<DataPoint> pointBuffer0 = new ArrayList<DataPoint>();
 		int m_timestamp = 0;
 		int decayHorizon = stream.getDecayHorizon();
@@ -201,12 +248,22 @@ public class BatchCmd implements ClusterEventListener{
 
 
 				//evaluate
-				for (int i = 0; i < measures.length; i++) {
-					try {
-						/*double sec =*/ measures[i].evaluateClusteringPerformance(clustering0, gtClustering0, pointBuffer0);
-						//System.out.println("Eval of "+measures[i].getClass().getSimpleName()+" at "+m_timestamp+" took "+sec);
-					} catch (Exception ex) { ex.printStackTrace(); }
-				}
+				final Clustering clustering = clustering0;
+				final Clustering gtClustering = gtClustering0;
+				final ArrayList<DataPoint> points = pointBuffer0;
+				final int timestamp = m_timestamp;
+				executor.forEachMember(measures.length, new EnsembleExecutor.MemberTask() {
+					@Override
+					public void run(int i) {
+						try {
+							measures[i].evaluateClusteringPerformance(clustering, gtClustering, points);
+						} catch (Exception ex) {
+							// rethrown by forEachMember on the thread running the batch
+							throw new RuntimeException("Evaluation of " + measures[i].getClass().getSimpleName()
+									+ " at instance " + timestamp + " failed.", ex);
+						}
+					}
+				});
 
 				pointBuffer0.clear();
 				counter = decayHorizon;
@@ -19,9 +19,11 @@
  */
 package moa.options;
 
+import com.github.javacliparser.Option;
 import com.github.javacliparser.Options;
 import moa.AbstractMOAObject;
 import moa.core.ObjectRepository;
+import moa.core.SizeOf;
 import moa.tasks.NullMonitor;
 import moa.tasks.TaskMonitor;
 
@@ -189,4 +191,27 @@ public abstract class AbstractOptionHandler extends AbstractMOAObject implements
     protected Object getPreparedClassOption(ClassOption opt) {
         return this.config.getPreparedClassOption(opt);
     }
+
+    /**
+     * Estimates the size of the options of this object, without the agent.
+     * Classes that measure their own size add it to the size of their fields,
+     * as every copy of an object has its own options.
+     *
+     * @return the estimated size of the options, 0 if they are not created
+     */
+    protected long measureOptionsByteSize() {
+        if (this.config == null) {
+            return 0;
+        }
+        Options options = this.config.getOptions();
+        // each option is held by a node of the linked list of the options
+        long nodeSize = SizeOf.align(SizeOf.OBJECT_HEADER_SIZE + 3 * SizeOf.REFERENCE_SIZE);
+        long size = SizeOf.shallowSizeOf(this.config) + SizeOf.shallowSizeOf(options);
+        for (Option option : options.getOptionArray()) {
+            size += nodeSize + SizeOf.shallowSizeOf(option)
+                    + SizeOf.stringSize(option.getName())
+                    + SizeOf.stringSize(option.getPurpose());
+        }
+        return size;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ *    CompactRecommenderData.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.recommender.data;
+
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+/**
+ * Rating store keeping ratings in primitive arrays, for large rating
+ * datasets. Selected as the data of a rating predictor, for instance
+ * <code>-s (moa.recommender.predictor.BRISMFPredictor
+ * -d moa.recommender.data.CompactRecommenderData)</code> in
+ * EvaluateOnlineRecommender.
+ */
+public class CompactRecommenderData extends AbstractOptionHandler implements RecommenderData {
+
+    private static final long serialVersionUID = 1L;
+
+    moa.recommender.rc.data.impl.CompactRecommenderData drm;
+
+    @Override
+    public String getPurposeString() {
+        return "Stores ratings in primitive arrays.";
+    }
+
+    @Override
+    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        drm = new moa.recommender.rc.data.impl.CompactRecommenderData();
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+    }
+
+    @Override
+    public moa.recommender.rc.data.RecommenderData getData() {
+        return drm;
+    }
+
+}
@@ -24,6 +24,7 @@ import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import moa.recommender.rc.utils.Pair;
 import moa.recommender.rc.utils.Rating;
 import moa.recommender.rc.utils.SparseVector;
 import moa.recommender.rc.utils.Updatable;
@@ -39,6 +40,30 @@ public interface RecommenderData extends Serializable {
     public void removeRating(int userID, int itemID);
     public SparseVector getRatingsUser(int userID); //TODO:Iterator version for this?
     public SparseVector getRatingsItem(int itemID); //TODO:Iterator version for this?
+    /** Copies the ratings of a user, at most as many as the arrays hold, and returns their number. */
+    public default int getRatingsUser(int userID, int[] itemIDs, double[] ratings) {
+        Iterator<Pair<Integer, Double>> it = getRatingsUser(userID).iterator();
+        int n = 0;
+        while (n < itemIDs.length && it.hasNext()) {
+            Pair<Integer, Double> p = it.next();
+            itemIDs[n] = p.getFirst();
+            ratings[n] = p.getSecond();
+            ++n;
+        }
+        return n;
+    }
+    /** Copies the ratings of an item, at most as many as the arrays hold, and returns their number. */
+    public default int getRatingsItem(int itemID, int[] userIDs, double[] ratings) {
+        Iterator<Pair<Integer, Double>> it = getRatingsItem(itemID).iterator();
+        int n = 0;
+        while (n < userIDs.length && it.hasNext()) {
+            Pair<Integer, Double> p = it.next();
+            userIDs[n] = p.getFirst();
+            ratings[n] = p.getSecond();
+            ++n;
+        }
+        return n;
+    }
     public double getRating(int userID, int itemID);
     public int getNumItems();
     public int getNumUsers();
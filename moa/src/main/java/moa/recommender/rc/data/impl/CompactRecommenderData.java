@@ -0,0 +1,591 @@
+/*
+ *    CompactRecommenderData.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.recommender.rc.data.impl;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import moa.recommender.rc.data.AbstractRecommenderData;
+import moa.recommender.rc.utils.Hash;
+import moa.recommender.rc.utils.Rating;
+import moa.recommender.rc.utils.SparseVector;
+
+/**
+ * In-memory rating store keeping ratings in primitive arrays, a few times
+ * smaller than MemRecommenderData and without boxing on reads.
+ *
+ * <p>Users and items get dense indices through open-addressing maps of their
+ * ids. Every user and item has a row of ratings: the indices of the items
+ * (users) rated, the ratings, and the position of the same rating in the
+ * row of the item (user). Rows grow by doubling, and removing a rating moves
+ * the last one of the rows to its place, so ratings of a row are kept in
+ * insertion order until one is removed.</p>
+ *
+ * <p>Unlike MemRecommenderData, removing a user or an item also removes its
+ * ratings from the rows and statistics of the other side.</p>
+ */
+public class CompactRecommenderData extends AbstractRecommenderData {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Users or items: their ids, rows of ratings and rating statistics.
+     */
+    protected static class Entities implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** Id of each index. */
+        protected int[] ids = new int[16];
+        /** Indices on the other side, null for free indices. */
+        protected int[][] others = new int[16][];
+        protected double[][] ratings = new double[16][];
+        /** Positions in the rows of the other side. */
+        protected int[][] positions = new int[16][];
+        protected int[] counts = new int[16];
+        protected double[] sums = new double[16];
+        /** Indices used, including free ones. */
+        protected int numIndices = 0;
+        protected int[] free = new int[16];
+        protected int numFree = 0;
+
+        /** Open-addressing map from ids to indices, -1 for empty slots. */
+        protected int[] slotIds = new int[32];
+        protected int[] slotIndices = newSlots(32);
+        protected int size = 0;
+
+        private static int[] newSlots(int n) {
+            int[] slots = new int[n];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+
+        protected int slot(int id) {
+            int mask = slotIds.length - 1;
+            int s = Hash.hashCode(id) & mask;
+            while (slotIndices[s] >= 0 && slotIds[s] != id)
+                s = (s + 1) & mask;
+            return s;
+        }
+
+        public int indexOf(int id) {
+            return slotIndices[slot(id)];
+        }
+
+        public int add(int id) {
+            int s = slot(id);
+            if (slotIndices[s] >= 0)
+                return slotIndices[s];
+            int index;
+            if (numFree > 0)
+                index = free[--numFree];
+            else {
+                if (numIndices == ids.length) {
+                    int n = 2*ids.length;
+                    ids = Arrays.copyOf(ids, n);
+                    others = Arrays.copyOf(others, n);
+                    ratings = Arrays.copyOf(ratings, n);
+                    positions = Arrays.copyOf(positions, n);
+                    counts = Arrays.copyOf(counts, n);
+                    sums = Arrays.copyOf(sums, n);
+                }
+                index = numIndices++;
+            }
+            ids[index] = id;
+            others[index] = new int[4];
+            ratings[index] = new double[4];
+            positions[index] = new int[4];
+            counts[index] = 0;
+            sums[index] = 0;
+            slotIds[s] = id;
+            slotIndices[s] = index;
+            if (4*(++size) > 3*slotIds.length)
+                rehash(2*slotIds.length);
+            return index;
+        }
+
+        /** Frees the index of an entity whose row is empty. */
+        public void remove(int id) {
+            int mask = slotIds.length - 1;
+            int s = slot(id);
+            int index = slotIndices[s];
+            if (index < 0)
+                return;
+            others[index] = null;
+            ratings[index] = null;
+            positions[index] = null;
+            if (numFree == free.length)
+                free = Arrays.copyOf(free, 2*numFree);
+            free[numFree++] = index;
+            --size;
+            // shift back the following slots of the probe sequence
+            slotIndices[s] = -1;
+            int next = (s + 1) & mask;
+            while (slotIndices[next] >= 0) {
+                int home = Hash.hashCode(slotIds[next]) & mask;
+                if (((next - home) & mask) >= ((next - s) & mask)) {
+                    slotIds[s] = slotIds[next];
+                    slotIndices[s] = slotIndices[next];
+                    slotIndices[next] = -1;
+                    s = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        protected void rehash(int n) {
+            int[] oldIds = slotIds;
+            int[] oldIndices = slotIndices;
+            slotIds = new int[n];
+            slotIndices = newSlots(n);
+            for (int s = 0; s < oldIds.length; ++s) {
+                if (oldIndices[s] >= 0) {
+                    int t = slot(oldIds[s]);
+                    slotIds[t] = oldIds[s];
+                    slotIndices[t] = oldIndices[s];
+                }
+            }
+        }
+
+        /** @return the position of the rating appended to a row */
+        public int append(int index, int other, double rating) {
+            int p = counts[index];
+            if (p == others[index].length) {
+                others[index] = Arrays.copyOf(others[index], 2*p);
+                ratings[index] = Arrays.copyOf(ratings[index], 2*p);
+                positions[index] = Arrays.copyOf(positions[index], 2*p);
+            }
+            others[index][p] = other;
+            ratings[index][p] = rating;
+            counts[index]++;
+            return p;
+        }
+
+        /** @return the position of a rating in a row, or -1 */
+        public int find(int index, int other) {
+            int[] row = others[index];
+            int n = counts[index];
+            for (int p = 0; p < n; ++p)
+                if (row[p] == other)
+                    return p;
+            return -1;
+        }
+
+        /** Removes a rating from a row, moving the last one to its place. */
+        public void removeAt(int index, int p, Entities otherSide) {
+            int last = --counts[index];
+            if (p != last) {
+                int other = others[index][last];
+                int q = positions[index][last];
+                others[index][p] = other;
+                ratings[index][p] = ratings[index][last];
+                positions[index][p] = q;
+                otherSide.positions[other][q] = p;
+            }
+        }
+
+        public boolean exists(int index) {
+            return others[index] != null;
+        }
+
+        public void clear() {
+            Arrays.fill(others, 0, numIndices, null);
+            Arrays.fill(ratings, 0, numIndices, null);
+            Arrays.fill(positions, 0, numIndices, null);
+            numIndices = 0;
+            numFree = 0;
+            slotIds = new int[32];
+            slotIndices = newSlots(32);
+            size = 0;
+        }
+    }
+
+    /**
+     * Live view of the ids of users or items.
+     */
+    protected static class IdSet extends AbstractSet<Integer> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        protected final Entities entities;
+
+        IdSet(Entities entities) {
+            this.entities = entities;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Integer) && entities.indexOf((Integer) o) >= 0;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int index = advance(0);
+
+                private int advance(int i) {
+                    while (i < entities.numIndices && !entities.exists(i))
+                        ++i;
+                    return i;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return index < entities.numIndices;
+                }
+
+                @Override
+                public Integer next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    int id = entities.ids[index];
+                    index = advance(index + 1);
+                    return id;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return entities.size;
+        }
+    }
+
+    protected Entities users = new Entities();
+    protected Entities items = new Entities();
+
+    protected double sumRatings = 0;
+    protected int nRatings = 0;
+    protected double minRating = 0;
+    protected double maxRating = 0;
+
+    public CompactRecommenderData() {
+        super();
+    }
+
+    @Override
+    public void addUser(int userID, List<Integer> ratedItems, List<Double> ratings) {
+        super.addUser(userID, ratedItems, ratings);
+        users.add(userID);
+        int n = ratedItems.size();
+        for (int i = 0; i < n; ++i)
+            auxSetRating(userID, ratedItems.get(i), ratings.get(i));
+    }
+
+    @Override
+    public void removeUser(int userID) {
+        super.removeUser(userID);
+        int u = users.indexOf(userID);
+        if (u < 0)
+            return;
+        while (users.counts[u] > 0) {
+            int p = users.counts[u] - 1;
+            auxRemoveRating(u, users.others[u][p], p, users.positions[u][p]);
+        }
+        users.remove(userID);
+    }
+
+    @Override
+    public void addItem(int itemID, List<Integer> ratingUsers, List<Double> ratings) {
+        super.addItem(itemID, ratingUsers, ratings);
+        items.add(itemID);
+        int n = ratingUsers.size();
+        for (int i = 0; i < n; ++i)
+            auxSetRating(ratingUsers.get(i), itemID, ratings.get(i));
+    }
+
+    @Override
+    public void removeItem(int itemID) {
+        super.removeItem(itemID);
+        int i = items.indexOf(itemID);
+        if (i < 0)
+            return;
+        while (items.counts[i] > 0) {
+            int q = items.counts[i] - 1;
+            auxRemoveRating(items.others[i][q], i, items.positions[i][q], q);
+        }
+        items.remove(itemID);
+    }
+
+    /**
+     * @return the position of the rating in the row of the user, or -1
+     */
+    protected int findRating(int u, int i) {
+        // scan the shorter row
+        if (users.counts[u] <= items.counts[i])
+            return users.find(u, i);
+        int q = items.find(i, u);
+        return (q >= 0 ? items.positions[i][q] : -1);
+    }
+
+    private void auxSetRating(int userID, int itemID, double rating) {
+        if (nRatings == 0) {
+            minRating = rating;
+            maxRating = rating;
+        }
+        else {
+            minRating = Math.min(minRating, rating);
+            maxRating = Math.max(maxRating, rating);
+        }
+
+        int u = users.add(userID);
+        int i = items.add(itemID);
+        int p = findRating(u, i);
+        if (p >= 0) {
+            double rat = users.ratings[u][p];
+            sumRatings -= rat;
+            users.sums[u] -= rat;
+            items.sums[i] -= rat;
+            sumRatings += rating;
+            users.sums[u] += rating;
+            items.sums[i] += rating;
+            users.ratings[u][p] = rating;
+            items.ratings[i][users.positions[u][p]] = rating;
+        }
+        else {
+            users.sums[u] += rating;
+            items.sums[i] += rating;
+            sumRatings += rating;
+            ++nRatings;
+            p = users.append(u, i, rating);
+            int q = items.append(i, u, rating);
+            users.positions[u][p] = q;
+            items.positions[i][q] = p;
+        }
+    }
+
+    private void auxRemoveRating(int u, int i, int p, int q) {
+        double rat = users.ratings[u][p];
+        sumRatings -= rat;
+        --nRatings;
+        users.sums[u] -= rat;
+        items.sums[i] -= rat;
+        users.removeAt(u, p, items);
+        items.removeAt(i, q, users);
+    }
+
+    @Override
+    public void setRating(int userID, int itemID, double rating) {
+        super.setRating(userID, itemID, rating);
+        auxSetRating(userID, itemID, rating);
+    }
+
+    @Override
+    public void removeRating(int userID, int itemID) {
+        super.removeRating(userID, itemID);
+        int u = users.indexOf(userID);
+        int i = items.indexOf(itemID);
+        if (u < 0 || i < 0)
+            return;
+        int p = findRating(u, i);
+        if (p >= 0)
+            auxRemoveRating(u, i, p, users.positions[u][p]);
+    }
+
+    protected static SparseVector toSparseVector(Entities side, Entities otherSide, int id) {
+        int index = side.indexOf(id);
+        if (index < 0)
+            return new SparseVector();
+        int n = side.counts[index];
+        Map<Integer, Double> map = new HashMap<Integer, Double>(2*n);
+        for (int p = 0; p < n; ++p)
+            map.put(otherSide.ids[side.others[index][p]], side.ratings[index][p]);
+        return new SparseVector(map);
+    }
+
+    protected static int copyRatings(Entities side, Entities otherSide, int id,
+            int[] ids, double[] ratings) {
+        int index = side.indexOf(id);
+        if (index < 0)
+            return 0;
+        int n = Math.min(side.counts[index], ids.length);
+        int[] row = side.others[index];
+        for (int p = 0; p < n; ++p)
+            ids[p] = otherSide.ids[row[p]];
+        System.arraycopy(side.ratings[index], 0, ratings, 0, n);
+        return n;
+    }
+
+    @Override
+    public SparseVector getRatingsUser(int userID) {
+        return toSparseVector(users, items, userID);
+    }
+
+    @Override
+    public int getRatingsUser(int userID, int[] itemIDs, double[] ratings) {
+        return copyRatings(users, items, userID, itemIDs, ratings);
+    }
+
+    @Override
+    public SparseVector getRatingsItem(int itemID) {
+        return toSparseVector(items, users, itemID);
+    }
+
+    @Override
+    public int getRatingsItem(int itemID, int[] userIDs, double[] ratings) {
+        return copyRatings(items, users, itemID, userIDs, ratings);
+    }
+
+    @Override
+    public double getRating(int userID, int itemID) {
+        int u = users.indexOf(userID);
+        int i = items.indexOf(itemID);
+        if (u < 0 || i < 0)
+            return 0;
+        int p = findRating(u, i);
+        return (p >= 0 ? users.ratings[u][p] : 0);
+    }
+
+    @Override
+    public int getNumItems() {
+        return items.size;
+    }
+
+    @Override
+    public int getNumUsers() {
+        return users.size;
+    }
+
+    @Override
+    public int getNumRatings() {
+        return nRatings;
+    }
+
+    protected double getAvgRating(Entities side, int id) {
+        int index = side.indexOf(id);
+        double sum = (index >= 0 ? side.sums[index] : 0);
+        double num = (index >= 0 ? side.counts[index] : 0);
+        return (getGlobalMean()*25 + sum)/(25 + num);
+    }
+
+    @Override
+    public double getAvgRatingUser(int userID) {
+        return getAvgRating(users, userID);
+    }
+
+    @Override
+    public double getAvgRatingItem(int itemID) {
+        return getAvgRating(items, itemID);
+    }
+
+    @Override
+    public double getMinRating() {
+        return minRating;
+    }
+
+    @Override
+    public double getMaxRating() {
+        return maxRating;
+    }
+
+    @Override
+    public Set<Integer> getUsers() {
+        return new IdSet(users);
+    }
+
+    @Override
+    public Set<Integer> getItems() {
+        return new IdSet(items);
+    }
+
+    @Override
+    public double getGlobalMean() {
+        return (nRatings > 0 ? sumRatings/(double)nRatings : (minRating + maxRating)/2.0);
+    }
+
+    @Override
+    public int countRatingsUser(int userID) {
+        int u = users.indexOf(userID);
+        return (u >= 0 ? users.counts[u] : 0);
+    }
+
+    @Override
+    public int countRatingsItem(int itemID) {
+        int i = items.indexOf(itemID);
+        return (i >= 0 ? items.counts[i] : 0);
+    }
+
+    @Override
+    public Iterator<Rating> ratingIterator() {
+        return new Iterator<Rating>() {
+            private int u = -1;
+            private int p = 0;
+
+            {
+                nextUser();
+            }
+
+            private void nextUser() {
+                p = 0;
+                do {
+                    ++u;
+                }
+                while (u < users.numIndices && (!users.exists(u) || users.counts[u] == 0));
+            }
+
+            @Override
+            public boolean hasNext() {
+                return u < users.numIndices;
+            }
+
+            @Override
+            public Rating next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Rating rating = new Rating(users.ids[u],
+                        items.ids[users.others[u][p]], users.ratings[u][p]);
+                if (++p == users.counts[u])
+                    nextUser();
+                return rating;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean userExists(int userID) {
+        return users.indexOf(userID) >= 0;
+    }
+
+    @Override
+    public boolean itemExists(int itemID) {
+        return items.indexOf(itemID) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        users.clear();
+        items.clear();
+        minRating = maxRating = 0;
+        sumRatings = nRatings = 0;
+    }
+}
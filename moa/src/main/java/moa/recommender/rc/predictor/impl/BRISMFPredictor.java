@@ -26,9 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import moa.recommender.rc.data.RecommenderData;
-import moa.recommender.rc.utils.Pair;
 import moa.recommender.rc.utils.Rating;
-import moa.recommender.rc.utils.SparseVector;
 import moa.recommender.rc.utils.Updatable;
 
 /**
@@ -123,28 +121,61 @@ public class BRISMFPredictor implements Updatable {
     }
     
     public double predictRating(float userFeats[], float itemFeats[]) {
-        double ret = data.getGlobalMean();
+        return predictRating(userFeats, itemFeats, data.getGlobalMean(),
+                data.getMinRating(), data.getMaxRating());
+    }
+    
+    protected double predictRating(float userFeats[], float itemFeats[],
+            double mean, double minRating, double maxRating) {
+        double ret = mean;
         if (userFeats != null && itemFeats != null)
             for (int i = 0; i < nFeatures; ++i)
                 ret += userFeats[i]*itemFeats[i];
 
-        if (ret < data.getMinRating()) ret = data.getMinRating();
-        else if (ret > data.getMaxRating()) ret = data.getMaxRating();
+        if (ret < minRating) ret = minRating;
+        else if (ret > maxRating) ret = maxRating;
         
         return ret;
     }
     
+    private static int[] toIntArray(List<Integer> list) {
+        int n = list.size();
+        int[] ret = new int[n];
+        for (int i = 0; i < n; ++i)
+            ret[i] = list.get(i);
+        return ret;
+    }
+    
+    private static double[] toDoubleArray(List<Double> list) {
+        int n = list.size();
+        double[] ret = new double[n];
+        for (int i = 0; i < n; ++i)
+            ret[i] = list.get(i);
+        return ret;
+    }
+    
     public float[] trainUserFeats(List<Integer> itm, List<Double> rat, int nIts) {
+        return trainUserFeats(toIntArray(itm), toDoubleArray(rat), itm.size(), nIts);
+    }
+    
+    //The features of the items and the statistics of the data do not change
+    //while a user is trained, so they are looked up once instead of at every
+    //iteration
+    public float[] trainUserFeats(int[] itm, double[] rat, int n, int nIts) {
         float[] userFeats = new float[nFeatures];
         resetFeatures(userFeats, true);
         
-        int n = itm.size();
+        float[][] feats = new float[n][];
+        for (int i = 0; i < n; ++i)
+            feats[i] = itemFeature.get(itm[i]);
+        double mean = data.getGlobalMean();
+        double minRating = data.getMinRating();
+        double maxRating = data.getMaxRating();
         for (int k = 0; k < nIts; ++k) {
             for (int i = 0; i < n; ++i) {
-                int itemID = itm.get(i);
-                float[] itemFeats = itemFeature.get(itemID);
-                double rating = rat.get(i);
-                double pred = predictRating(userFeats, itemFeats);
+                float[] itemFeats = feats[i];
+                double rating = rat[i];
+                double pred = predictRating(userFeats, itemFeats, mean, minRating, maxRating);
                 double err = rating - pred;
                 
                 if (itemFeats != null)
@@ -157,16 +188,24 @@ public class BRISMFPredictor implements Updatable {
     }
     
     public float[] trainItemFeats(int itemID, List<Integer> usr, List<Double> rat, int nIts) {
+        return trainItemFeats(itemID, toIntArray(usr), toDoubleArray(rat), usr.size(), nIts);
+    }
+    
+    public float[] trainItemFeats(int itemID, int[] usr, double[] rat, int n, int nIts) {
         float[] itemFeats = new float[nFeatures];
         resetFeatures(itemFeats, false);
         
-        int n = usr.size();
+        float[][] feats = new float[n][];
+        for (int i = 0; i < n; ++i)
+            feats[i] = userFeature.get(usr[i]);
+        double mean = data.getGlobalMean();
+        double minRating = data.getMinRating();
+        double maxRating = data.getMaxRating();
         for (int k = 0; k < nIts; ++k) {
             for (int i = 0; i < n; ++i) {
-                int userID = usr.get(i);
-                float[] userFeats = userFeature.get(userID);
-                double rating = rat.get(i);
-                double pred = predictRating(userFeats, itemFeats);
+                float[] userFeats = feats[i];
+                double rating = rat[i];
+                double pred = predictRating(userFeats, itemFeats, mean, minRating, maxRating);
                 double err = rating - pred;
                 
                 if (userFeats != null) {
@@ -185,17 +224,11 @@ public class BRISMFPredictor implements Updatable {
     }
     
     public void trainUser(int userID, int nIts) {
-        SparseVector usrRats = data.getRatingsUser(userID);
-        ArrayList<Integer> itm = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            itm.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainUser(userID, itm, rat, nIts);
+        int n = data.countRatingsUser(userID);
+        int[] itm = new int[n];
+        double[] rat = new double[n];
+        n = data.getRatingsUser(userID, itm, rat);
+        userFeature.put(userID, trainUserFeats(itm, rat, n, nIts));
     }
     
     public void trainUser(int userID, List<Integer> itm, List<Double> rat) {
@@ -203,45 +236,19 @@ public class BRISMFPredictor implements Updatable {
     }
     
     public void trainItem(int itemID) {
-        SparseVector itmRats = data.getRatingsItem(itemID);
-        ArrayList<Integer> usr = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            usr.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainItem(itemID, usr, rat);
+        trainItem(itemID, nIterations);
     }
     
     public void trainItem(int itemID, int nIts) {
-        SparseVector itmRats = data.getRatingsItem(itemID);
-        ArrayList<Integer> usr = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            usr.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainItem(itemID, usr, rat, nIts);
+        int n = data.countRatingsItem(itemID);
+        int[] usr = new int[n];
+        double[] rat = new double[n];
+        n = data.getRatingsItem(itemID, usr, rat);
+        itemFeature.put(itemID, trainItemFeats(itemID, usr, rat, n, nIts));
     }
     
     public void trainUser(int userID) {
-        SparseVector usrRats = data.getRatingsUser(userID);
-        ArrayList<Integer> itm = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            itm.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainUser(userID, itm, rat);
+        trainUser(userID, nIterations);
     }
     
     public void trainItem(int itemID, List<Integer> usr, List<Double> rat) {
@@ -379,52 +386,40 @@ public class BRISMFPredictor implements Updatable {
         double prob2 = Math.pow(0.99, nItm);
 
         if (nUsr < 5 || rnd.nextDouble() < prob1) {
-            SparseVector usrRats = data.getRatingsUser(userID);
-            ArrayList<Integer> itm = new ArrayList<Integer>();
-            ArrayList<Double> rat = new ArrayList<Double>();
-            
             //Train user
-            boolean found = false;
-            Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-            while (it.hasNext()) {
-                Pair<Integer, Double> p = it.next();
-                itm.add(p.getFirst());
-                if (p.getFirst() == itemID) {
-                    found = true;
-                    rat.add(rating);
-                }
-                else rat.add(p.getSecond());
+            int[] itm = new int[(int)nUsr + 1];
+            double[] rat = new double[(int)nUsr + 1];
+            int n = data.getRatingsUser(userID, itm, rat);
+            int p = indexOf(itm, n, itemID);
+            if (p < 0) {
+                p = n++;
+                itm[p] = itemID;
             }
-            if (!found) {
-                itm.add(itemID);
-                rat.add(rating);
-            }
-            trainUser(userID, itm, rat);
+            rat[p] = rating;
+            userFeature.put(userID, trainUserFeats(itm, rat, n, nIterations));
         }
         
         if (nItm < 5 || rnd.nextDouble() < prob2) {
-            SparseVector itmRats = data.getRatingsItem(itemID);
             //Train item
-            Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-            boolean found = false;
-            ArrayList<Integer> usr = new ArrayList<Integer>();
-            ArrayList<Double> rat = new ArrayList<Double>();
-            while (it.hasNext()) {
-                Pair<Integer, Double> p = it.next();
-                usr.add(p.getFirst());
-                if (p.getFirst() == userID) {
-                    found = true;
-                    rat.add(rating);
-                }
-                else rat.add(p.getSecond());
+            int[] usr = new int[(int)nItm + 1];
+            double[] rat = new double[(int)nItm + 1];
+            int n = data.getRatingsItem(itemID, usr, rat);
+            int p = indexOf(usr, n, userID);
+            if (p < 0) {
+                p = n++;
+                usr[p] = userID;
             }
-            if (!found) {
-                usr.add(itemID);
-                rat.add(rating);
-            }
-            trainItem(itemID, usr, rat);
+            rat[p] = rating;
+            itemFeature.put(itemID, trainItemFeats(itemID, usr, rat, n, nIterations));
         }
     }
+    
+    private static int indexOf(int[] ids, int n, int id) {
+        for (int i = 0; i < n; ++i)
+            if (ids[i] == id)
+                return i;
+        return -1;
+    }
 
     @Override
     public void updateRemoveRating(int userID, int itemID) {
@@ -20,6 +20,7 @@
 package moa.streams;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
@@ -67,10 +68,15 @@ public class ArffFileStream extends AbstractOptionHandler implements
             "Class index of data. 0 for none or -1 for last attribute in file.",
             -1, -1, Integer.MAX_VALUE);
 
+    public FlagOption fastReaderOption = new FlagOption("fastReader", 'r',
+            "Parse the bytes of the file directly instead of tokenizing it, which is much faster on large files.");
+
     protected Instances instances;
 
     protected Reader fileReader;
 
+    protected InputStream fileStream;
+
     protected boolean hitEndOfFile;
 
     protected InstanceExample lastInstanceRead;
@@ -128,16 +134,19 @@ public class ArffFileStream extends AbstractOptionHandler implements
     @Override
     public void restart() {
         try {
-            if (this.fileReader != null) {
-                this.fileReader.close();
-            }
+            closeFile();
             InputStream fileStream = new FileInputStream(this.arffFileOption.getFile());
             this.fileProgressMonitor = new InputStreamProgressMonitor(
                     fileStream);
-            this.fileReader = new BufferedReader(new InputStreamReader(
-                    this.fileProgressMonitor));
             int classIndex = this.classIndexOption.getValue();
-            this.instances = new Instances(this.fileReader, 1, classIndex);
+            if (this.fastReaderOption.isSet()) {
+                this.fileStream = this.fileProgressMonitor;
+                this.instances = new Instances(this.fileStream, 1, classIndex);
+            } else {
+                this.fileReader = new BufferedReader(new InputStreamReader(
+                        this.fileProgressMonitor));
+                this.instances = new Instances(this.fileReader, 1, classIndex);
+            }
             if (classIndex < 0) {
 		this.instances.setClassIndex(this.instances.numAttributes() - 1);
             } else if (this.classIndexOption.getValue() > 0) {
@@ -160,10 +169,7 @@ public class ArffFileStream extends AbstractOptionHandler implements
                 this.numInstancesRead++;
                 return true;
             }
-            if (this.fileReader != null) {
-                this.fileReader.close();
-                this.fileReader = null;
-            }
+            closeFile();
             return false;
         } catch (IOException ioe) {
             throw new RuntimeException(
@@ -171,6 +177,17 @@ public class ArffFileStream extends AbstractOptionHandler implements
         }
     }
 
+    protected void closeFile() throws IOException {
+        if (this.fileReader != null) {
+            this.fileReader.close();
+            this.fileReader = null;
+        }
+        if (this.fileStream != null) {
+            this.fileStream.close();
+            this.fileStream = null;
+        }
+    }
+
     @Override
     public void getDescription(StringBuilder sb, int indent) {
         // TODO Auto-generated method stub
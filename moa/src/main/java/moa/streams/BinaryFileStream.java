@@ -0,0 +1,125 @@
+/*
+ *    BinaryFileStream.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.streams;
+
+import com.github.javacliparser.FileOption;
+import com.yahoo.labs.samoa.instances.BinaryInstancesReader;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import java.io.IOException;
+
+import moa.core.InstanceExample;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+/**
+ * Stream reader of binary instances files, written by the task
+ * <code>WriteStreamToBinaryFile</code>. The file is memory-mapped and the
+ * instances are replayed without any parsing, which makes it much faster to
+ * start than an ARFF file and allows streaming datasets larger than memory.
+ *
+ * @version $Revision: 1 $
+ */
+public class BinaryFileStream extends AbstractOptionHandler implements
+        InstanceStream {
+
+    @Override
+    public String getPurposeString() {
+        return "A stream read from a binary instances file.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+            "Binary instances file to load.", null, "moab", false);
+
+    protected transient BinaryInstancesReader reader;
+
+    protected InstanceExample lastInstanceRead;
+
+    public BinaryFileStream() {
+    }
+
+    public BinaryFileStream(String binaryFileName) {
+        this.binaryFileOption.setValue(binaryFileName);
+        restart();
+    }
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor,
+            ObjectRepository repository) {
+        restart();
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return new InstancesHeader(this.reader.getHeader());
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        long remaining = this.reader.numInstances() - this.reader.numInstancesRead();
+        return this.lastInstanceRead != null ? remaining + 1 : remaining;
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return this.lastInstanceRead != null;
+    }
+
+    @Override
+    public InstanceExample nextInstance() {
+        InstanceExample prevInstance = this.lastInstanceRead;
+        readNextInstanceFromFile();
+        return prevInstance;
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return true;
+    }
+
+    @Override
+    public void restart() {
+        try {
+            if (this.reader != null) {
+                this.reader.close();
+            }
+            this.reader = new BinaryInstancesReader(this.binaryFileOption.getFile());
+            readNextInstanceFromFile();
+        } catch (IOException ioe) {
+            throw new RuntimeException("BinaryFileStream restart failed.", ioe);
+        }
+    }
+
+    protected void readNextInstanceFromFile() {
+        try {
+            Instance instance = this.reader.readInstance();
+            this.lastInstanceRead = instance != null ? new InstanceExample(instance) : null;
+        } catch (IOException ioe) {
+            throw new RuntimeException(
+                    "BinaryFileStream failed to read instance from file.", ioe);
+        }
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        // TODO Auto-generated method stub
+    }
+}
@@ -96,8 +96,14 @@ public class HashingTrickFilter extends AbstractStreamFilter {
         for (int i = 0 ; i < n ; i++) {
             denseValues[i] = 0d;
         }
-        for (int i = 0; i < instance.numAttributes()-1 ; i++){
-                double diff = Math.abs(instance.value(i));
+        // only the values the instance stores can be non-zero
+        int numValues = instance.numValues();
+        for (int p = 0; p < numValues; p++){
+                int i = instance.index(p);
+                if (i >= instance.numAttributes()-1) {
+                    break;
+                }
+                double diff = Math.abs(instance.valueSparse(p));
                 if( diff  > Double.MIN_NORMAL) {
                     int  hash = hashFunction.hashInt(i).asInt();
                     int bucket = Math.abs(hash) % n;
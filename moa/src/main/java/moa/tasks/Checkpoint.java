@@ -0,0 +1,387 @@
+/*
+ *    Checkpoint.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import moa.core.ObjectCopier;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.preview.LearningCurve;
+import moa.learners.Learner;
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+
+/**
+ * State of an evaluation task after some instances of its stream: the
+ * learner, the evaluator, the learning curve so far and the counters of the
+ * task. A task resumed from a checkpoint skips the instances already
+ * processed and carries on as if it had never stopped.
+ *
+ * <p>The file starts with a small binary header (magic number, format
+ * version, configuration of the task and counters) followed by the learner,
+ * evaluator and learning curve, serialized together and deflated. A CRC of
+ * these bytes detects truncated or damaged files. Files are written next to
+ * their destination and then renamed, so an interrupted write never replaces
+ * the previous checkpoint.</p>
+ *
+ * <p>The lengths of the files the task writes its results to are recorded
+ * too: a resumed task cuts them back to these lengths, so that the rows
+ * written between the checkpoint and the interruption are not repeated.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class Checkpoint {
+
+    /** "MOAC" */
+    public static final int MAGIC = 0x4D4F4143;
+
+    public static final short FORMAT_VERSION = 2;
+
+    protected final String configuration;
+
+    protected final long instancesProcessed;
+
+    protected final long evaluationTime;
+
+    protected final long lastSampleTime;
+
+    protected final double ramHours;
+
+    protected final long dumpFileLength;
+
+    protected final long predictionFileLength;
+
+    protected final Learner learner;
+
+    protected final LearningPerformanceEvaluator evaluator;
+
+    protected final LearningCurve learningCurve;
+
+    /**
+     * @param configuration the configuration of the task, see
+     * {@link #configurationOf}
+     * @param instancesProcessed the number of instances of the stream used
+     * @param evaluationTime the nanoseconds spent evaluating so far
+     * @param lastSampleTime the value of evaluationTime when the learning
+     * curve was last sampled
+     * @param ramHours the model cost so far
+     * @param dumpFileLength the length of the dump file, -1 if not written
+     * @param predictionFileLength the length of the prediction file, -1 if
+     * not written
+     */
+    public Checkpoint(String configuration, long instancesProcessed,
+            long evaluationTime, long lastSampleTime, double ramHours,
+            long dumpFileLength, long predictionFileLength,
+            Learner learner, LearningPerformanceEvaluator evaluator,
+            LearningCurve learningCurve) {
+        this.configuration = configuration;
+        this.instancesProcessed = instancesProcessed;
+        this.evaluationTime = evaluationTime;
+        this.lastSampleTime = lastSampleTime;
+        this.ramHours = ramHours;
+        this.dumpFileLength = dumpFileLength;
+        this.predictionFileLength = predictionFileLength;
+        this.learner = learner;
+        this.evaluator = evaluator;
+        this.learningCurve = learningCurve;
+    }
+
+    /**
+     * Takes a checkpoint holding copies of the learner, evaluator and
+     * learning curve, so that it can be written while the task goes on.
+     */
+    public static Checkpoint snapshot(String configuration, long instancesProcessed,
+            long evaluationTime, long lastSampleTime, double ramHours,
+            long dumpFileLength, long predictionFileLength, Learner learner, LearningPerformanceEvaluator evaluator,
+            LearningCurve learningCurve) {
+        Object[] copy;
+        try {
+            // copied together, so that objects they share stay shared
+            copy = (Object[]) ObjectCopier.copyObject(
+                    new Object[]{learner, evaluator, learningCurve});
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to take a checkpoint of the task.", e);
+        }
+        return new Checkpoint(configuration, instancesProcessed, evaluationTime,
+                lastSampleTime, ramHours, dumpFileLength, predictionFileLength, (Learner) copy[0],
+                (LearningPerformanceEvaluator) copy[1], (LearningCurve) copy[2]);
+    }
+
+    /**
+     * @return a description of the settings a checkpoint depends on, to be
+     * compared when resuming
+     */
+    public static String configurationOf(ClassOption... options) {
+        StringBuilder sb = new StringBuilder();
+        for (ClassOption option : options) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('-').append(option.getCLIChar()).append(" (")
+                    .append(option.getValueAsCLIString()).append(')');
+        }
+        return sb.toString();
+    }
+
+    public String getConfiguration() {
+        return this.configuration;
+    }
+
+    public long getInstancesProcessed() {
+        return this.instancesProcessed;
+    }
+
+    public long getEvaluationTime() {
+        return this.evaluationTime;
+    }
+
+    public long getLastSampleTime() {
+        return this.lastSampleTime;
+    }
+
+    public double getRAMHours() {
+        return this.ramHours;
+    }
+
+    public long getDumpFileLength() {
+        return this.dumpFileLength;
+    }
+
+    public long getPredictionFileLength() {
+        return this.predictionFileLength;
+    }
+
+    public Learner getLearner() {
+        return this.learner;
+    }
+
+    public LearningPerformanceEvaluator getEvaluator() {
+        return this.evaluator;
+    }
+
+    public LearningCurve getLearningCurve() {
+        return this.learningCurve;
+    }
+
+    /**
+     * Fails if the checkpoint was not taken by a task with the given
+     * configuration.
+     */
+    public void checkConfiguration(String expected) {
+        if (!this.configuration.equals(expected)) {
+            throw new IllegalStateException("Checkpoint was taken with "
+                    + this.configuration + ", cannot resume with " + expected);
+        }
+    }
+
+    /**
+     * Reads the checkpoint to resume a task from.
+     *
+     * @return the checkpoint, or null if the file does not exist yet
+     */
+    public static Checkpoint resume(File file, String configuration) {
+        if (!file.exists()) {
+            return null;
+        }
+        Checkpoint checkpoint;
+        try {
+            checkpoint = readFromFile(file);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to read checkpoint file: " + file, e);
+        }
+        checkpoint.checkConfiguration(configuration);
+        return checkpoint;
+    }
+
+    /**
+     * @return the length of a file written through a stream, once flushed,
+     * or -1 if it is not written
+     */
+    public static long lengthOf(File file, PrintStream out) {
+        if (out == null) {
+            return -1;
+        }
+        out.flush();
+        return file.length();
+    }
+
+    /**
+     * Cuts a file the task writes to back to its length at the checkpoint,
+     * dropping what was written after it.
+     *
+     * @param length the length recorded by the checkpoint, -1 if the file
+     * was not written then
+     * @throws IllegalStateException if the file is shorter than at the
+     * checkpoint, or exists but was not written then
+     */
+    public static void truncateToCheckpoint(File file, long length) {
+        if (length < 0) {
+            if (file.exists()) {
+                throw new IllegalStateException("File " + file
+                        + " was not written by the checkpoint, cannot tell which of its rows to keep.");
+            }
+            return;
+        }
+        if (file.length() < length) {
+            throw new IllegalStateException("File " + file + " is shorter than at the checkpoint ("
+                    + file.length() + " < " + length + " bytes).");
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to truncate " + file + " to its length at the checkpoint.", e);
+        }
+    }
+
+    /**
+     * Moves a freshly prepared stream past the instances processed before the
+     * checkpoint. Streams are replayed rather than saved, as most of them
+     * (files, generators with a seed) give the same instances again.
+     */
+    public void skipProcessedInstances(ExampleStream stream) {
+        for (long i = 0; i < this.instancesProcessed && stream.hasMoreInstances(); i++) {
+            stream.nextInstance();
+        }
+    }
+
+    public void writeToFile(File file) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ObjectOutputStream objects = new ObjectOutputStream(
+                    new DeflaterOutputStream(payload, deflater, 64 * 1024));
+            objects.writeObject(new Serializable[]{this.learner, this.evaluator, this.learningCurve});
+            objects.close();
+        } finally {
+            deflater.end();
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporary)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                byte[] configurationBytes = this.configuration.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(configurationBytes.length);
+                out.write(configurationBytes);
+                out.writeLong(this.instancesProcessed);
+                out.writeLong(this.evaluationTime);
+                out.writeLong(this.lastSampleTime);
+                out.writeDouble(this.ramHours);
+                out.writeLong(this.dumpFileLength);
+                out.writeLong(this.predictionFileLength);
+                out.writeInt(bytes.length);
+                out.writeLong(crc.getValue());
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    public static Checkpoint readFromFile(File file) throws IOException,
+            ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            short version = in.readShort();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("Checkpoint file " + file + " has format version "
+                        + version + ", only versions up to " + FORMAT_VERSION + " are supported.");
+            }
+            byte[] configurationBytes = new byte[in.readInt()];
+            in.readFully(configurationBytes);
+            String configuration = new String(configurationBytes, StandardCharsets.UTF_8);
+            long instancesProcessed = in.readLong();
+            long evaluationTime = in.readLong();
+            long lastSampleTime = in.readLong();
+            double ramHours = in.readDouble();
+            long dumpFileLength = -1;
+            long predictionFileLength = -1;
+            if (version >= 2) {
+                dumpFileLength = in.readLong();
+                predictionFileLength = in.readLong();
+            }
+            byte[] bytes = new byte[in.readInt()];
+            long expectedCRC = in.readLong();
+            in.readFully(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            if (crc.getValue() != expectedCRC) {
+                throw new IOException("Checkpoint file " + file + " is damaged.");
+            }
+            ObjectInputStream objects = new ObjectInputStream(new InflaterInputStream(
+                    new ByteArrayInputStream(bytes)));
+            Object[] state;
+            try {
+                state = (Object[]) objects.readObject();
+            } finally {
+                objects.close();
+            }
+            return new Checkpoint(configuration, instancesProcessed, evaluationTime,
+                    lastSampleTime, ramHours, dumpFileLength, predictionFileLength, (Learner) state[0],
+                    (LearningPerformanceEvaluator) state[1], (LearningCurve) state[2]);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *    CheckpointWriter.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes the checkpoints of a task to a file on a background thread, so that
+ * the task only pays for copying its state. At most one checkpoint is being
+ * written at a time: taking the next one waits for the previous one to be on
+ * disk, which also bounds the memory held by pending copies.
+ *
+ * @version $Revision: 1 $
+ */
+public class CheckpointWriter {
+
+    protected final File file;
+
+    protected final ExecutorService executor;
+
+    protected Future<?> pending;
+
+    public CheckpointWriter(File file) {
+        this.file = file;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Queues a checkpoint to be written. Fails if the previous one could not
+     * be written.
+     */
+    public void write(final Checkpoint checkpoint) {
+        awaitPending();
+        this.pending = this.executor.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                checkpoint.writeToFile(file);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Waits for the last checkpoint to be written and stops the writer
+     * thread.
+     */
+    public void close() {
+        try {
+            awaitPending();
+        } finally {
+            this.executor.shutdown();
+        }
+    }
+
+    protected void awaitPending() {
+        if (this.pending == null) {
+            return;
+        }
+        try {
+            this.pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing checkpoint file: " + this.file, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to write checkpoint file: " + this.file, e.getCause());
+        } finally {
+            this.pending = null;
+        }
+    }
+}
@@ -59,9 +59,17 @@ public class EvaluateClustering extends AuxiliarMainTask {
     
     public FlagOption separationOption = new FlagOption("Separation", 'p', "BSS, BSS-GT, BSS-Ratio.");
     
-    public FlagOption silhouetteOption = new FlagOption("Silhouette", 'h', "SilhCoeff.");
+    public FlagOption silhouetteOption = new FlagOption("Silhouette", 'h', "SilhCoeff, SilhCoeff SE (with a sample size).");
     
     public FlagOption statisticalOption = new FlagOption("Statistical", 't', "van Dongen, Rand statistic.");
+
+    public IntOption silhouetteSampleSizeOption = new IntOption("silhouetteSampleSize", 'n',
+            "Number of points the Silhouette coefficient is averaged over at each horizon (0 = all points).",
+            0, 0, Integer.MAX_VALUE);
+
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of measure collections evaluated concurrently (-1 = as much as possible, 0 = do not use multithreading).",
+            1, -1, Integer.MAX_VALUE);
        
     /*public ClassOption evaluatorOption = new ClassOption("evaluator", 'e',
     "Performance evaluation method.",
@@ -124,7 +132,9 @@ public class EvaluateClustering extends AuxiliarMainTask {
                 (AbstractClusterer) getPreparedClassOption(this.learnerOption),
                 measureCollection,
                 (int) this.instanceLimitOption.getValue(),
-                (String) dumpFileOption.getValue());
+                (String) dumpFileOption.getValue(),
+                this.numberOfJobsOption.getValue(),
+                this.silhouetteSampleSizeOption.getValue());
 
         LearningCurve learningCurve = new LearningCurve("EvaluateClustering does not support custom output file (> [filename]).\n" +
         												"Check out the dump file to see the results (if you haven't specified, dumpClustering.csv by default).");
@@ -22,6 +22,8 @@ package moa.tasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
@@ -37,6 +39,7 @@ import moa.evaluation.preview.LearningCurve;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
 import moa.streams.InstanceStream;
@@ -91,9 +94,23 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
             "How many instances between memory bound checks.", 100000, 0,
             Integer.MAX_VALUE);
 
+    public IntOption trainingBatchSizeOption = new IntOption("trainingBatchSize", 'b',
+            "How many tested instances are buffered before training a classifier on all of them at once (1 = train right after testing).",
+            1, 1, Integer.MAX_VALUE);
+
     public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
             "File to append intermediate csv reslts to.", null, "csv", true);
 
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'c',
+            "File to periodically save the state of the task to, so that it can be resumed.", null, "ckpt", true);
+
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'k',
+            "How many instances between checkpoints (0 = no checkpoints).",
+            1000000, 0, Integer.MAX_VALUE);
+
+    public FlagOption resumeOption = new FlagOption("resume", 'R',
+            "Resume from the checkpoint file if it exists.");
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -115,17 +132,35 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
         ExampleStream stream = (InstanceStream) getPreparedClassOption(this.streamOption);
         
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
-        learner.setModelContext(stream.getHeader());
+        LearningCurve learningCurve = new LearningCurve(
+                "learning evaluation instances");
+        File checkpointFile = this.checkpointFileOption.getFile();
+        String configuration = Checkpoint.configurationOf(this.learnerOption,
+                this.streamOption, this.evaluatorOption) + " -r " + this.randomSeedOption.getValue();
+        Checkpoint checkpoint = null;
+        if (checkpointFile != null && this.resumeOption.isSet()) {
+            checkpoint = Checkpoint.resume(checkpointFile, configuration);
+        }
+        if (checkpoint != null) {
+            learner = checkpoint.getLearner();
+            evaluator = checkpoint.getEvaluator();
+            learningCurve = checkpoint.getLearningCurve();
+            monitor.setCurrentActivity("Skipping instances before the checkpoint...", -1.0);
+            checkpoint.skipProcessedInstances(stream);
+        } else {
+            learner.setModelContext(stream.getHeader());
+        }
         int maxInstances = this.instanceLimitOption.getValue();
-        long instancesProcessed = 0;
+        long instancesProcessed = checkpoint != null ? checkpoint.getInstancesProcessed() : 0;
         int maxSeconds = this.timeLimitOption.getValue();
         int secondsElapsed = 0;
         monitor.setCurrentActivity("Evaluating learner...", -1.0);
-        LearningCurve learningCurve = new LearningCurve(
-                "learning evaluation instances");
         File dumpFile = this.dumpFileOption.getFile();
         PrintStream immediateResultStream = null;
         if (dumpFile != null) {
+            if (checkpoint != null) {
+                Checkpoint.truncateToCheckpoint(dumpFile, checkpoint.getDumpFileLength());
+            }
             try {
                 if (dumpFile.exists()) {
                     immediateResultStream = new PrintStream(
@@ -139,11 +174,27 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                         "Unable to open immediate result file: " + dumpFile, ex);
             }
         }
-        boolean firstDump = true;
+        boolean firstDump = checkpoint == null || dumpFile == null || dumpFile.length() == 0;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        if (checkpoint != null) {
+            evaluateStartTime -= checkpoint.getEvaluationTime();
+            lastEvaluateStartTime = evaluateStartTime + checkpoint.getLastSampleTime();
+            RAMHours = checkpoint.getRAMHours();
+            checkpoint = null;
+        }
+        int checkpointFrequency = this.checkpointFrequencyOption.getValue();
+        CheckpointWriter checkpointWriter = null;
+        if (checkpointFile != null && checkpointFrequency > 0) {
+            checkpointWriter = new CheckpointWriter(checkpointFile);
+        }
+        int trainingBatchSize = this.trainingBatchSizeOption.getValue();
+        List<Instance> trainingBatch = null;
+        if (trainingBatchSize > 1 && learner instanceof Classifier) {
+            trainingBatch = new ArrayList<Instance>(trainingBatchSize);
+        }
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
@@ -155,10 +206,23 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
             //evaluator.addClassificationAttempt(trueClass, prediction, testInst
             //		.weight());
             evaluator.addResult(testInst, prediction);
-            learner.trainOnInstance(trainInst);
+            if (trainingBatch != null) {
+                trainingBatch.add((Instance) trainInst.getData());
+                if (trainingBatch.size() >= trainingBatchSize) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
+            } else {
+                learner.trainOnInstance(trainInst);
+            }
             instancesProcessed++;
             if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
                   ||  stream.hasMoreInstances() == false) {
+                // the model is measured after training on all the instances tested so far
+                if (trainingBatch != null && trainingBatch.size() > 0) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
                 long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
@@ -192,8 +256,22 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                     immediateResultStream.flush();
                 }
             }
+            if (checkpointWriter != null && instancesProcessed % checkpointFrequency == 0) {
+                if (trainingBatch != null && trainingBatch.size() > 0) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
+                long checkpointTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                checkpointWriter.write(Checkpoint.snapshot(configuration, instancesProcessed,
+                        checkpointTime - evaluateStartTime, lastEvaluateStartTime - evaluateStartTime,
+                        RAMHours, Checkpoint.lengthOf(dumpFile, immediateResultStream), -1,
+                        learner, evaluator, learningCurve));
+            }
             if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
                 if (monitor.taskShouldAbort()) {
+                    if (checkpointWriter != null) {
+                        checkpointWriter.close();
+                    }
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -214,6 +292,9 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                         - evaluateStartTime);
             }
         }
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+        }
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
@@ -23,10 +23,13 @@ package moa.tasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import moa.capabilities.CapabilitiesHandler;
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
+import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Example;
 import moa.core.Measurement;
@@ -42,6 +45,7 @@ import moa.learners.Learner;
 import moa.options.ClassOption;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
@@ -94,6 +98,10 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
             "How many instances between memory bound checks.", 100000, 0,
             Integer.MAX_VALUE);
 
+    public IntOption trainingBatchSizeOption = new IntOption("trainingBatchSize", 'b',
+            "How many tested instances are buffered before training a classifier on all of them at once (1 = train right after testing).",
+            1, 1, Integer.MAX_VALUE);
+
     public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
             "File to append intermediate csv results to.", null, "csv", true);
 
@@ -108,6 +116,16 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
             'a', "Fading factor or exponential smoothing factor", .01);
     //End New for prequential methods
 
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'c',
+            "File to periodically save the state of the task to, so that it can be resumed.", null, "ckpt", true);
+
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'k',
+            "How many instances between checkpoints (0 = no checkpoints).",
+            1000000, 0, Integer.MAX_VALUE);
+
+    public FlagOption resumeOption = new FlagOption("resume", 'R',
+            "Resume from the checkpoint file if it exists.");
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -145,9 +163,24 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
         }
         //End New for prequential methods
 
-        learner.setModelContext(stream.getHeader());
+        File checkpointFile = this.checkpointFileOption.getFile();
+        String configuration = Checkpoint.configurationOf(this.learnerOption,
+                this.streamOption, this.evaluatorOption);
+        Checkpoint checkpoint = null;
+        if (checkpointFile != null && this.resumeOption.isSet()) {
+            checkpoint = Checkpoint.resume(checkpointFile, configuration);
+        }
+        if (checkpoint != null) {
+            learner = checkpoint.getLearner();
+            evaluator = checkpoint.getEvaluator();
+            learningCurve = checkpoint.getLearningCurve();
+            monitor.setCurrentActivity("Skipping instances before the checkpoint...", -1.0);
+            checkpoint.skipProcessedInstances(stream);
+        } else {
+            learner.setModelContext(stream.getHeader());
+        }
         int maxInstances = this.instanceLimitOption.getValue();
-        long instancesProcessed = 0;
+        long instancesProcessed = checkpoint != null ? checkpoint.getInstancesProcessed() : 0;
         int maxSeconds = this.timeLimitOption.getValue();
         int secondsElapsed = 0;
         monitor.setCurrentActivity("Evaluating learner...", -1.0);
@@ -155,6 +188,9 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
         File dumpFile = this.dumpFileOption.getFile();
         PrintStream immediateResultStream = null;
         if (dumpFile != null) {
+            if (checkpoint != null) {
+                Checkpoint.truncateToCheckpoint(dumpFile, checkpoint.getDumpFileLength());
+            }
             try {
                 if (dumpFile.exists()) {
                     immediateResultStream = new PrintStream(
@@ -172,6 +208,9 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
         PrintStream outputPredictionResultStream = null;
         if (outputPredictionFile != null) {
+            if (checkpoint != null) {
+                Checkpoint.truncateToCheckpoint(outputPredictionFile, checkpoint.getPredictionFileLength());
+            }
             try {
                 if (outputPredictionFile.exists()) {
                     outputPredictionResultStream = new PrintStream(
@@ -185,11 +224,27 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
                         "Unable to open prediction result file: " + outputPredictionFile, ex);
             }
         }
-        boolean firstDump = true;
+        boolean firstDump = checkpoint == null || dumpFile == null || dumpFile.length() == 0;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        if (checkpoint != null) {
+            evaluateStartTime -= checkpoint.getEvaluationTime();
+            lastEvaluateStartTime = evaluateStartTime + checkpoint.getLastSampleTime();
+            RAMHours = checkpoint.getRAMHours();
+            checkpoint = null;
+        }
+        int checkpointFrequency = this.checkpointFrequencyOption.getValue();
+        CheckpointWriter checkpointWriter = null;
+        if (checkpointFile != null && checkpointFrequency > 0) {
+            checkpointWriter = new CheckpointWriter(checkpointFile);
+        }
+        int trainingBatchSize = this.trainingBatchSizeOption.getValue();
+        List<Instance> trainingBatch = null;
+        if (trainingBatchSize > 1 && learner instanceof Classifier) {
+            trainingBatch = new ArrayList<Instance>(trainingBatchSize);
+        }
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
@@ -206,10 +261,23 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
 
             //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
             evaluator.addResult(testInst, prediction);
-            learner.trainOnInstance(trainInst);
+            if (trainingBatch != null) {
+                trainingBatch.add((Instance) trainInst.getData());
+                if (trainingBatch.size() >= trainingBatchSize) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
+            } else {
+                learner.trainOnInstance(trainInst);
+            }
             instancesProcessed++;
             if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
                     || stream.hasMoreInstances() == false) {
+                // the model is measured after training on all the instances tested so far
+                if (trainingBatch != null && trainingBatch.size() > 0) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
                 long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
@@ -242,8 +310,23 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
                     immediateResultStream.flush();
                 }
             }
+            if (checkpointWriter != null && instancesProcessed % checkpointFrequency == 0) {
+                if (trainingBatch != null && trainingBatch.size() > 0) {
+                    ((Classifier) learner).trainOnInstances(trainingBatch);
+                    trainingBatch.clear();
+                }
+                long checkpointTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                checkpointWriter.write(Checkpoint.snapshot(configuration, instancesProcessed,
+                        checkpointTime - evaluateStartTime, lastEvaluateStartTime - evaluateStartTime,
+                        RAMHours, Checkpoint.lengthOf(dumpFile, immediateResultStream),
+                        Checkpoint.lengthOf(outputPredictionFile, outputPredictionResultStream),
+                        learner, evaluator, learningCurve));
+            }
             if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
                 if (monitor.taskShouldAbort()) {
+                    if (checkpointWriter != null) {
+                        checkpointWriter.close();
+                    }
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -264,6 +347,9 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
                         - evaluateStartTime);
             }
         }
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+        }
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
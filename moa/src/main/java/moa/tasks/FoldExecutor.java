@@ -0,0 +1,197 @@
+/*
+ *    FoldExecutor.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import moa.classifiers.core.EnsembleExecutor;
+import moa.core.TimingUtils;
+
+/**
+ * Runs the work of the folds of a cross-validated evaluation on worker
+ * threads. Every fold is always handled by the same worker, which takes the
+ * work of its folds from a bounded queue in the order it was submitted, so
+ * each fold sees the instances in stream order. The queues block the reading
+ * thread when the workers fall behind.
+ *
+ * <p>With a single thread the work is run directly on the calling thread.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class FoldExecutor {
+
+    /** Number of pending tasks a worker accepts before the submitter waits. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    protected final Worker[] workers;
+
+    protected volatile Throwable failure;
+
+    /**
+     * @param numFolds the number of folds
+     * @param numberOfJobs the value of a numberOfJobs option: -1 uses all
+     * available processors, 0 and 1 run everything on the calling thread
+     */
+    public FoldExecutor(int numFolds, int numberOfJobs) {
+        this(numFolds, numberOfJobs, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public FoldExecutor(int numFolds, int numberOfJobs, int queueCapacity) {
+        int numberOfThreads = Math.min(EnsembleExecutor.resolveNumberOfThreads(numberOfJobs), numFolds);
+        if (numberOfThreads > 1) {
+            this.workers = new Worker[numberOfThreads];
+            for (int i = 0; i < numberOfThreads; i++) {
+                this.workers[i] = new Worker("evaluation-fold-" + (i + 1), queueCapacity);
+                this.workers[i].start();
+            }
+        } else {
+            this.workers = null;
+        }
+    }
+
+    public boolean isParallel() {
+        return this.workers != null;
+    }
+
+    /**
+     * Queues work for a fold, or runs it right away without workers. Fails
+     * with the exception of a previous task if one failed.
+     */
+    public void execute(int foldIndex, Runnable task) {
+        if (this.workers == null) {
+            task.run();
+            return;
+        }
+        checkFailure();
+        put(this.workers[foldIndex % this.workers.length], task);
+    }
+
+    /**
+     * Waits until all the work queued so far is done, so that the learners
+     * and evaluators of the folds can be read safely.
+     */
+    public void awaitCompletion() {
+        if (this.workers == null) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(this.workers.length);
+        for (Worker worker : this.workers) {
+            put(worker, new Barrier(latch));
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the folds.", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * @return the CPU time used so far by the workers, 0 without workers or
+     * when the CPU time of threads cannot be measured
+     */
+    public long getNanoCPUTime() {
+        if (this.workers == null || !TimingUtils.enablePreciseTiming()) {
+            return 0;
+        }
+        long time = 0;
+        for (Worker worker : this.workers) {
+            time += TimingUtils.getNanoCPUTimeOfThread(worker.getId());
+        }
+        return time;
+    }
+
+    /**
+     * Stops the workers, dropping the work that is still queued.
+     */
+    public void shutdown() {
+        if (this.workers != null) {
+            for (Worker worker : this.workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    protected void put(Worker worker, Runnable task) {
+        try {
+            worker.queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing work for the folds.", e);
+        }
+    }
+
+    protected void checkFailure() {
+        Throwable cause = this.failure;
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause != null) {
+            throw new RuntimeException(cause);
+        }
+    }
+
+    protected class Worker extends Thread {
+
+        protected final BlockingQueue<Runnable> queue;
+
+        public Worker(String name, int queueCapacity) {
+            super(name);
+            this.queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Runnable task = this.queue.take();
+                    // after a failure the queue is only drained, so that the
+                    // submitter does not block and sees the failure
+                    if (failure == null || task instanceof Barrier) {
+                        try {
+                            task.run();
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shut down
+            }
+        }
+    }
+
+    protected static class Barrier implements Runnable {
+
+        protected final CountDownLatch latch;
+
+        public Barrier(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            this.latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *    RunMultipleTasks.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.core.ObjectRepository;
+import moa.options.ClassOption;
+
+/**
+ * Task for running a list of tasks concurrently. Tasks reading the same
+ * stream can share its instances, and the final measurements of all tasks
+ * can be written to one result file.
+ *
+ * @version $Revision: 1 $
+ */
+public class RunMultipleTasks extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Runs a list of tasks concurrently.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ListOption taskListOption = new ListOption("tasks", 't',
+            "Tasks to do.",
+            new ClassOption("task", ' ', "", Task.class, "EvaluatePrequential"),
+            new Option[]{
+                new ClassOption("", ' ', "", Task.class,
+                "EvaluatePrequential -l trees.HoeffdingTree -i 1000000"),
+                new ClassOption("", ' ', "", Task.class,
+                "EvaluatePrequential -l bayes.NaiveBayes -i 1000000")},
+            ';');
+
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of tasks run concurrently (-1 = as much as possible, 0 = do not use multithreading).",
+            1, -1, Integer.MAX_VALUE);
+
+    public IntOption taskMemoryOption = new IntOption("taskMemory", 'm',
+            "Megabytes of memory a task needs before it is started concurrently to others (0 = no limit).",
+            0, 0, Integer.MAX_VALUE);
+
+    public IntOption cacheSizeOption = new IntOption("cacheSize", 'c',
+            "Number of instances of every stream read once and shared by the tasks reading it (0 = every task reads its stream).",
+            0, 0, Integer.MAX_VALUE);
+
+    public FileOption resultFileOption = new FileOption("resultFile", 'r',
+            "File to write the final measurements of all tasks to.", null, "csv", true);
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return Object.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        Option[] taskOptions = this.taskListOption.getList();
+        TaskScheduler scheduler = new TaskScheduler(this.numberOfJobsOption.getValue(),
+                this.taskMemoryOption.getValue());
+        Map<String, Instances> caches = new HashMap<String, Instances>();
+        List<Task> tasks = new ArrayList<Task>();
+        String[] labels = new String[taskOptions.length];
+        for (int i = 0; i < taskOptions.length; i++) {
+            Task task = (Task) ((ClassOption) taskOptions[i]).materializeObject(monitor, repository);
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            ClassOption streamOption = TaskScheduler.getStreamOption(task);
+            if (this.cacheSizeOption.getValue() > 0 && streamOption != null) {
+                // tasks share the instances of streams with the same options
+                String stream = streamOption.getValueAsCLIString();
+                if (!caches.containsKey(stream)) {
+                    caches.put(stream, TaskScheduler.cacheStream(task,
+                            this.cacheSizeOption.getValue(), monitor, repository));
+                    if (monitor.taskShouldAbort()) {
+                        return null;
+                    }
+                }
+                TaskScheduler.shareStream(task, caches.get(stream));
+            }
+            if (scheduler.isParallel()) {
+                TaskScheduler.separateOutputFiles(task, "_" + (i + 1));
+            }
+            tasks.add(task);
+            labels[i] = Integer.toString(i + 1);
+        }
+        Object[] results = scheduler.runTasks(tasks, monitor, repository);
+        if (this.resultFileOption.getFile() != null) {
+            try {
+                TaskScheduler.writeResults(this.resultFileOption.getFile(), "task",
+                        labels, results);
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to write result file: "
+                        + this.resultFileOption.getFile(), ex);
+            }
+        }
+        return results.length > 0 ? results[results.length - 1] : null;
+    }
+}
@@ -20,7 +20,13 @@
  */
 package moa.tasks;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FloatOption;
+import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
 import moa.MOAObject;
 import moa.core.ObjectRepository;
@@ -28,6 +34,8 @@ import moa.options.ClassOption;
 
 /**
  * Task for running several experiments modifying values of parameters.
+ * The experiments can run concurrently and write their final measurements
+ * to one result file.
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
@@ -43,7 +51,7 @@ public class RunStreamTasks extends ConceptDriftMainTask {
     private static final long serialVersionUID = 1L;
 
     public ClassOption taskOption = new ClassOption("task", 't',
-            "Task to do.", Task.class, "EvaluatePrequential -l active.ALUncertainty -i 1000000 -d temp.txt");
+            "Task to do.", Task.class, "EvaluatePrequential -l trees.HoeffdingTree -i 1000000 -d temp.txt");
 
     public StringOption streamParameterOption = new StringOption("streamParameter", 'p',
             "Stream parameter to vary.", "b");
@@ -57,6 +65,17 @@ public class RunStreamTasks extends ConceptDriftMainTask {
     public FloatOption incrementValueOption = new FloatOption("incrementValue",
             'i', "Increment value", 0.1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of experiments run concurrently (-1 = as much as possible, 0 = do not use multithreading).",
+            1, -1, Integer.MAX_VALUE);
+
+    public IntOption taskMemoryOption = new IntOption("taskMemory", 'm',
+            "Megabytes of memory an experiment needs before it is started concurrently to others (0 = no limit).",
+            0, 0, Integer.MAX_VALUE);
+
+    public FileOption resultFileOption = new FileOption("resultFile", 'r',
+            "File to write the final measurements of all experiments to.", null, "csv", true);
+
     @Override
     public Class<?> getTaskResultType() {
         return this.task.getTaskResultType();
@@ -66,9 +85,11 @@ public class RunStreamTasks extends ConceptDriftMainTask {
 
     @Override
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
-        Object result = null;
         Task taskBase = (Task) getPreparedClassOption(this.taskOption); 
-        String commandString = this.taskOption.getValueAsCLIString();
+        TaskScheduler scheduler = new TaskScheduler(this.numberOfJobsOption.getValue(),
+                this.taskMemoryOption.getValue());
+        List<Task> tasks = new ArrayList<Task>();
+        List<String> labels = new ArrayList<String>();
         //for each possible value of the parameter
         for (int valueParameter = (int) this.firstValueOption.getValue();
                 valueParameter <= this.lastValueOption.getValue();
@@ -79,10 +100,24 @@ public class RunStreamTasks extends ConceptDriftMainTask {
                 String stream = ((EvaluateConceptDrift) this.task).streamOption.getValueAsCLIString();
                 ((EvaluateConceptDrift) this.task).streamOption.setValueViaCLIString(stream + " -" + streamParameterOption.getValue() + " " + valueParameter);
             }
-            //Run task
-            result = this.task.doTask(monitor, repository);
-            //System.out.println(((AbstractOptionHandler) this.task).getCLICreationString(Task.class));
+            if (scheduler.isParallel()) {
+                TaskScheduler.separateOutputFiles(this.task, "_" + valueParameter);
+            }
+            tasks.add(this.task);
+            labels.add(Integer.toString(valueParameter));
+        }
+        //Run tasks
+        Object[] results = scheduler.runTasks(tasks, monitor, repository);
+        if (this.resultFileOption.getFile() != null) {
+            try {
+                TaskScheduler.writeResults(this.resultFileOption.getFile(),
+                        this.streamParameterOption.getValue(),
+                        labels.toArray(new String[labels.size()]), results);
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to write result file: "
+                        + this.resultFileOption.getFile(), ex);
+            }
         }
-        return result;
+        return results.length > 0 ? results[results.length - 1] : null;
     }
 }
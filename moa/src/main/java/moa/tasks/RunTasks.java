@@ -20,13 +20,23 @@
  */
 package moa.tasks;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import moa.MOAObject;
 import moa.core.ObjectRepository;
 import moa.options.ClassOption;
+import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FloatOption;
+import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
+import com.yahoo.labs.samoa.instances.Instances;
 
 /**
  * Task for running several experiments modifying values of parameters.
+ * The experiments can run concurrently, share the instances of their stream
+ * and write their final measurements to one result file.
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
@@ -42,7 +52,7 @@ public class RunTasks extends AuxiliarMainTask {
     private static final long serialVersionUID = 1L;
 
     public ClassOption taskOption = new ClassOption("task", 't',
-            "Task to do.", Task.class, "EvaluatePrequential -l active.ALUncertainty -i 1000000 -d temp.txt");
+            "Task to do.", Task.class, "EvaluatePrequential -l trees.HoeffdingTree -i 1000000 -d temp.txt");
 
     public StringOption classifierParameterOption = new StringOption("classifierParameter", 'p',
             "Classifier parameter to vary.", "b");
@@ -56,6 +66,21 @@ public class RunTasks extends AuxiliarMainTask {
     public FloatOption incrementValueOption = new FloatOption("incrementValue",
             'i', "Increment value", 0.1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of experiments run concurrently (-1 = as much as possible, 0 = do not use multithreading).",
+            1, -1, Integer.MAX_VALUE);
+
+    public IntOption taskMemoryOption = new IntOption("taskMemory", 'm',
+            "Megabytes of memory an experiment needs before it is started concurrently to others (0 = no limit).",
+            0, 0, Integer.MAX_VALUE);
+
+    public IntOption cacheSizeOption = new IntOption("cacheSize", 'c',
+            "Number of instances of the stream read once and shared by all experiments (0 = every experiment reads the stream).",
+            0, 0, Integer.MAX_VALUE);
+
+    public FileOption resultFileOption = new FileOption("resultFile", 'r',
+            "File to write the final measurements of all experiments to.", null, "csv", true);
+
     @Override
     public Class<?> getTaskResultType() {
         return this.task.getTaskResultType();
@@ -65,15 +90,25 @@ public class RunTasks extends AuxiliarMainTask {
 
     @Override
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
-        Object result = null;
-
-        String commandString = this.taskOption.getValueAsCLIString();
+        Task taskBase = (Task) getPreparedClassOption(this.taskOption);
+        TaskScheduler scheduler = new TaskScheduler(this.numberOfJobsOption.getValue(),
+                this.taskMemoryOption.getValue());
+        Instances cache = null;
+        if (this.cacheSizeOption.getValue() > 0) {
+            cache = TaskScheduler.cacheStream(taskBase, this.cacheSizeOption.getValue(),
+                    monitor, repository);
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+        }
+        List<Task> tasks = new ArrayList<Task>();
+        List<String> labels = new ArrayList<String>();
         //for each possible value of the parameter
         for (double valueParameter = this.firstValueOption.getValue();
                 valueParameter <= this.lastValueOption.getValue();
                 valueParameter += this.incrementValueOption.getValue()) {
             //Add parameter
-            this.task = (Task) getPreparedClassOption(this.taskOption);
+            this.task = (Task) ((MOAObject) taskBase).copy();
             if (this.task instanceof EvaluatePrequential) {
                 String classifier = ((EvaluatePrequential) this.task).learnerOption.getValueAsCLIString();
                 ((EvaluatePrequential) this.task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
@@ -82,10 +117,27 @@ public class RunTasks extends AuxiliarMainTask {
                 String classifier = ((EvaluateInterleavedTestThenTrain) this.task).learnerOption.getValueAsCLIString();
                 ((EvaluateInterleavedTestThenTrain) this.task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
             }
-            //Run task
-            result = this.task.doTask(monitor, repository);
-            //System.out.println(((AbstractOptionHandler) this.task).getCLICreationString(Task.class));
+            if (scheduler.isParallel()) {
+                TaskScheduler.separateOutputFiles(this.task, "_" + valueParameter);
+            }
+            if (cache != null) {
+                TaskScheduler.shareStream(this.task, cache);
+            }
+            tasks.add(this.task);
+            labels.add(Double.toString(valueParameter));
+        }
+        //Run tasks
+        Object[] results = scheduler.runTasks(tasks, monitor, repository);
+        if (this.resultFileOption.getFile() != null) {
+            try {
+                TaskScheduler.writeResults(this.resultFileOption.getFile(),
+                        this.classifierParameterOption.getValue(),
+                        labels.toArray(new String[labels.size()]), results);
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to write result file: "
+                        + this.resultFileOption.getFile(), ex);
+            }
         }
-        return result;
+        return results.length > 0 ? results[results.length - 1] : null;
     }
 }
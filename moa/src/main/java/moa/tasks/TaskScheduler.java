@@ -0,0 +1,340 @@
+/*
+ *    TaskScheduler.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.Option;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.classifiers.core.EnsembleExecutor;
+import moa.core.InstanceExample;
+import moa.core.Measurement;
+import moa.core.ObjectRepository;
+import moa.evaluation.LearningEvaluation;
+import moa.evaluation.preview.Preview;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.CachedInstancesStream;
+import moa.streams.ExampleStream;
+
+/**
+ * Runs a list of tasks on a pool of worker threads. The tasks are handed out
+ * to the workers one at a time in list order, and a task that fails does not
+ * stop the others: its result is a <code>FailedTaskReport</code>.
+ *
+ * <p>Memory is guarded with a budget: every task reserves a fixed amount of
+ * the free heap before it starts and releases it when it is done, so that no
+ * more tasks run at once than fit in memory. A task running out of memory
+ * anyway only fails itself.</p>
+ *
+ * <p>With a single thread the tasks run one after another on the calling
+ * thread with its monitor. Otherwise every task gets its own monitor, which
+ * is cancelled along with the monitor of the caller.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class TaskScheduler {
+
+    protected final EnsembleExecutor executor;
+
+    /** Megabytes reserved by every running task, 0 without memory guard. */
+    protected final int taskMemory;
+
+    /** Megabytes of free heap left to reserve, null without memory guard. */
+    protected final Semaphore memoryBudget;
+
+    protected int numFinished;
+
+    /**
+     * @param numberOfJobs the value of a numberOfJobs option: -1 uses all
+     * available processors, 0 and 1 run the tasks on the calling thread
+     * @param taskMemory the megabytes of heap a task needs, 0 to start tasks
+     * regardless of the free heap
+     */
+    public TaskScheduler(int numberOfJobs, int taskMemory) {
+        this.executor = new EnsembleExecutor(numberOfJobs);
+        if (taskMemory > 0 && this.executor.isParallel()) {
+            Runtime runtime = Runtime.getRuntime();
+            long freeMemory = runtime.maxMemory()
+                    - (runtime.totalMemory() - runtime.freeMemory());
+            int budget = (int) Math.max(1, Math.min(Integer.MAX_VALUE, freeMemory >> 20));
+            // a task needing more than the whole budget still runs, alone
+            this.taskMemory = Math.min(taskMemory, budget);
+            this.memoryBudget = new Semaphore(budget, true);
+        } else {
+            this.taskMemory = 0;
+            this.memoryBudget = null;
+        }
+    }
+
+    public boolean isParallel() {
+        return this.executor.isParallel();
+    }
+
+    /**
+     * Runs all tasks and returns their results in list order. The results of
+     * failed tasks are <code>FailedTaskReport</code>s, the ones of tasks that
+     * were not run because the caller was cancelled are null.
+     */
+    public Object[] runTasks(final List<? extends Task> tasks,
+            final TaskMonitor monitor, final ObjectRepository repository) {
+        final Object[] results = new Object[tasks.size()];
+        this.numFinished = 0;
+        monitor.setCurrentActivity("Running " + tasks.size() + " tasks...", 0.0);
+        try {
+            this.executor.forEachMember(tasks.size(), new EnsembleExecutor.MemberTask() {
+                @Override
+                public void run(int taskIndex) {
+                    if (monitor.isCancelled()) {
+                        return;
+                    }
+                    results[taskIndex] = runTask(tasks.get(taskIndex), monitor, repository);
+                    taskFinished(tasks.size(), monitor);
+                }
+            });
+        } finally {
+            this.executor.shutdown();
+        }
+        return results;
+    }
+
+    protected Object runTask(Task task, TaskMonitor monitor, ObjectRepository repository) {
+        TaskMonitor taskMonitor = isParallel() ? new SubtaskMonitor(monitor) : monitor;
+        if (this.memoryBudget != null) {
+            this.memoryBudget.acquireUninterruptibly(this.taskMemory);
+        }
+        try {
+            return task.doTask(taskMonitor, repository);
+        } catch (Throwable e) {
+            return new FailedTaskReport(e);
+        } finally {
+            if (this.memoryBudget != null) {
+                this.memoryBudget.release(this.taskMemory);
+            }
+        }
+    }
+
+    protected synchronized void taskFinished(int numTasks, TaskMonitor monitor) {
+        this.numFinished++;
+        monitor.setCurrentActivity("Finished " + this.numFinished + " of "
+                + numTasks + " tasks...", (double) this.numFinished / numTasks);
+    }
+
+    /**
+     * Appends a suffix to the names of the output files of a task, before
+     * the extension, so that tasks running at the same time do not write to
+     * the same files.
+     */
+    public static void separateOutputFiles(Task task, String suffix) {
+        if (!(task instanceof OptionHandler)) {
+            return;
+        }
+        for (Option option : ((OptionHandler) task).getOptions().getOptionArray()) {
+            if (option instanceof FileOption && ((FileOption) option).isOutputFile()) {
+                FileOption fileOption = (FileOption) option;
+                String fileName = fileOption.getValue();
+                if (fileName != null && fileName.length() > 0) {
+                    int dot = fileName.lastIndexOf('.');
+                    if (dot <= fileName.lastIndexOf(File.separatorChar)) {
+                        dot = fileName.length();
+                    }
+                    fileOption.setValue(fileName.substring(0, dot) + suffix
+                            + fileName.substring(dot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the stream of a task into memory, so that it can be shared by
+     * several tasks with <code>shareStream</code>.
+     *
+     * @return the instances read, or null if the task has no stream option
+     * that accepts cached instances
+     */
+    public static Instances cacheStream(Task task, int maxInstances,
+            TaskMonitor monitor, ObjectRepository repository) {
+        ClassOption streamOption = getStreamOption(task);
+        if (streamOption == null) {
+            return null;
+        }
+        ExampleStream<?> stream = (ExampleStream<?>) streamOption.materializeObject(monitor, repository);
+        if (stream instanceof OptionHandler) {
+            ((OptionHandler) stream).prepareForUse(monitor, repository);
+        }
+        Instances cache = new Instances(stream.getHeader(), 0);
+        monitor.setCurrentActivity("Caching instances...", -1.0);
+        while (cache.numInstances() < maxInstances && stream.hasMoreInstances()) {
+            cache.add((Instance) stream.nextInstance().getData());
+            if (cache.numInstances() % MainTask.INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                if (monitor.taskShouldAbort()) {
+                    return null;
+                }
+                monitor.setCurrentActivityFractionComplete(
+                        (double) cache.numInstances() / maxInstances);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Makes a task read its stream from instances cached with
+     * <code>cacheStream</code>. Tasks sharing the instances see copies of
+     * them, so they can run at the same time.
+     */
+    public static void shareStream(Task task, Instances cache) {
+        ClassOption streamOption = getStreamOption(task);
+        if (streamOption != null) {
+            streamOption.setCurrentObject(new SharedInstancesStream(cache));
+        }
+    }
+
+    protected static ClassOption getStreamOption(Task task) {
+        if (!(task instanceof OptionHandler)) {
+            return null;
+        }
+        for (Option option : ((OptionHandler) task).getOptions().getOptionArray()) {
+            if (option instanceof ClassOption && option.getName().equals("stream")
+                    && ((ClassOption) option).getRequiredType().isAssignableFrom(SharedInstancesStream.class)) {
+                return (ClassOption) option;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the final measurements of every task to one csv file, one line
+     * per task. Measurements missing for a task are written as '?', and the
+     * last column holds the reason why a task failed.
+     *
+     * @param labelName the name of the column labelling the tasks
+     * @param labels the label of every task
+     * @param results the results of the tasks
+     */
+    public static void writeResults(File file, String labelName, String[] labels,
+            Object[] results) throws IOException {
+        Map<String, Integer> columns = new LinkedHashMap<String, Integer>();
+        List<Map<String, Double>> rows = new ArrayList<Map<String, Double>>();
+        for (Object result : results) {
+            Map<String, Double> row = getFinalMeasurements(result);
+            for (String name : row.keySet()) {
+                if (!columns.containsKey(name)) {
+                    columns.put(name, columns.size());
+                }
+            }
+            rows.add(row);
+        }
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.print(labelName);
+            for (String name : columns.keySet()) {
+                writer.print("," + name);
+            }
+            writer.println(",failure");
+            for (int i = 0; i < results.length; i++) {
+                writer.print(labels[i]);
+                Map<String, Double> row = rows.get(i);
+                for (String name : columns.keySet()) {
+                    Double value = row.get(name);
+                    writer.print(',');
+                    writer.print(value == null || value.isNaN() ? "?" : value.toString());
+                }
+                writer.print(',');
+                if (results[i] instanceof FailedTaskReport) {
+                    Throwable reason = ((FailedTaskReport) results[i]).getFailureReason();
+                    writer.print(reason.toString().replaceAll("[,\\r\\n]", " "));
+                } else if (results[i] == null) {
+                    writer.print("not run");
+                }
+                writer.println();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    protected static Map<String, Double> getFinalMeasurements(Object result) {
+        Map<String, Double> measurements = new LinkedHashMap<String, Double>();
+        if (result instanceof Preview) {
+            Preview preview = (Preview) result;
+            if (preview.numEntries() > 0) {
+                double[] entry = preview.getEntryData(preview.numEntries() - 1);
+                for (int i = 0; i < entry.length; i++) {
+                    measurements.put(preview.getMeasurementName(i), entry[i]);
+                }
+            }
+        } else if (result instanceof LearningEvaluation) {
+            for (Measurement measurement : ((LearningEvaluation) result).getMeasurements()) {
+                measurements.put(measurement.getName(), measurement.getValue());
+            }
+        }
+        return measurements;
+    }
+
+    /**
+     * Monitor of a task running on a worker, cancelled when the monitor of
+     * the caller is.
+     */
+    protected static class SubtaskMonitor extends StandardTaskMonitor {
+
+        protected final TaskMonitor parent;
+
+        public SubtaskMonitor(TaskMonitor parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean taskShouldAbort() {
+            return this.parent.isCancelled() || super.taskShouldAbort();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.parent.isCancelled() || super.isCancelled();
+        }
+    }
+
+    /**
+     * Stream over instances shared with other tasks, handing out copies so
+     * that no task sees the changes made by another one.
+     */
+    protected static class SharedInstancesStream extends CachedInstancesStream {
+
+        private static final long serialVersionUID = 1L;
+
+        public SharedInstancesStream(Instances toStream) {
+            super(toStream);
+        }
+
+        @Override
+        public InstanceExample nextInstance() {
+            return new InstanceExample(this.toStream.instance(this.streamPos++).copy());
+        }
+    }
+}
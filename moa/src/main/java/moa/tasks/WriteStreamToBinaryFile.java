@@ -0,0 +1,98 @@
+/*
+ *    WriteStreamToBinaryFile.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+
+import moa.core.ObjectRepository;
+import moa.options.ClassOption;
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.IntOption;
+import com.yahoo.labs.samoa.instances.BinaryInstancesWriter;
+import moa.streams.BinaryFileStream;
+import moa.streams.InstanceStream;
+
+/**
+ * Task to output a stream to a binary instances file, that can be replayed
+ * with {@link BinaryFileStream}.
+ *
+ * @version $Revision: 1 $
+ */
+public class WriteStreamToBinaryFile extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Outputs a stream to a binary instances file.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to write.", InstanceStream.class,
+            "generators.RandomTreeGenerator");
+
+    public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+            "Destination binary instances file.", null, "moab", true);
+
+    public IntOption maxInstancesOption = new IntOption("maxInstances", 'm',
+            "Maximum number of instances to write to file.", 10000000, 0,
+            Integer.MAX_VALUE);
+
+    public IntOption blockSizeOption = new IntOption("blockSize", 'b',
+            "Maximum number of instances stored together in a block of columns.",
+            BinaryInstancesWriter.DEFAULT_BLOCK_SIZE, 1, Integer.MAX_VALUE);
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        InstanceStream stream = (InstanceStream) getPreparedClassOption(this.streamOption);
+        File destFile = this.binaryFileOption.getFile();
+        if (destFile != null) {
+            try {
+                BinaryInstancesWriter w = new BinaryInstancesWriter(destFile,
+                        stream.getHeader(), this.blockSizeOption.getValue());
+                monitor.setCurrentActivityDescription("Writing stream to binary file");
+                int maxInstances = this.maxInstancesOption.getValue();
+                int numWritten = 0;
+                while ((numWritten < maxInstances)
+                        && stream.hasMoreInstances()) {
+                    w.write(stream.nextInstance().getData());
+                    numWritten++;
+                    if (numWritten % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                        if (monitor.taskShouldAbort()) {
+                            w.close();
+                            return null;
+                        }
+                        monitor.setCurrentActivityFractionComplete(
+                                (double) numWritten / maxInstances);
+                    }
+                }
+                w.close();
+            } catch (Exception ex) {
+                throw new RuntimeException(
+                        "Failed writing to file " + destFile, ex);
+            }
+            return "Stream written to binary file " + destFile;
+        }
+        throw new IllegalArgumentException("No destination file to write to.");
+    }
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+}
@@ -0,0 +1,137 @@
+package com.yahoo.labs.samoa.instances;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test that FastArffLoader reads the same instances as ArffLoader.
+ */
+public class FastArffLoaderTest {
+
+	private static final String TRICKY_ARFF =
+			"% a comment before the header\r\n"
+			+ "@RELATION 'tricky relation'\r\n"
+			+ "@attribute 'first attribute' numeric\r\n"
+			+ "@attribute second real % trailing comment\n"
+			+ "@attribute colour {red, 'light blue', \"dark green\"}\n"
+			+ "@attribute class {yes,no}\n"
+			+ "\n"
+			+ "@data\n"
+			+ "1.5,-2e3,red,yes\n"
+			+ "% a comment between rows\n"
+			+ "\n"
+			+ "  0.1 , 3.14159265358979323846 , 'light blue' , no\r\n"
+			+ "?,?,?,?\n"
+			+ "-0,1E-320,\"dark green\",no\n"
+			+ "123456789012345678,4.9e-324,purple,yes\n"
+			+ "1e22,1e23,red,no\n"
+			+ "0.000001,.5,red,yes";
+
+	@Test
+	public void testTrickyFile() throws IOException {
+		assertSameInstances(TRICKY_ARFF, -1, 64);
+		assertSameInstances(TRICKY_ARFF, 3, FastArffLoader.DEFAULT_BUFFER_SIZE);
+	}
+
+	@Test
+	public void testSparseFile() throws IOException {
+		String arff = "@relation sparse\n"
+				+ "@attribute a numeric\n"
+				+ "@attribute b numeric\n"
+				+ "@attribute c {x,y,z}\n"
+				+ "@attribute d numeric\n"
+				+ "@data\n"
+				+ "{0 1.5, 2 z}\n"
+				+ "{1 -3,3 2.25}\n"
+				+ "{}\n"
+				+ "{0 1, 1 2, 2 y, 3 4}\n";
+		assertSameInstances(arff, -1, 1024);
+	}
+
+	@Test
+	public void testDataFiles() throws IOException {
+		String[] files = {"classification.arff", "regression.arff",
+				"small_classification.arff", "small_regression.arff"};
+		for (String file : files) {
+			String path = ClassLoader.getSystemResource("moa/classifiers/data/" + file).getPath();
+			ArffLoader expected = new ArffLoader(new InputStreamReader(new FileInputStream(path)), 0, -1);
+			try (InputStream stream = new FileInputStream(path)) {
+				FastArffLoader actual = new FastArffLoader(stream, 0, -1);
+				assertSameInstances(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		String[] numbers = {"0", "-0", "1", "-1", "0.1", "0.3", "123.456", "1e10", "1.7976931348623157E308",
+				"2.2250738585072014E-308", "9007199254740993", "0.30000000000000004", "1e-22", "1e22",
+				"123456789012345", "1234567890123456", "000000000000000000001.5", "1.000000000000000000001",
+				"NaN", "Infinity", "-Infinity", "3.0d", "+4.5", "7.", ".25e2"};
+		StringBuilder arff = new StringBuilder("@relation numbers\n@attribute x numeric\n@data\n");
+		for (String number : numbers) {
+			arff.append(number).append('\n');
+		}
+		FastArffLoader loader = new FastArffLoader(
+				new ByteArrayInputStream(arff.toString().getBytes(StandardCharsets.UTF_8)), 0, 0);
+		for (String number : numbers) {
+			Instance instance = loader.readInstance();
+			assertEquals(number, Double.doubleToRawLongBits(Double.parseDouble(number)),
+					Double.doubleToRawLongBits(instance.value(0)));
+		}
+		assertNull(loader.readInstance());
+	}
+
+	private static void assertSameInstances(String arff, int classIndex, int bufferSize) throws IOException {
+		ArffLoader expected = new ArffLoader(new StringReader(arff), 0, classIndex);
+		FastArffLoader actual = new FastArffLoader(
+				new ByteArrayInputStream(arff.getBytes(StandardCharsets.UTF_8)), bufferSize);
+		if (classIndex < 0) {
+			actual.getStructure().setClassIndex(actual.getStructure().numAttributes() - 1);
+		} else if (classIndex > 0) {
+			actual.getStructure().setClassIndex(classIndex - 1);
+		}
+		assertSameInstances(expected, actual);
+	}
+
+	private static void assertSameInstances(ArffLoader expected, FastArffLoader actual) {
+		InstanceInformation expectedHeader = expected.getStructure();
+		InstanceInformation actualHeader = actual.getStructure();
+		assertEquals(expectedHeader.getRelationName(), actualHeader.getRelationName());
+		assertEquals(expectedHeader.numAttributes(), actualHeader.numAttributes());
+		assertEquals(expectedHeader.classIndex(), actualHeader.classIndex());
+		for (int i = 0; i < expectedHeader.numAttributes(); i++) {
+			assertEquals(expectedHeader.attribute(i).name(), actualHeader.attribute(i).name());
+			assertEquals(expectedHeader.attribute(i).isNominal(), actualHeader.attribute(i).isNominal());
+		}
+		int numInstances = 0;
+		Instance expectedInstance;
+		while ((expectedInstance = expected.readInstance()) != null) {
+			Instance actualInstance = actual.readInstance();
+			assertNotNull("instance " + numInstances, actualInstance);
+			assertEquals(expectedInstance.getClass(), actualInstance.getClass());
+			assertEquals(expectedInstance.numValues(), actualInstance.numValues());
+			for (int i = 0; i < expectedInstance.numValues(); i++) {
+				assertEquals(expectedInstance.index(i), actualInstance.index(i));
+				assertEquals("instance " + numInstances + ", value " + i,
+						Double.doubleToLongBits(expectedInstance.valueSparse(i)),
+						Double.doubleToLongBits(actualInstance.valueSparse(i)));
+			}
+			numInstances++;
+		}
+		assertNull(actual.readInstance());
+		// unknown nominal values are added to the attributes in the same way
+		for (int i = 0; i < expectedHeader.numAttributes(); i++) {
+			assertEquals(expectedHeader.attribute(i).numValues(), actualHeader.attribute(i).numValues());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package moa.classifiers.bayes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that the compiled naive Bayes models give exactly the votes of the
+ * direct computation, while they are kept up to date during training.
+ */
+public class NaiveBayesScorerTest {
+
+	private static final String[] STREAMS = {
+		"generators.RandomTreeGenerator -o 5 -u 5 -v 4 -c 3",
+		"generators.RandomRBFGeneratorDrift -s 0.001 -a 10 -c 4",
+		"generators.LEDGenerator",
+	};
+
+	@Test
+	public void testSameVotesAsDirectPrediction() throws Exception {
+		for (String cli : STREAMS) {
+			ExampleStream stream = prepare(cli);
+			NaiveBayes nb = new NaiveBayes();
+			nb.prepareForUse();
+			nb.setModelContext(stream.getHeader());
+			for (int n = 0; n < 5000; n++) {
+				Instance inst = (Instance) stream.nextInstance().getData();
+				double[] expected = NaiveBayes.doNaiveBayesPrediction(inst,
+						nb.observedClassDistribution, nb.attributeObservers);
+				assertArrayEquals(cli + ", instance " + n, expected, nb.getVotesForInstance(inst), 0);
+				if (n % 1000 == 999) {
+					List<Instance> batch = new ArrayList<Instance>();
+					for (int i = 0; i < 100; i++) {
+						batch.add((Instance) stream.nextInstance().getData());
+					}
+					double[][] votes = nb.getVotesForInstances(batch);
+					for (int i = 0; i < batch.size(); i++) {
+						expected = NaiveBayes.doNaiveBayesPrediction(batch.get(i),
+								nb.observedClassDistribution, nb.attributeObservers);
+						assertArrayEquals(cli + ", batch instance " + i, expected, votes[i], 0);
+					}
+				}
+				nb.trainOnInstance(inst);
+			}
+		}
+	}
+
+	@Test
+	public void testMultinomialCacheIsKeptUpToDate() throws Exception {
+		ExampleStream stream = prepare("generators.RandomRBFGenerator -a 20 -c 3");
+		NaiveBayesMultinomial nbm = new NaiveBayesMultinomial();
+		nbm.prepareForUse();
+		nbm.setModelContext(stream.getHeader());
+		for (int n = 0; n < 3000; n++) {
+			Instance inst = (Instance) stream.nextInstance().getData();
+			double[] votes = nbm.getVotesForInstance(inst);
+			if (n % 100 == 0) {
+				// a copy computes its logarithms from scratch
+				NaiveBayesMultinomial copy = (NaiveBayesMultinomial) nbm.copy();
+				assertArrayEquals("instance " + n, copy.getVotesForInstance(inst), votes, 0);
+			}
+			nbm.trainOnInstance(inst);
+		}
+	}
+
+	private static ExampleStream prepare(String cli) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(cli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,174 @@
+package moa.classifiers.core.attributeclassobservers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.core.splitcriteria.GiniSplitCriterion;
+import moa.classifiers.core.splitcriteria.InfoGainSplitCriterion;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+import moa.classifiers.trees.HoeffdingTree;
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+import moa.options.OptionHandler;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Test that SortedArrayNumericAttributeClassObserver finds the same splits as
+ * BinaryTreeNumericAttributeClassObserver, and stays bounded.
+ */
+public class SortedArrayNumericAttributeClassObserverTest {
+
+	@Test
+	public void testSameSplitsAsBinaryTree() {
+		SplitCriterion[] criteria = {new InfoGainSplitCriterion(), new GiniSplitCriterion()};
+		for (SplitCriterion criterion : criteria) {
+			Random random = new Random(1);
+			BinaryTreeNumericAttributeClassObserver expected = new BinaryTreeNumericAttributeClassObserver();
+			SortedArrayNumericAttributeClassObserver actual = new SortedArrayNumericAttributeClassObserver();
+			actual.maxValuesOption.setValue(0);
+			actual.prepareForUse();
+			double[] preSplitDist = new double[3];
+			for (int n = 0; n < 3000; n++) {
+				// rounded, so that values repeat
+				double value = Math.round(random.nextGaussian() * 1000) / 100.0;
+				int classVal = value < -2 ? 0 : random.nextInt(3);
+				double weight = 1 + random.nextInt(3);
+				expected.observeAttributeClass(value, classVal, weight);
+				actual.observeAttributeClass(value, classVal, weight);
+				preSplitDist[classVal] += weight;
+				if (n % 100 == 99) {
+					AttributeSplitSuggestion e = expected.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true);
+					AttributeSplitSuggestion a = actual.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true);
+					assertEquals("instance " + n, e.merit, a.merit, 1e-12);
+					assertEquals("instance " + n, ((NumericAttributeBinaryTest) e.splitTest).getSplitValue(),
+							((NumericAttributeBinaryTest) a.splitTest).getSplitValue(), 0);
+					for (int branch = 0; branch < 2; branch++) {
+						for (int c = 0; c < 3; c++) {
+							assertEquals(e.resultingClassDistributionFromSplit(branch)[c],
+									c < a.resultingClassDistributionFromSplit(branch).length
+									? a.resultingClassDistributionFromSplit(branch)[c] : 0, 1e-9);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSortedValuesStayBounded() {
+		SortedArrayNumericAttributeClassObserver obs = new SortedArrayNumericAttributeClassObserver();
+		obs.maxValuesOption.setValue(100);
+		obs.prepareForUse();
+		double[] preSplitDist = new double[2];
+		for (int n = 0; n < 100000; n++) {
+			obs.observeAttributeClass(n, n < 30000 ? 0 : 1, 1);
+			preSplitDist[n < 30000 ? 0 : 1]++;
+		}
+		assertEquals(100, obs.getNumValues());
+		AttributeSplitSuggestion split = obs.getBestEvaluatedSplitSuggestion(new InfoGainSplitCriterion(), preSplitDist, 0, true);
+		double cut = ((NumericAttributeBinaryTest) split.splitTest).getSplitValue();
+		assertTrue("cut point " + cut, Math.abs(cut - 29999) < 1000);
+	}
+
+	@Test
+	public void testMergesLikeRescan() {
+		SortedArrayNumericAttributeClassObserver obs = new SortedArrayNumericAttributeClassObserver();
+		obs.maxValuesOption.setValue(50);
+		obs.prepareForUse();
+		// values and class weights, merged by rescanning every neighbouring pair
+		List<Double> values = new ArrayList<Double>();
+		List<double[]> weights = new ArrayList<double[]>();
+		Random random = new Random(1);
+		for (int n = 0; n < 20000; n++) {
+			// integers, so that merge costs are often equal
+			double value = random.nextInt(n < 10000 ? 500 : 2000);
+			int classVal = random.nextInt(3);
+			obs.observeAttributeClass(value, classVal, 1);
+			int index = 0;
+			while (index < values.size() && values.get(index) < value) {
+				index++;
+			}
+			if (index == values.size() || values.get(index) != value) {
+				values.add(index, value);
+				weights.add(index, new double[3]);
+			}
+			weights.get(index)[classVal]++;
+			if (values.size() > 50) {
+				int closest = 0;
+				double smallestCost = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < values.size() - 1; i++) {
+					double cost = (values.get(i + 1) - values.get(i)) * (sum(weights.get(i)) + sum(weights.get(i + 1)));
+					if (cost < smallestCost) {
+						smallestCost = cost;
+						closest = i;
+					}
+				}
+				for (int c = 0; c < 3; c++) {
+					weights.get(closest + 1)[c] += weights.get(closest)[c];
+				}
+				values.remove(closest);
+				weights.remove(closest);
+			}
+			assertEquals(values.size(), obs.getNumValues());
+			for (int i = 0; i < values.size(); i++) {
+				assertEquals("instance " + n, values.get(i), obs.values[i], 0);
+				for (int c = 0; c < 3; c++) {
+					assertEquals("instance " + n, weights.get(i)[c],
+							c < obs.numClasses ? obs.classWeights[obs.slots[i] * obs.numClasses + c] : 0, 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDescription() {
+		SortedArrayNumericAttributeClassObserver observer = new SortedArrayNumericAttributeClassObserver();
+		observer.maxValuesOption.setValue(10);
+		observer.prepareForUse();
+		observer.observeAttributeClass(2.5, 0, 1);
+		observer.observeAttributeClass(-1, 1, 1);
+		observer.observeAttributeClass(2.5, 1, 1);
+		assertEquals("Sorted array of 2 distinct values (at most 10) from -1.0 to 2.5, 2 classes", observer.toString());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testNumericTargetIsRejected() {
+		new SortedArrayNumericAttributeClassObserver().observeAttributeTarget(1, 1);
+	}
+
+	private static double sum(double[] weights) {
+		double sum = 0;
+		for (double weight : weights) {
+			sum += weight;
+		}
+		return sum;
+	}
+
+	@Test
+	public void testHoeffdingTree() throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(
+				"generators.RandomRBFGeneratorDrift -s 0.001", ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		HoeffdingTree ht = new HoeffdingTree();
+		ht.numericEstimatorOption.setValueViaCLIString("SortedArrayNumericAttributeClassObserver -m 200");
+		ht.prepareForUse();
+		ht.setModelContext(stream.getHeader());
+		int correct = 0;
+		for (int n = 0; n < 20000; n++) {
+			Instance inst = (Instance) stream.nextInstance().getData();
+			if (ht.correctlyClassifies(inst)) {
+				correct++;
+			}
+			ht.trainOnInstance(inst);
+		}
+		assertTrue(ht.getModelMeasurements()[1].getValue() > 1);
+		assertTrue("accuracy " + correct / 20000.0, correct > 0.6 * 20000);
+	}
+}
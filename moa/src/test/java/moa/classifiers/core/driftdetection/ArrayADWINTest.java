@@ -0,0 +1,66 @@
+package moa.classifiers.core.driftdetection;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test that ArrayADWIN gives the same estimations and detections as ADWIN.
+ */
+public class ArrayADWINTest {
+
+	@Test
+	public void testBernoulliWithDrifts() {
+		for (double delta : new double[] {0.002, 0.1, 1e-5}) {
+			Random random = new Random(1);
+			ADWIN expected = new ADWIN(delta);
+			ADWIN actual = new ArrayADWIN(delta);
+			for (int n = 0; n < 200000; n++) {
+				double p = (n / 20000) % 2 == 0 ? 0.2 : 0.6;
+				double value = random.nextDouble() < p ? 1 : 0;
+				assertSameState("delta " + delta + ", input " + n, expected, actual, value);
+			}
+			assertTrue(expected.getNumberDetections() > 0);
+		}
+	}
+
+	@Test
+	public void testGaussianWithClock() {
+		Random random = new Random(2);
+		ADWIN expected = new ADWIN(1);
+		ADWIN actual = new ArrayADWIN(1);
+		for (int n = 0; n < 50000; n++) {
+			double value = random.nextGaussian() + (n > 25000 ? 0.5 * Math.sin(n / 500.0) : 0);
+			assertSameState("input " + n, expected, actual, value);
+		}
+	}
+
+	@Test
+	public void testChangeDetector() {
+		ADWINChangeDetector expected = new ADWINChangeDetector();
+		expected.prepareForUse();
+		ADWINChangeDetector actual = new ADWINChangeDetector();
+		actual.arrayBucketsOption.setValue(true);
+		actual.prepareForUse();
+		Random random = new Random(3);
+		for (int n = 0; n < 100000; n++) {
+			double value = random.nextDouble() < ((n / 10000) % 2 == 0 ? 0.1 : 0.3) ? 1 : 0;
+			expected.input(value);
+			actual.input(value);
+			assertEquals(expected.getChange(), actual.getChange());
+			assertEquals(expected.getEstimation(), actual.getEstimation(), 0);
+		}
+	}
+
+	private static void assertSameState(String message, ADWIN expected, ADWIN actual, double value) {
+		assertEquals(message, expected.setInput(value), actual.setInput(value));
+		assertEquals(message, expected.getWidth(), actual.getWidth());
+		assertEquals(message, expected.getDetect(), actual.getDetect());
+		assertEquals(message, expected.getBucketsUsed(), actual.getBucketsUsed());
+		assertEquals(message, expected.getTotal(), actual.getTotal(), 0);
+		assertEquals(message, expected.getVariance(), actual.getVariance(), 0);
+		assertEquals(message, expected.getWidthT(), actual.getWidthT(), 0);
+	}
+}
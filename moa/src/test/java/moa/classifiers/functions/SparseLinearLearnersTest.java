@@ -0,0 +1,182 @@
+package moa.classifiers.functions;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+
+/**
+ * Test that the linear learners learn the same models from sparse instances
+ * as from the equivalent dense ones, and that SGD with lazily scaled weights
+ * matches an SGD decaying every weight.
+ */
+public class SparseLinearLearnersTest {
+
+	private static final int NUM_ATTRIBUTES = 300;
+
+	private static final String[] LEARNERS = {
+		"functions.SGD",
+		"functions.SGD -o LOGLOSS -r 0.01",
+		"functions.SGDMultiClass -o LOGLOSS -r 0.01",
+		"functions.SPegasos",
+		"functions.Perceptron",
+		"functions.AdaGrad -o LOGLOSS",
+	};
+
+	@Test
+	public void testSparseAndDenseAgree() throws Exception {
+		for (String cli : LEARNERS) {
+			int numClasses = cli.contains("MultiClass") || cli.contains("Perceptron") ? 3 : 2;
+			InstancesHeader header = newHeader(numClasses);
+			Classifier sparseLearner = newLearner(cli, header);
+			Classifier denseLearner = newLearner(cli, header);
+			Random random = new Random(1);
+			for (int n = 0; n < 2000; n++) {
+				Instance sparse = newSparseInstance(random, header, numClasses);
+				Instance dense = new DenseInstance(sparse);
+				dense.setDataset(header);
+				assertArrayEquals(cli + ", instance " + n, denseLearner.getVotesForInstance(dense),
+						sparseLearner.getVotesForInstance(sparse), 1e-12);
+				sparseLearner.trainOnInstance(sparse);
+				denseLearner.trainOnInstance(dense);
+			}
+		}
+	}
+
+	@Test
+	public void testLazyWeightDecay() throws Exception {
+		// the second setup decays the weights to 0 and then below MIN_SCALE
+		for (String options : new String[]{"-o LOGLOSS -r 0.05 -l 0.01", "-o LOGLOSS -r 1 -l 2"}) {
+			InstancesHeader header = newHeader(2);
+			SGD sgd = (SGD) newLearner("functions.SGD " + options, header);
+			EagerSGD eager = new EagerSGD(sgd.learningRateOption.getValue(),
+					sgd.lambdaRegularizationOption.getValue());
+			Random random = new Random(2);
+			for (int n = 0; n < 5000; n++) {
+				Instance instance = newSparseInstance(random, header, 2);
+				if (n > 0) {
+					double expected = 1.0 / (1.0 + Math.exp(-eager.margin(instance)));
+					assertEquals(options + ", instance " + n, expected,
+							sgd.getVotesForInstance(instance)[1], 1e-9);
+				}
+				sgd.trainOnInstance(instance);
+				eager.train(instance);
+			}
+		}
+	}
+
+	/**
+	 * Logistic regression trained by SGD as it was before weights were
+	 * scaled lazily.
+	 */
+	private static class EagerSGD {
+
+		final double learningRate;
+
+		final double lambda;
+
+		final double[] weights = new double[NUM_ATTRIBUTES];
+
+		double bias;
+
+		double t = 1;
+
+		EagerSGD(double learningRate, double lambda) {
+			this.learningRate = learningRate;
+			this.lambda = lambda;
+		}
+
+		double margin(Instance inst) {
+			double wx = 0;
+			for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+				wx += this.weights[i] * inst.value(i);
+			}
+			return wx + this.bias;
+		}
+
+		void train(Instance inst) {
+			double y = inst.classValue() == 0 ? -1 : 1;
+			double z = y * margin(inst);
+			double multiplier = 1.0 - (this.learningRate * this.lambda) / this.t;
+			for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+				this.weights[i] *= multiplier;
+			}
+			double dloss = z < 0 ? 1.0 / (Math.exp(z) + 1.0) : Math.exp(-z) / (Math.exp(-z) + 1);
+			double factor = this.learningRate * y * dloss;
+			for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+				this.weights[i] += factor * inst.value(i);
+			}
+			this.bias += factor;
+			this.t++;
+		}
+	}
+
+	private static InstancesHeader newHeader(int numClasses) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+			attributes.add(new Attribute("word" + i));
+		}
+		List<String> classValues = new ArrayList<String>();
+		for (int c = 0; c < numClasses; c++) {
+			classValues.add("class" + c);
+		}
+		attributes.add(new Attribute("class", classValues));
+		InstancesHeader header = new InstancesHeader(new Instances("sparse", attributes, 0));
+		header.setClassIndex(NUM_ATTRIBUTES);
+		return header;
+	}
+
+	/**
+	 * Instances with a few words each, whose class depends on the first
+	 * words.
+	 */
+	private static Instance newSparseInstance(Random random, InstancesHeader header, int numClasses) {
+		int numWords = 1 + random.nextInt(10);
+		int[] indices = new int[numWords + 1];
+		for (int i = 0; i < numWords; i++) {
+			indices[i] = random.nextInt(NUM_ATTRIBUTES);
+		}
+		indices[numWords] = NUM_ATTRIBUTES;
+		Arrays.sort(indices, 0, numWords);
+		int distinct = 0;
+		for (int i = 0; i <= numWords; i++) {
+			if (distinct == 0 || indices[i] != indices[distinct - 1]) {
+				indices[distinct++] = indices[i];
+			}
+		}
+		indices = Arrays.copyOf(indices, distinct);
+		double[] values = new double[distinct];
+		int classValue = 0;
+		for (int i = 0; i < distinct - 1; i++) {
+			values[i] = 1 + random.nextInt(3);
+			if (indices[i] < 30) {
+				classValue = indices[i] % numClasses;
+			}
+		}
+		values[distinct - 1] = classValue;
+		Instance instance = new SparseInstance(1.0, values, indices, NUM_ATTRIBUTES + 1);
+		instance.setDataset(header);
+		return instance;
+	}
+
+	private static Classifier newLearner(String cli, InstancesHeader header) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+		learner.setModelContext(header);
+		learner.prepareForUse();
+		return learner;
+	}
+}
@@ -0,0 +1,77 @@
+package moa.classifiers.meta;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that the ensembles training their members on a whole batch give the
+ * same votes as when trained on one instance at a time.
+ */
+public class BatchTrainingTest {
+
+	private static final String[][] LEARNERS = {
+		{"meta.AdaptiveRandomForest -s 5", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.AdaptiveRandomForest -s 5 -j 4", "generators.AgrawalGenerator"},
+		{"meta.OzaBag -s 5", "generators.LEDGenerator"},
+		{"meta.OzaBag -s 5 -j 4", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.StreamingRandomPatches -s 5", "generators.AgrawalGenerator"},
+		{"meta.StreamingRandomPatches -s 5 -j 4", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.AdaptiveRandomForestRegressor -s 5", null},
+		{"meta.AdaptiveRandomForestRegressor -s 5 -j 4", null},
+	};
+
+	@Test
+	public void testSameVotes() throws Exception {
+		for (String[] setup : LEARNERS) {
+			String learner = setup[0];
+			String stream = setup[1] != null ? setup[1] : regressionStream();
+			Classifier single = newLearner(learner, stream);
+			Classifier batched = newLearner(learner, stream);
+			ExampleStream instances = newStream(stream);
+			List<Instance> batch = new ArrayList<Instance>();
+			for (int n = 0; n < 2000 && instances.hasMoreInstances(); n++) {
+				Instance instance = (Instance) instances.nextInstance().getData();
+				if (batch.isEmpty()) {
+					assertArrayEquals(learner + " on " + stream + ", instance " + n,
+							single.getVotesForInstance(instance), batched.getVotesForInstance(instance), 0);
+				}
+				single.trainOnInstance(instance);
+				batch.add(instance);
+				// batches of varying sizes
+				if (batch.size() == 1 + n % 37) {
+					batched.trainOnInstances(batch);
+					batch.clear();
+				}
+			}
+		}
+	}
+
+	private static String regressionStream() {
+		return "ArffFileStream -f "
+				+ BatchTrainingTest.class.getResource("/moa/classifiers/data/regression.arff").getPath();
+	}
+
+	private static Classifier newLearner(String cli, String streamCli) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+		learner.setModelContext(newStream(streamCli).getHeader());
+		learner.prepareForUse();
+		return learner;
+	}
+
+	private static ExampleStream newStream(String cli) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(cli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,76 @@
+package moa.classifiers.meta;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that the bagging ensembles vote and train their members on several
+ * threads with the same outcome as on a single thread.
+ */
+public class ParallelEnsembleTest {
+
+	private static final String[][] LEARNERS = {
+		{"meta.AdaptiveRandomForest -s 5", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.AdaptiveRandomForest -s 5", "generators.AgrawalGenerator"},
+		{"meta.StreamingRandomPatches -s 5", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.StreamingRandomPatches -s 5 -t (Random Subspaces)", "generators.AgrawalGenerator"},
+		// sensitive detectors, so that subspaces are reset
+		{"meta.StreamingRandomPatches -s 5 -x (ADWINChangeDetector -a 0.1) -p (ADWINChangeDetector -a 0.3)",
+			"generators.RandomRBFGeneratorDrift -s 0.01 -c 3"},
+		{"meta.OzaBag -s 5", "generators.LEDGenerator"},
+		{"meta.OzaBag -s 5", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.LeveragingBag -s 5", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.LeveragingBag -s 5 -m LeveragingBagME", "generators.RandomRBFGeneratorDrift -s 0.001 -c 3"},
+		{"meta.LeveragingBag -s 5 -m LeveragingBagME", "generators.AgrawalGenerator"},
+		{"meta.LeveragingBag -s 5 -o", "generators.LEDGenerator"},
+		{"meta.LeveragingBag -s 5 -o -m LeveragingBagME", "generators.RandomRBFGeneratorDrift -s 0.001 -c 4"},
+		{"meta.AdaptiveRandomForestRegressor -s 5", null},
+	};
+
+	@Test
+	public void testSameVotes() throws Exception {
+		for (String[] setup : LEARNERS) {
+			String stream = setup[1] != null ? setup[1] : regressionStream();
+			for (int seed = 1; seed <= 2; seed++) {
+				String learner = setup[0];
+				Classifier sequential = newLearner(learner + " -j 1", seed, stream);
+				Classifier parallel = newLearner(learner + " -j 4", seed, stream);
+				ExampleStream instances = newStream(stream);
+				for (int n = 0; n < 3000 && instances.hasMoreInstances(); n++) {
+					Instance instance = (Instance) instances.nextInstance().getData();
+					assertArrayEquals(learner + " on " + stream + ", seed " + seed + ", instance " + n,
+							sequential.getVotesForInstance(instance), parallel.getVotesForInstance(instance), 0);
+					sequential.trainOnInstance(instance);
+					parallel.trainOnInstance(instance);
+				}
+			}
+		}
+	}
+
+	private static String regressionStream() {
+		return "ArffFileStream -f "
+				+ ParallelEnsembleTest.class.getResource("/moa/classifiers/data/regression.arff").getPath();
+	}
+
+	private static Classifier newLearner(String cli, int seed, String streamCli) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+		learner.setRandomSeed(seed);
+		learner.setModelContext(newStream(streamCli).getHeader());
+		learner.prepareForUse();
+		return learner;
+	}
+
+	private static ExampleStream newStream(String cli) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(cli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,79 @@
+package moa.classifiers.meta;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that training and scoring the committees of SGBT on several threads
+ * gives the same votes as on a single thread, also once the learner is copied.
+ */
+public class StreamingGradientBoostedTreesParallelTest {
+
+	private static final String LEARNER = "meta.StreamingGradientBoostedTrees -s 5 -l (trees.FIMTDD -s VarianceReductionSplitCriterion -g 25 -c 0.05 -e -p)";
+
+	private static final String[] STREAMS = {
+		"generators.LEDGenerator",
+		"generators.RandomRBFGenerator -c 4",
+		"generators.AgrawalGenerator",
+	};
+
+	@Test
+	public void testSameVotes() throws Exception {
+		for (String stream : STREAMS) {
+			Classifier sequential = newLearner(LEARNER + " -j 0", stream);
+			Classifier parallel = newLearner(LEARNER + " -j 4", stream);
+			ExampleStream instances = newStream(stream);
+			for (int n = 0; n < 2000; n++) {
+				Instance instance = (Instance) instances.nextInstance().getData();
+				assertArrayEquals(stream + ", instance " + n,
+						sequential.getVotesForInstance(instance), parallel.getVotesForInstance(instance), 0);
+				sequential.trainOnInstance(instance);
+				parallel.trainOnInstance(instance);
+			}
+		}
+	}
+
+	@Test
+	public void testCopyScoresInParallel() throws Exception {
+		for (String stream : new String[] {"generators.AgrawalGenerator", "generators.LEDGenerator"}) {
+			StreamingGradientBoostedTrees learner = (StreamingGradientBoostedTrees) newLearner(LEARNER + " -j 4", stream);
+			ExampleStream instances = newStream(stream);
+			for (int n = 0; n < 500; n++) {
+				learner.trainOnInstance((Instance) instances.nextInstance().getData());
+			}
+			StreamingGradientBoostedTrees copy = (StreamingGradientBoostedTrees) learner.copy();
+			for (int n = 0; n < 200; n++) {
+				Instance instance = (Instance) instances.nextInstance().getData();
+				assertArrayEquals(stream + ", instance " + n,
+						learner.getVotesForInstance(instance), copy.getVotesForInstance(instance), 0);
+				learner.trainOnInstance(instance);
+				copy.trainOnInstance(instance);
+			}
+			assertTrue(stream, copy.executor.isParallel());
+			if (copy.SGBTCommittee.length == 1) {
+				assertSame(stream, copy.executor, copy.SGBTCommittee[0].executor);
+			}
+		}
+	}
+
+	private static Classifier newLearner(String cli, String streamCli) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+		learner.setModelContext(newStream(streamCli).getHeader());
+		learner.prepareForUse();
+		return learner;
+	}
+
+	private static ExampleStream newStream(String cli) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(cli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,68 @@
+package moa.classifiers.trees;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that the trees predict the same votes when routing the instances
+ * through a FlatTree.
+ */
+public class FlatTreeTest {
+
+	private static final String[] LEARNERS = {
+		"trees.HoeffdingTree -g 50",
+		"trees.HoeffdingTree -l MC -b -g 50",
+		"trees.HoeffdingAdaptiveTree -g 50",
+		"trees.EFDT -g 50",
+	};
+
+	private static final String[] STREAMS = {
+		"generators.RandomTreeGenerator",
+		"generators.AgrawalGenerator",
+		"generators.LEDGenerator",
+	};
+
+	@Test
+	public void testSameVotes() throws Exception {
+		for (String learner : LEARNERS) {
+			for (String stream : STREAMS) {
+				assertSameVotes(learner, stream, 20000);
+			}
+		}
+	}
+
+	private static void assertSameVotes(String learner, String streamCli, int numInstances) throws Exception {
+		Classifier pointer = (Classifier) ClassOption.cliStringToObject(learner, Classifier.class, null);
+		Classifier flat = (Classifier) ClassOption.cliStringToObject(learner + " -f", Classifier.class, null);
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(streamCli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		pointer.setModelContext(stream.getHeader());
+		pointer.prepareForUse();
+		flat.setModelContext(stream.getHeader());
+		flat.prepareForUse();
+
+		Random random = new Random(1);
+		for (int n = 0; n < numInstances; n++) {
+			Instance instance = ((Instance) stream.nextInstance().getData()).copy();
+			for (int i = 0; i < instance.numAttributes(); i++) {
+				if (i != instance.classIndex() && random.nextDouble() < 0.05) {
+					instance.setMissing(i);
+				}
+			}
+			assertArrayEquals(learner + " on " + streamCli + ", instance " + n,
+					pointer.getVotesForInstance(instance), flat.getVotesForInstance(instance), 0);
+			pointer.trainOnInstance(instance);
+			flat.trainOnInstance(instance);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package moa.classifiers.trees;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.trees.HoeffdingTree.LearningNodeNB;
+import moa.classifiers.trees.HoeffdingTree.Node;
+import moa.core.Utils;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that evaluating the split attributes on several threads grows the same
+ * trees, that trees attempting splits in the background still learn, and
+ * that their threads do not keep discarded trees alive.
+ */
+public class ParallelSplitEvaluationTest {
+
+	private static final String[] LEARNERS = {
+		"trees.HoeffdingTree -g 50",
+		"trees.HoeffdingTree -b -g 50 -r",
+		"trees.ARFHoeffdingTree -g 50",
+		"trees.EFDT -g 50",
+	};
+
+	private static final String[] STREAMS = {
+		"generators.RandomTreeGenerator",
+		"generators.AgrawalGenerator",
+		"generators.LEDGenerator",
+	};
+
+	@Test
+	public void testSameVotes() throws Exception {
+		for (String learner : LEARNERS) {
+			for (String stream : STREAMS) {
+				Classifier sequential = newLearner(learner, stream);
+				Classifier parallel = newLearner(learner + " -j 4", stream);
+				ExampleStream instances = newStream(stream);
+				for (int n = 0; n < 20000; n++) {
+					Instance instance = (Instance) instances.nextInstance().getData();
+					assertArrayEquals(learner + " on " + stream + ", instance " + n,
+							sequential.getVotesForInstance(instance), parallel.getVotesForInstance(instance), 0);
+					sequential.trainOnInstance(instance);
+					parallel.trainOnInstance(instance);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAsyncSplits() throws Exception {
+		String stream = "generators.RandomTreeGenerator";
+		double synchronousAccuracy = accuracy(newLearner("trees.HoeffdingTree -g 50", stream), stream);
+		HoeffdingTree asynchronous = (HoeffdingTree) newLearner("trees.HoeffdingTree -g 50 -a -j 2", stream);
+		double asynchronousAccuracy = accuracy(asynchronous, stream);
+		assertTrue("tree size " + asynchronous.getNodeCount(), asynchronous.getNodeCount() > 1);
+		assertEquals(synchronousAccuracy, asynchronousAccuracy, 0.05);
+	}
+
+	@Test
+	public void testAsyncSplitsNaiveBayesLeaves() throws Exception {
+		for (String leafPrediction : new String[] {"NB", "NBAdaptive"}) {
+			for (String stream : STREAMS) {
+				HoeffdingTree tree = (HoeffdingTree) newLearner("trees.HoeffdingTree -g 50 -a -l " + leafPrediction, stream);
+				ExampleStream instances = newStream(stream);
+				for (int n = 0; n < 10000; n++) {
+					Instance instance = (Instance) instances.nextInstance().getData();
+					Node leaf = tree.treeRoot == null ? null : tree.treeRoot.filterInstanceToLeaf(instance, null, -1).node;
+					if (leaf instanceof LearningNodeNB) {
+						LearningNodeNB nbLeaf = (LearningNodeNB) leaf;
+						assertArrayEquals(leafPrediction + " on " + stream + ", instance " + n,
+								NaiveBayes.doNaiveBayesPrediction(instance, nbLeaf.observedClassDistribution,
+										nbLeaf.attributeObservers),
+								nbLeaf.getNaiveBayesVotes(instance), 0);
+					}
+					tree.trainOnInstance(instance);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDiscardedTreesCollected() throws Exception {
+		String stream = "generators.RandomTreeGenerator";
+		ExampleStream instances = newStream(stream);
+		WeakReference<Classifier>[] references = new WeakReference[20];
+		for (int i = 0; i < references.length; i++) {
+			Classifier tree = newLearner("trees.HoeffdingTree -g 50 -a", stream);
+			for (int n = 0; n < 1000; n++) {
+				tree.trainOnInstance((Instance) instances.nextInstance().getData());
+			}
+			references[i] = new WeakReference<Classifier>(tree);
+		}
+		for (int attempt = 0; attempt < 50 && numAlive(references) > 0; attempt++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(0, numAlive(references));
+	}
+
+	private static int numAlive(WeakReference<Classifier>[] references) {
+		int alive = 0;
+		for (WeakReference<Classifier> reference : references) {
+			if (reference.get() != null) {
+				alive++;
+			}
+		}
+		return alive;
+	}
+
+	private static double accuracy(Classifier learner, String streamCli) throws Exception {
+		ExampleStream stream = newStream(streamCli);
+		int correct = 0;
+		int numInstances = 50000;
+		for (int n = 0; n < numInstances; n++) {
+			Instance instance = (Instance) stream.nextInstance().getData();
+			if (Utils.maxIndex(learner.getVotesForInstance(instance)) == (int) instance.classValue()) {
+				correct++;
+			}
+			learner.trainOnInstance(instance);
+		}
+		return correct / (double) numInstances;
+	}
+
+	private static Classifier newLearner(String cli, String streamCli) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+		learner.setModelContext(newStream(streamCli).getHeader());
+		learner.prepareForUse();
+		return learner;
+	}
+
+	private static ExampleStream newStream(String cli) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(cli, ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,156 @@
+package moa.clusterers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.cluster.Clustering;
+import moa.clusterers.clustream.Clustream;
+import moa.clusterers.denstream.WithDBSCAN;
+import moa.streams.generators.RandomRBFGenerator;
+
+/**
+ * Test that the center index finds the same slots as linear scans while
+ * centers move, and that the clusterers using it find the same
+ * micro-clusters as with linear searches.
+ */
+public class CenterIndexTest {
+
+	@Test
+	public void testSearches() {
+		Random random = new Random(1);
+		int dimensions = 3;
+		CenterIndex index = new CenterIndex(dimensions);
+		List<double[]> centers = new ArrayList<double[]>();
+		List<Double> reaches = new ArrayList<Double>();
+		for (int step = 0; step < 3000; step++) {
+			int action = random.nextInt(10);
+			if (action < 4 || centers.size() < 2) {
+				double[] center = randomPoint(random, dimensions);
+				double reach = random.nextDouble();
+				index.set(centers.size(), center, reach);
+				centers.add(center);
+				reaches.add(reach);
+			} else if (action < 7) {
+				// small moves and far jumps
+				int slot = random.nextInt(centers.size());
+				double[] center = centers.get(slot).clone();
+				double scale = action == 6 ? 10 : 0.05;
+				for (int i = 0; i < dimensions; i++) {
+					center[i] += scale * (random.nextDouble() - 0.5);
+				}
+				index.set(slot, center, reaches.get(slot));
+				centers.set(slot, center);
+			} else if (action < 8) {
+				int slot = random.nextInt(centers.size());
+				index.remove(slot);
+				centers.remove(slot);
+				reaches.remove(slot);
+			}
+			assertEquals(centers.size(), index.size());
+			double[] point = randomPoint(random, dimensions);
+			assertEquals(linearNearest(index, point, 0, -1, Double.MAX_VALUE), index.nearest(point));
+			int from = random.nextInt(centers.size());
+			int excluded = random.nextInt(centers.size());
+			double maxDistance = random.nextDouble();
+			assertEquals(linearNearest(index, point, from, excluded, maxDistance),
+					index.nearest(point, from, excluded, maxDistance));
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int slot = 0; slot < centers.size(); slot++) {
+				if (index.distance(point, slot) <= reaches.get(slot)) {
+					expected.add(slot);
+				}
+			}
+			int[] found = index.withinReach(point);
+			assertEquals(expected.size(), found.length);
+			for (int i = 0; i < found.length; i++) {
+				assertEquals((int) expected.get(i), found[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testTies() {
+		CenterIndex index = new CenterIndex(2);
+		for (int slot = 0; slot < 100; slot++) {
+			// few distinct centers, each one in several slots
+			index.set(slot, new double[]{slot % 7, slot % 3});
+		}
+		Random random = new Random(2);
+		for (int n = 0; n < 200; n++) {
+			double[] point = new double[]{random.nextInt(8), random.nextInt(4)};
+			assertEquals(linearNearest(index, point, 0, -1, Double.MAX_VALUE), index.nearest(point));
+			assertEquals(linearNearest(index, point, 10, 12, Double.MAX_VALUE),
+					index.nearest(point, 10, 12, Double.MAX_VALUE));
+		}
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(-1, index.nearest(new double[]{0, 0}));
+	}
+
+	@Test
+	public void testClusterers() {
+		Clustream indexed = new Clustream();
+		indexed.maxNumKernelsOption.setValue(300);
+		indexed.prepareForUse();
+		Clustream linear = new Clustream();
+		linear.maxNumKernelsOption.setValue(300);
+		linear.linearSearchOption.set();
+		linear.prepareForUse();
+		WithDBSCAN indexedDenStream = new WithDBSCAN();
+		indexedDenStream.epsilonOption.setValue(0.05);
+		indexedDenStream.prepareForUse();
+		WithDBSCAN linearDenStream = new WithDBSCAN();
+		linearDenStream.epsilonOption.setValue(0.05);
+		linearDenStream.linearSearchOption.set();
+		linearDenStream.prepareForUse();
+		RandomRBFGenerator stream = new RandomRBFGenerator();
+		stream.numAttsOption.setValue(5);
+		stream.prepareForUse();
+		for (int n = 0; n < 10000; n++) {
+			Instance instance = stream.nextInstance().getData();
+			indexed.trainOnInstance(instance);
+			linear.trainOnInstance(instance);
+			indexedDenStream.trainOnInstance(instance);
+			linearDenStream.trainOnInstance(instance);
+		}
+		assertSameCenters(linear.getMicroClusteringResult(), indexed.getMicroClusteringResult());
+		assertSameCenters(linearDenStream.getMicroClusteringResult(),
+				indexedDenStream.getMicroClusteringResult());
+	}
+
+	private static int linearNearest(CenterIndex index, double[] point, int from, int excluded,
+			double maxDistance) {
+		int best = -1;
+		double minDistance = maxDistance;
+		for (int slot = from; slot < index.size(); slot++) {
+			double d = index.distance(point, slot);
+			if (slot != excluded && d < minDistance) {
+				minDistance = d;
+				best = slot;
+			}
+		}
+		return best;
+	}
+
+	private static double[] randomPoint(Random random, int dimensions) {
+		double[] point = new double[dimensions];
+		for (int i = 0; i < dimensions; i++) {
+			point[i] = random.nextDouble();
+		}
+		return point;
+	}
+
+	private static void assertSameCenters(Clustering expected, Clustering actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i).getCenter(), actual.get(i).getCenter(), 0);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package moa.clusterers;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.cluster.Clustering;
+import moa.clusterers.clustream.WithKmeans;
+import moa.clusterers.denstream.WithDBSCAN;
+import moa.streams.generators.RandomRBFGenerator;
+
+/**
+ * Test that the parallel searches find the same micro-clusters as sequential
+ * ones, and that the macro-clustering can run in the background without
+ * keeping discarded clusterers alive.
+ */
+public class ClustererExecutorTest {
+
+	@Test
+	public void testNearest() {
+		Random random = new Random(1);
+		// few distinct values, so that there are ties
+		final double[] distances = new double[20000];
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = 1 + random.nextInt(5000);
+		}
+		ClustererExecutor sequential = new ClustererExecutor(1, false);
+		ClustererExecutor parallel = new ClustererExecutor(4, false);
+		for (int n : new int[]{0, 1, 100, 5000, distances.length}) {
+			final int numCandidates = n;
+			int expected = sequential.nearest(numCandidates, i -> distances[i]);
+			assertEquals(expected, parallel.nearest(numCandidates, i -> distances[i]));
+			for (int i = 0; i < n; i++) {
+				assertTrue(i < expected ? distances[i] > distances[expected] : distances[i] >= distances[expected]);
+			}
+		}
+		assertEquals(-1, parallel.nearest(5000, i -> Double.MAX_VALUE));
+		parallel.shutdown();
+	}
+
+	@Test
+	public void testClosestPair() {
+		Random random = new Random(2);
+		final double[] points = new double[500];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = random.nextInt(2000);
+		}
+		ClustererExecutor sequential = new ClustererExecutor(1, false);
+		ClustererExecutor parallel = new ClustererExecutor(4, false);
+		for (int n : new int[]{2, 50, 200, points.length}) {
+			int[] expected = sequential.closestPair(n, (i, j) -> Math.abs(points[i] - points[j]));
+			assertArrayEquals(expected, parallel.closestPair(n, (i, j) -> Math.abs(points[i] - points[j])));
+		}
+		parallel.shutdown();
+	}
+
+	@Test
+	public void testAsynchronousMacroClustering() {
+		WithKmeans synchronous = newWithKmeans("");
+		WithKmeans asynchronous = newWithKmeans("-a");
+		RandomRBFGenerator stream = newStream();
+		for (int n = 0; n < 5000; n++) {
+			Instance instance = stream.nextInstance().getData();
+			synchronous.trainOnInstance(instance);
+			asynchronous.trainOnInstance(instance);
+		}
+		// the first clustering is waited for
+		Clustering first = asynchronous.getClusteringResult();
+		assertSameCenters(synchronous.getClusteringResult(), first);
+		for (int n = 0; n < 1000; n++) {
+			asynchronous.trainOnInstance(stream.nextInstance().getData());
+		}
+		// then clusterings are one request behind
+		assertSame(first, asynchronous.getClusteringResult());
+
+		WithDBSCAN denStream = new WithDBSCAN();
+		denStream.asynchronousMacroClusteringOption.set();
+		denStream.initPointsOption.setValue(500);
+		denStream.prepareForUse();
+		for (int n = 0; n < 3000; n++) {
+			denStream.trainOnInstance(stream.nextInstance().getData());
+		}
+		assertNotNull(denStream.getClusteringResult());
+	}
+
+	@Test
+	public void testDiscardedClusterersCollected() throws Exception {
+		RandomRBFGenerator stream = newStream();
+		WeakReference<?>[] references = new WeakReference<?>[20];
+		for (int i = 0; i < references.length; i++) {
+			WithKmeans clusterer = newWithKmeans("-a");
+			for (int n = 0; n < 2000; n++) {
+				clusterer.trainOnInstance(stream.nextInstance().getData());
+			}
+			clusterer.getClusteringResult();
+			// leaves a macro-clustering pending
+			clusterer.getClusteringResult();
+			references[i] = new WeakReference<WithKmeans>(clusterer);
+		}
+		int alive = references.length;
+		for (int attempt = 0; attempt < 50 && alive > 0; attempt++) {
+			System.gc();
+			Thread.sleep(20);
+			alive = 0;
+			for (WeakReference<?> reference : references) {
+				if (reference.get() != null) {
+					alive++;
+				}
+			}
+		}
+		assertEquals(0, alive);
+	}
+
+	private static void assertSameCenters(Clustering expected, Clustering actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i).getCenter(), actual.get(i).getCenter(), 0);
+		}
+	}
+
+	private static WithKmeans newWithKmeans(String options) {
+		WithKmeans clusterer = new WithKmeans();
+		if (options.contains("-a")) {
+			clusterer.asynchronousMacroClusteringOption.set();
+		}
+		clusterer.prepareForUse();
+		return clusterer;
+	}
+
+	private static RandomRBFGenerator newStream() {
+		RandomRBFGenerator stream = new RandomRBFGenerator();
+		stream.numAttsOption.setValue(5);
+		stream.prepareForUse();
+		return stream;
+	}
+}
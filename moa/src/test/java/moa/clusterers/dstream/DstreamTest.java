@@ -0,0 +1,133 @@
+package moa.clusterers.dstream;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+
+/**
+ * Test D-Stream on a short stream of two square blobs of grids: the densities
+ * of the grids are the decayed counts of their records, and each blob ends up
+ * as one cluster. Also test that the density thresholds stay right when the
+ * number of grids exceeds an int.
+ */
+public class DstreamTest {
+
+	@Test
+	public void testDensitiesAndClusters() {
+		Random random = new Random(2);
+		Instances header = header(2);
+		Dstream dstream = new Dstream();
+		dstream.prepareForUse();
+		double lambda = dstream.decayFactorOption.getValue();
+
+		// the times at which each grid received a record
+		Map<String, List<Integer>> records = new HashMap<String, List<Integer>>();
+		int numInstances = 3000;
+		for (int t = 0; t < numInstances; t++) {
+			double center = random.nextBoolean() ? 2.5 : 8.5;
+			double[] values = {center + 3 * random.nextDouble() - 1.5,
+					center + 3 * random.nextDouble() - 1.5};
+			String grid = (int) values[0] + "," + (int) values[1];
+			if (!records.containsKey(grid)) {
+				records.put(grid, new ArrayList<Integer>());
+			}
+			records.get(grid).add(t);
+			dstream.trainOnInstance(instance(header, values));
+		}
+
+		int now = dstream.getCurrTime();
+		assertEquals(numInstances, now);
+		assertEquals(18, records.size());
+		for (Map.Entry<String, List<Integer>> grid : records.entrySet()) {
+			double expected = 0;
+			for (int t : grid.getValue()) {
+				expected += Math.pow(lambda, now - t);
+			}
+			CharacteristicVector cv = dstream.getCharacteristicVector(coordinates(grid.getKey()));
+			assertNotNull(grid.getKey(), cv);
+			assertEquals(grid.getKey(), expected, cv.getCurrGridDensity(now, lambda), 1e-9 * expected);
+			assertTrue(grid.getKey(), cv.getCurrGridDensity(now, lambda) >= dstream.getDM());
+		}
+
+		Clustering clustering = dstream.getClusteringResult();
+		List<Set<String>> clusters = new ArrayList<Set<String>>();
+		for (Cluster cluster : clustering.getClustering()) {
+			Set<String> grids = new HashSet<String>();
+			for (DensityGrid dg : ((GridCluster) cluster).getGrids().keySet()) {
+				grids.add(dg.getCoordinates()[0] + "," + dg.getCoordinates()[1]);
+			}
+			if (!grids.isEmpty()) {
+				clusters.add(grids);
+			}
+		}
+		assertEquals(clusters.toString(), 2, clusters.size());
+		assertTrue(clusters.toString(), clusters.contains(blob(1)));
+		assertTrue(clusters.toString(), clusters.contains(blob(7)));
+	}
+
+	@Test
+	public void testManyDimensions() {
+		// 13^10 grids, more than an int holds
+		int d = 10;
+		Instances header = header(d);
+		Dstream dstream = new Dstream();
+		dstream.prepareForUse();
+		Random random = new Random(2);
+		for (int t = 0; t < 200; t++) {
+			double[] values = new double[d];
+			for (int i = 0; i < d; i++) {
+				values[i] = t < 2 ? 10 * t : random.nextInt(11);
+			}
+			dstream.trainOnInstance(instance(header, values));
+		}
+		double n = Math.pow(13, d);
+		double lambda = dstream.decayFactorOption.getValue();
+		assertEquals(dstream.cmOption.getValue() / (n * (1 - lambda)), dstream.getDM(), 1e-9 * dstream.getDM());
+		assertEquals(dstream.clOption.getValue() / (n * (1 - lambda)), dstream.getDL(), 1e-9 * dstream.getDL());
+	}
+
+	private static Set<String> blob(int low) {
+		Set<String> grids = new HashSet<String>();
+		for (int x = low; x < low + 3; x++) {
+			for (int y = low; y < low + 3; y++) {
+				grids.add(x + "," + y);
+			}
+		}
+		return grids;
+	}
+
+	private static int[] coordinates(String grid) {
+		String[] values = grid.split(",");
+		return new int[] {Integer.parseInt(values[0]), Integer.parseInt(values[1])};
+	}
+
+	private static Instances header(int d) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < d; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		return new Instances("stream", attributes, 0);
+	}
+
+	private static Instance instance(Instances header, double[] values) {
+		Instance instance = new DenseInstance(1.0, values);
+		instance.setDataset(header);
+		return instance;
+	}
+}
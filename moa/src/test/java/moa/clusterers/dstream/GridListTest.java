@@ -0,0 +1,79 @@
+package moa.clusterers.dstream;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test that the grid list finds the same grids and neighbours as a hash map
+ * keyed by density grids, while grids are added and removed.
+ */
+public class GridListTest {
+
+	@Test
+	public void testAgainstHashMap() {
+		Random random = new Random(1);
+		int dimensions = 3;
+		GridList list = new GridList(dimensions);
+		Map<DensityGrid, Integer> slots = new HashMap<DensityGrid, Integer>();
+		for (int n = 0; n < 20000; n++) {
+			int[] c = randomCoordinates(random, dimensions);
+			DensityGrid dg = new DensityGrid(c);
+			Integer slot = slots.get(dg);
+			assertEquals(slot == null ? -1 : slot.intValue(), list.find(c));
+			if (slot == null) {
+				CharacteristicVector cv = new CharacteristicVector(n, -1, 1.0, -1, false, 0.5, 2.0);
+				slot = list.add(c, dg, cv);
+				assertTrue(list.isUsed(slot));
+				assertSame(dg, list.getGrid(slot));
+				assertSame(cv, list.getVector(slot));
+				slots.put(dg, slot);
+			} else if (random.nextBoolean()) {
+				list.remove(slot);
+				assertFalse(list.isUsed(slot));
+				slots.remove(dg);
+			}
+			assertEquals(slots.size(), list.size());
+		}
+
+		for (Map.Entry<DensityGrid, Integer> entry : slots.entrySet()) {
+			int slot = entry.getValue();
+			assertEquals(slot, list.find(entry.getKey()));
+			int i = 0;
+			for (DensityGrid neighbour : entry.getKey().getNeighbours()) {
+				Integer expected = slots.get(neighbour);
+				assertEquals(expected == null ? -1 : expected.intValue(),
+						list.findNeighbour(slot, i / 2, i % 2 == 0 ? -1 : 1));
+				i++;
+			}
+		}
+	}
+
+	@Test
+	public void testSlotsReused() {
+		GridList list = new GridList(2);
+		int[] a = {0, 0};
+		int[] b = {0, 1};
+		int slot = list.add(a, null, null);
+		list.add(b, null, null);
+		assertEquals(slot, list.findNeighbour(list.find(b), 1, -1));
+		list.remove(slot);
+		assertEquals(-1, list.find(a));
+		assertEquals(-1, list.findNeighbour(list.find(b), 1, -1));
+		assertEquals(slot, list.add(Arrays.copyOf(a, 2), null, null));
+		assertEquals(2, list.getNumSlots());
+	}
+
+	private static int[] randomCoordinates(Random random, int dimensions) {
+		int[] c = new int[dimensions];
+		for (int i = 0; i < dimensions; i++) {
+			c[i] = random.nextInt(20) - 10;
+		}
+		return c;
+	}
+}
@@ -0,0 +1,129 @@
+package moa.clusterers.outliers.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import moa.clusterers.outliers.utils.mtree.DistanceFunctions;
+import moa.clusterers.outliers.utils.mtree.DistanceFunctions.EuclideanCoordinate;
+
+/**
+ * Test that the range index finds the same points as linear scans, in order
+ * of distance, while points are added and removed like in a sliding window.
+ */
+public class RangeIndexTest {
+
+	private static class Point implements EuclideanCoordinate {
+		final double[] values;
+
+		Point(double... values) {
+			this.values = values;
+		}
+
+		@Override
+		public int dimensions() {
+			return values.length;
+		}
+
+		@Override
+		public double get(int index) {
+			return values[index];
+		}
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		Random random = new Random(1);
+		double radius = 0.1;
+		RangeIndex<Point> index = new RangeIndex<Point>(radius);
+		List<Point> window = new ArrayList<Point>();
+		List<Integer> slots = new ArrayList<Integer>();
+		for (int n = 0; n < 3000; n++) {
+			// a drifting stream with some duplicates
+			Point point = n % 10 == 0 && n > 0 ? window.get(random.nextInt(window.size()))
+					: randomPoint(random, 3, n / 1000.0);
+			slots.add(index.add(point, point));
+			window.add(point);
+			if (window.size() > 500) {
+				index.remove(slots.remove(0));
+				window.remove(0);
+			}
+			assertEquals(window.size(), index.size());
+			double range = n % 2 == 0 ? radius : 1.5 * radius;
+			assertSearch(index, window, randomPoint(random, 3, n / 1000.0), range);
+			assertSearch(index, window, point, range);
+		}
+		List<Point> items = index.getItems();
+		assertEquals(window.size(), items.size());
+		for (Point point : window) {
+			assertTrue(items.remove(point));
+		}
+	}
+
+	@Test
+	public void testLargeRanges() {
+		Random random = new Random(2);
+		RangeIndex<Point> index = new RangeIndex<Point>(0.01);
+		List<Point> points = new ArrayList<Point>();
+		for (int n = 0; n < 300; n++) {
+			Point point = randomPoint(random, 2, 0);
+			index.add(point, point);
+			points.add(point);
+		}
+		assertSearch(index, points, new Point(0.5, 0.5), 0.3);
+		assertSearch(index, points, new Point(0.5, 0.5), 10);
+		assertSearch(index, points, new Point(-5, 3), 0);
+	}
+
+	@Test
+	public void testSlotsReused() {
+		RangeIndex<Point> index = new RangeIndex<Point>(1);
+		Point a = new Point(0, 0);
+		Point b = new Point(5, 0);
+		int slot = index.add(a, a);
+		index.add(b, b);
+		index.remove(slot);
+		assertEquals(1, index.size());
+		assertEquals(0, index.rangeSearch(a, 1));
+		assertEquals(slot, index.add(a, a));
+		assertEquals(1, index.rangeSearch(new Point(0.5, 0), 0.5));
+		assertSame(a, index.getResult(0));
+		assertEquals(0.5, index.getResultDistance(0), 0);
+	}
+
+	private static void assertSearch(RangeIndex<Point> index, List<Point> points, Point query,
+			double range) {
+		List<Point> expected = new ArrayList<Point>();
+		for (Point point : points) {
+			if (DistanceFunctions.euclidean(query, point) <= range) {
+				expected.add(point);
+			}
+		}
+		int n = index.rangeSearch(query, range);
+		assertEquals(expected.size(), n);
+		List<Point> found = new ArrayList<Point>();
+		for (int i = 0; i < n; i++) {
+			found.add(index.getResult(i));
+			assertEquals(DistanceFunctions.euclidean(query, index.getResult(i)),
+					index.getResultDistance(i), 0);
+			if (i > 0) {
+				assertTrue(index.getResultDistance(i - 1) <= index.getResultDistance(i));
+			}
+		}
+		for (Point point : expected) {
+			assertTrue(found.remove(point));
+		}
+	}
+
+	private static Point randomPoint(Random random, int dimensions, double shift) {
+		double[] values = new double[dimensions];
+		for (int i = 0; i < dimensions; i++) {
+			values[i] = random.nextDouble() + shift;
+		}
+		return new Point(values);
+	}
+}
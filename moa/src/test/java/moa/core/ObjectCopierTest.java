@@ -0,0 +1,149 @@
+package moa.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import moa.classifiers.Classifier;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that ObjectCopier gives the same copies as a serialization round-trip.
+ */
+public class ObjectCopierTest {
+
+	private static final String[] LEARNERS = {
+		"bayes.NaiveBayes",
+		"trees.HoeffdingTree",
+		"trees.HoeffdingAdaptiveTree",
+		"trees.HoeffdingOptionTree",
+		"meta.OzaBag -s 3",
+		"meta.AdaptiveRandomForest -s 3",
+		"rules.AMRulesRegressor",
+	};
+
+	protected static class Node implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected Node next;
+
+		protected double[] values;
+
+		protected transient int cache = 7;
+
+		protected Random random = new Random(1);
+
+		protected List<Object> list = new ArrayList<Object>();
+
+		protected Map<String, Object> map = new HashMap<String, Object>();
+	}
+
+	protected static class Counter implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected AtomicInteger count = new AtomicInteger(3);
+	}
+
+	@Test
+	public void testSharedAndCyclicReferences() throws Exception {
+		Node first = new Node();
+		Node second = new Node();
+		first.next = second;
+		second.next = first;
+		first.values = new double[]{1, 2, 3};
+		second.values = first.values;
+		second.random = first.random;
+		first.random.nextGaussian();
+		first.list.add(second);
+		first.list.add(first.values);
+		first.map.put("self", first);
+
+		Node copy = (Node) ObjectCopier.copyObject(first);
+		assertTrue(ObjectCopier.isDirectCopySupported(first));
+		assertNotSame(first, copy);
+		assertSame(copy, copy.next.next);
+		assertSame(copy.values, copy.next.values);
+		assertNotSame(first.values, copy.values);
+		assertArrayEquals(first.values, copy.values, 0);
+		assertSame(copy.next, copy.list.get(0));
+		assertSame(copy.values, copy.list.get(1));
+		assertSame(copy, copy.map.get("self"));
+		assertEquals(0, copy.cache);
+		assertSame(copy.random, copy.next.random);
+		assertNotSame(first.random, copy.random);
+		for (int n = 0; n < 10; n++) {
+			assertEquals(first.random.nextGaussian(), copy.random.nextGaussian(), 0);
+		}
+	}
+
+	@Test
+	public void testFallbackToSerialization() throws Exception {
+		Counter counter = new Counter();
+		assertFalse(ObjectCopier.isDirectCopySupported(counter));
+		Counter copy = (Counter) ObjectCopier.copyObject(counter);
+		assertNotSame(counter.count, copy.count);
+		assertEquals(3, copy.count.get());
+	}
+
+	@Test
+	public void testListSubclass() throws Exception {
+		AutoExpandVector<DoubleVector> vector = new AutoExpandVector<DoubleVector>();
+		vector.set(3, new DoubleVector(new double[]{1, 2}));
+		vector.set(5, vector.get(3));
+		assertTrue(ObjectCopier.isDirectCopySupported(vector));
+		@SuppressWarnings("unchecked")
+		AutoExpandVector<DoubleVector> copy = (AutoExpandVector<DoubleVector>) ObjectCopier.copyObject(vector);
+		assertEquals(6, copy.size());
+		assertNull(copy.get(0));
+		assertSame(copy.get(3), copy.get(5));
+		assertEquals(2, copy.get(3).getValue(1), 0);
+		assertNotSame(vector.get(3), copy.get(3));
+	}
+
+	@Test
+	public void testLearners() throws Exception {
+		for (String learner : LEARNERS) {
+			Classifier classifier = (Classifier) ClassOption.cliStringToObject(learner, Classifier.class, null);
+			ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(
+					"generators.RandomRBFGeneratorDrift -s 0.001", ExampleStream.class, null);
+			((OptionHandler) stream).prepareForUse();
+			classifier.setModelContext(stream.getHeader());
+			classifier.prepareForUse();
+			for (int n = 0; n < 10000; n++) {
+				classifier.trainOnInstance(stream.nextInstance());
+			}
+			assertTrue(learner, ObjectCopier.isDirectCopySupported(classifier));
+			byte[] expected = serialize(classifier);
+			Classifier copy = (Classifier) ObjectCopier.copyObject(classifier);
+			assertArrayEquals(learner, expected, serialize(copy));
+			assertArrayEquals(learner, expected, serialize(SerializeUtils.copyObject(classifier)));
+			// the copy does not share state with the original
+			for (int n = 0; n < 1000; n++) {
+				copy.trainOnInstance(stream.nextInstance());
+			}
+			assertArrayEquals(learner, expected, serialize(classifier));
+		}
+	}
+
+	private static byte[] serialize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,143 @@
+package moa.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.evaluation.BasicClassificationPerformanceEvaluator;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test the estimation of the sizes of the models without the SizeOf agent.
+ */
+public class SizeOfTest {
+
+	private static final String[] LEARNERS = {
+		"bayes.NaiveBayes",
+		"trees.HoeffdingTree -g 50",
+		"trees.HoeffdingAdaptiveTree -g 50",
+		"meta.OzaBag -s 3",
+		"meta.OzaBagAdwin -s 3",
+		"meta.LeveragingBag -s 3",
+		"meta.AdaptiveRandomForest -s 3",
+	};
+
+	@Test
+	public void testShallowSizes() {
+		assertEquals(0, SizeOf.shallowSizeOf(null));
+		assertEquals(SizeOf.align(SizeOf.ARRAY_HEADER_SIZE + 80), SizeOf.shallowSizeOf(new double[10]));
+		assertEquals(SizeOf.align(SizeOf.ARRAY_HEADER_SIZE + 3), SizeOf.shallowSizeOf(new byte[3]));
+		assertEquals(SizeOf.arraySize(5, SizeOf.REFERENCE_SIZE), SizeOf.shallowSizeOf(new Object[5]));
+		assertEquals(0, SizeOf.shallowSizeOf(new Object()) % 8);
+		assertTrue(SizeOf.shallowSizeOf(new GaussianEstimator()) >= SizeOf.OBJECT_HEADER_SIZE + 24);
+	}
+
+	@Test
+	public void testVectors() {
+		DoubleVector vector = new DoubleVector();
+		long empty = vector.measureByteSize();
+		vector.setValue(99, 1.0);
+		assertEquals(empty + SizeOf.shallowSizeOf(vector.getArrayRef())
+				- SizeOf.shallowSizeOf(new double[0]), vector.measureByteSize());
+
+		AutoExpandVector<DoubleVector> vectors = new AutoExpandVector<DoubleVector>();
+		vectors.set(0, vector);
+		vectors.set(3, null);
+		assertTrue(vectors.measureByteSize() > vector.measureByteSize());
+	}
+
+	@Test
+	public void testReflectiveSizes() {
+		assertEquals(0, SizeOf.reflectiveSizeOf(null));
+		double[] values = new double[10];
+		assertEquals(SizeOf.shallowSizeOf(values), SizeOf.reflectiveSizeOf(values));
+		Object[] shared = {values, values};
+		assertEquals(SizeOf.shallowSizeOf(shared) + SizeOf.shallowSizeOf(values),
+				SizeOf.reflectiveSizeOf(shared));
+		AutoExpandVector<double[]> vector = new AutoExpandVector<double[]>();
+		vector.add(values);
+		assertTrue(SizeOf.reflectiveSizeOf(vector) > SizeOf.shallowSizeOf(values));
+
+		BasicClassificationPerformanceEvaluator evaluator = new BasicClassificationPerformanceEvaluator();
+		assertTrue(SizeOf.estimatedFullSizeOf(evaluator) > 0);
+	}
+
+	@Test
+	public void testModelsWithoutEstimate() throws Exception {
+		for (String learner : new String[] {"lazy.kNN -k 3 -w 500", "functions.SGD", "functions.Perceptron"}) {
+			Classifier classifier = newClassifier(learner);
+			ExampleStream stream = newStream();
+			classifier.setModelContext(stream.getHeader());
+			classifier.prepareForUse();
+			classifier.trainOnInstance((Instance) stream.nextInstance().getData());
+			int initial = classifier.measureByteSize();
+			assertTrue(learner, initial > 0);
+			for (int n = 0; n < 200; n++) {
+				classifier.trainOnInstance((Instance) stream.nextInstance().getData());
+			}
+			assertTrue(learner, classifier.measureByteSize() >= initial);
+		}
+	}
+
+	@Test
+	public void testStructuralEstimates() throws Exception {
+		String[] learners = {
+			"lazy.kNN -k 3 -w 500",
+			"lazy.kNNwithPAWandADWIN -w 500",
+			"functions.SGD",
+			"functions.SGDMultiClass",
+			"functions.AdaGrad",
+			"functions.SPegasos",
+			"functions.Perceptron",
+			"functions.MajorityClass",
+			"drift.SingleClassifierDrift",
+		};
+		for (String learner : learners) {
+			Classifier classifier = newClassifier(learner);
+			ExampleStream stream = newStream();
+			classifier.setModelContext(stream.getHeader());
+			classifier.prepareForUse();
+			for (int n = 0; n < 1000; n++) {
+				classifier.trainOnInstance((Instance) stream.nextInstance().getData());
+			}
+			// the header is shared with the stream, the estimates leave it out
+			long walked = SizeOf.reflectiveSizeOf(classifier) - SizeOf.reflectiveSizeOf(stream.getHeader());
+			long estimated = classifier.measureByteSize();
+			assertTrue(learner + ": " + estimated + " for " + walked,
+					estimated > walked / 2 && estimated < walked * 3 / 2);
+		}
+	}
+
+	@Test
+	public void testModelsGrow() throws Exception {
+		for (String learner : LEARNERS) {
+			Classifier classifier = newClassifier(learner);
+			ExampleStream stream = newStream();
+			classifier.setModelContext(stream.getHeader());
+			classifier.prepareForUse();
+			classifier.trainOnInstance((Instance) stream.nextInstance().getData());
+			int initial = classifier.measureByteSize();
+			assertTrue(learner, initial > 0);
+			for (int n = 0; n < 5000; n++) {
+				classifier.trainOnInstance((Instance) stream.nextInstance().getData());
+			}
+			assertTrue(learner, classifier.measureByteSize() > initial);
+		}
+	}
+
+	private static Classifier newClassifier(String cli) throws Exception {
+		return (Classifier) ClassOption.cliStringToObject(cli, Classifier.class, null);
+	}
+
+	private static ExampleStream newStream() throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(
+				"generators.RandomRBFGenerator -a 10", ExampleStream.class, null);
+		((OptionHandler) stream).prepareForUse();
+		return stream;
+	}
+}
@@ -0,0 +1,88 @@
+package moa.evaluation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+import moa.cluster.SphereCluster;
+import moa.gui.visualization.DataPoint;
+
+/**
+ * Test that the sampled Silhouette coefficient equals the exact one when the
+ * sample covers all points, and stays close to it otherwise, within the
+ * standard error it reports.
+ */
+public class SilhouetteCoefficientTest {
+
+	@Test
+	public void testSampleCoveringAllPoints() throws Exception {
+		ArrayList<DataPoint> points = randomPoints(new Random(1), 300);
+		Clustering clustering = clustering();
+
+		SilhouetteCoefficient exact = new SilhouetteCoefficient();
+		exact.evaluateClusteringPerformance(clustering, null, points);
+		SilhouetteCoefficient sampled = new SilhouetteCoefficient();
+		sampled.setSampleSize(300);
+		sampled.evaluateClusteringPerformance(clustering, null, points);
+
+		assertEquals(exact.getLastValue(0), sampled.getLastValue(0), 0);
+		assertEquals(0, sampled.getStandardError(), 0);
+		assertEquals("SilhCoeff SE", sampled.getName(1));
+		assertEquals(0, sampled.getLastValue(1), 0);
+	}
+
+	@Test
+	public void testSampledEstimate() throws Exception {
+		ArrayList<DataPoint> points = randomPoints(new Random(2), 2000);
+		Clustering clustering = clustering();
+
+		SilhouetteCoefficient exact = new SilhouetteCoefficient();
+		exact.evaluateClusteringPerformance(clustering, null, points);
+		SilhouetteCoefficient sampled = new SilhouetteCoefficient();
+		sampled.setSampleSize(200);
+		sampled.evaluateClusteringPerformance(clustering, null, points);
+
+		double error = sampled.getStandardError();
+		assertTrue(error > 0);
+		assertEquals(error, sampled.getLastValue(1), 0);
+		assertEquals(exact.getLastValue(0), sampled.getLastValue(0), 4 * error);
+	}
+
+	private static Clustering clustering() {
+		return new Clustering(new Cluster[] {
+				new SphereCluster(new double[] {0.25, 0.25}, 0.2),
+				new SphereCluster(new double[] {0.75, 0.75}, 0.2),
+				new SphereCluster(new double[] {0.5, 0.5}, 0.15)});
+	}
+
+	private static ArrayList<DataPoint> randomPoints(Random random, int numPoints) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("x"));
+		attributes.add(new Attribute("y"));
+		attributes.add(new Attribute("class", new ArrayList<String>(Arrays.asList("0", "1", "2"))));
+		Instances header = new Instances("points", attributes, 0);
+		header.setClassIndex(2);
+
+		ArrayList<DataPoint> points = new ArrayList<DataPoint>();
+		for (int i = 0; i < numPoints; i++) {
+			int c = random.nextInt(3);
+			double center = c == 2 ? 0.5 : 0.25 + 0.5 * c;
+			DenseInstance instance = new DenseInstance(1.0, new double[] {
+					center + 0.1 * random.nextGaussian(),
+					center + 0.1 * random.nextGaussian(), c});
+			instance.setDataset(header);
+			points.add(new DataPoint(instance, i));
+		}
+		return points;
+	}
+}
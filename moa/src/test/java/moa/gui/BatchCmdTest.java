@@ -0,0 +1,52 @@
+package moa.gui;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import moa.cluster.Clustering;
+import moa.clusterers.clustream.Clustream;
+import moa.evaluation.MeasureCollection;
+import moa.evaluation.SSQ;
+import moa.gui.visualization.DataPoint;
+import moa.streams.clustering.RandomRBFGeneratorEvents;
+
+/**
+ * Test that a measure failing in a batch run is reported to the caller.
+ */
+public class BatchCmdTest {
+
+	/** Fails on every evaluation. */
+	public static class FailingMeasure extends MeasureCollection {
+
+		@Override
+		protected String[] getNames() {
+			return new String[] {"failing"};
+		}
+
+		@Override
+		protected void evaluateClustering(Clustering clustering, Clustering trueClustering,
+				ArrayList<DataPoint> points) throws Exception {
+			throw new IOException("measure failed");
+		}
+	}
+
+	@Test
+	public void testFailingMeasureIsReported() {
+		for (int jobs : new int[] {1, 4}) {
+			BatchCmd batch = new BatchCmd(new Clustream(), new RandomRBFGeneratorEvents(),
+					new MeasureCollection[] {new SSQ(), new FailingMeasure()}, 2000);
+			batch.setNumberOfJobs(jobs);
+			try {
+				batch.run();
+				fail("-j " + jobs + ": the failure of the measure was not reported");
+			} catch (RuntimeException e) {
+				assertTrue("-j " + jobs, e.getCause() instanceof IOException);
+				assertTrue("-j " + jobs, e.getMessage().contains("FailingMeasure"));
+			}
+		}
+	}
+}
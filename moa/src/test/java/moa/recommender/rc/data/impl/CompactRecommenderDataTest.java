@@ -0,0 +1,125 @@
+package moa.recommender.rc.data.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import moa.recommender.rc.utils.Pair;
+import moa.recommender.rc.utils.Rating;
+import moa.recommender.rc.utils.SparseVector;
+
+/**
+ * Test that the compact rating store holds the same ratings and statistics as
+ * the map-based one.
+ */
+public class CompactRecommenderDataTest {
+
+	@Test
+	public void testSameAsMemRecommenderData() {
+		MemRecommenderData mem = new MemRecommenderData();
+		CompactRecommenderData compact = new CompactRecommenderData();
+		Random random = new Random(1);
+		for (int n = 0; n < 20000; n++) {
+			int user = random.nextInt(200) - 50;
+			int item = random.nextInt(100);
+			if (random.nextInt(5) == 0 && mem.userExists(user)) {
+				mem.removeRating(user, item);
+				compact.removeRating(user, item);
+			} else {
+				double rating = 1 + random.nextInt(5);
+				mem.setRating(user, item, rating);
+				compact.setRating(user, item, rating);
+			}
+		}
+		assertEquals(mem.getNumRatings(), compact.getNumRatings());
+		assertEquals(mem.getNumUsers(), compact.getNumUsers());
+		assertEquals(mem.getNumItems(), compact.getNumItems());
+		assertEquals(mem.getUsers(), compact.getUsers());
+		assertEquals(mem.getItems(), compact.getItems());
+		assertEquals(mem.getGlobalMean(), compact.getGlobalMean(), 1e-9);
+		for (int user : mem.getUsers()) {
+			assertEquals(mem.countRatingsUser(user), compact.countRatingsUser(user));
+			assertEquals(mem.getAvgRatingUser(user), compact.getAvgRatingUser(user), 1e-9);
+			assertEquals(toMap(mem.getRatingsUser(user)), toMap(compact.getRatingsUser(user)));
+			// the copy of the interface stops when the arrays are full
+			int[] itemIDs = new int[mem.countRatingsUser(user) / 2];
+			double[] values = new double[itemIDs.length];
+			assertEquals(itemIDs.length, mem.getRatingsUser(user, itemIDs, values));
+			for (int i = 0; i < itemIDs.length; i++) {
+				assertEquals(mem.getRating(user, itemIDs[i]), values[i], 0);
+			}
+			for (int item = 0; item < 100; item++) {
+				assertEquals(mem.getRating(user, item), compact.getRating(user, item), 0);
+			}
+		}
+		for (int item : mem.getItems()) {
+			assertEquals(mem.countRatingsItem(item), compact.countRatingsItem(item));
+			assertEquals(mem.getAvgRatingItem(item), compact.getAvgRatingItem(item), 1e-9);
+			SparseVector ratings = compact.getRatingsItem(item);
+			int[] userIDs = new int[ratings.size()];
+			double[] values = new double[ratings.size()];
+			assertEquals(ratings.size(), compact.getRatingsItem(item, userIDs, values));
+			for (int i = 0; i < userIDs.length; i++) {
+				assertEquals(ratings.get(userIDs[i]), values[i], 0);
+			}
+		}
+		int numRatings = 0;
+		Iterator<Rating> it = compact.ratingIterator();
+		while (it.hasNext()) {
+			Rating rating = it.next();
+			assertEquals(mem.getRating(rating.userID, rating.itemID), rating.rating, 0);
+			numRatings++;
+		}
+		assertEquals(mem.getNumRatings(), numRatings);
+	}
+
+	@Test
+	public void testRemoveUserAndItem() {
+		CompactRecommenderData data = new CompactRecommenderData();
+		Random random = new Random(2);
+		for (int n = 0; n < 5000; n++) {
+			data.setRating(random.nextInt(50), random.nextInt(50), 1 + random.nextInt(5));
+		}
+		for (int user = 0; user < 50; user += 2) {
+			data.removeUser(user);
+		}
+		for (int item = 0; item < 50; item += 3) {
+			data.removeItem(item);
+		}
+		int numRatings = 0;
+		double sum = 0;
+		for (int user = 0; user < 50; user++) {
+			assertEquals(user % 2 != 0, data.userExists(user));
+			for (Map.Entry<Integer, Double> rating : toMap(data.getRatingsUser(user)).entrySet()) {
+				assertTrue(user % 2 != 0 && rating.getKey() % 3 != 0);
+				assertEquals(rating.getValue(), data.getRatingsItem(rating.getKey()).get(user));
+				numRatings++;
+				sum += rating.getValue();
+			}
+		}
+		assertEquals(numRatings, data.getNumRatings());
+		assertEquals(sum / numRatings, data.getGlobalMean(), 1e-9);
+		// freed indices are reused
+		data.setRating(100, 100, 3);
+		assertTrue(data.userExists(100));
+		assertEquals(3, data.getRating(100, 100), 0);
+		data.clear();
+		assertEquals(0, data.getNumRatings());
+		assertFalse(data.userExists(1));
+	}
+
+	private static Map<Integer, Double> toMap(SparseVector vector) {
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		Iterator<Pair<Integer, Double>> it = vector.iterator();
+		while (it.hasNext()) {
+			Pair<Integer, Double> p = it.next();
+			map.put(p.getFirst(), p.getSecond());
+		}
+		return map;
+	}
+}
@@ -0,0 +1,130 @@
+package moa.streams;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.BinaryInstancesWriter;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * Test that BinaryFileStream replays the instances written by
+ * BinaryInstancesWriter.
+ */
+public class BinaryFileStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testArffFiles() throws IOException {
+		String[] files = {"classification.arff", "regression.arff",
+				"small_classification.arff", "small_regression.arff"};
+		for (String file : files) {
+			String path = ClassLoader.getSystemResource("moa/classifiers/data/" + file).getPath();
+			ArffFileStream arff = new ArffFileStream(path, -1);
+			List<Instance> expected = new ArrayList<Instance>();
+			File binaryFile = folder.newFile(file + ".moab");
+			BinaryInstancesWriter writer = new BinaryInstancesWriter(binaryFile, arff.getHeader(), 7);
+			while (arff.hasMoreInstances()) {
+				Instance instance = arff.nextInstance().getData();
+				expected.add(instance);
+				writer.write(instance);
+			}
+			writer.close();
+
+			BinaryFileStream stream = new BinaryFileStream(binaryFile.getPath());
+			assertEquals(arff.getHeader().toString(), stream.getHeader().toString());
+			assertEquals(arff.getHeader().classIndex(), stream.getHeader().classIndex());
+			assertSameInstances(expected, stream);
+			stream.restart();
+			assertSameInstances(expected, stream);
+		}
+	}
+
+	@Test
+	public void testMixedBlocks() throws IOException {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("x"));
+		attributes.add(new Attribute("colour", Arrays.asList("red", "green", "blue")));
+		attributes.add(new Attribute("y"));
+		attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+		InstancesHeader header = new InstancesHeader(new Instances("mixed", attributes, 0));
+		header.setClassIndex(3);
+
+		List<Instance> expected = new ArrayList<Instance>();
+		for (int i = 0; i < 50; i++) {
+			Instance instance;
+			if ((i / 4) % 2 == 0) {
+				instance = new DenseInstance(1.0, new double[] {i * 0.5, i % 3, i % 5 == 0 ? Double.NaN : -i, i % 2});
+			} else {
+				instance = new SparseInstance(1.0, new double[] {i * 0.25, 1}, new int[] {i % 3, 3}, 4);
+			}
+			if (i % 7 == 0) {
+				instance.setWeight(i);
+			}
+			instance.setDataset(header);
+			expected.add(instance);
+		}
+		expected.get(3).setMissing(1);
+
+		File binaryFile = folder.newFile("mixed.moab");
+		BinaryInstancesWriter writer = new BinaryInstancesWriter(binaryFile, header, 3);
+		for (Instance instance : expected) {
+			writer.write(instance);
+		}
+		assertEquals(50, writer.numInstances());
+		writer.close();
+
+		BinaryFileStream stream = new BinaryFileStream(binaryFile.getPath());
+		assertEquals(3, stream.getHeader().classIndex());
+		assertEquals(50, stream.estimatedRemainingInstances());
+		assertSameInstances(expected, stream);
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("x"));
+		InstancesHeader header = new InstancesHeader(new Instances("empty", attributes, 0));
+		File binaryFile = folder.newFile("empty.moab");
+		new BinaryInstancesWriter(binaryFile, header).close();
+
+		BinaryFileStream stream = new BinaryFileStream(binaryFile.getPath());
+		assertEquals(1, stream.getHeader().numAttributes());
+		assertFalse(stream.hasMoreInstances());
+		assertEquals(0, stream.estimatedRemainingInstances());
+	}
+
+	private static void assertSameInstances(List<Instance> expected, BinaryFileStream stream) {
+		for (int n = 0; n < expected.size(); n++) {
+			assertTrue(stream.hasMoreInstances());
+			assertEquals(expected.size() - n, stream.estimatedRemainingInstances());
+			Instance expectedInstance = expected.get(n);
+			Instance actualInstance = stream.nextInstance().getData();
+			assertEquals(expectedInstance.weight(), actualInstance.weight(), 0);
+			assertEquals(expectedInstance.classIndex(), actualInstance.classIndex());
+			assertEquals(expectedInstance.numValues(), actualInstance.numValues());
+			for (int i = 0; i < expectedInstance.numValues(); i++) {
+				assertEquals(expectedInstance.index(i), actualInstance.index(i));
+				assertEquals("instance " + n + ", value " + i,
+						Double.doubleToLongBits(expectedInstance.valueSparse(i)),
+						Double.doubleToLongBits(actualInstance.valueSparse(i)));
+			}
+		}
+		assertFalse(stream.hasMoreInstances());
+	}
+}
@@ -0,0 +1,128 @@
+package moa.tasks;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+
+/**
+ * Test that a task stopped after a checkpoint and resumed gives the same
+ * learning curve as a task run in one go.
+ */
+public class CheckpointTest {
+
+	private static final String[] TASKS = {
+		"EvaluatePrequential -l trees.HoeffdingTree -s (generators.RandomRBFGeneratorDrift -s 0.001) -f 2000",
+		"EvaluatePrequential -l bayes.NaiveBayes -f 2000 -b 50",
+		"EvaluateInterleavedTestThenTrain -l meta.OzaBag -s generators.SEAGenerator -f 2000 -r 3",
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testResumedCurves() throws Exception {
+		for (String task : TASKS) {
+			File file = new File(folder.getRoot(), "task.ckpt");
+			file.delete();
+			String checkpoint = " -c " + file.getPath() + " -k 4000";
+			LearningCurve expected = run(task + checkpoint + " -i 20000");
+			run(task + checkpoint + " -i 10000");
+			Checkpoint last = Checkpoint.readFromFile(file);
+			assertEquals(8000, last.getInstancesProcessed());
+			assertEquals(4, last.getLearningCurve().numEntries());
+			LearningCurve actual = run(task + checkpoint + " -i 20000 -R");
+			assertEquals(task, expected.numEntries(), actual.numEntries());
+			for (int n = 0; n < expected.numEntries(); n++) {
+				for (int m = 0; m < expected.getMeasurementNameCount(); m++) {
+					String name = expected.getMeasurementName(m);
+					if (name.startsWith("evaluation time") || name.startsWith("model cost")) {
+						continue;
+					}
+					assertEquals(task + ", " + name, expected.getMeasurement(n, m),
+							actual.getMeasurement(n, m), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testResumedFilesHaveNoRepeatedRows() throws Exception {
+		String[] tasks = {
+			"EvaluatePrequential -l bayes.NaiveBayes -f 2000",
+			"EvaluateInterleavedTestThenTrain -l bayes.NaiveBayes -f 2000",
+		};
+		for (String task : tasks) {
+			File file = new File(folder.getRoot(), "task.ckpt");
+			File dump = new File(folder.getRoot(), "dump.csv");
+			File predictions = new File(folder.getRoot(), "predictions.csv");
+			file.delete();
+			dump.delete();
+			predictions.delete();
+			String cli = task + " -c " + file.getPath() + " -k 4000 -d " + dump.getPath();
+			if (task.startsWith("EvaluatePrequential")) {
+				cli += " -o " + predictions.getPath();
+			}
+			// stops after writing rows past the checkpoint at 8000 instances
+			run(cli + " -i 10000");
+			assertEquals(1 + 5, Files.readAllLines(dump.toPath()).size());
+			run(cli + " -i 20000 -R");
+
+			List<String> rows = Files.readAllLines(dump.toPath());
+			assertEquals(task, 1 + 10, rows.size());
+			int instancesColumn = Arrays.asList(rows.get(0).split(",")).indexOf("learning evaluation instances");
+			for (int n = 1; n < rows.size(); n++) {
+				assertEquals(task, 2000.0 * n, Double.parseDouble(rows.get(n).split(",")[instancesColumn]), 0);
+			}
+			if (task.startsWith("EvaluatePrequential")) {
+				assertEquals(task, 20000, Files.readAllLines(predictions.toPath()).size());
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testShortenedDumpIsRejected() throws Exception {
+		File file = new File(folder.getRoot(), "task.ckpt");
+		File dump = new File(folder.getRoot(), "dump.csv");
+		String cli = "EvaluatePrequential -l bayes.NaiveBayes -f 1000 -k 2000 -c " + file.getPath() + " -d " + dump.getPath();
+		run(cli + " -i 5000");
+		Files.write(dump.toPath(), new byte[0]);
+		run(cli + " -i 10000 -R");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOtherConfigurationIsRejected() throws Exception {
+		File file = new File(folder.getRoot(), "task.ckpt");
+		run("EvaluatePrequential -l bayes.NaiveBayes -i 5000 -k 1000 -c " + file.getPath());
+		run("EvaluatePrequential -l trees.HoeffdingTree -i 10000 -k 1000 -R -c " + file.getPath());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testDamagedFileIsRejected() throws Exception {
+		File file = new File(folder.getRoot(), "task.ckpt");
+		run("EvaluatePrequential -l bayes.NaiveBayes -i 5000 -k 1000 -c " + file.getPath());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length() - 10);
+			raf.write(~raf.read());
+		} finally {
+			raf.close();
+		}
+		run("EvaluatePrequential -l bayes.NaiveBayes -i 10000 -k 1000 -R -c " + file.getPath());
+	}
+
+	private static LearningCurve run(String cli) throws Exception {
+		MainTask task = (MainTask) ClassOption.cliStringToObject(cli, MainTask.class, null);
+		return (LearningCurve) task.doTask();
+	}
+}
@@ -0,0 +1,70 @@
+package moa.tasks;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+
+/**
+ * Test that the cross-validated prequential evaluations give the same results
+ * when the folds run on worker threads.
+ */
+public class FoldExecutorTest {
+
+	private static final String[] TASKS = {
+		"EvaluatePrequentialCV -l trees.HoeffdingTree -i 20000 -f 5000 -w 5",
+		"EvaluatePrequentialCV -l bayes.NaiveBayes -i 20000 -f 3000 -w 4 -a Bootstrap-Validation",
+		"EvaluatePrequentialCV -l trees.HoeffdingTree -i 20000 -f 5000 -w 3 -a Split-Validation",
+		"EvaluatePrequentialDelayedCV -l trees.HoeffdingTree -i 20000 -f 5000 -w 5 -k 100",
+		"EvaluatePrequentialDelayedCV -l bayes.NaiveBayes -i 20000 -f 3000 -w 4 -a Bootstrap-Validation",
+	};
+
+	@Test
+	public void testSameCurves() throws Exception {
+		for (String task : TASKS) {
+			LearningCurve expected = run(task);
+			for (String jobs : new String[] {" -j 2", " -j 4", " -j 8"}) {
+				LearningCurve actual = run(task + jobs);
+				assertEquals(task + jobs, expected.numEntries(), actual.numEntries());
+				for (int n = 0; n < expected.numEntries(); n++) {
+					for (int m = 0; m < expected.getMeasurementNameCount(); m++) {
+						String name = expected.getMeasurementName(m);
+						if (name.startsWith("evaluation time") || name.startsWith("model cost")) {
+							continue;
+						}
+						assertEquals(task + jobs + ", " + name, expected.getMeasurement(n, m),
+								actual.getMeasurement(n, m), 0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailureIsRethrown() {
+		FoldExecutor folds = new FoldExecutor(4, 4, 2);
+		try {
+			for (int n = 0; n < 100; n++) {
+				final int instance = n;
+				folds.execute(n % 4, new Runnable() {
+					@Override
+					public void run() {
+						if (instance == 10) {
+							throw new IllegalStateException();
+						}
+					}
+				});
+			}
+			folds.awaitCompletion();
+		} finally {
+			folds.shutdown();
+		}
+	}
+
+	private static LearningCurve run(String cli) throws Exception {
+		MainTask task = (MainTask) ClassOption.cliStringToObject(cli, MainTask.class, null);
+		return (LearningCurve) task.doTask();
+	}
+}
@@ -0,0 +1,88 @@
+package moa.tasks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+
+/**
+ * Test that tasks run by the scheduler on worker threads and sharing a cached
+ * stream give the same results as when run one after another, and that a
+ * failing task does not stop the others.
+ */
+public class TaskSchedulerTest {
+
+	private static final String[] TASKS = {
+		"EvaluatePrequential -l trees.HoeffdingTree -i 20000 -f 5000",
+		"EvaluatePrequential -l bayes.NaiveBayes -i 20000 -f 5000",
+		"EvaluatePrequential -l (trees.HoeffdingTree -c 0.1) -i 20000 -f 5000",
+		"EvaluateInterleavedTestThenTrain -l functions.Perceptron -i 20000 -f 5000",
+	};
+
+	@Test
+	public void testSameResults() throws Exception {
+		Object[] expected = new TaskScheduler(1, 0).runTasks(tasks(null), new NullMonitor(), null);
+		Instances cache = TaskScheduler.cacheStream(task(TASKS[0]), 20000, new NullMonitor(), null);
+		Object[] actual = new TaskScheduler(3, 64).runTasks(tasks(cache), new NullMonitor(), null);
+		for (int i = 0; i < TASKS.length; i++) {
+			LearningCurve expectedCurve = (LearningCurve) expected[i];
+			LearningCurve actualCurve = (LearningCurve) actual[i];
+			assertEquals(TASKS[i], expectedCurve.numEntries(), actualCurve.numEntries());
+			for (int n = 0; n < expectedCurve.numEntries(); n++) {
+				for (int m = 0; m < expectedCurve.getMeasurementNameCount(); m++) {
+					String name = expectedCurve.getMeasurementName(m);
+					if (name.startsWith("evaluation time") || name.startsWith("model cost")) {
+						continue;
+					}
+					assertEquals(TASKS[i] + ", " + name, expectedCurve.getMeasurement(n, m),
+							actualCurve.getMeasurement(n, m), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFailureReported() throws Exception {
+		List<Task> tasks = new ArrayList<Task>();
+		tasks.add(task(TASKS[1]));
+		tasks.add(task("EvaluatePrequential -s (ArffFileStream -f does-not-exist.arff)"));
+		tasks.add(task(TASKS[1]));
+		Object[] results = new TaskScheduler(2, 0).runTasks(tasks, new NullMonitor(), null);
+		assertTrue(results[0] instanceof LearningCurve);
+		assertTrue(results[1] instanceof FailedTaskReport);
+		assertTrue(results[2] instanceof LearningCurve);
+	}
+
+	@Test
+	public void testSeparateOutputFiles() throws Exception {
+		EvaluatePrequential task = (EvaluatePrequential) task(
+				"EvaluatePrequential -d results.csv -o predictions");
+		TaskScheduler.separateOutputFiles(task, "_2");
+		assertEquals("results_2.csv", task.dumpFileOption.getValue());
+		assertEquals("predictions_2", task.outputPredictionFileOption.getValue());
+		assertNull(task.outputFileOption.getValue());
+	}
+
+	private static List<Task> tasks(Instances cache) throws Exception {
+		List<Task> tasks = new ArrayList<Task>();
+		for (String cli : TASKS) {
+			Task task = task(cli);
+			if (cache != null) {
+				TaskScheduler.shareStream(task, cache);
+			}
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private static Task task(String cli) throws Exception {
+		return (Task) ClassOption.cliStringToObject(cli, MainTask.class, null);
+	}
+}
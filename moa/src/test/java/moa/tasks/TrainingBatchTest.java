@@ -0,0 +1,82 @@
+package moa.tasks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.Classifier;
+import moa.core.Example;
+import moa.core.InstanceExample;
+import moa.evaluation.BasicClassificationPerformanceEvaluator;
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+/**
+ * Test that EvaluatePrequential with a training batch size tests every
+ * instance before training on it, and trains on the whole batch before each
+ * sample of the learning curve.
+ */
+public class TrainingBatchTest {
+
+	private static final String[] LEARNERS = {
+		"bayes.NaiveBayes",
+		"meta.OzaBag -s 5 -j 4",
+	};
+
+	private static final String STREAM = "generators.LEDGenerator";
+
+	private static final int BATCH_SIZE = 64;
+
+	private static final int SAMPLE_FREQUENCY = 1000;
+
+	@Test
+	public void testSameCurveAsBatchedLoop() throws Exception {
+		for (String learner : LEARNERS) {
+			LearningCurve curve = (LearningCurve) ((MainTask) ClassOption.cliStringToObject(
+					"EvaluatePrequential -l (" + learner + ") -s " + STREAM
+					+ " -e BasicClassificationPerformanceEvaluator -i 5000 -f " + SAMPLE_FREQUENCY
+					+ " -b " + BATCH_SIZE, MainTask.class, null)).doTask();
+
+			// the same, trained one instance at a time once a batch is full
+			Classifier classifier = (Classifier) ClassOption.cliStringToObject(learner, Classifier.class, null);
+			classifier.prepareForUse();
+			ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(STREAM, ExampleStream.class, null);
+			((OptionHandler) stream).prepareForUse();
+			classifier.setModelContext(stream.getHeader());
+			BasicClassificationPerformanceEvaluator evaluator = new BasicClassificationPerformanceEvaluator();
+			evaluator.prepareForUse();
+			List<Instance> batch = new ArrayList<Instance>();
+			int accuracyIndex = -1;
+			for (int m = 0; m < curve.getMeasurementNameCount(); m++) {
+				if (curve.getMeasurementName(m).equals("classifications correct (percent)")) {
+					accuracyIndex = m;
+				}
+			}
+			assertEquals(5, curve.numEntries());
+			for (int n = 1; n <= 5000; n++) {
+				Instance instance = (Instance) stream.nextInstance().getData();
+				Example<Instance> example = new InstanceExample(instance);
+				evaluator.addResult(example, classifier.getVotesForInstance(instance));
+				batch.add(instance);
+				if (batch.size() == BATCH_SIZE || n % SAMPLE_FREQUENCY == 0) {
+					for (Instance inst : batch) {
+						classifier.trainOnInstance(inst);
+					}
+					batch.clear();
+				}
+				if (n % SAMPLE_FREQUENCY == 0) {
+					assertEquals(learner + ", instance " + n,
+							evaluator.getPerformanceMeasurements()[1].getValue(),
+							curve.getMeasurement(n / SAMPLE_FREQUENCY - 1, accuracyIndex), 1e-9);
+				}
+			}
+		}
+	}
+}